@@ -0,0 +1,68 @@
+package com.github.lfeagan.wheat.sql;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the {@link SqlMetrics} wrappers by preparing, executing and fetching a small query against
+ * an in-memory H2 database, both through the raw connection and through a wrapped one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimedJdbcBenchmark {
+
+    private static final String SQL = "SELECT id, name FROM users WHERE id < ?";
+
+    Connection raw;
+    Connection timed;
+
+    @Setup
+    public void setup() throws SQLException {
+        raw = DriverManager.getConnection("jdbc:h2:mem:bench");
+        try (Statement statement = raw.createStatement()) {
+            statement.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(64))");
+            statement.execute("INSERT INTO users SELECT X, 'user' || X FROM SYSTEM_RANGE(1, 100)");
+        }
+        timed = SqlMetrics.create().wrap(raw);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        raw.close();
+    }
+
+    private static long query(final Connection connection) throws SQLException {
+        long sum = 0L;
+        try (PreparedStatement statement = connection.prepareStatement(SQL)) {
+            statement.setInt(1, 10);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    sum += rs.getInt(1);
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long raw() throws SQLException {
+        return query(raw);
+    }
+
+    @Benchmark
+    public long timed() throws SQLException {
+        return query(timed);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link ConcurrentNanoStopWatch} shared by several threads, using both the token and the
+ * thread-local APIs, while another thread reads the cumulative time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrentNanoStopWatchBenchmark {
+
+    ConcurrentNanoStopWatch watch;
+
+    @Setup
+    public void setup() {
+        watch = ConcurrentNanoStopWatch.create();
+    }
+
+    @Benchmark
+    @Group("token")
+    @GroupThreads(4)
+    public long token() {
+        return watch.end(watch.begin());
+    }
+
+    @Benchmark
+    @Group("token")
+    public long tokenReader() {
+        return watch.getCumulative();
+    }
+
+    @Benchmark
+    @Group("threadLocal")
+    @GroupThreads(4)
+    public long threadLocal() {
+        watch.start();
+        return watch.stop();
+    }
+
+    @Benchmark
+    @Group("threadLocal")
+    public long threadLocalReader() {
+        return watch.getCumulative();
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording into a {@link LatencyHistogram}, both from a single thread and from several threads
+ * sharing one histogram, and of querying a percentile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class HistogramState {
+        LatencyHistogram histogram;
+
+        @Setup
+        public void setup() {
+            histogram = LatencyHistogram.create();
+            for (long value = 1; value <= 1_000_000L; value += 7) {
+                histogram.record(value * 1000L);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ValueState {
+        long value = 1L;
+
+        long next() {
+            value = value * 6364136223846793005L + 1442695040888963407L;
+            return (value >>> 40);
+        }
+    }
+
+    @Benchmark
+    public void record(final HistogramState state, final ValueState value) {
+        state.histogram.record(value.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(final HistogramState state, final ValueState value) {
+        state.histogram.record(value.next());
+    }
+
+    @Benchmark
+    public long valueAtPercentile(final HistogramState state) {
+        return state.histogram.getValueAtPercentile(99.9d);
+    }
+
+    @Benchmark
+    public long startStopRecord(final HistogramState state) {
+        final NanoStopWatch watch = NanoStopWatch.createStarted();
+        watch.stop(state.histogram);
+        return watch.elapsedNanos();
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the {@link NanoStopWatch} start-stop cycle and of formatting an elapsed time, both to a new
+ * <code>String</code> and into a reused <code>StringBuilder</code>. <code>createSampledOneIn100</code> shows the cost
+ * of a start-stop cycle when 99 of 100 watches are the unsampled no-op.
+ * The <code>contended</code> group runs the same start-stop cycle from several threads at once, each with its own
+ * watch, to expose the cost of <code>System.nanoTime()</code> under concurrency. The cached benchmark reads a
+ * {@link CachedTimeSource} instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NanoStopWatchBenchmark {
+
+    private static final SamplingPolicy ONE_IN_100 = SamplingPolicy.oneIn(100);
+
+    @State(Scope.Thread)
+    public static class WatchState {
+        NanoStopWatch watch;
+
+        @Setup
+        public void setup() {
+            watch = NanoStopWatch.createUnstarted();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ElapsedState {
+        @Param({"123456", "12345678901", "5025123456789"})
+        long elapsed;
+
+        final StringBuilder sb = new StringBuilder(64);
+    }
+
+    @State(Scope.Benchmark)
+    public static class CachedState {
+        CachedTimeSource timeSource;
+
+        @Setup
+        public void setup() {
+            timeSource = CachedTimeSource.start();
+        }
+
+        @TearDown
+        public void tearDown() {
+            timeSource.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CachedWatchState {
+        NanoStopWatch watch;
+
+        @Setup
+        public void setup(final CachedState cached) {
+            watch = NanoStopWatch.createUnstarted(cached.timeSource);
+        }
+    }
+
+    @Benchmark
+    public long startStop(final WatchState state) {
+        state.watch.start();
+        state.watch.stop();
+        return state.watch.getCumulative();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long startStopContended(final WatchState state) {
+        state.watch.start();
+        state.watch.stop();
+        return state.watch.getCumulative();
+    }
+
+    @Benchmark
+    public long startStopCached(final CachedWatchState state) {
+        state.watch.start();
+        state.watch.stop();
+        return state.watch.getCumulative();
+    }
+
+    @Benchmark
+    public long createStartedAndStop() {
+        final NanoStopWatch watch = NanoStopWatch.createStarted();
+        watch.stop();
+        return watch.elapsedNanos();
+    }
+
+    @Benchmark
+    public String toStringElapsed(final ElapsedState state) {
+        return NanoStopWatch.toString(state.elapsed);
+    }
+
+    @Benchmark
+    public int formatToStringBuilder(final ElapsedState state) {
+        state.sb.setLength(0);
+        return NanoStopWatch.formatTo(state.elapsed, state.sb).length();
+    }
+
+    @Benchmark
+    public long createSampledOneIn100() {
+        final NanoStopWatch watch = NanoStopWatch.createStarted(ONE_IN_100);
+        watch.stop();
+        return watch.elapsedNanos();
+    }
+
+}
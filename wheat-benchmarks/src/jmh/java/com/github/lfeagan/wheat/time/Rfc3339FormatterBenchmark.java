@@ -0,0 +1,55 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares formatting log line timestamps with {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} and
+ * {@link Instant#toString()} against formatting them with an {@link Rfc3339Formatter}. Each invocation advances the
+ * timestamp by a millisecond, so the formatter renders its cached minute again once every 60,000 invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Rfc3339FormatterBenchmark {
+
+    final Rfc3339Formatter formatter = Rfc3339Formatter.create(3, ZoneOffset.UTC);
+    final StringBuilder sb = new StringBuilder(Rfc3339Formatter.MAX_LENGTH);
+    final byte[] bytes = new byte[Rfc3339Formatter.MAX_LENGTH];
+    long epochNanos = 1_700_000_000_000_000_000L;
+
+    private long next() {
+        epochNanos += 1_000_000L;
+        return epochNanos;
+    }
+
+    @Benchmark
+    public String dateTimeFormatter() {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(OffsetDateTime.ofInstant(TimeUtils.ofEpochNanos(next()), ZoneOffset.UTC));
+    }
+
+    @Benchmark
+    public String instantToString() {
+        return TimeUtils.ofEpochNanos(next()).toString();
+    }
+
+    @Benchmark
+    public int formatToStringBuilder() {
+        sb.setLength(0);
+        return formatter.formatEpochNanosTo(next(), sb).length();
+    }
+
+    @Benchmark
+    public int formatToBytes() {
+        return formatter.formatEpochNanosTo(next(), bytes, 0);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing an RFC 3339 timestamp with {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} against parsing it with
+ * an {@link Rfc3339Parser}, from a string and from the UTF-8 bytes of a log line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Rfc3339ParserBenchmark {
+
+    private static final String TIMESTAMP = "2024-03-15T12:34:56.789123+01:00";
+
+    final Rfc3339Parser parser = new Rfc3339Parser();
+    final byte[] line = (TIMESTAMP + " INFO request completed").getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public Instant formatter() {
+        return Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(TIMESTAMP));
+    }
+
+    @Benchmark
+    public Instant instantFromRFC3339() {
+        return TimeUtils.instantFromRFC3339(TIMESTAMP);
+    }
+
+    @Benchmark
+    public long parseString() {
+        parser.parse(TIMESTAMP);
+        return parser.getEpochSecond() + parser.getNano();
+    }
+
+    @Benchmark
+    public long parseBytes() {
+        parser.parse(line, 0, TIMESTAMP.length());
+        return parser.getEpochSecond() + parser.getNano();
+    }
+
+}
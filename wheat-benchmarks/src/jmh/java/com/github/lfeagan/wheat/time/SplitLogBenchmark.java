@@ -0,0 +1,97 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cost of appending a split to a {@link SplitLogWriter}, compared with formatting the split as text,
+ * and the cost per split of reading the log back with a {@link SplitLogReader}. The log is written to a temporary
+ * directory, which is deleted after each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitLogBenchmark {
+
+    private static final String[] DESCRIPTIONS = {"parse", "plan", "execute", "fetch", "decode"};
+
+    private static final int READ_SPLIT_COUNT = 1_000_000;
+
+    @State(Scope.Thread)
+    public static class WriterState {
+        Path directory;
+        SplitLogWriter writer;
+        StringBuilder text = new StringBuilder();
+        int count;
+
+        @Setup
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("split-log");
+            writer = SplitLogWriter.open(directory, "bench");
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            writer.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+        Path directory;
+
+        @Setup
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("split-log");
+            try (SplitLogWriter writer = SplitLogWriter.open(directory, "bench")) {
+                for (int i = 0; i < READ_SPLIT_COUNT; ++i) {
+                    writer.append(DESCRIPTIONS[i % DESCRIPTIONS.length], i, i + 1000L);
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void append(final WriterState state) throws IOException {
+        final long start = System.nanoTime();
+        state.writer.append(DESCRIPTIONS[state.count++ % DESCRIPTIONS.length], start, start + 1000L);
+    }
+
+    @Benchmark
+    public int appendText(final WriterState state) {
+        final long start = System.nanoTime();
+        final SplitNanoStopWatch.Split split = new SplitNanoStopWatch.Split(start, DESCRIPTIONS[state.count++ % DESCRIPTIONS.length]);
+        state.text.setLength(0);
+        state.text.append(split);
+        return state.text.length();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READ_SPLIT_COUNT)
+    public long aggregate(final ReaderState state) throws IOException {
+        try (SplitLogReader reader = SplitLogReader.open(state.directory, "bench")) {
+            return reader.aggregate(TimerRegistry.create());
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the cost of recording a split with both the unbounded and the ring buffer split recorders.
+ * Unbounded watches are reset periodically so that the benchmark measures recording rather than heap growth.
+ * The contended benchmarks share a single watch between several threads. The query benchmarks run against 100k
+ * unbounded splits and a full ring buffer. The span benchmark enters and closes a tree of five nested spans.
+ * The pooled benchmarks time a request of five splits with a new watch and with a watch recycled by a
+ * {@link StopWatchPool}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitNanoStopWatchBenchmark {
+
+    private static final int RESET_INTERVAL = 1024;
+
+    private static final int LARGE_SPLIT_COUNT = 100_000;
+
+    private static final String[] DESCRIPTIONS = {"parse", "plan", "execute", "fetch", "decode"};
+
+    @State(Scope.Thread)
+    public static class UnboundedState {
+        SplitNanoStopWatch watch;
+        int count;
+
+        @Setup
+        public void setup() {
+            watch = SplitNanoStopWatch.createStarted();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RingBufferState {
+        SplitNanoStopWatch watch;
+        int count;
+
+        @Setup
+        public void setup() {
+            watch = SplitNanoStopWatch.createStarted(RESET_INTERVAL);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedRingBufferState {
+        SplitNanoStopWatch watch;
+
+        @Setup
+        public void setup() {
+            watch = SplitNanoStopWatch.createStarted(RESET_INTERVAL);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PoolState {
+        StopWatchPool pool;
+
+        @Setup
+        public void setup() {
+            pool = StopWatchPool.create();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class QueryState {
+        SplitNanoStopWatch unbounded;
+        SplitNanoStopWatch ringBuffer;
+        Matcher matcher;
+
+        @Setup
+        public void setup() {
+            unbounded = SplitNanoStopWatch.createStarted();
+            ringBuffer = SplitNanoStopWatch.createStarted(RESET_INTERVAL);
+            for (int i = 0; i < RESET_INTERVAL; ++i) {
+                unbounded.split(DESCRIPTIONS[i % DESCRIPTIONS.length]);
+                ringBuffer.split(DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            }
+            for (int i = RESET_INTERVAL; i < LARGE_SPLIT_COUNT; ++i) {
+                unbounded.split(DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            }
+            matcher = Pattern.compile("p.*").matcher("");
+        }
+    }
+
+    @Benchmark
+    public void splitUnbounded(final UnboundedState state) {
+        state.watch.split(DESCRIPTIONS[state.count % DESCRIPTIONS.length]);
+        if (++state.count == RESET_INTERVAL) {
+            state.count = 0;
+            state.watch.reset();
+            state.watch.start();
+        }
+    }
+
+    @Benchmark
+    public void splitRingBuffer(final RingBufferState state) {
+        state.watch.split(DESCRIPTIONS[state.count++ % DESCRIPTIONS.length]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void splitRingBufferContended(final SharedRingBufferState shared, final RingBufferState state) {
+        shared.watch.split(DESCRIPTIONS[state.count++ % DESCRIPTIONS.length]);
+    }
+
+    @Benchmark
+    public double averageUnbounded(final QueryState state) {
+        return state.unbounded.getSplitsAverageElapsedTime("plan");
+    }
+
+    @Benchmark
+    public double averageRingBuffer(final QueryState state) {
+        return state.ringBuffer.getSplitsAverageElapsedTime("plan");
+    }
+
+    @Benchmark
+    public List<SplitNanoStopWatch.Split> regexUnbounded(final QueryState state) {
+        return state.unbounded.getSplits(state.matcher);
+    }
+
+    @Benchmark
+    public List<SplitNanoStopWatch.Split> regexRingBuffer(final QueryState state) {
+        return state.ringBuffer.getSplits(state.matcher);
+    }
+
+    @Benchmark
+    public void nestedSpans(final UnboundedState state) {
+        try (SplitNanoStopWatch.Scope request = state.watch.enter("request")) {
+            state.watch.enter("parse").close();
+            try (SplitNanoStopWatch.Scope execute = state.watch.enter("execute")) {
+                state.watch.enter("fetch").close();
+                state.watch.enter("decode").close();
+            }
+        }
+        if (++state.count == RESET_INTERVAL) {
+            state.count = 0;
+            state.watch.reset();
+            state.watch.start();
+        }
+    }
+
+    @Benchmark
+    public long requestAllocated() {
+        final SplitNanoStopWatch watch = SplitNanoStopWatch.createStarted();
+        for (String description : DESCRIPTIONS) {
+            watch.split(description);
+        }
+        return watch.getSplitsTotalElapsed("fetch");
+    }
+
+    @Benchmark
+    public long requestPooled(final PoolState state) {
+        final SplitNanoStopWatch watch = state.pool.acquireStartedSplitNanoStopWatch();
+        for (String description : DESCRIPTIONS) {
+            watch.split(description);
+        }
+        final long elapsed = watch.getSplitsTotalElapsed("fetch");
+        state.pool.release(watch);
+        return elapsed;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link StopWatch} that one thread starts and stops while several monitoring threads poll its
+ * elapsed times. A cached time source keeps the cost of reading the clock out of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class StopWatchBenchmark {
+
+    CachedTimeSource timeSource;
+    StopWatch watch;
+
+    @Setup
+    public void setup() {
+        timeSource = CachedTimeSource.start();
+        watch = new StopWatch(timeSource, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        timeSource.close();
+    }
+
+    @Benchmark
+    @Group("polled")
+    public void writer() {
+        watch.start();
+        watch.stop();
+    }
+
+    @Benchmark
+    @Group("polled")
+    @GroupThreads(3)
+    public long reader() {
+        return watch.getElapsed() + watch.getCurrentElapsed();
+    }
+
+}
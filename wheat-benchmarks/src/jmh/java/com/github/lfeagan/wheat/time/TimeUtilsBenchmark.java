@@ -0,0 +1,102 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TimeUtils#alignWithInterval} for duration and calendar period intervals, for timestamps both after
+ * and before the origin. The contended benchmark aligns from several threads at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeUtilsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AlignState {
+        @Param({"2023-12-03T15:53:58.123456789Z", "1999-12-31T23:59:59Z"})
+        String timestamp;
+
+        @Param({"PT1S", "PT1H"})
+        String duration;
+
+        @Param({"P1D", "P1M"})
+        String period;
+
+        Instant instant;
+        Instant origin;
+        Duration durationInterval;
+        PeriodDuration periodInterval;
+        ZoneId zone;
+
+        @Setup
+        public void setup() {
+            instant = Instant.parse(timestamp);
+            origin = Instant.parse("2000-01-01T00:00:00Z");
+            durationInterval = Duration.parse(duration);
+            periodInterval = PeriodDuration.of(Period.parse(period));
+            zone = ZoneId.of("America/New_York");
+        }
+    }
+
+    @Benchmark
+    public Instant alignWithDuration(final AlignState state) {
+        return TimeUtils.alignWithInterval(state.instant, state.origin, state.durationInterval);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Instant alignWithDurationContended(final AlignState state) {
+        return TimeUtils.alignWithInterval(state.instant, state.origin, state.durationInterval);
+    }
+
+    @Benchmark
+    public Instant alignWithPeriod(final AlignState state) {
+        return TimeUtils.alignWithInterval(state.instant, state.origin, state.periodInterval, state.zone);
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+        long[] timestamps;
+        long[] aligned;
+        IntervalAligner aligner;
+
+        @Setup
+        public void setup() {
+            final Random random = new Random(42L);
+            final long start = TimeUtils.toEpochNanos(Instant.parse("2023-01-01T00:00:00Z"));
+            timestamps = new long[4096];
+            for (int i = 0; i < timestamps.length; ++i) {
+                timestamps[i] = start + (long) (random.nextDouble() * Duration.ofDays(30).toNanos());
+            }
+            Arrays.sort(timestamps);
+            aligned = new long[timestamps.length];
+            aligner = IntervalAligner.create(Instant.parse("2000-01-01T00:00:00Z"), PeriodDuration.of(Period.ofDays(1)), ZoneId.of("America/New_York"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public long[] alignDurationBatch(final BatchState state) {
+        TimeUtils.alignWithInterval(state.timestamps, 0, state.aligned, 0, state.timestamps.length, 0L, 60000000000L);
+        return state.aligned;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public long[] alignPeriodBatch(final BatchState state) {
+        state.aligner.alignEpochNanos(state.timestamps, 0, state.aligned, 0, state.timestamps.length);
+        return state.aligned;
+    }
+
+}
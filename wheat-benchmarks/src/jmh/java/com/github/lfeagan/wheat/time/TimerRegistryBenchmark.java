@@ -0,0 +1,43 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording into a shared {@link TimerRegistry.Timer} from several threads, both through a cached handle
+ * and by looking the timer up by name on every record.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TimerRegistryBenchmark {
+
+    TimerRegistry registry;
+    TimerRegistry.Timer timer;
+
+    @Setup
+    public void setup() {
+        registry = TimerRegistry.create();
+        for (int i = 0; i < 100; ++i) {
+            registry.timer("timer" + i);
+        }
+        timer = registry.timer("timer42");
+    }
+
+    @Benchmark
+    public long recordHandle() {
+        return timer.end(timer.begin());
+    }
+
+    @Benchmark
+    public long recordLookup() {
+        final TimerRegistry.Timer t = registry.timer("timer42");
+        return t.end(t.begin());
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the cost per line of extracting the timestamps of a log file with a {@link TimestampScanner}, sequentially
+ * and in parallel, compared with reading each line as a string and parsing it with
+ * {@link TimeUtils#instantFromRFC3339(String)} as it was before the parser existed. The log is written to a temporary
+ * file, which is deleted after the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimestampScannerBenchmark {
+
+    private static final int LINE_COUNT = 500_000;
+
+    Path file;
+    TimestampScanner scanner;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("timestamps", ".log");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long epochSecond = 1_700_000_000L;
+            for (int i = 0; i < LINE_COUNT; ++i) {
+                epochSecond += i % 3;
+                writer.write(Instant.ofEpochSecond(epochSecond, i * 1_000L).toString());
+                writer.write(" INFO [worker-" + (i % 8) + "] request " + i + " completed in " + (i % 997) + " ms\n");
+            }
+        }
+        scanner = TimestampScanner.create(TimestampField.leading()).withAlignment(0L, TimeUnit.MINUTES.toNanos(1L));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public long scan() throws IOException {
+        final LongAdder sum = new LongAdder();
+        scanner.scan(file, (epochNanos, length) -> sum.add(epochNanos[length - 1]));
+        return sum.sum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public long parallelScan() throws IOException {
+        final LongAdder sum = new LongAdder();
+        scanner.parallelScan(file, (epochNanos, length) -> sum.add(epochNanos[length - 1]));
+        return sum.sum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public long readLines() throws IOException {
+        final long minute = TimeUnit.MINUTES.toNanos(1L);
+        long sum = 0L;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Instant instant = TimeUtils.instantFromRFC3339(line.substring(0, line.indexOf(' ')));
+                sum += TimeUtils.alignWithInterval(TimeUtils.toEpochNanos(instant), 0L, minute);
+            }
+        }
+        return sum;
+    }
+
+}
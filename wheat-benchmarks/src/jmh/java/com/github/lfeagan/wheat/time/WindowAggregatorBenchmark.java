@@ -0,0 +1,98 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares aggregating a stream of samples into tumbling and sliding windows with a {@link WindowAggregator} against
+ * the usual approach of aligning each sample with {@link TimeUtils#alignWithInterval} and keeping the windows in a
+ * <code>HashMap&lt;Instant, double[]&gt;</code>. The samples are a day of slightly out of order timestamps, and the
+ * watermark trails them by a minute. Each invocation aggregates all of the samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowAggregatorBenchmark {
+
+    @Param({"PT1M", "P1D"})
+    String slide;
+
+    final Instant origin = Instant.parse("2000-01-01T00:00:00Z");
+    final ZoneId zone = ZoneId.of("America/New_York");
+    final long lateness = Duration.ofMinutes(1).toNanos();
+    PeriodDuration interval;
+    long[] timestamps;
+    double[] values;
+
+    @Setup
+    public void setup() {
+        interval = slide.startsWith("PT") ? PeriodDuration.of(Duration.parse(slide)) : PeriodDuration.of(Period.parse(slide));
+        final Random random = new Random(42L);
+        final long start = TimeUtils.toEpochNanos(Instant.parse("2023-03-12T00:00:00Z"));
+        final long step = Duration.ofDays(1).toNanos() / 4096;
+        timestamps = new long[4096];
+        values = new double[timestamps.length];
+        for (int i = 0; i < timestamps.length; ++i) {
+            timestamps[i] = start + i * step + (long) (random.nextDouble() * lateness);
+            values[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public void hashMap(final Blackhole blackhole) {
+        final Map<Instant, double[]> windows = new HashMap<>();
+        for (int i = 0; i < timestamps.length; ++i) {
+            final Instant start = TimeUtils.alignWithInterval(TimeUtils.ofEpochNanos(timestamps[i]), origin, interval, zone);
+            final double[] window = windows.computeIfAbsent(start, x -> new double[] {0, 0, Double.MAX_VALUE, -Double.MAX_VALUE});
+            ++window[0];
+            window[1] += values[i];
+            window[2] = Math.min(window[2], values[i]);
+            window[3] = Math.max(window[3], values[i]);
+            final Instant watermark = TimeUtils.ofEpochNanos(timestamps[i] - lateness);
+            for (Iterator<Map.Entry<Instant, double[]>> it = windows.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry<Instant, double[]> entry = it.next();
+                final Instant end = entry.getKey().atZone(zone).plus(interval).toInstant();
+                if (!end.isAfter(watermark)) {
+                    blackhole.consume(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+        windows.values().forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void tumbling(final Blackhole blackhole) {
+        aggregate(WindowAggregator.tumbling(origin, interval, zone,
+                (start, end, count, sum, min, max) -> blackhole.consume(sum)));
+    }
+
+    @Benchmark
+    public void sliding(final Blackhole blackhole) {
+        aggregate(WindowAggregator.sliding(origin, interval.multipliedBy(5), interval, zone,
+                (start, end, count, sum, min, max) -> blackhole.consume(sum)));
+    }
+
+    private void aggregate(final WindowAggregator aggregator) {
+        for (int i = 0; i < timestamps.length; ++i) {
+            aggregator.add(timestamps[i], values[i]);
+            aggregator.advanceWatermark(timestamps[i] - lateness);
+        }
+        aggregator.flush();
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.github.lfeagan.wheat.time;
+
+import org.openjdk.jmh.annotations.*;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting between instants and local date-times with {@link ZoneRules} and {@link ZonedDateTime} against
+ * converting them with a {@link ZoneTransitionTable}, and stepping an interval of a day and an hour a month at a time,
+ * as {@link TimeUtils#alignWithInterval(Instant, Instant, PeriodDuration, ZoneId)} does, with each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ZoneTransitionTableBenchmark {
+
+    @Param({"America/New_York", "Europe/London"})
+    String zoneId;
+
+    final PeriodDuration interval = PeriodDuration.of(Period.ofDays(1), Duration.ofHours(1));
+    final Instant origin = Instant.parse("2023-01-01T05:00:00Z");
+    final LocalDateTime local = LocalDateTime.parse("2023-03-26T01:30:00");
+    ZoneId zone;
+    ZoneRules rules;
+    ZoneTransitionTable table;
+    long epochSecond;
+    long localSecond;
+
+    @Setup
+    public void setup() {
+        zone = ZoneId.of(zoneId);
+        rules = zone.getRules();
+        table = ZoneTransitionTable.of(zone);
+        epochSecond = Instant.parse("2023-12-03T15:53:58Z").getEpochSecond();
+        localSecond = local.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public int rulesOffset() {
+        return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+    }
+
+    @Benchmark
+    public int tableOffset() {
+        return table.getOffsetSeconds(epochSecond);
+    }
+
+    @Benchmark
+    public long zonedOfLocal() {
+        return ZonedDateTime.ofLocal(local, zone, null).toEpochSecond();
+    }
+
+    @Benchmark
+    public long tableOfLocal() {
+        return table.toEpochSecond(localSecond, Integer.MIN_VALUE);
+    }
+
+    @Benchmark
+    public Instant stepZonedDateTime() {
+        ZonedDateTime step = ZonedDateTime.ofInstant(origin, zone);
+        for (int i = 0; i < 30; ++i) {
+            step = step.plus(interval);
+        }
+        return step.toInstant();
+    }
+
+    @Benchmark
+    public Instant stepCursor() {
+        final ZoneTransitionTable.Cursor step = table.cursor(origin);
+        for (int i = 0; i < 30; ++i) {
+            step.plus(interval.getPeriod(), interval.getDuration());
+        }
+        return step.toInstant();
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.lfeagan.wheat.sql;
+
+import com.github.lfeagan.wheat.time.LatencyHistogram;
+import com.github.lfeagan.wheat.time.TimeSource;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Times the statements executed through the JDBC connections it wraps, aggregating the latencies of each phase per
+ * normalized SQL text.
+ * <pre>
+ * SqlMetrics metrics = SqlMetrics.create();
+ * try (Connection connection = metrics.wrap(dataSource.getConnection());
+ *      PreparedStatement statement = connection.prepareStatement("SELECT name FROM users WHERE id = ?")) {
+ *     ...
+ * }
+ * for (StatementMetrics statement : metrics.getStatements().values()) {
+ *     System.out.println(statement);
+ * }
+ * </pre>
+ * Statements prepared with {@link Connection#prepareStatement(String)} and its overloads are timed, along with the
+ * result sets they return. Statements from {@link Connection#createStatement()} and
+ * {@link Connection#prepareCall(String)} are passed through untimed, as are the methods of a prepared statement that
+ * take their own SQL text. The wrappers add no synchronization of their own, so they may be used in the same ways as
+ * the connection they wrap, and a single instance may be shared by any number of connections.
+ * @see StatementMetrics
+ */
+public final class SqlMetrics {
+
+    /**
+     * The maximum number of distinct raw SQL strings whose normalized form is cached. Applications that inline literal
+     * values into their SQL text can generate an unbounded number of raw strings, which are normalized on every
+     * prepare once the cache is full.
+     */
+    private static final int MAX_CACHED_SQL = 10_000;
+
+    private final TimeSource timeSource;
+    private final int precisionBits;
+    private final ConcurrentMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StatementMetrics> statementsBySql = new ConcurrentHashMap<>();
+
+    private SqlMetrics(final TimeSource timeSource, final int precisionBits) {
+        this.timeSource = timeSource;
+        this.precisionBits = precisionBits;
+    }
+
+    public static SqlMetrics create() {
+        return new SqlMetrics(TimeSource.system(), LatencyHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Creates metrics that read the time from the specified time source and record latencies in histograms of the
+     * specified precision.
+     * @param timeSource the time source of the stop watches timing each phase
+     * @param precisionBits the precision of the histograms, from 1 to 10
+     * @return empty metrics
+     */
+    public static SqlMetrics create(final TimeSource timeSource, final int precisionBits) {
+        if (timeSource == null) {
+            throw new IllegalArgumentException("timeSource must not be null");
+        }
+        // validates the precision
+        LatencyHistogram.create(precisionBits);
+        return new SqlMetrics(timeSource, precisionBits);
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Wraps a connection so that the statements it prepares are timed. Closing the wrapper closes the connection.
+     * @param connection the connection to wrap
+     * @return a connection that delegates to the specified connection
+     */
+    public Connection wrap(final Connection connection) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection must not be null");
+        }
+        return new TimedConnection(connection, this);
+    }
+
+    /**
+     * Returns the metrics of the specified statement, creating them if they do not exist.
+     * @param sql the SQL text, which is normalized before lookup
+     * @return the metrics of the normalized SQL text
+     */
+    public StatementMetrics statement(final String sql) {
+        StatementMetrics metrics = statementsBySql.get(sql);
+        if (metrics == null) {
+            final String normalized = SqlNormalizer.normalize(sql);
+            metrics = statements.computeIfAbsent(normalized, key -> new StatementMetrics(key, precisionBits));
+            if (statementsBySql.size() < MAX_CACHED_SQL) {
+                statementsBySql.putIfAbsent(sql, metrics);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of every statement prepared so far.
+     * @return the statement metrics by normalized SQL text
+     */
+    public SortedMap<String, StatementMetrics> getStatements() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(statements));
+    }
+
+}
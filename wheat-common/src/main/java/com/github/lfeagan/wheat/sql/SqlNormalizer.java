@@ -0,0 +1,140 @@
+package com.github.lfeagan.wheat.sql;
+
+/**
+ * Normalizes SQL text so that statements that differ only in their literal values are aggregated together. String and
+ * numeric literals are replaced by <code>?</code>, comments are removed, runs of whitespace are collapsed to a single
+ * space, and lists of placeholders, such as the values of an <code>IN</code> list, are collapsed to a single
+ * placeholder. Quoted identifiers are kept as they are.
+ */
+final class SqlNormalizer {
+
+    private SqlNormalizer() {
+    }
+
+    static String normalize(final String sql) {
+        final int length = sql.length();
+        final StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            final char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i = skipWhitespace(sql, i);
+                space(sb);
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                i = sql.indexOf('\n', i);
+                i = i < 0 ? length : i;
+                space(sb);
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                i = sql.indexOf("*/", i + 2);
+                i = i < 0 ? length : i + 2;
+                space(sb);
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                placeholder(sb);
+            } else if (c == '"' || c == '`') {
+                final int end = skipQuoted(sql, i, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '?') {
+                ++i;
+                placeholder(sb);
+            } else if (isNumberStart(sql, i) && !isIdentifierPart(sb)) {
+                i = skipNumber(sql, i);
+                placeholder(sb);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                final int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    ++i;
+                }
+                sb.append(sql, start, i);
+            } else {
+                // drop the space before punctuation so that "(?, ?)" and "( ?,? )" normalize the same way
+                if (c == ',' || c == ')') {
+                    trimSpace(sb);
+                }
+                sb.append(c);
+                ++i;
+            }
+        }
+        trimSpace(sb);
+        return sb.toString();
+    }
+
+    private static int skipWhitespace(final String sql, int i) {
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index after the closing quote, where a doubled quote character is an escaped quote.
+     */
+    private static int skipQuoted(final String sql, int i, final char quote) {
+        ++i;
+        while (i < sql.length()) {
+            if (sql.charAt(i++) == quote) {
+                if (i < sql.length() && sql.charAt(i) == quote) {
+                    ++i;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static boolean isNumberStart(final String sql, final int i) {
+        final char c = sql.charAt(i);
+        if (c >= '0' && c <= '9') {
+            return true;
+        }
+        return c == '.' && i + 1 < sql.length() && sql.charAt(i + 1) >= '0' && sql.charAt(i + 1) <= '9';
+    }
+
+    private static int skipNumber(final String sql, int i) {
+        final int length = sql.length();
+        while (i < length) {
+            final char c = sql.charAt(i);
+            if ((c == 'e' || c == 'E') && i + 1 < length && (sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                i += 2;
+            } else if (Character.isLetterOrDigit(c) || c == '.') {
+                ++i;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isIdentifierPart(final StringBuilder sb) {
+        return sb.length() > 0 && Character.isJavaIdentifierPart(sb.charAt(sb.length() - 1));
+    }
+
+    private static void space(final StringBuilder sb) {
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ' && sb.charAt(sb.length() - 1) != '(') {
+            sb.append(' ');
+        }
+    }
+
+    private static void trimSpace(final StringBuilder sb) {
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') {
+            sb.setLength(sb.length() - 1);
+        }
+    }
+
+    /**
+     * Appends a placeholder, unless it follows another placeholder in a list, which it is collapsed into.
+     */
+    private static void placeholder(final StringBuilder sb) {
+        final int length = sb.length();
+        if (length >= 3 && sb.charAt(length - 1) == ' ' && sb.charAt(length - 2) == ',' && sb.charAt(length - 3) == '?') {
+            sb.setLength(length - 2);
+        } else if (length >= 2 && sb.charAt(length - 1) == ',' && sb.charAt(length - 2) == '?') {
+            sb.setLength(length - 1);
+        } else {
+            sb.append('?');
+        }
+    }
+
+}
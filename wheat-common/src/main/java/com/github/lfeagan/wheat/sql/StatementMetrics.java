@@ -0,0 +1,84 @@
+package com.github.lfeagan.wheat.sql;
+
+import com.github.lfeagan.wheat.time.LatencyHistogram;
+import com.github.lfeagan.wheat.time.NanoStopWatch;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies recorded by {@link SqlMetrics} for one normalized SQL statement. Each phase of executing the statement
+ * has its own histogram:
+ * <ul>
+ *     <li>prepare: the time spent in {@link java.sql.Connection#prepareStatement(String)}</li>
+ *     <li>execute: the time spent in each execute method of the prepared statement</li>
+ *     <li>fetch: the total time spent in {@link java.sql.ResultSet#next()}, once per result set</li>
+ *     <li>time to first row: the execute time plus the time spent in {@link java.sql.ResultSet#next()} until it
+ *     returned the first row, once per non-empty result set</li>
+ * </ul>
+ * Executions that throw an exception are still recorded.
+ */
+public final class StatementMetrics {
+
+    private final String sql;
+    private final LatencyHistogram prepare;
+    private final LatencyHistogram execute;
+    private final LatencyHistogram fetch;
+    private final LatencyHistogram timeToFirstRow;
+    private final LongAdder rowsFetched = new LongAdder();
+
+    StatementMetrics(final String sql, final int precisionBits) {
+        this.sql = sql;
+        this.prepare = LatencyHistogram.create(precisionBits);
+        this.execute = LatencyHistogram.create(precisionBits);
+        this.fetch = LatencyHistogram.create(precisionBits);
+        this.timeToFirstRow = LatencyHistogram.create(precisionBits);
+    }
+
+    /**
+     * Returns the normalized SQL text, in which literals are replaced by <code>?</code>.
+     * @return the normalized SQL text
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public LatencyHistogram getPrepare() {
+        return prepare;
+    }
+
+    public LatencyHistogram getExecute() {
+        return execute;
+    }
+
+    public LatencyHistogram getFetch() {
+        return fetch;
+    }
+
+    public LatencyHistogram getTimeToFirstRow() {
+        return timeToFirstRow;
+    }
+
+    /**
+     * Returns the total number of rows fetched from all result sets of the statement.
+     * @return the number of rows fetched
+     */
+    public long getRowsFetched() {
+        return rowsFetched.sum();
+    }
+
+    void recordFetch(final long nanos, final long rows) {
+        fetch.record(nanos);
+        rowsFetched.add(rows);
+    }
+
+    @Override
+    public String toString() {
+        return sql
+                + " count=" + execute.getCount()
+                + " total=" + NanoStopWatch.toString(execute.getTotal())
+                + " p99=" + NanoStopWatch.toString(execute.getValueAtPercentile(99.0d))
+                + " rows=" + getRowsFetched()
+                + " firstRowP99=" + NanoStopWatch.toString(timeToFirstRow.getValueAtPercentile(99.0d));
+    }
+
+}
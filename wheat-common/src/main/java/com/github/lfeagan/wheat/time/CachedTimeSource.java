@@ -0,0 +1,98 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A time source whose times are read from the system clocks by a background thread at a fixed interval and cached
+ * in volatile fields. Reading the time is then as cheap as a volatile read, at the cost of the times lagging the
+ * system clocks by up to the tick interval plus scheduling delay. This suits timing coarse phases, such as whole
+ * requests, whose durations are much longer than the tick interval.
+ * <p>
+ * The background thread is a daemon, and stops when the time source is closed, after which the times no longer
+ * advance.
+ */
+public final class CachedTimeSource implements TimeSource, AutoCloseable {
+
+    public static final long DEFAULT_TICK_MICROS = 1000L;
+
+    private final long tickNanos;
+    private final Thread ticker;
+    private volatile long nanoTime;
+    private volatile long currentTimeMillis;
+    private volatile boolean closed = false;
+
+    private CachedTimeSource(final long tickMicros) {
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(tickMicros);
+        tick();
+        this.ticker = new Thread(this::run, "wheat-cached-time-source");
+        this.ticker.setDaemon(true);
+    }
+
+    /**
+     * Starts a time source that ticks every millisecond.
+     * @return a running time source
+     */
+    public static CachedTimeSource start() {
+        return start(DEFAULT_TICK_MICROS);
+    }
+
+    /**
+     * Starts a time source that ticks at the specified interval.
+     * @param tickMicros the interval between reads of the system clocks, in microseconds, which must be positive
+     * @return a running time source
+     */
+    public static CachedTimeSource start(final long tickMicros) {
+        if (tickMicros <= 0L) {
+            throw new IllegalArgumentException("tickMicros must be positive");
+        }
+        final CachedTimeSource source = new CachedTimeSource(tickMicros);
+        source.ticker.start();
+        return source;
+    }
+
+    public long getTickMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(tickNanos);
+    }
+
+    private void tick() {
+        nanoTime = System.nanoTime();
+        currentTimeMillis = System.currentTimeMillis();
+    }
+
+    private void run() {
+        while (!closed) {
+            LockSupport.parkNanos(this, tickNanos);
+            tick();
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the background thread. The cached times no longer advance once it has stopped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+
+    @Override
+    public String toString() {
+        return "cached every " + getTickMicros() + " us";
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.github.lfeagan.wheat.time;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Constant-time alignment of a timestamp with a calendar period that is a whole number of months or a whole number
+ * of days.
+ * <p>
+ * {@link TimeUtils#alignWithInterval(Instant, Instant, org.threeten.extra.PeriodDuration, ZoneId)} is defined by
+ * repeatedly adding (or subtracting) the period to a <code>ZonedDateTime</code>. Each step may clamp the day of the
+ * month or shift the local time out of a DST gap, and those adjustments carry into every later step. Rather than
+ * replicating that path, this class estimates the number of whole periods directly and only answers when it can
+ * prove that no step along the way was adjusted; otherwise it returns <code>null</code> and the caller must step.
+ */
+final class CalendarAlignment {
+
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    private CalendarAlignment() {}
+
+    /**
+     * Aligns the timestamp with the period, or returns <code>null</code> if the result cannot be computed directly.
+     * @param timestamp the timestamp to align, which must not equal the origin
+     * @param origin the origin the periods are offset from
+     * @param period the period, which must be a positive number of months (and years) or a positive number of days
+     * @param timeZone the time zone the calendar arithmetic is performed in
+     * @return the aligned instant, or <code>null</code> if the caller must step from the origin
+     */
+    static Instant align(final Instant timestamp, final Instant origin, final Period period, final ZoneId timeZone) {
+        final long months = period.toTotalMonths();
+        final int days = period.getDays();
+        final boolean monthly;
+        final long step;
+        if (months > 0L && days == 0) {
+            monthly = true;
+            step = months;
+        } else if (months == 0L && days > 0) {
+            monthly = false;
+            step = days;
+        } else {
+            return null;
+        }
+
+        final ZoneRules rules = timeZone.getRules();
+        final ZoneTransitionTable table = ZoneTransitionTable.of(timeZone);
+        final LocalDateTime originLocal = LocalDateTime.ofInstant(origin, timeZone);
+        if (monthly && originLocal.getDayOfMonth() > 28) {
+            // some months are shorter, so the day of month would be clamped and drift on later steps
+            return null;
+        }
+        final LocalDateTime timestampLocal = LocalDateTime.ofInstant(timestamp, timeZone);
+
+        // estimate the number of whole periods from the calendar fields, then correct
+        final long elapsed = monthly ? monthsBetween(originLocal.toLocalDate(), timestampLocal.toLocalDate())
+                : timestampLocal.toLocalDate().toEpochDay() - originLocal.toLocalDate().toEpochDay();
+        long index = Math.floorDiv(elapsed, step);
+        Instant aligned = step(originLocal, monthly, step, index, table);
+        while (aligned.isAfter(timestamp)) {
+            aligned = step(originLocal, monthly, step, --index, table);
+        }
+        Instant next = step(originLocal, monthly, step, index + 1L, table);
+        while (!next.isAfter(timestamp)) {
+            aligned = next;
+            next = step(originLocal, monthly, step, ++index + 1L, table);
+        }
+
+        if (!rules.isFixedOffset()) {
+            // every step between the origin and the result must land on an unambiguous local time
+            final Instant lower = ((index < 0L) ? aligned : origin).minusSeconds(SECONDS_PER_DAY);
+            final Instant upper = ((index < 0L) ? origin : next).plusSeconds(SECONDS_PER_DAY);
+            if (table.covers(lower.getEpochSecond(), upper.getEpochSecond())) {
+                for (int i = table.indexAfter(lower.getEpochSecond());
+                     i < table.getTransitionCount() && table.getTransition(i) <= upper.getEpochSecond(); ++i) {
+                    if (isStepWithin(table.getLocalStart(i), table.getLocalEnd(i), originLocal, monthly, step)) {
+                        return null;
+                    }
+                }
+            } else {
+                for (ZoneOffsetTransition transition = rules.nextTransition(lower);
+                     transition != null && !transition.getInstant().isAfter(upper);
+                     transition = rules.nextTransition(transition.getInstant())) {
+                    final LocalDateTime low = transition.isGap() ? transition.getDateTimeBefore() : transition.getDateTimeAfter();
+                    final LocalDateTime high = transition.isGap() ? transition.getDateTimeAfter() : transition.getDateTimeBefore();
+                    if (isStepWithin(low.toEpochSecond(ZoneOffset.UTC), high.toEpochSecond(ZoneOffset.UTC), originLocal, monthly, step)) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return aligned;
+    }
+
+    private static long monthsBetween(final LocalDate from, final LocalDate to) {
+        return (to.getYear() * 12L + to.getMonthValue()) - (from.getYear() * 12L + from.getMonthValue());
+    }
+
+    /**
+     * Returns the instant of the step with the specified index, assuming the local time is unambiguous. Otherwise,
+     * the earlier offset is used, as ZoneRules.getOffset(LocalDateTime) does.
+     */
+    private static Instant step(final LocalDateTime originLocal, final boolean monthly, final long step, final long index, final ZoneTransitionTable table) {
+        final LocalDateTime local = monthly ? originLocal.plusMonths(step * index) : originLocal.plusDays(step * index);
+        return Instant.ofEpochSecond(table.toEpochSecond(local.toEpochSecond(ZoneOffset.UTC), Integer.MIN_VALUE), local.getNano());
+    }
+
+    /**
+     * Determines if a step lands within the gap or overlap between the local date-times, expressed in seconds from
+     * 1970-01-01T00:00. Transitions are at whole seconds, so a step is within them if its whole seconds are.
+     */
+    private static boolean isStepWithin(final long low, final long high, final LocalDateTime originLocal, final boolean monthly, final long step) {
+        final long originSecond = originLocal.toEpochSecond(ZoneOffset.UTC);
+        if (!monthly) {
+            // days are all the same length in local time, so find the first step at or after the start
+            final long stepSeconds = step * SECONDS_PER_DAY;
+            final long first = originSecond + Math.floorDiv(low - originSecond + stepSeconds - 1L, stepSeconds) * stepSeconds;
+            return first < high;
+        }
+        final LocalDate originDate = originLocal.toLocalDate();
+        final long originSecondOfDay = originSecond - originDate.toEpochDay() * SECONDS_PER_DAY;
+        for (long day = Math.floorDiv(low, SECONDS_PER_DAY); day <= Math.floorDiv(high, SECONDS_PER_DAY); ++day) {
+            final LocalDate date = LocalDate.ofEpochDay(day);
+            if (date.getDayOfMonth() == originDate.getDayOfMonth() && Math.floorMod(monthsBetween(originDate, date), step) == 0L) {
+                final long local = day * SECONDS_PER_DAY + originSecondOfDay;
+                if (local >= low && local < high) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Merges the span trees of many {@link SplitNanoStopWatch} instances into a single call tree. Spans with the same
+ * path of names from the root, such as <code>execute/fetch</code>, are aggregated into the same node, which tracks
+ * the number of spans, their total and self time, and a histogram of their total time. Comparing the histograms of
+ * sibling nodes shows which phase dominates the tail latency of their parent.
+ * <p>
+ * Adding to a profile is synchronized, so a profile may be shared by many threads. Nodes should only be read once
+ * no more stop watches are being added.
+ */
+public final class CallTreeProfile {
+
+    private final int histogramPrecisionBits;
+    private final Node root;
+
+    private CallTreeProfile(final int histogramPrecisionBits) {
+        this.histogramPrecisionBits = histogramPrecisionBits;
+        this.root = new Node(null, "");
+    }
+
+    public static CallTreeProfile create() {
+        return new CallTreeProfile(LatencyHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Creates a profile whose nodes have histograms of the specified precision.
+     * @param histogramPrecisionBits the precision of the histograms
+     * @return an empty profile
+     * @see LatencyHistogram#create(int)
+     */
+    public static CallTreeProfile create(final int histogramPrecisionBits) {
+        LatencyHistogram.create(histogramPrecisionBits);
+        return new CallTreeProfile(histogramPrecisionBits);
+    }
+
+    /**
+     * Returns the root of the call tree, which has no name or statistics of its own. Its children are the nodes of
+     * the spans that were not nested.
+     * @return the root node
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Adds the closed spans of the stop watch to the call tree, each counted as many times as the sampling weight of
+     * the stop watch.
+     * @param stopWatch the stop watch whose spans to add
+     */
+    public synchronized void add(final SplitNanoStopWatch stopWatch) {
+        final SpanArena spans = stopWatch.spans();
+        final long weight = stopWatch.getSamplingWeight();
+        if (spans == null || spans.size() == 0 || weight == 0L) {
+            return;
+        }
+        final long[] self = spans.selfElapsed();
+        final Node[] nodes = new Node[spans.size()];
+        for (int index = 0; index < nodes.length; ++index) {
+            final int parent = spans.parent(index);
+            nodes[index] = ((parent < 0) ? root : nodes[parent]).child(spans.name(index));
+            if (!spans.isOpen(index)) {
+                nodes[index].add(spans.elapsed(index), self[index], weight);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Node child : root.children.values()) {
+            child.appendTo(sb, 0);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The aggregate of every span with the same path.
+     */
+    public final class Node {
+        private final Node parent;
+        private final String name;
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private long count = 0L;
+        private long totalElapsed = 0L;
+        private long selfElapsed = 0L;
+        private LatencyHistogram histogram;
+
+        private Node(final Node parent, final String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private Node child(final String childName) {
+            Node child = children.get(childName);
+            if (child == null) {
+                child = new Node(this, childName);
+                children.put(childName, child);
+            }
+            return child;
+        }
+
+        private void add(final long elapsed, final long self, final long weight) {
+            count += weight;
+            totalElapsed += elapsed * weight;
+            selfElapsed += self * weight;
+            if (histogram == null) {
+                histogram = LatencyHistogram.create(histogramPrecisionBits);
+            }
+            histogram.record(elapsed, weight);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the names of the nodes from the root to this node, separated by '/'.
+         * @return the path of the node
+         */
+        public String getPath() {
+            if (parent == null || parent.parent == null) {
+                return name;
+            }
+            return parent.getPath() + "/" + name;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public Collection<Node> getChildren() {
+            return Collections.unmodifiableCollection(children.values());
+        }
+
+        /**
+         * Returns the child with the specified name, or <code>null</code> if there is none.
+         * @param childName the name of the child
+         * @return the child, if any
+         */
+        public Node getChild(final String childName) {
+            return children.get(childName);
+        }
+
+        /**
+         * Returns the number of closed spans aggregated into this node, scaled by their sampling weights.
+         * @return the number of spans
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of the elapsed time of the spans, including the time of their children.
+         * @return the total elapsed time in nanoseconds
+         */
+        public long getTotalElapsed() {
+            return totalElapsed;
+        }
+
+        /**
+         * Returns the sum of the elapsed time of the spans, excluding the time of their children.
+         * @return the self elapsed time in nanoseconds
+         */
+        public long getSelfElapsed() {
+            return selfElapsed;
+        }
+
+        /**
+         * Returns the histogram of the total elapsed time of the spans, or <code>null</code> if no span has closed.
+         * @return the histogram, if any
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        private void appendTo(final StringBuilder sb, final int depth) {
+            for (int i = 0; i < depth; ++i) {
+                sb.append("  ");
+            }
+            sb.append(name).append(": count=").append(count).append(" total=");
+            NanoStopWatch.formatTo(totalElapsed, sb).append(" self=");
+            NanoStopWatch.formatTo(selfElapsed, sb);
+            if (histogram != null) {
+                sb.append(" p99=");
+                NanoStopWatch.formatTo(histogram.getValueAtPercentile(99.0d), sb);
+            }
+            sb.append('\n');
+            for (Node child : children.values()) {
+                child.appendTo(sb, depth + 1);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getPath();
+        }
+    }
+
+}
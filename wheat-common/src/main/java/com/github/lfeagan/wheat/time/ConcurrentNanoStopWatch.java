@@ -0,0 +1,150 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stop watch that many threads may start and stop concurrently, such as to time the use of a shared resource.
+ * Each interval is tracked either by the calling thread, using {@link #start()} and {@link #stop()}, or by a token
+ * returned from {@link #begin()} and passed to {@link #end(long)}, which allows an interval to begin on one thread and
+ * end on another. Completed intervals accumulate into striped counters, so the cumulative time and count can be read
+ * at any time without blocking the threads that are recording.
+ */
+public final class ConcurrentNanoStopWatch {
+
+    private static final int RUNNING = 0;
+    private static final int START = 1;
+
+    /**
+     * The sum of the delta between all the start and stop times.
+     */
+    private final LongAdder cumulativeNanos = new LongAdder();
+
+    /**
+     * The number of completed start-stop cycles.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The running flag and start time of the interval of each thread using {@link #start()} and {@link #stop()}.
+     */
+    private final ThreadLocal<long[]> intervals = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final TimeSource timeSource;
+
+    private ConcurrentNanoStopWatch(final TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public static ConcurrentNanoStopWatch create() {
+        return new ConcurrentNanoStopWatch(TimeSource.system());
+    }
+
+    /**
+     * Creates a stop watch that measures time with the specified time source.
+     * @param timeSource the source of the times that are measured
+     * @return a new stop watch
+     */
+    public static ConcurrentNanoStopWatch create(final TimeSource timeSource) {
+        return new ConcurrentNanoStopWatch(timeSource);
+    }
+
+    /**
+     * Begins an interval and returns a token that identifies it.
+     * @return the token to pass to {@link #end(long)}
+     */
+    public long begin() {
+        return timeSource.nanoTime();
+    }
+
+    /**
+     * Ends the interval identified by the token and adds its elapsed time to the cumulative time.
+     * @param token the token returned by {@link #begin()}
+     * @return the elapsed time of the interval in nanoseconds
+     */
+    public long end(final long token) {
+        final long elapsed = timeSource.nanoTime() - token;
+        cumulativeNanos.add(elapsed);
+        count.increment();
+        return elapsed;
+    }
+
+    /**
+     * Returns <code>true</code> if the calling thread has started, and not yet stopped, an interval.
+     * @return whether the calling thread's interval is running
+     */
+    public boolean isRunning() {
+        return intervals.get()[RUNNING] != 0L;
+    }
+
+    /**
+     * Starts an interval for the calling thread.
+     * @throws IllegalStateException if the calling thread has already started an interval
+     */
+    public void start() {
+        final long[] interval = intervals.get();
+        if (interval[RUNNING] != 0L) {
+            throw new IllegalStateException("Already started");
+        }
+        interval[RUNNING] = 1L;
+        interval[START] = timeSource.nanoTime();
+    }
+
+    /**
+     * Stops the calling thread's interval and adds its elapsed time to the cumulative time.
+     * @return the elapsed time of the interval in nanoseconds
+     * @throws IllegalStateException if the calling thread has not started an interval
+     */
+    public long stop() {
+        final long stop = timeSource.nanoTime();
+        final long[] interval = intervals.get();
+        if (interval[RUNNING] == 0L) {
+            throw new IllegalStateException("Already stopped");
+        }
+        interval[RUNNING] = 0L;
+        final long elapsed = stop - interval[START];
+        cumulativeNanos.add(elapsed);
+        count.increment();
+        return elapsed;
+    }
+
+    /**
+     * Returns the cumulative time in nanoseconds of all completed intervals. Intervals that complete while this is
+     * being computed may or may not be included.
+     * @return the accumulated time of all start-stop deltas
+     */
+    public long getCumulative() {
+        return cumulativeNanos.sum();
+    }
+
+    /**
+     * Returns the number of completed intervals.
+     * @return the number of start-stop cycles
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean elapsed time in nanoseconds of the completed intervals, or zero if there are none.
+     * @return the mean elapsed time in nanoseconds
+     */
+    public double getAverage() {
+        final long n = count.sum();
+        return (n == 0L) ? 0.0d : ((double) cumulativeNanos.sum()) / n;
+    }
+
+    /**
+     * Resets the cumulative time and count to zero. Intervals that complete concurrently with a reset may be
+     * partially counted. Running intervals are unaffected.
+     */
+    public void reset() {
+        cumulativeNanos.reset();
+        count.reset();
+    }
+
+    @Override
+    public String toString() {
+        return NanoStopWatch.toString(getCumulative());
+    }
+
+}
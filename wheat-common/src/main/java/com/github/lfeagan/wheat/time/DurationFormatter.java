@@ -0,0 +1,168 @@
+package com.github.lfeagan.wheat.time;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_HOUR;
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_MINUTE;
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_SECOND;
+
+/**
+ * Formats elapsed times into a character array without allocating. The output is identical to the historical
+ * <code>String</code>-based formats of {@link NanoStopWatch#toString(long)} and {@link StopWatch#toString(boolean)},
+ * including their treatment of negative values. Each destination type is written by first formatting into a
+ * per-thread scratch array.
+ */
+final class DurationFormatter {
+
+    /**
+     * The maximum number of characters either format produces, for any input.
+     */
+    static final int MAX_LENGTH = 40;
+
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[MAX_LENGTH]);
+
+    private DurationFormatter() {}
+
+    static char[] scratch() {
+        return SCRATCH.get();
+    }
+
+    /**
+     * Formats nanoseconds as <code>[[HH:]MM:SS].uuuuuu</code>, omitting the hours and minutes when both are zero.
+     * @return the index after the last character written
+     */
+    static int formatNanos(final long elapsed, final char[] dst, int pos) {
+        long resid = elapsed;
+        final long hours = resid / NANOS_PER_HOUR; resid %= NANOS_PER_HOUR;
+        final long minutes = resid / NANOS_PER_MINUTE; resid %= NANOS_PER_MINUTE;
+        final long seconds = resid / NANOS_PER_SECOND; resid %= NANOS_PER_SECOND;
+        final long micros = resid / 1000L;
+
+        if (hours == 0L && minutes == 0L) {
+            pos = putLong(seconds, dst, pos);
+        } else {
+            pos = putTwoDigitField(hours, dst, pos);
+            dst[pos++] = ':';
+            pos = putTwoDigitField(minutes, dst, pos);
+            dst[pos++] = ':';
+            pos = putTwoDigitField(seconds, dst, pos);
+        }
+        dst[pos++] = '.';
+        return putZeroPadded(micros, 6, dst, pos);
+    }
+
+    /**
+     * Formats milliseconds as <code>HH:MM:SS[.mmm]</code>.
+     * @return the index after the last character written
+     */
+    static int formatMillis(final long elapsed, final boolean wantMsec, final char[] dst, int pos) {
+        long residual = elapsed;
+        final long h = residual / 3600000L; residual %= 3600000L;
+        final long m = residual / 60000L; residual %= 60000L;
+        final long s = residual / 1000L; residual %= 1000L;
+
+        pos = putTwoDigitField(h, dst, pos);
+        dst[pos++] = ':';
+        pos = putTwoDigitField(m, dst, pos);
+        dst[pos++] = ':';
+        pos = putTwoDigitField(s, dst, pos);
+        if (wantMsec) {
+            dst[pos++] = '.';
+            // the historical format pads a residual of exactly 10 with two zeros
+            if (residual < 100L) {
+                dst[pos++] = '0';
+                if (residual <= 10L) {
+                    dst[pos++] = '0';
+                }
+            }
+            pos = putLong(residual, dst, pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the value, preceded by a zero if it is less than ten.
+     */
+    private static int putTwoDigitField(final long value, final char[] dst, int pos) {
+        if (value < 10L) {
+            dst[pos++] = '0';
+        }
+        return putLong(value, dst, pos);
+    }
+
+    /**
+     * Writes the value in the same form as {@link Long#toString(long)}.
+     */
+    static int putLong(final long value, final char[] dst, int pos) {
+        if (value < 0L) {
+            dst[pos++] = '-';
+        }
+        return putDigits(value, digitCount(value), dst, pos);
+    }
+
+    /**
+     * Writes the value in the same form as <code>String.format("%0<i>width</i>d", value)</code>.
+     */
+    static int putZeroPadded(final long value, final int width, final char[] dst, int pos) {
+        final int digits = digitCount(value);
+        int length = digits;
+        if (value < 0L) {
+            dst[pos++] = '-';
+            ++length;
+        }
+        for (; length < width; ++length) {
+            dst[pos++] = '0';
+        }
+        return putDigits(value, digits, dst, pos);
+    }
+
+    /**
+     * Returns the number of decimal digits in the magnitude of the value.
+     */
+    private static int digitCount(final long value) {
+        // work with the negative magnitude, which can represent Long.MIN_VALUE
+        long n = (value < 0L) ? value : -value;
+        int digits = 1;
+        while (n <= -10L) {
+            n /= 10L;
+            ++digits;
+        }
+        return digits;
+    }
+
+    private static int putDigits(final long value, final int digits, final char[] dst, final int pos) {
+        long n = (value < 0L) ? value : -value;
+        for (int i = pos + digits - 1; i >= pos; --i) {
+            dst[i] = (char) ('0' - (n % 10L));
+            n /= 10L;
+        }
+        return pos + digits;
+    }
+
+    static void append(final char[] chars, final int length, final Appendable appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            ((StringBuilder) appendable).append(chars, 0, length);
+        } else {
+            for (int i = 0; i < length; ++i) {
+                appendable.append(chars[i]);
+            }
+        }
+    }
+
+    static int copy(final char[] chars, final int length, final char[] dst, final int offset) {
+        System.arraycopy(chars, 0, dst, offset, length);
+        return length;
+    }
+
+    static void put(final char[] chars, final int length, final ByteBuffer buffer) {
+        if (buffer.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < length; ++i) {
+            buffer.put((byte) chars[i]);
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+package com.github.lfeagan.wheat.time;
+
+import org.threeten.extra.PeriodDuration;
+
+import java.nio.LongBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Aligns timestamps with a fixed origin, interval, and time zone, for callers that align many timestamps against the
+ * same triple. Each timestamp is aligned with the step from the origin that starts its bucket: the last step at or
+ * before it.
+ * <p>
+ * When the interval has a non-zero period, the bucket boundaries are cached as a sorted array of epoch nanoseconds.
+ * A timestamp that falls within the cached boundaries is aligned with a binary search and does not allocate. The
+ * cache grows lazily as timestamps beyond it are aligned, stepping from the last cached boundary, and never holds
+ * more than the configured maximum number of boundaries; the boundaries farthest from the most recently aligned
+ * timestamp are evicted first. Boundaries on either side of the origin are generated by repeatedly adding (after the
+ * origin) or subtracting (before the origin) the interval.
+ * <p>
+ * This is the same result as {@link TimeUtils#alignWithInterval(Instant, Instant, PeriodDuration, ZoneId)} except
+ * after the origin where subtracting the interval does not undo adding it, such as when the day of month of a
+ * month-end origin is clamped. There alignWithInterval subtracts the interval from the step after the timestamp,
+ * which need not be a step, while this aligner always returns the start of the bucket.
+ * <p>
+ * Intervals without a period are aligned arithmetically and nothing is cached.
+ * <p>
+ * Only instants within ~292 years of the epoch can be expressed as epoch nanoseconds. Instances are not thread-safe.
+ */
+public final class IntervalAligner {
+
+    public static final int DEFAULT_MAX_BOUNDARIES = 4096;
+
+    private final Instant origin;
+    private final long originEpochNanos;
+    private final PeriodDuration interval;
+    private final ZoneId timeZone;
+    private final int maxBoundaries;
+
+    /**
+     * The interval in nanoseconds when it has no period, zero when it is all zeros, or -1 when it has a period.
+     */
+    private final long intervalNanos;
+
+    /**
+     * The cached boundaries, which occupy the indices [lo, hi) in ascending order. All of the cached boundaries are on
+     * the same side of the origin, as determined by {@link #forward}, and consecutive boundaries are consecutive steps.
+     */
+    private final long[] boundaries;
+    private final long[] scratch;
+    private int lo;
+    private int hi;
+
+    /**
+     * The index of the most recently used boundary, which is only a hint and is validated before use.
+     */
+    private int last;
+
+    /**
+     * <code>true</code> if the cached boundaries are at or after the origin, <code>false</code> if they are before it.
+     */
+    private boolean forward;
+
+    private IntervalAligner(final Instant origin, final PeriodDuration interval, final ZoneId timeZone, final int maxBoundaries) {
+        this.origin = origin;
+        this.originEpochNanos = TimeUtils.toEpochNanos(origin);
+        this.interval = interval;
+        this.timeZone = timeZone;
+        this.maxBoundaries = maxBoundaries;
+        if (!interval.getPeriod().equals(Period.ZERO)) {
+            this.intervalNanos = -1L;
+            this.boundaries = new long[maxBoundaries * 2];
+            this.scratch = new long[maxBoundaries];
+        } else {
+            this.intervalNanos = interval.getDuration().toNanos();
+            this.boundaries = new long[0];
+            this.scratch = boundaries;
+        }
+        this.lo = boundaries.length / 2;
+        this.hi = lo;
+    }
+
+    public static IntervalAligner create(final Instant origin, final PeriodDuration interval, final ZoneId timeZone) {
+        return create(origin, interval, timeZone, DEFAULT_MAX_BOUNDARIES);
+    }
+
+    /**
+     * Creates an aligner for the specified origin, interval, and time zone.
+     * @param origin the origin the intervals are offset from
+     * @param interval the interval, which must not be negative
+     * @param timeZone the time zone calendar arithmetic is performed in
+     * @param maxBoundaries the maximum number of boundaries cached, which must be at least two
+     * @return a new aligner
+     * @throws ArithmeticException if the origin cannot be expressed as epoch nanoseconds
+     */
+    public static IntervalAligner create(final Instant origin, final PeriodDuration interval, final ZoneId timeZone, final int maxBoundaries) {
+        Objects.requireNonNull(origin, "origin must be specified");
+        Objects.requireNonNull(interval, "interval must be specified");
+        Objects.requireNonNull(timeZone, "time zone must be specified");
+        if (interval.getPeriod().isNegative() || interval.getDuration().isNegative()) {
+            throw new IllegalArgumentException("interval must not be negative");
+        }
+        if (maxBoundaries < 2) {
+            throw new IllegalArgumentException("maxBoundaries must be at least 2");
+        }
+        return new IntervalAligner(origin, interval, timeZone, maxBoundaries);
+    }
+
+    /**
+     * Creates an aligner with the same configuration and an empty cache, such as for use by another thread.
+     */
+    IntervalAligner copy() {
+        return new IntervalAligner(origin, interval, timeZone, maxBoundaries);
+    }
+
+    public Instant getOrigin() {
+        return origin;
+    }
+
+    public PeriodDuration getInterval() {
+        return interval;
+    }
+
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * Returns the number of bucket boundaries currently cached.
+     * @return the number of cached boundaries
+     */
+    public int getCachedBoundaryCount() {
+        return hi - lo;
+    }
+
+    /**
+     * Aligns the timestamp with the nearest, older interval integrally offset from the origin.
+     * @param timestamp the timestamp to align
+     * @return the aligned timestamp
+     */
+    public Instant align(final Instant timestamp) {
+        Objects.requireNonNull(timestamp, "timestamp must be specified");
+        return TimeUtils.ofEpochNanos(alignEpochNanos(TimeUtils.toEpochNanos(timestamp)));
+    }
+
+    /**
+     * Aligns the timestamp with the nearest, older interval integrally offset from the origin.
+     * @param epochNanos the timestamp to align, in nanoseconds from the epoch
+     * @return the aligned timestamp, in nanoseconds from the epoch
+     */
+    public long alignEpochNanos(final long epochNanos) {
+        if (intervalNanos >= 0L) {
+            if (intervalNanos == 0L) {
+                return epochNanos;
+            }
+            return TimeUtils.alignWithInterval(epochNanos, originEpochNanos, intervalNanos);
+        }
+        if (epochNanos == originEpochNanos) {
+            return epochNanos;
+        }
+        final boolean after = epochNanos > originEpochNanos;
+        if (after == forward && hi - lo >= 2 && epochNanos >= boundaries[lo] && epochNanos < boundaries[hi - 1]) {
+            // consecutive timestamps usually fall in the same bucket, so check it before searching
+            if (last < lo || last >= hi - 1 || epochNanos < boundaries[last] || epochNanos >= boundaries[last + 1]) {
+                last = floor(epochNanos);
+            }
+            return boundaries[last];
+        }
+        return alignUncached(epochNanos, after);
+    }
+
+    /**
+     * Aligns a range of epoch nanosecond timestamps, writing the results to the destination, which may be the same
+     * array as the source. Sorted timestamps are aligned fastest, since consecutive timestamps usually fall in the
+     * same bucket.
+     * @param src the timestamps to align
+     * @param srcOffset the index of the first timestamp to align
+     * @param dst the array the aligned timestamps are written to
+     * @param dstOffset the index the first aligned timestamp is written to
+     * @param length the number of timestamps to align
+     */
+    public void alignEpochNanos(final long[] src, final int srcOffset, final long[] dst, final int dstOffset, final int length) {
+        Objects.checkFromIndexSize(srcOffset, length, src.length);
+        Objects.checkFromIndexSize(dstOffset, length, dst.length);
+        if (intervalNanos > 0L) {
+            TimeUtils.alignWithInterval(src, srcOffset, dst, dstOffset, length, originEpochNanos, intervalNanos);
+            return;
+        }
+        for (int i = 0; i < length; ++i) {
+            dst[dstOffset + i] = alignEpochNanos(src[srcOffset + i]);
+        }
+    }
+
+    /**
+     * Aligns the epoch nanosecond timestamps between the buffer's position and limit, in place. The position is not
+     * changed.
+     * @param epochNanos the timestamps to align
+     */
+    public void alignEpochNanos(final LongBuffer epochNanos) {
+        for (int i = epochNanos.position(); i < epochNanos.limit(); ++i) {
+            epochNanos.put(i, alignEpochNanos(epochNanos.get(i)));
+        }
+    }
+
+    /**
+     * Returns the index of the greatest cached boundary that is less than or equal to the timestamp.
+     */
+    private int floor(final long epochNanos) {
+        int low = lo;
+        int high = hi - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (boundaries[mid] <= epochNanos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Aligns a timestamp that is not covered by the cached boundaries, updating the cache so that it is.
+     */
+    private long alignUncached(final long epochNanos, final boolean after) {
+        if (after == forward && hi > lo) {
+            // beyond the cached boundary farthest from the origin, so step away from the origin
+            if (after ? epochNanos >= boundaries[hi - 1] : epochNanos < boundaries[lo]) {
+                if (after ? extendForward(epochNanos) : extendBackward(epochNanos)) {
+                    return boundaries[floor(epochNanos)];
+                }
+            }
+        }
+        return reseed(epochNanos, after);
+    }
+
+    /**
+     * Appends the steps after the last cached boundary until the timestamp is covered. Gives up, returning
+     * <code>false</code>, if the timestamp is more than the maximum number of boundaries away.
+     */
+    private boolean extendForward(final long epochNanos) {
+        ZonedDateTime step = ZonedDateTime.ofInstant(TimeUtils.ofEpochNanos(boundaries[hi - 1]), timeZone);
+        for (int i = 0; i < maxBoundaries; ++i) {
+            step = step.plus(interval);
+            final long stepNanos = TimeUtils.toEpochNanos(step.toInstant());
+            append(stepNanos);
+            if (stepNanos > epochNanos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prepends the steps before the first cached boundary until the timestamp is covered. Gives up, returning
+     * <code>false</code>, if the timestamp is more than the maximum number of boundaries away.
+     */
+    private boolean extendBackward(final long epochNanos) {
+        ZonedDateTime step = ZonedDateTime.ofInstant(TimeUtils.ofEpochNanos(boundaries[lo]), timeZone);
+        for (int i = 0; i < maxBoundaries; ++i) {
+            step = step.minus(interval);
+            final long stepNanos = TimeUtils.toEpochNanos(step.toInstant());
+            prepend(stepNanos);
+            if (stepNanos <= epochNanos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aligns the timestamp from scratch and caches its bucket. If the previously cached boundaries are on the same
+     * side of the origin and close enough, the boundaries in between are filled in so they are retained.
+     */
+    private long reseed(final long epochNanos, final boolean after) {
+        final long alignedNanos = alignWithoutCache(epochNanos);
+        final Instant alignedTime = TimeUtils.ofEpochNanos(alignedNanos);
+        final long nextNanos = TimeUtils.toEpochNanos(ZonedDateTime.ofInstant(alignedTime, timeZone).plus(interval).toInstant());
+        if (nextNanos <= epochNanos) {
+            return alignedNanos;
+        }
+        if (!after) {
+            // before the origin, boundaries are found by subtracting the interval, which adding it does not always
+            // invert, so confirm that the next boundary is the end of the bucket before caching it
+            if (nextNanos > originEpochNanos
+                    || alignWithoutCache(nextNanos) != nextNanos || alignWithoutCache(nextNanos - 1L) != alignedNanos) {
+                return alignedNanos;
+            }
+        }
+
+        final boolean merge = (after == forward) && (hi > lo);
+        if (merge && after && epochNanos < boundaries[lo]) {
+            // between the origin and the first cached boundary, so step forward to it
+            int count = 0;
+            long stepNanos = alignedNanos;
+            ZonedDateTime step = ZonedDateTime.ofInstant(alignedTime, timeZone);
+            while (stepNanos < boundaries[lo] && count + (hi - lo) < maxBoundaries) {
+                scratch[count++] = stepNanos;
+                step = step.plus(interval);
+                stepNanos = TimeUtils.toEpochNanos(step.toInstant());
+            }
+            if (stepNanos == boundaries[lo]) {
+                for (int i = count - 1; i >= 0; --i) {
+                    prepend(scratch[i]);
+                }
+                return alignedNanos;
+            }
+        } else if (merge && !after && epochNanos >= boundaries[hi - 1]) {
+            // between the last cached boundary and the origin, so step backward to it
+            int count = 0;
+            long stepNanos = nextNanos;
+            ZonedDateTime step = ZonedDateTime.ofInstant(TimeUtils.ofEpochNanos(nextNanos), timeZone);
+            while (stepNanos > boundaries[hi - 1] && count + (hi - lo) < maxBoundaries) {
+                scratch[count++] = stepNanos;
+                step = step.minus(interval);
+                stepNanos = TimeUtils.toEpochNanos(step.toInstant());
+            }
+            if (stepNanos == boundaries[hi - 1]) {
+                for (int i = count - 1; i >= 0; --i) {
+                    append(scratch[i]);
+                }
+                return alignedNanos;
+            }
+        }
+
+        lo = boundaries.length / 2;
+        hi = lo;
+        boundaries[hi++] = alignedNanos;
+        boundaries[hi++] = nextNanos;
+        forward = after;
+        return alignedNanos;
+    }
+
+    /**
+     * Aligns the timestamp with the last step from the origin at or before it. Before the origin, this is what
+     * alignWithInterval returns; after it, the steps are found by adding the interval to the origin until the
+     * timestamp is passed, unless they can be estimated directly.
+     */
+    private long alignWithoutCache(final long epochNanos) {
+        final Instant timestamp = TimeUtils.ofEpochNanos(epochNanos);
+        if (epochNanos <= originEpochNanos) {
+            return TimeUtils.toEpochNanos(TimeUtils.alignWithInterval(timestamp, origin, interval, timeZone));
+        }
+        if (interval.getDuration().isZero()) {
+            final Instant alignedTime = CalendarAlignment.align(timestamp, origin, interval.getPeriod(), timeZone);
+            if (alignedTime != null) {
+                return TimeUtils.toEpochNanos(alignedTime);
+            }
+        }
+        final Period period = interval.getPeriod();
+        final Duration duration = interval.getDuration();
+        final ZoneTransitionTable.Cursor step = ZoneTransitionTable.of(timeZone).cursor(origin);
+        long alignedNanos = originEpochNanos;
+        while (step.compareTo(timestamp) <= 0) {
+            alignedNanos = TimeUtils.toEpochNanos(step.toInstant());
+            step.plus(period, duration);
+        }
+        return alignedNanos;
+    }
+
+    private void append(final long epochNanos) {
+        if (hi == boundaries.length) {
+            recenter(0);
+        }
+        boundaries[hi++] = epochNanos;
+        if (hi - lo > maxBoundaries) {
+            ++lo;
+        }
+    }
+
+    private void prepend(final long epochNanos) {
+        if (lo == 0) {
+            recenter(1);
+        }
+        boundaries[--lo] = epochNanos;
+        if (hi - lo > maxBoundaries) {
+            --hi;
+        }
+    }
+
+    /**
+     * Moves the cached boundaries to the middle of the array, leaving at least the specified room in front of them.
+     */
+    private void recenter(final int room) {
+        final int count = hi - lo;
+        final int start = Math.max(room, (boundaries.length - count) / 2);
+        System.arraycopy(boundaries, lo, boundaries, start, count);
+        lo = start;
+        hi = start + count;
+    }
+
+}
@@ -0,0 +1,412 @@
+package com.github.lfeagan.wheat.time;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-memory histogram of latencies in nanoseconds, with log-linear buckets.
+ * <p>
+ * Values below <code>2^(precisionBits + 1)</code> are counted exactly. Larger values are counted in buckets whose
+ * width doubles with each power of two, and each power of two is divided into <code>2^precisionBits</code> buckets,
+ * so a value reported by a query is within a relative error of <code>2^-precisionBits</code> of a recorded value.
+ * The default precision of 5 bits is accurate to ~3% and covers every positive long with 1888 buckets.
+ * <p>
+ * Recording is lock-free and does not allocate, so a single histogram may be shared by many threads. Alternatively,
+ * each thread can record into its own histogram and the histograms can be merged with {@link #add(LatencyHistogram)}.
+ * Queries run concurrently with recording and may or may not include values recorded while they run.
+ */
+public final class LatencyHistogram {
+
+    public static final int DEFAULT_PRECISION_BITS = 5;
+
+    private static final int MIN_PRECISION_BITS = 1;
+    private static final int MAX_PRECISION_BITS = 10;
+
+    /**
+     * Identifies the serialized form, "WLH" followed by a version number.
+     */
+    private static final int MAGIC = 0x574C4801;
+
+    private final int precisionBits;
+    private final long subBucketMask;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    private LatencyHistogram(final int precisionBits) {
+        this.precisionBits = precisionBits;
+        this.subBucketMask = (1L << precisionBits) - 1L;
+        this.counts = new AtomicLongArray(bucketCount(precisionBits));
+    }
+
+    public static LatencyHistogram create() {
+        return new LatencyHistogram(DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Creates a histogram with the specified precision.
+     * @param precisionBits the number of bits of precision retained for each value, from 1 to 10
+     * @return an empty histogram
+     */
+    public static LatencyHistogram create(final int precisionBits) {
+        if (precisionBits < MIN_PRECISION_BITS || precisionBits > MAX_PRECISION_BITS) {
+            throw new IllegalArgumentException("precisionBits must be between " + MIN_PRECISION_BITS + " and " + MAX_PRECISION_BITS);
+        }
+        return new LatencyHistogram(precisionBits);
+    }
+
+    private static int bucketCount(final int precisionBits) {
+        return (64 - precisionBits) << precisionBits;
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    /**
+     * Records a single value. Negative values are recorded as zero.
+     * @param nanos the value to record
+     */
+    public void record(final long nanos) {
+        record(nanos, 1L);
+    }
+
+    /**
+     * Records a value as though it were recorded the specified number of times, such as to scale a sampled value back
+     * up by its sampling weight. Negative values are recorded as zero.
+     * @param nanos the value to record
+     * @param times the number of times to record the value, which must be positive
+     * @throws IllegalArgumentException if times is not positive
+     */
+    public void record(final long nanos, final long times) {
+        if (times <= 0L) {
+            throw new IllegalArgumentException("times must be positive");
+        }
+        final long value = Math.max(nanos, 0L);
+        counts.getAndAdd(indexOf(value), times);
+        count.add(times);
+        total.add(value * times);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    private void updateMin(final long value) {
+        long current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+    }
+
+    private void updateMax(final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the index of the bucket the value is counted in.
+     */
+    int indexOf(final long value) {
+        if (value <= subBucketMask) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - precisionBits;
+        return ((shift + 1) << precisionBits) + (int) ((value >>> shift) & subBucketMask);
+    }
+
+    /**
+     * Returns the lowest value counted in the bucket.
+     */
+    long lowestValueAt(final int index) {
+        final int magnitude = index >>> precisionBits;
+        if (magnitude == 0) {
+            return index;
+        }
+        return ((subBucketMask + 1L) + (index & subBucketMask)) << (magnitude - 1);
+    }
+
+    /**
+     * Returns the highest value counted in the bucket.
+     */
+    long highestValueAt(final int index) {
+        final int magnitude = index >>> precisionBits;
+        if (magnitude == 0) {
+            return index;
+        }
+        return lowestValueAt(index) + (1L << (magnitude - 1)) - 1L;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     * @return the sum of the recorded values in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the smallest recorded value, or zero if none have been recorded.
+     * @return the smallest recorded value in nanoseconds
+     */
+    public long getMin() {
+        final long value = min.get();
+        return (value == Long.MAX_VALUE) ? 0L : value;
+    }
+
+    /**
+     * Returns the largest recorded value, or zero if none have been recorded.
+     * @return the largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        final long value = max.get();
+        return (value == Long.MIN_VALUE) ? 0L : value;
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded values, or zero if none have been recorded.
+     * @return the mean of the recorded values in nanoseconds
+     */
+    public double getMean() {
+        final long n = count.sum();
+        return (n == 0L) ? 0.0d : ((double) total.sum()) / n;
+    }
+
+    /**
+     * Returns the value that the specified percentage of recorded values are less than or equal to, within the
+     * precision of the histogram. For example, <code>getValueAtPercentile(99.9)</code> returns the p999 latency.
+     * @param percentile the percentile, from 0 to 100
+     * @return the value at the percentile in nanoseconds, or zero if none have been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0.0d || percentile > 100.0d) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long n = 0L;
+        for (int i = 0; i < counts.length(); ++i) {
+            n += counts.get(i);
+        }
+        if (n == 0L) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil((percentile / 100.0d) * n));
+        long cumulative = 0L;
+        for (int i = 0; i < counts.length(); ++i) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return Math.max(Math.min(highestValueAt(i), getMax()), getMin());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the number of values counted in the bucket that the specified value falls in.
+     * @param nanos a value
+     * @return the count of the bucket containing the value
+     */
+    public long getCountAtValue(final long nanos) {
+        return counts.get(indexOf(Math.max(nanos, 0L)));
+    }
+
+    /**
+     * Counts the recorded values into the explicit buckets delimited by the upper bounds, such as to export the
+     * histogram to a metrics system with fixed bucket boundaries. Bucket <code>i</code> counts the values greater
+     * than <code>upperBounds[i - 1]</code> and less than or equal to <code>upperBounds[i]</code>, and the last bucket
+     * counts the values greater than every bound. A value is never counted above a bound it is less than or equal
+     * to, but a value greater than a bound by less than the precision of the histogram may be counted below it.
+     * @param upperBounds the upper bounds of the buckets in nanoseconds, in ascending order
+     * @return the counts of the buckets, one more than the number of bounds
+     */
+    public long[] getCountsByUpperBound(final long[] upperBounds) {
+        for (int i = 1; i < upperBounds.length; ++i) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("upperBounds must be in ascending order");
+            }
+        }
+        final long[] bucketCounts = new long[upperBounds.length + 1];
+        int bucket = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            final long value = counts.get(i);
+            if (value == 0L) {
+                continue;
+            }
+            final long lowest = lowestValueAt(i);
+            while (bucket < upperBounds.length && lowest > upperBounds[bucket]) {
+                ++bucket;
+            }
+            bucketCounts[bucket] += value;
+        }
+        return bucketCounts;
+    }
+
+    /**
+     * Adds all of the values recorded in the other histogram to this one.
+     * @param other a histogram with the same precision
+     * @throws IllegalArgumentException if the precision of the histograms differs
+     */
+    public void add(final LatencyHistogram other) {
+        if (other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("histograms must have the same precision");
+        }
+        long added = 0L;
+        for (int i = 0; i < counts.length(); ++i) {
+            final long value = other.counts.get(i);
+            if (value != 0L) {
+                counts.getAndAdd(i, value);
+                added += value;
+            }
+        }
+        if (added != 0L) {
+            count.add(added);
+            total.add(other.getTotal());
+            updateMin(other.getMin());
+            updateMax(other.getMax());
+        }
+    }
+
+    /**
+     * Discards all recorded values. Values recorded concurrently with a reset may be partially discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); ++i) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        total.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * Writes the histogram to the buffer in a compact form that only includes non-empty buckets.
+     * @param buffer the buffer to write to, which must have enough remaining space
+     * @see #getMaxEncodedSize()
+     */
+    public void writeTo(final ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.put((byte) precisionBits);
+        buffer.putLong(getTotal());
+        buffer.putLong(getMin());
+        buffer.putLong(getMax());
+        int nonEmpty = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            if (counts.get(i) != 0L) {
+                ++nonEmpty;
+            }
+        }
+        putVarLong(buffer, nonEmpty);
+        int previous = 0;
+        for (int i = 0; i < counts.length() && nonEmpty > 0; ++i) {
+            final long value = counts.get(i);
+            if (value != 0L) {
+                putVarLong(buffer, i - previous);
+                putVarLong(buffer, value);
+                previous = i;
+                --nonEmpty;
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes {@link #writeTo(ByteBuffer)} writes.
+     * @return the maximum encoded size in bytes
+     */
+    public int getMaxEncodedSize() {
+        // header, non-empty bucket count, and for each bucket an index delta and count
+        return 29 + 5 + counts.length() * (3 + 10);
+    }
+
+    public byte[] toByteArray() {
+        final ByteBuffer buffer = ByteBuffer.allocate(getMaxEncodedSize());
+        writeTo(buffer);
+        final byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a histogram written by {@link #writeTo(ByteBuffer)}.
+     * @param buffer the buffer to read from
+     * @return a new histogram
+     * @throws IllegalArgumentException if the buffer does not contain a histogram
+     */
+    public static LatencyHistogram readFrom(final ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("not a serialized latency histogram");
+            }
+            final LatencyHistogram histogram = create(buffer.get());
+            final long total = buffer.getLong();
+            final long min = buffer.getLong();
+            final long max = buffer.getLong();
+            final long nonEmpty = getVarLong(buffer);
+            int index = 0;
+            long n = 0L;
+            for (long i = 0; i < nonEmpty; ++i) {
+                index = Math.addExact(index, (int) getVarLong(buffer));
+                final long value = getVarLong(buffer);
+                histogram.counts.set(index, value);
+                n += value;
+            }
+            if (n != 0L) {
+                histogram.count.add(n);
+                histogram.total.add(total);
+                histogram.min.set(min);
+                histogram.max.set(max);
+            }
+            return histogram;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ArithmeticException e) {
+            throw new IllegalArgumentException("malformed serialized latency histogram", e);
+        }
+    }
+
+    public static LatencyHistogram fromByteArray(final byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+
+    private static void putVarLong(final ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(final ByteBuffer buffer) {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed variable-length integer");
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + " min=" + NanoStopWatch.toString(getMin())
+                + " p50=" + NanoStopWatch.toString(getValueAtPercentile(50.0d))
+                + " p99=" + NanoStopWatch.toString(getValueAtPercentile(99.0d))
+                + " p999=" + NanoStopWatch.toString(getValueAtPercentile(99.9d))
+                + " max=" + NanoStopWatch.toString(getMax());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A time source that only advances when told to, for deterministic tests of code that measures time. Advancing the
+ * time advances both the monotonic and the wall-clock time by the same amount.
+ */
+public final class ManualTimeSource implements TimeSource {
+
+    private final AtomicLong nanoTime;
+
+    /**
+     * The wall-clock time in nanoseconds since the epoch, so that advancing by less than a millisecond accumulates.
+     */
+    private final AtomicLong epochNanos;
+
+    private ManualTimeSource(final long nanoTime, final long epochNanos) {
+        this.nanoTime = new AtomicLong(nanoTime);
+        this.epochNanos = new AtomicLong(epochNanos);
+    }
+
+    /**
+     * The initial monotonic and wall-clock times of {@link #create()}, which are not zero because stop watches treat a
+     * start or stop time of zero as not having been started or stopped.
+     */
+    static final long DEFAULT_NANO_TIME = 1_000_000_000L;
+    static final long DEFAULT_CURRENT_TIME_MILLIS = 1_000L;
+
+    /**
+     * Creates a time source whose monotonic time is one second and whose wall-clock time is one second after the
+     * epoch.
+     * @return a new time source
+     */
+    public static ManualTimeSource create() {
+        return create(DEFAULT_NANO_TIME, DEFAULT_CURRENT_TIME_MILLIS);
+    }
+
+    /**
+     * Creates a time source with the specified initial times. Stop watches treat a start or stop time of zero as not
+     * having been started or stopped, so a stop watch started at a time of zero will not measure from it.
+     * @param nanoTime the initial monotonic time in nanoseconds
+     * @param currentTimeMillis the initial wall-clock time in milliseconds since the epoch
+     * @return a new time source
+     */
+    public static ManualTimeSource create(final long nanoTime, final long currentTimeMillis) {
+        return new ManualTimeSource(nanoTime, Math.multiplyExact(currentTimeMillis, 1_000_000L));
+    }
+
+    /**
+     * Advances both times.
+     * @param amount the amount of time to advance by, which may be negative to simulate a wall clock being set back
+     * @param unit the unit of the amount
+     */
+    public void advance(final long amount, final TimeUnit unit) {
+        final long nanos = unit.toNanos(amount);
+        nanoTime.addAndGet(nanos);
+        epochNanos.addAndGet(nanos);
+    }
+
+    public void setNanoTime(final long nanoTime) {
+        this.nanoTime.set(nanoTime);
+    }
+
+    public void setCurrentTimeMillis(final long currentTimeMillis) {
+        this.epochNanos.set(Math.multiplyExact(currentTimeMillis, 1_000_000L));
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime.get();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return Math.floorDiv(epochNanos.get(), 1_000_000L);
+    }
+
+    @Override
+    public String toString() {
+        return "manual at " + nanoTime.get();
+    }
+
+}
@@ -2,6 +2,7 @@ package com.github.lfeagan.wheat.time;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,7 +36,43 @@ public final class NanoStopWatch {
 	 */
 	protected long cumulativeNanos = 0L;
 
-	protected NanoStopWatch() {}
+	/**
+	 * The number of stop watches this one represents, zero if it is not sampled, or {@link #RELEASED} if a pool in
+	 * debug mode has poisoned it. The state of a stop watch whose weight is not positive never changes, so the
+	 * methods that change it only need a single comparison to find those stop watches.
+	 */
+	protected long samplingWeight = 1L;
+
+	/**
+	 * The sampling weight of a stop watch that a pool in debug mode has poisoned on release.
+	 */
+	private static final long RELEASED = -1L;
+
+	/**
+	 * Whether a pool in debug mode handed out this stop watch, and so poisons it on release.
+	 */
+	boolean poisonOnRelease = false;
+
+	/**
+	 * The source of the times that are measured.
+	 */
+	protected final TimeSource timeSource;
+
+	private static final NanoStopWatch UNSAMPLED = createUnsampled();
+
+	protected NanoStopWatch() {
+		this(TimeSource.system());
+	}
+
+	protected NanoStopWatch(final TimeSource timeSource) {
+		this.timeSource = timeSource;
+	}
+
+	private static NanoStopWatch createUnsampled() {
+		final NanoStopWatch nsw = new NanoStopWatch();
+		nsw.samplingWeight = 0L;
+		return nsw;
+	}
 
 	public static NanoStopWatch createStarted() {
 		NanoStopWatch nsw = new NanoStopWatch();
@@ -47,20 +84,139 @@ public final class NanoStopWatch {
 		return new NanoStopWatch();
 	}
 
+	/**
+	 * Creates a started stop watch that measures time with the specified time source.
+	 * @param timeSource the source of the times that are measured
+	 * @return a started stop watch
+	 */
+	public static NanoStopWatch createStarted(final TimeSource timeSource) {
+		final NanoStopWatch nsw = new NanoStopWatch(timeSource);
+		nsw.start();
+		return nsw;
+	}
+
+	/**
+	 * Creates an unstarted stop watch that measures time with the specified time source.
+	 * @param timeSource the source of the times that are measured
+	 * @return an unstarted stop watch
+	 */
+	public static NanoStopWatch createUnstarted(final TimeSource timeSource) {
+		return new NanoStopWatch(timeSource);
+	}
+
+	public TimeSource getTimeSource() {
+		checkNotReleased();
+		return timeSource;
+	}
+
+	/**
+	 * Creates a started stop watch if the policy samples it, otherwise returns a shared stop watch whose methods do
+	 * nothing and which always reports zero elapsed time.
+	 * @param policy the sampling policy
+	 * @return a started stop watch, or the unsampled stop watch
+	 * @see #getSamplingWeight()
+	 */
+	public static NanoStopWatch createStarted(final SamplingPolicy policy) {
+		return createStarted(policy, TimeSource.system());
+	}
+
+	/**
+	 * Creates a started stop watch that measures time with the specified time source if the policy samples it,
+	 * otherwise returns the unsampled stop watch.
+	 * @param policy the sampling policy
+	 * @param timeSource the source of the times that are measured
+	 * @return a started stop watch, or the unsampled stop watch
+	 * @see #createStarted(SamplingPolicy)
+	 */
+	public static NanoStopWatch createStarted(final SamplingPolicy policy, final TimeSource timeSource) {
+		final NanoStopWatch nsw = createUnstarted(policy, timeSource);
+		nsw.start();
+		return nsw;
+	}
+
+	/**
+	 * Creates an unstarted stop watch if the policy samples it, otherwise returns a shared stop watch whose methods
+	 * do nothing and which always reports zero elapsed time.
+	 * @param policy the sampling policy
+	 * @return an unstarted stop watch, or the unsampled stop watch
+	 * @see #getSamplingWeight()
+	 */
+	public static NanoStopWatch createUnstarted(final SamplingPolicy policy) {
+		return createUnstarted(policy, TimeSource.system());
+	}
+
+	/**
+	 * Creates an unstarted stop watch that measures time with the specified time source if the policy samples it,
+	 * otherwise returns the unsampled stop watch.
+	 * @param policy the sampling policy
+	 * @param timeSource the source of the times that are measured
+	 * @return an unstarted stop watch, or the unsampled stop watch
+	 * @see #createUnstarted(SamplingPolicy)
+	 */
+	public static NanoStopWatch createUnstarted(final SamplingPolicy policy, final TimeSource timeSource) {
+		final long weight = policy.sample();
+		if (weight == 0L) {
+			return UNSAMPLED;
+		}
+		final NanoStopWatch nsw = new NanoStopWatch(timeSource);
+		nsw.samplingWeight = weight;
+		return nsw;
+	}
+
+	/**
+	 * Returns the number of stop watches this one represents, which is one unless it was created with a
+	 * {@link SamplingPolicy}, and zero if it was not sampled. Aggregates of sampled elapsed times should count each
+	 * elapsed time this many times.
+	 * @return the sampling weight
+	 */
+	public long getSamplingWeight() {
+		checkNotReleased();
+		return samplingWeight;
+	}
+
 	public boolean isRunning() {
+		checkNotReleased();
 		return running;
 	}
 
+	/**
+	 * Returns <code>true</code> if the stop watch is not sampled, in which case the methods that would change its
+	 * state do nothing.
+	 * @throws IllegalStateException if the stop watch has been released to a pool in debug mode
+	 */
+	private boolean isUnsampled() {
+		checkNotReleased();
+		return samplingWeight == 0L;
+	}
+
+	private void checkNotReleased() {
+		if (samplingWeight == RELEASED) {
+			throw new IllegalStateException("Stop watch used after it was released to the pool");
+		}
+	}
+
+	/**
+	 * Poisons the stop watch so that any later use of it throws, which a pool in debug mode does on release.
+	 * @throws IllegalStateException if the stop watch has already been released
+	 */
+	void poison() {
+		checkNotReleased();
+		samplingWeight = RELEASED;
+	}
+
 	/**
 	 * Starts the stop watch by setting start to the current time and stop to
 	 * zero.
 	 */
 	public void start() {
+		if (samplingWeight <= 0L && isUnsampled()) {
+			return;
+		}
 		if (isRunning()) {
 			throw new IllegalStateException("Already started");
 		}
 		running = true;
-		start = System.nanoTime();
+		start = timeSource.nanoTime();
 	}
 
 	/**
@@ -73,16 +229,22 @@ public final class NanoStopWatch {
 	 *            time, otherwise it is untouched
 	 */
 	public void start(final boolean restart) {
+		if (samplingWeight <= 0L && isUnsampled()) {
+			return;
+		}
 		if (isRunning()) {
 			throw new IllegalStateException("Already started");
 		}
 		if (start == 0L || restart) {
-			start = System.nanoTime();
+			start = timeSource.nanoTime();
 		}
 	}
 	
 	public void stop() {
-		final long stop = System.nanoTime();
+		if (samplingWeight <= 0L && isUnsampled()) {
+			return;
+		}
+		final long stop = timeSource.nanoTime();
 		if (!isRunning()) {
 			throw new IllegalStateException("Already stopped");
 		}
@@ -91,6 +253,19 @@ public final class NanoStopWatch {
 		cumulativeNanos += elapsedNanos;
 	}
 
+	/**
+	 * Stops the stop watch and records the elapsed time in the histogram, as many times as its sampling weight.
+	 * @param histogram the histogram to record the elapsed time in
+	 * @throws IllegalStateException if the stop watch is already stopped
+	 */
+	public void stop(final LatencyHistogram histogram) {
+		if (samplingWeight <= 0L && isUnsampled()) {
+			return;
+		}
+		stop();
+		histogram.record(elapsedNanos, samplingWeight);
+	}
+
 	/**
 	 * Resets the stop watch by setting the following:
 	 * <ol>
@@ -99,6 +274,9 @@ public final class NanoStopWatch {
 	 * </ol>
 	 */
 	public void reset() {
+		if (samplingWeight <= 0L && isUnsampled()) {
+			return;
+		}
 		running = false;
 		start = 0L;
 		elapsedNanos = 0L;
@@ -112,6 +290,7 @@ public final class NanoStopWatch {
 	 * @return the accumulated time of all start-stop deltas
 	 */
 	public long getCumulative() {
+		checkNotReleased();
 		return cumulativeNanos;
 	}
 
@@ -123,8 +302,9 @@ public final class NanoStopWatch {
 	 *         been stopped
 	 */
 	public long elapsedNanos() {
+		checkNotReleased();
 		if (running) {
-			return System.nanoTime() - start;
+			return timeSource.nanoTime() - start;
 		} else {
 			return elapsedNanos;
 		}
@@ -144,39 +324,71 @@ public final class NanoStopWatch {
 	}
 
 	public static String toString(final long elapsed) {
-		long resid = elapsed;
-
-		long hours = resid / NANOS_PER_HOUR; resid %= NANOS_PER_HOUR;
-		long minutes = resid / NANOS_PER_MINUTE; resid %= NANOS_PER_MINUTE;
-		long seconds = resid / NANOS_PER_SECOND; resid %= NANOS_PER_SECOND;
-		
-		long micros = resid / 1000L; resid %= 1000L;
-
-//		String msecStr = (!(wantMsec)) ? "" : new StringBuilder().append(".").append((resid < 100L) ? "0" : (resid < 10L) ? "00" : "").append(resid).toString();
-
-		if (hours == 0L && minutes == 0L) {
-			final StringBuilder sb = new StringBuilder();
-			if (seconds == 0L) {
-				sb.append("0.");	
-			} else {
-				sb.append(seconds);
-				sb.append(".");
-			}
-			sb.append(String.format("%06d", micros));
-			return sb.toString();
-		} else {
-			String sb = ((hours < 10L) ? "0" : "") +
-					hours +
-					":" +
-					((minutes < 10L) ? "0" : "") +
-					minutes +
-					":" +
-					((seconds < 10L) ? "0" : "") +
-					seconds +
-					"." +
-					String.format("%06d", micros);
-			return sb;
+		final char[] chars = DurationFormatter.scratch();
+		return new String(chars, 0, DurationFormatter.formatNanos(elapsed, chars, 0));
+	}
+
+	/**
+	 * Appends the elapsed time, formatted as by {@link #toString(long)}, to the builder without allocating.
+	 * @param elapsed the elapsed time in nanoseconds
+	 * @param sb the builder to append to
+	 * @return the builder
+	 */
+	public static StringBuilder formatTo(final long elapsed, final StringBuilder sb) {
+		final char[] chars = DurationFormatter.scratch();
+		return sb.append(chars, 0, DurationFormatter.formatNanos(elapsed, chars, 0));
+	}
+
+	/**
+	 * Appends the elapsed time, formatted as by {@link #toString(long)}, to the appendable without allocating.
+	 * @param elapsed the elapsed time in nanoseconds
+	 * @param appendable the appendable to append to
+	 * @return the appendable
+	 * @throws IOException if the appendable throws
+	 */
+	public static Appendable formatTo(final long elapsed, final Appendable appendable) throws IOException {
+		final char[] chars = DurationFormatter.scratch();
+		DurationFormatter.append(chars, DurationFormatter.formatNanos(elapsed, chars, 0), appendable);
+		return appendable;
+	}
+
+	/**
+	 * Writes the elapsed time, formatted as by {@link #toString(long)}, into the array.
+	 * @param elapsed the elapsed time in nanoseconds
+	 * @param dst the array to write to
+	 * @param offset the index in the array to write the first character at
+	 * @return the number of characters written
+	 * @throws IndexOutOfBoundsException if the array is too small, in which case nothing is written
+	 */
+	public static int formatTo(final long elapsed, final char[] dst, final int offset) {
+		if (offset >= 0 && dst.length - offset >= DurationFormatter.MAX_LENGTH) {
+			return DurationFormatter.formatNanos(elapsed, dst, offset) - offset;
 		}
+		final char[] chars = DurationFormatter.scratch();
+		return DurationFormatter.copy(chars, DurationFormatter.formatNanos(elapsed, chars, 0), dst, offset);
+	}
+
+	/**
+	 * Writes the elapsed time, formatted as by {@link #toString(long)}, into the buffer as ASCII.
+	 * @param elapsed the elapsed time in nanoseconds
+	 * @param buffer the buffer to write to
+	 * @return the buffer
+	 * @throws java.nio.BufferOverflowException if the buffer is too small, in which case nothing is written
+	 */
+	public static ByteBuffer formatTo(final long elapsed, final ByteBuffer buffer) {
+		final char[] chars = DurationFormatter.scratch();
+		DurationFormatter.put(chars, DurationFormatter.formatNanos(elapsed, chars, 0), buffer);
+		return buffer;
+	}
+
+	/**
+	 * Appends the elapsed time to the builder without allocating.
+	 * @param sb the builder to append to
+	 * @return the builder
+	 * @see #formatTo(long, StringBuilder)
+	 */
+	public StringBuilder formatTo(final StringBuilder sb) {
+		return formatTo(elapsedNanos(), sb);
 	}
 
 }
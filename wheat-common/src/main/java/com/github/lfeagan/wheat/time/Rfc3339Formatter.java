@@ -0,0 +1,254 @@
+package com.github.lfeagan.wheat.time;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Formats instants as RFC 3339 timestamps, such as <code>2000-01-01T01:23:45.678+01:00</code>, into a caller-supplied
+ * {@link StringBuilder} or byte array without allocating. The date, hour and minute of the last timestamp formatted are
+ * kept already rendered, so while consecutive timestamps fall in the same minute, as when stamping log lines, only the
+ * seconds, fraction and offset are written for each.
+ * <p>
+ * Timestamps are written with a fixed offset from UTC, which is written as <code>Z</code> for UTC, and with either a
+ * fixed number of fraction digits or {@link #VARIABLE_PRECISION}, which writes 0, 3, 6 or 9 digits as needed in the
+ * same way as {@link Instant#toString()}. Fixed precision truncates the fraction. Every timestamp written is parsed by
+ * {@link TimeUtils#instantFromRFC3339(String)} and {@link Rfc3339Parser} back to the instant it was formatted from,
+ * truncated to the precision.
+ * <p>
+ * The rendered minute is held by the formatter, which is therefore not thread-safe; give each thread its own
+ * formatter.
+ */
+public final class Rfc3339Formatter {
+
+    /**
+     * The precision that writes as many groups of three fraction digits as are needed to represent the instant exactly.
+     */
+    public static final int VARIABLE_PRECISION = -1;
+
+    /**
+     * The maximum number of bytes any timestamp is written as.
+     */
+    public static final int MAX_LENGTH = 48;
+
+    private static final int[] POWERS_OF_TEN = {
+            1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+    };
+
+    private static final long MIN_SECOND = Instant.MIN.getEpochSecond();
+    private static final long MAX_SECOND = Instant.MAX.getEpochSecond();
+
+    private final int fractionDigits;
+    private final ZoneOffset offset;
+    private final int offsetSeconds;
+    private final byte[] suffix;
+
+    /**
+     * Holds the rendered minute from index 0 to {@link #prefixLength}, followed by the rest of the last timestamp.
+     */
+    private final byte[] scratch = new byte[MAX_LENGTH];
+    private long cachedMinute = Long.MIN_VALUE;
+    private int prefixLength = 0;
+
+    private Rfc3339Formatter(final int fractionDigits, final ZoneOffset offset) {
+        this.fractionDigits = fractionDigits;
+        this.offset = offset;
+        this.offsetSeconds = offset.getTotalSeconds();
+        // ZoneOffset.getId() is "Z" for UTC and "+HH:MM" or "+HH:MM:SS" otherwise, all of which are ASCII
+        final String id = offset.getId();
+        this.suffix = new byte[id.length()];
+        for (int i = 0; i < id.length(); ++i) {
+            suffix[i] = (byte) id.charAt(i);
+        }
+    }
+
+    /**
+     * Creates a formatter that writes timestamps in UTC with {@link #VARIABLE_PRECISION}, the same as
+     * {@link Instant#toString()}.
+     * @return the formatter
+     */
+    public static Rfc3339Formatter create() {
+        return new Rfc3339Formatter(VARIABLE_PRECISION, ZoneOffset.UTC);
+    }
+
+    /**
+     * Creates a formatter with the specified precision and offset.
+     * @param fractionDigits the number of fraction digits from 0 to 9, or {@link #VARIABLE_PRECISION}
+     * @param offset the offset from UTC the timestamps are written in
+     * @return the formatter
+     */
+    public static Rfc3339Formatter create(final int fractionDigits, final ZoneOffset offset) {
+        if (fractionDigits < VARIABLE_PRECISION || fractionDigits > 9) {
+            throw new IllegalArgumentException("fractionDigits must be between 0 and 9, or VARIABLE_PRECISION");
+        }
+        if (offset == null) {
+            throw new IllegalArgumentException("offset must not be null");
+        }
+        return new Rfc3339Formatter(fractionDigits, offset);
+    }
+
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    public ZoneOffset getOffset() {
+        return offset;
+    }
+
+    /**
+     * Formats the instant as a string.
+     * @param instant the instant to format
+     * @return the timestamp
+     * @throws DateTimeException if the year of the timestamp is beyond +/-999,999,999
+     */
+    public String format(final Instant instant) {
+        final int length = render(instant.getEpochSecond(), instant.getNano());
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends the instant to the builder without allocating.
+     * @param instant the instant to format
+     * @param sb the builder to append to
+     * @return the builder
+     */
+    public StringBuilder formatTo(final Instant instant, final StringBuilder sb) {
+        return formatTo(instant.getEpochSecond(), instant.getNano(), sb);
+    }
+
+    /**
+     * Appends the instant to the builder without allocating.
+     * @param epochSecond the seconds since the epoch of the instant to format
+     * @param nano the nanosecond of the second, from 0 to 999,999,999
+     * @param sb the builder to append to
+     * @return the builder
+     * @throws DateTimeException if the year of the timestamp is beyond +/-999,999,999
+     */
+    public StringBuilder formatTo(final long epochSecond, final int nano, final StringBuilder sb) {
+        final int length = render(epochSecond, nano);
+        sb.ensureCapacity(sb.length() + length);
+        for (int i = 0; i < length; ++i) {
+            sb.append((char) scratch[i]);
+        }
+        return sb;
+    }
+
+    /**
+     * Writes the instant into the array as ASCII.
+     * @param epochSecond the seconds since the epoch of the instant to format
+     * @param nano the nanosecond of the second, from 0 to 999,999,999
+     * @param dst the array to write to
+     * @param offset the index in the array to write the first byte at
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the array is too small, in which case nothing is written
+     * @throws DateTimeException if the year of the timestamp is beyond +/-999,999,999
+     */
+    public int formatTo(final long epochSecond, final int nano, final byte[] dst, final int offset) {
+        final int length = render(epochSecond, nano);
+        System.arraycopy(scratch, 0, dst, offset, length);
+        return length;
+    }
+
+    /**
+     * Appends the instant, expressed in nanoseconds since the epoch, to the builder without allocating.
+     * @param epochNanos the instant to format
+     * @param sb the builder to append to
+     * @return the builder
+     */
+    public StringBuilder formatEpochNanosTo(final long epochNanos, final StringBuilder sb) {
+        return formatTo(Math.floorDiv(epochNanos, 1_000_000_000L), (int) Math.floorMod(epochNanos, 1_000_000_000L), sb);
+    }
+
+    /**
+     * Writes the instant, expressed in nanoseconds since the epoch, into the array as ASCII.
+     * @param epochNanos the instant to format
+     * @param dst the array to write to
+     * @param offset the index in the array to write the first byte at
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the array is too small, in which case nothing is written
+     */
+    public int formatEpochNanosTo(final long epochNanos, final byte[] dst, final int offset) {
+        return formatTo(Math.floorDiv(epochNanos, 1_000_000_000L), (int) Math.floorMod(epochNanos, 1_000_000_000L), dst, offset);
+    }
+
+    /**
+     * Renders the timestamp into the scratch array, rendering the minute again only if it has changed.
+     * @return the length of the timestamp
+     */
+    private int render(final long epochSecond, final int nano) {
+        if (epochSecond < MIN_SECOND || epochSecond > MAX_SECOND) {
+            throw new DateTimeException("Instant exceeds minimum or maximum instant");
+        }
+        if (nano < 0 || nano > 999_999_999) {
+            throw new IllegalArgumentException("nano must be between 0 and 999,999,999");
+        }
+        final long local = epochSecond + offsetSeconds;
+        final long minute = Math.floorDiv(local, 60L);
+        if (minute != cachedMinute) {
+            prefixLength = renderMinute(minute);
+            cachedMinute = minute;
+        }
+        int pos = prefixLength;
+        final int second = (int) (local - minute * 60L);
+        scratch[pos++] = (byte) ('0' + second / 10);
+        scratch[pos++] = (byte) ('0' + second % 10);
+
+        int digits = fractionDigits;
+        if (digits == VARIABLE_PRECISION) {
+            digits = nano == 0 ? 0 : nano % 1_000_000 == 0 ? 3 : nano % 1_000 == 0 ? 6 : 9;
+        }
+        if (digits > 0) {
+            scratch[pos++] = '.';
+            int fraction = nano / POWERS_OF_TEN[9 - digits];
+            for (int i = pos + digits - 1; i >= pos; --i) {
+                scratch[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            pos += digits;
+        }
+        System.arraycopy(suffix, 0, scratch, pos, suffix.length);
+        return pos + suffix.length;
+    }
+
+    /**
+     * Renders the date, hour and minute, followed by the colon before the seconds, in the same year format as
+     * {@link java.time.format.DateTimeFormatter#ISO_LOCAL_DATE}: four digits for years from 0 to 9999, and otherwise
+     * a sign and at least four digits.
+     * @return the length of the prefix
+     */
+    private int renderMinute(final long minute) {
+        final LocalDateTime dateTime = LocalDateTime.ofEpochSecond(minute * 60L, 0, ZoneOffset.UTC);
+        int pos = 0;
+        final int year = dateTime.getYear();
+        if (year > 9999) {
+            scratch[pos++] = '+';
+            pos = putDigits(year, Integer.toString(year).length(), pos);
+        } else if (year < 0) {
+            scratch[pos++] = '-';
+            pos = putDigits(-year, Math.max(4, Integer.toString(-year).length()), pos);
+        } else {
+            pos = putDigits(year, 4, pos);
+        }
+        scratch[pos++] = '-';
+        pos = putDigits(dateTime.getMonthValue(), 2, pos);
+        scratch[pos++] = '-';
+        pos = putDigits(dateTime.getDayOfMonth(), 2, pos);
+        scratch[pos++] = 'T';
+        pos = putDigits(dateTime.getHour(), 2, pos);
+        scratch[pos++] = ':';
+        pos = putDigits(dateTime.getMinute(), 2, pos);
+        scratch[pos++] = ':';
+        return pos;
+    }
+
+    private int putDigits(int value, final int digits, final int pos) {
+        for (int i = pos + digits - 1; i >= pos; --i) {
+            scratch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+}
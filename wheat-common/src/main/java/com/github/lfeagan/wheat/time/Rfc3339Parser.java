@@ -0,0 +1,397 @@
+package com.github.lfeagan.wheat.time;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+/**
+ * Parses RFC 3339 timestamps, such as <code>2000-01-01T01:23:45.678+01:00</code>, into epoch seconds and nanoseconds
+ * without allocating. Timestamps can be parsed from a {@link CharSequence}, or from ASCII or UTF-8 encoded bytes in an
+ * array or a {@link ByteBuffer}, so log lines can be parsed without first being decoded into strings.
+ * <p>
+ * Exactly the text accepted by {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} is accepted, and parses to the same
+ * instant. Beyond RFC 3339 itself, this includes a lower-case <code>t</code> or <code>z</code>, times without seconds,
+ * a decimal point without fraction digits, offsets with only hours or with seconds, and years beyond 9999 or before 0
+ * when they are signed, as in <code>+10000-01-01T00:00Z</code>.
+ * <p>
+ * Parsing does not throw on malformed input. Instead, {@link #parse(CharSequence)} returns <code>false</code> and the
+ * index at which the input was found to be invalid is available from {@link #getErrorIndex()}. The results of the last
+ * parse are held by the parser, which is therefore not thread-safe; give each thread its own parser.
+ * <pre>
+ * Rfc3339Parser parser = new Rfc3339Parser();
+ * if (parser.parse(line, 0, 30)) {
+ *     registry.timer("event").record(parser.getEpochSecond() * 1_000_000_000L + parser.getNano());
+ * }
+ * </pre>
+ */
+public final class Rfc3339Parser {
+
+    /**
+     * The length of the longest text that can be parsed, which exceeds the longest valid timestamp.
+     */
+    static final int MAX_LENGTH = 64;
+
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+    private static final int MAX_YEAR = 999_999_999;
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+
+    private static final int[] NANO_SCALE = {
+            1_000_000_000, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1
+    };
+
+    /**
+     * Holds the text of a {@link CharSequence} or a buffer without an accessible array while it is parsed.
+     */
+    private final byte[] scratch = new byte[MAX_LENGTH];
+
+    private long epochSecond;
+    private int nano;
+    private int offsetSeconds;
+    private int errorIndex = 0;
+
+    /**
+     * Parses a timestamp that makes up the whole of the text.
+     * @param text the text to parse
+     * @return <code>true</code> if the text is a valid timestamp, otherwise <code>false</code>
+     */
+    public boolean parse(final CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a timestamp that makes up the whole of the specified range of the text.
+     * @param text the text to parse
+     * @param start the index of the first character of the timestamp
+     * @param end the index after the last character of the timestamp
+     * @return <code>true</code> if the range is a valid timestamp, otherwise <code>false</code>
+     * @throws IndexOutOfBoundsException if the range is out of the bounds of the text
+     */
+    public boolean parse(final CharSequence text, final int start, final int end) {
+        Objects.checkFromToIndex(start, end, text.length());
+        final int length = end - start;
+        if (length > MAX_LENGTH) {
+            return fail(0, MAX_LENGTH);
+        }
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(start + i);
+            // non-ASCII characters are never valid, so any byte that is not a digit or separator will do
+            scratch[i] = c < 0x80 ? (byte) c : (byte) 0xFF;
+        }
+        return parseAscii(scratch, 0, length);
+    }
+
+    /**
+     * Parses a timestamp that makes up the whole of the bytes, in ASCII or UTF-8.
+     * @param bytes the bytes to parse
+     * @return <code>true</code> if the bytes are a valid timestamp, otherwise <code>false</code>
+     */
+    public boolean parse(final byte[] bytes) {
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a timestamp that makes up the whole of the specified range of the bytes, in ASCII or UTF-8.
+     * @param bytes the bytes to parse
+     * @param offset the index of the first byte of the timestamp
+     * @param length the number of bytes in the timestamp
+     * @return <code>true</code> if the range is a valid timestamp, otherwise <code>false</code>
+     * @throws IndexOutOfBoundsException if the range is out of the bounds of the array
+     */
+    public boolean parse(final byte[] bytes, final int offset, final int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        return parseAscii(bytes, offset, offset + length);
+    }
+
+    /**
+     * Parses a timestamp that makes up the whole of the remaining bytes of the buffer, in ASCII or UTF-8. The position
+     * of the buffer is not changed.
+     * @param buffer the buffer to parse from its position to its limit
+     * @return <code>true</code> if the remaining bytes are a valid timestamp, otherwise <code>false</code>
+     */
+    public boolean parse(final ByteBuffer buffer) {
+        return parse(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Parses a timestamp that makes up the whole of the specified range of the buffer, in ASCII or UTF-8. The
+     * position and limit of the buffer are ignored and not changed.
+     * @param buffer the buffer to parse
+     * @param index the index of the first byte of the timestamp
+     * @param length the number of bytes in the timestamp
+     * @return <code>true</code> if the range is a valid timestamp, otherwise <code>false</code>
+     * @throws IndexOutOfBoundsException if the range is out of the bounds of the buffer's capacity
+     */
+    public boolean parse(final ByteBuffer buffer, final int index, final int length) {
+        Objects.checkFromIndexSize(index, length, buffer.capacity());
+        if (buffer.hasArray()) {
+            final int offset = buffer.arrayOffset() + index;
+            return parseAscii(buffer.array(), offset, offset + length);
+        }
+        if (length > MAX_LENGTH) {
+            return fail(0, MAX_LENGTH);
+        }
+        for (int i = 0; i < length; ++i) {
+            scratch[i] = buffer.get(index + i);
+        }
+        return parseAscii(scratch, 0, length);
+    }
+
+    /**
+     * Returns the instant that was last parsed, as seconds since the epoch.
+     * @return the epoch second of the last parsed timestamp, or zero if the last parse failed
+     */
+    public long getEpochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * Returns the fraction of a second of the instant that was last parsed.
+     * @return the nanosecond of the second, from 0 to 999,999,999, or zero if the last parse failed
+     */
+    public int getNano() {
+        return nano;
+    }
+
+    /**
+     * Returns the offset from UTC that the last parsed timestamp was written in.
+     * @return the offset in seconds, or zero if the last parse failed
+     */
+    public int getOffsetSeconds() {
+        return offsetSeconds;
+    }
+
+    /**
+     * Returns the index, relative to the start of the parsed range, at which the last parse failed. For a field that
+     * is well-formed but out of range, such as the 31st of April, this is the index of the field.
+     * @return the index of the error, or -1 if the last parse succeeded
+     */
+    public int getErrorIndex() {
+        return errorIndex;
+    }
+
+    /**
+     * Returns the instant that was last parsed.
+     * @return the instant of the last parsed timestamp
+     * @throws IllegalStateException if the last parse failed, or nothing has been parsed
+     */
+    public Instant toInstant() {
+        if (errorIndex >= 0) {
+            throw new IllegalStateException("No timestamp has been parsed");
+        }
+        return Instant.ofEpochSecond(epochSecond, nano);
+    }
+
+    private boolean fail(final int offset, final int index) {
+        epochSecond = 0L;
+        nano = 0;
+        offsetSeconds = 0;
+        errorIndex = index - offset;
+        return false;
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Returns the value of the two digits at the index, or -1 if they are not both digits.
+     */
+    private static int twoDigits(final byte[] b, final int i, final int end) {
+        if (i + 1 >= end || !isDigit(b[i]) || !isDigit(b[i + 1])) {
+            return -1;
+        }
+        return (b[i] - '0') * 10 + (b[i + 1] - '0');
+    }
+
+    private boolean parseAscii(final byte[] b, final int offset, final int end) {
+        int i = offset;
+
+        // an unsigned year has exactly 4 digits, a positive year more than 4 and a negative year at least 4
+        int sign = 0;
+        if (i < end && (b[i] == '+' || b[i] == '-')) {
+            sign = b[i] == '-' ? -1 : 1;
+            ++i;
+        }
+        final int yearIndex = i;
+        long year = 0L;
+        while (i < end && i - yearIndex < 10 && isDigit(b[i])) {
+            year = year * 10L + (b[i] - '0');
+            ++i;
+        }
+        final int yearDigits = i - yearIndex;
+        if (sign == 0 ? yearDigits != 4 : yearDigits < (sign > 0 ? 5 : 4)) {
+            return fail(offset, offset);
+        }
+        if (year > MAX_YEAR || (sign < 0 && year == 0L)) {
+            return fail(offset, offset);
+        }
+        if (sign < 0) {
+            year = -year;
+        }
+
+        if (i >= end || b[i] != '-') {
+            return fail(offset, i);
+        }
+        final int monthIndex = ++i;
+        final int month = twoDigits(b, i, end);
+        if (month < 0) {
+            return fail(offset, i);
+        }
+        i += 2;
+        if (i >= end || b[i] != '-') {
+            return fail(offset, i);
+        }
+        final int dayIndex = ++i;
+        final int day = twoDigits(b, i, end);
+        if (day < 0) {
+            return fail(offset, i);
+        }
+        i += 2;
+        if (i >= end || (b[i] != 'T' && b[i] != 't')) {
+            return fail(offset, i);
+        }
+
+        final int hourIndex = ++i;
+        final int hour = twoDigits(b, i, end);
+        if (hour < 0) {
+            return fail(offset, i);
+        }
+        i += 2;
+        if (i >= end || b[i] != ':') {
+            return fail(offset, i);
+        }
+        final int minuteIndex = ++i;
+        final int minute = twoDigits(b, i, end);
+        if (minute < 0) {
+            return fail(offset, i);
+        }
+        i += 2;
+        int secondIndex = i;
+        int second = 0;
+        int fraction = 0;
+        if (i < end && b[i] == ':') {
+            secondIndex = ++i;
+            second = twoDigits(b, i, end);
+            if (second < 0) {
+                return fail(offset, i);
+            }
+            i += 2;
+            if (i < end && b[i] == '.') {
+                final int fractionIndex = ++i;
+                while (i < end && i - fractionIndex < 9 && isDigit(b[i])) {
+                    fraction = fraction * 10 + (b[i] - '0');
+                    ++i;
+                }
+                fraction *= NANO_SCALE[i - fractionIndex];
+            }
+        }
+
+        final int offsetIndex = i;
+        int offsetTotal;
+        if (i < end && (b[i] == 'Z' || b[i] == 'z')) {
+            offsetTotal = 0;
+            ++i;
+        } else if (i < end && (b[i] == '+' || b[i] == '-')) {
+            final boolean negative = b[i] == '-';
+            ++i;
+            final int offsetHours = twoDigits(b, i, end);
+            if (offsetHours < 0) {
+                return fail(offset, i);
+            }
+            i += 2;
+            int offsetMinutes = 0;
+            int offsetSecondsOfMinute = 0;
+            if (i < end && b[i] == ':') {
+                offsetMinutes = twoDigits(b, i + 1, end);
+                if (offsetMinutes < 0 || offsetMinutes > 59) {
+                    return fail(offset, i);
+                }
+                i += 3;
+                if (i < end && b[i] == ':') {
+                    offsetSecondsOfMinute = twoDigits(b, i + 1, end);
+                    if (offsetSecondsOfMinute < 0 || offsetSecondsOfMinute > 59) {
+                        return fail(offset, i);
+                    }
+                    i += 3;
+                }
+            }
+            offsetTotal = offsetHours * 3600 + offsetMinutes * 60 + offsetSecondsOfMinute;
+            if (offsetTotal > MAX_OFFSET_SECONDS) {
+                return fail(offset, offsetIndex);
+            }
+            if (negative) {
+                offsetTotal = -offsetTotal;
+            }
+        } else {
+            return fail(offset, i);
+        }
+        if (i != end) {
+            return fail(offset, i);
+        }
+
+        if (month < 1 || month > 12) {
+            return fail(offset, monthIndex);
+        }
+        if (day < 1 || day > lengthOfMonth(year, month)) {
+            return fail(offset, dayIndex);
+        }
+        if (hour > 23) {
+            return fail(offset, hourIndex);
+        }
+        if (minute > 59) {
+            return fail(offset, minuteIndex);
+        }
+        if (second > 59) {
+            return fail(offset, secondIndex);
+        }
+
+        epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offsetTotal;
+        nano = fraction;
+        offsetSeconds = offsetTotal;
+        errorIndex = -1;
+        return true;
+    }
+
+    private static boolean isLeapYear(final long year) {
+        return (year & 3L) == 0L && (year % 100L != 0L || year % 400L == 0L);
+    }
+
+    private static int lengthOfMonth(final long year, final int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Returns the number of days from the epoch to the date in the proleptic Gregorian calendar, in the same way as
+     * {@link java.time.LocalDate#toEpochDay()}.
+     */
+    private static long epochDay(final long year, final int month, final int day) {
+        long total = 365L * year;
+        if (year >= 0L) {
+            total += (year + 3L) / 4L - (year + 99L) / 100L + (year + 399L) / 400L;
+        } else {
+            total -= year / -4L - year / -100L + year / -400L;
+        }
+        total += (367L * month - 362L) / 12L;
+        total += day - 1;
+        if (month > 2) {
+            --total;
+            if (!isLeapYear(year)) {
+                --total;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_SECOND;
+
+/**
+ * Records splits into preallocated primitive arrays of a fixed capacity. Once the capacity is reached, each new
+ * split overwrites the oldest one. Descriptions are interned to an integer id, so recording a split with a
+ * previously seen description does not allocate. The count and total elapsed time of the retained splits are kept
+ * for each id, and regular expressions are only evaluated once per distinct description.
+ * <p>
+ * An id is freed, and its description forgotten, as soon as the last retained split with that description is
+ * overwritten or cleared, so no more descriptions are interned than there are splits retained and memory stays
+ * bounded by the capacity even when descriptions are generated dynamically.
+ */
+final class RingBufferSplitRecorder implements SplitRecorder {
+
+    private final long[] starts;
+    private final long[] stops;
+    private final int[] descriptionIds;
+
+    /**
+     * Maps each description of a retained split to its id, which is the index of the description in
+     * {@link #descriptions}. Ids below {@link #descriptionCount} that are not in use are on the free list.
+     */
+    private final Map<String, Integer> descriptionIdsByName = new HashMap<>();
+    private String[] descriptions = new String[16];
+    private int descriptionCount = 0;
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+
+    /**
+     * The number and total elapsed time of the retained splits of each description id.
+     */
+    private int[] counts = new int[16];
+    private long[] totals = new long[16];
+
+    /**
+     * The index that the next split will be written to.
+     */
+    private int next = 0;
+
+    /**
+     * The number of valid splits, which never exceeds the capacity.
+     */
+    private int size = 0;
+
+    RingBufferSplitRecorder(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.starts = new long[capacity];
+        this.stops = new long[capacity];
+        this.descriptionIds = new int[capacity];
+    }
+
+    int capacity() {
+        return starts.length;
+    }
+
+    /**
+     * Returns the number of descriptions currently interned.
+     */
+    synchronized int descriptionCount() {
+        return descriptionIdsByName.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized long lastStop() {
+        return stops[previous(next)];
+    }
+
+    @Override
+    public synchronized void record(final long start, final long stop, final String description) {
+        if (size == starts.length) {
+            final int evicted = descriptionIds[next];
+            totals[evicted] -= stops[next] - starts[next];
+            if (--counts[evicted] == 0) {
+                free(evicted);
+            }
+        }
+        // interned after evicting, so the id of a description that is overwritten by itself is reused
+        final int id = intern(description);
+        starts[next] = start;
+        stops[next] = stop;
+        descriptionIds[next] = id;
+        ++counts[id];
+        totals[id] += stop - start;
+        next = (next + 1) % starts.length;
+        if (size < starts.length) {
+            ++size;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+        Arrays.fill(counts, 0, descriptionCount, 0);
+        Arrays.fill(totals, 0, descriptionCount, 0L);
+        Arrays.fill(descriptions, 0, descriptionCount, null);
+        descriptionIdsByName.clear();
+        descriptionCount = 0;
+        freeCount = 0;
+    }
+
+    @Override
+    public synchronized SplitNanoStopWatch.Split[] toArray() {
+        final SplitNanoStopWatch.Split[] splits = new SplitNanoStopWatch.Split[size];
+        for (int i = 0, index = oldest(); i < size; ++i, index = (index + 1) % starts.length) {
+            splits[i] = materialize(index);
+        }
+        return splits;
+    }
+
+    @Override
+    public synchronized List<SplitNanoStopWatch.Split> getSplits(final String description) {
+        final List<SplitNanoStopWatch.Split> matches = new ArrayList<>();
+        final int id = lookup(description);
+        if (id < 0) {
+            return matches;
+        }
+        for (int i = 0, index = oldest(); i < size; ++i, index = (index + 1) % starts.length) {
+            if (descriptionIds[index] == id) {
+                matches.add(materialize(index));
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public synchronized List<SplitNanoStopWatch.Split> getSplits(final Matcher descriptionMatcher) {
+        final List<SplitNanoStopWatch.Split> matches = new ArrayList<>();
+        final boolean[] matched = new boolean[descriptionCount];
+        boolean any = false;
+        for (int id = 0; id < descriptionCount; ++id) {
+            if (counts[id] != 0 && descriptionMatcher.reset(descriptions[id]).matches()) {
+                matched[id] = true;
+                any = true;
+            }
+        }
+        if (!any) {
+            return matches;
+        }
+        for (int i = 0, index = oldest(); i < size; ++i, index = (index + 1) % starts.length) {
+            if (matched[descriptionIds[index]]) {
+                matches.add(materialize(index));
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public synchronized int getSplitsCount(final String description) {
+        final int id = lookup(description);
+        return (id < 0) ? 0 : counts[id];
+    }
+
+    @Override
+    public synchronized long getSplitsTotalElapsed(final String description) {
+        final int id = lookup(description);
+        return (id < 0) ? 0L : totals[id];
+    }
+
+    @Override
+    public synchronized double getSplitsAverageElapsedTime(final String description) {
+        final int count = getSplitsCount(description);
+        if (count == 0) {
+            return 0.0d;
+        }
+        return ((double) getSplitsTotalElapsed(description)) / NANOS_PER_SECOND / count;
+    }
+
+    @Override
+    public synchronized SplitNanoStopWatch.Summary getSplitsSummary(final String description) {
+        final int id = lookup(description);
+        if (id < 0 || counts[id] == 0) {
+            return new SplitNanoStopWatch.Summary(description, 0, 0L, 0L, 0L);
+        }
+        // the extremes cannot be maintained as splits are overwritten, so they are found by scanning
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int index = 0; index < size; ++index) {
+            if (descriptionIds[index] == id) {
+                final long elapsed = stops[index] - starts[index];
+                min = Math.min(min, elapsed);
+                max = Math.max(max, elapsed);
+            }
+        }
+        return new SplitNanoStopWatch.Summary(description, counts[id], totals[id], min, max);
+    }
+
+    @Override
+    public synchronized void forEach(final SplitVisitor visitor) {
+        for (int i = 0, index = oldest(); i < size; ++i, index = (index + 1) % starts.length) {
+            visitor.visit(starts[index], stops[index], descriptions[descriptionIds[index]]);
+        }
+    }
+
+    private int oldest() {
+        return (size < starts.length) ? 0 : next;
+    }
+
+    private int previous(final int index) {
+        return (index == 0) ? starts.length - 1 : index - 1;
+    }
+
+    private SplitNanoStopWatch.Split materialize(final int index) {
+        return new SplitNanoStopWatch.Split(starts[index], stops[index], descriptions[descriptionIds[index]]);
+    }
+
+    private int lookup(final String description) {
+        final Integer id = descriptionIdsByName.get(description);
+        return (id == null) ? -1 : id;
+    }
+
+    private int intern(final String description) {
+        final Integer id = descriptionIdsByName.get(description);
+        if (id != null) {
+            return id;
+        }
+        final int free;
+        if (freeCount > 0) {
+            free = freeIds[--freeCount];
+        } else {
+            if (descriptionCount == descriptions.length) {
+                descriptions = Arrays.copyOf(descriptions, descriptionCount * 2);
+                counts = Arrays.copyOf(counts, descriptionCount * 2);
+                totals = Arrays.copyOf(totals, descriptionCount * 2);
+                freeIds = Arrays.copyOf(freeIds, descriptionCount * 2);
+            }
+            free = descriptionCount++;
+        }
+        descriptions[free] = description;
+        descriptionIdsByName.put(description, free);
+        return free;
+    }
+
+    private void free(final int id) {
+        descriptionIdsByName.remove(descriptions[id]);
+        descriptions[id] = null;
+        totals[id] = 0L;
+        freeIds[freeCount++] = id;
+    }
+
+}
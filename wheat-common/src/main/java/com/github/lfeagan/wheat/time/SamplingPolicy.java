@@ -0,0 +1,188 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which stop watches are sampled, such as to time only a fraction of requests under load. Stop watch
+ * factories that take a policy return a shared no-op instance when the policy declines to sample, and otherwise a
+ * real stop watch that carries the weight returned by {@link #sample()}. Aggregates built from sampled watches should
+ * count each recorded value <code>weight</code> times to estimate the aggregate of every request.
+ * <p>
+ * All of the policies provided are safe for use by many threads.
+ */
+public abstract class SamplingPolicy {
+
+    private static final SamplingPolicy ALWAYS = new SamplingPolicy() {
+        @Override
+        public long sample() {
+            return 1L;
+        }
+    };
+
+    private static final SamplingPolicy NEVER = new SamplingPolicy() {
+        @Override
+        public long sample() {
+            return 0L;
+        }
+    };
+
+    protected SamplingPolicy() {}
+
+    /**
+     * Decides whether to sample the next stop watch.
+     * @return zero if the stop watch should not be sampled, otherwise the number of stop watches the sampled one
+     *         represents
+     */
+    public abstract long sample();
+
+    /**
+     * Returns a policy that samples every stop watch with a weight of one.
+     * @return the policy
+     */
+    public static SamplingPolicy always() {
+        return ALWAYS;
+    }
+
+    /**
+     * Returns a policy that never samples.
+     * @return the policy
+     */
+    public static SamplingPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * Returns a policy that samples every <code>n</code>th stop watch created by each thread, with a weight of
+     * <code>n</code>. The count is kept per thread so that threads do not contend on it.
+     * @param n the sampling interval, which must be positive
+     * @return the policy
+     */
+    public static SamplingPolicy oneIn(final int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        if (n == 1) {
+            return ALWAYS;
+        }
+        return new OneIn(n);
+    }
+
+    /**
+     * Returns a policy that samples each stop watch independently with the specified probability. The weight of a
+     * sample is <code>1 / probability</code>, randomly rounded to one of the adjacent integers such that its expected
+     * value is exact.
+     * @param probability the probability of sampling, greater than zero and at most one
+     * @return the policy
+     */
+    public static SamplingPolicy probability(final double probability) {
+        if (!(probability > 0.0d && probability <= 1.0d)) {
+            throw new IllegalArgumentException("probability must be greater than 0 and at most 1");
+        }
+        if (probability == 1.0d) {
+            return ALWAYS;
+        }
+        return new Probability(probability);
+    }
+
+    /**
+     * Returns a policy that adjusts its sampling rate to sample at most approximately the target number of stop
+     * watches per second, which bounds the overhead of timing to the target times the cost of a sampled watch.
+     * The rate is recalculated from the observed number of requests when a sample is taken at least 100 ms after the
+     * previous recalculation, so it adapts quickly to increasing load and more slowly to decreasing load.
+     * @param targetSamplesPerSecond the target number of sampled stop watches per second, which must be positive
+     * @return the policy
+     */
+    public static SamplingPolicy adaptive(final double targetSamplesPerSecond) {
+        return adaptive(targetSamplesPerSecond, TimeSource.system());
+    }
+
+    /**
+     * Returns a policy that adjusts its sampling rate as {@link #adaptive(double)} does, measuring the observed
+     * number of requests per second with the specified time source.
+     * @param targetSamplesPerSecond the target number of sampled stop watches per second, which must be positive
+     * @param timeSource the source of the times the rate is measured with
+     * @return the policy
+     */
+    public static SamplingPolicy adaptive(final double targetSamplesPerSecond, final TimeSource timeSource) {
+        if (!(targetSamplesPerSecond > 0.0d)) {
+            throw new IllegalArgumentException("targetSamplesPerSecond must be positive");
+        }
+        return new Adaptive(targetSamplesPerSecond, timeSource);
+    }
+
+    private static final class OneIn extends SamplingPolicy {
+        private final int n;
+        private final ThreadLocal<int[]> counters = ThreadLocal.withInitial(() -> new int[1]);
+
+        OneIn(final int n) {
+            this.n = n;
+        }
+
+        @Override
+        public long sample() {
+            final int[] counter = counters.get();
+            if (++counter[0] < n) {
+                return 0L;
+            }
+            counter[0] = 0;
+            return n;
+        }
+    }
+
+    private static final class Probability extends SamplingPolicy {
+        private final double probability;
+        private final long weight;
+        private final double weightFraction;
+
+        Probability(final double probability) {
+            this.probability = probability;
+            final double inverse = 1.0d / probability;
+            this.weight = (long) inverse;
+            this.weightFraction = inverse - weight;
+        }
+
+        @Override
+        public long sample() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() >= probability) {
+                return 0L;
+            }
+            return (weightFraction != 0.0d && random.nextDouble() < weightFraction) ? weight + 1L : weight;
+        }
+    }
+
+    private static final class Adaptive extends SamplingPolicy {
+        private static final long WINDOW_NANOS = 100_000_000L;
+
+        private final double targetSamplesPerSecond;
+        private final TimeSource timeSource;
+        private final LongAdder calls = new LongAdder();
+        private final AtomicLong windowStart;
+        private volatile int n = 1;
+
+        Adaptive(final double targetSamplesPerSecond, final TimeSource timeSource) {
+            this.targetSamplesPerSecond = targetSamplesPerSecond;
+            this.timeSource = timeSource;
+            this.windowStart = new AtomicLong(timeSource.nanoTime());
+        }
+
+        @Override
+        public long sample() {
+            calls.increment();
+            final int current = n;
+            if (current > 1 && ThreadLocalRandom.current().nextInt(current) != 0) {
+                return 0L;
+            }
+            final long now = timeSource.nanoTime();
+            final long start = windowStart.get();
+            if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+                final double callsPerSecond = calls.sumThenReset() * 1e9d / (now - start);
+                n = (int) Math.max(1.0d, Math.min(Integer.MAX_VALUE, Math.ceil(callsPerSecond / targetSamplesPerSecond)));
+            }
+            return current;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records a tree of nested spans into parallel primitive arrays. Spans are stored in the order they were entered,
+ * so a span's parent always precedes it. Names are interned to an integer id, and the arrays only grow when their
+ * capacity is exceeded, so entering and exiting spans with previously seen names does not allocate. Clearing the
+ * arena retains up to {@link #MAX_RETAINED_NAMES} interned names; an arena that has seen more distinct names than
+ * that, such as one entering spans with dynamically generated names, forgets them all when cleared, so that an arena
+ * reused for the life of a thread does not grow without bound.
+ * <p>
+ * Spans must be entered and exited by a single thread.
+ */
+final class SpanArena {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The maximum number of interned names retained when the arena is cleared.
+     */
+    static final int MAX_RETAINED_NAMES = 256;
+
+    /**
+     * The stop time of a span that has not been exited.
+     */
+    private static final long OPEN = Long.MIN_VALUE;
+
+    private int[] parents;
+    private int[] nameIds;
+    private long[] starts;
+    private long[] stops;
+    private int size = 0;
+
+    /**
+     * The index of the innermost open span, or -1 if no span is open.
+     */
+    private int current = -1;
+
+    private final Map<String, Integer> nameIdsByName = new HashMap<>();
+    private String[] names = new String[16];
+    private int nameCount = 0;
+
+    SpanArena(final int capacity) {
+        parents = new int[capacity];
+        nameIds = new int[capacity];
+        starts = new long[capacity];
+        stops = new long[capacity];
+    }
+
+    void enter(final String name, final long start) {
+        if (size == starts.length) {
+            final int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+        }
+        parents[size] = current;
+        nameIds[size] = intern(name);
+        starts[size] = start;
+        stops[size] = OPEN;
+        current = size++;
+    }
+
+    void exit(final long stop) {
+        if (current < 0) {
+            throw new IllegalStateException("No span has been entered");
+        }
+        stops[current] = stop;
+        current = parents[current];
+    }
+
+    void clear() {
+        size = 0;
+        current = -1;
+        if (nameCount > MAX_RETAINED_NAMES) {
+            nameIdsByName.clear();
+            names = new String[16];
+            nameCount = 0;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int nameCount() {
+        return nameCount;
+    }
+
+    int parent(final int index) {
+        return parents[index];
+    }
+
+    String name(final int index) {
+        return names[nameIds[index]];
+    }
+
+    boolean isOpen(final int index) {
+        return stops[index] == OPEN;
+    }
+
+    long elapsed(final int index) {
+        return stops[index] - starts[index];
+    }
+
+    /**
+     * Computes the self time of every closed span, which is its elapsed time less that of its closed children.
+     * @return the self time of each span by index, or an undefined value for open spans
+     */
+    long[] selfElapsed() {
+        final long[] self = new long[size];
+        for (int index = 0; index < size; ++index) {
+            if (!isOpen(index)) {
+                self[index] += elapsed(index);
+                if (parents[index] >= 0) {
+                    self[parents[index]] -= elapsed(index);
+                }
+            }
+        }
+        return self;
+    }
+
+    private int intern(final String name) {
+        final Integer id = nameIdsByName.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (nameCount == names.length) {
+            names = Arrays.copyOf(names, nameCount * 2);
+        }
+        names[nameCount] = name;
+        nameIdsByName.put(name, nameCount);
+        return nameCount++;
+    }
+
+}
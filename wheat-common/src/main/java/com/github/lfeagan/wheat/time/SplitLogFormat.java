@@ -0,0 +1,73 @@
+package com.github.lfeagan.wheat.time;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The binary format shared by {@link SplitLogWriter} and {@link SplitLogReader}.
+ * <p>
+ * A log is a sequence of segment files named <code>&lt;baseName&gt;-&lt;index&gt;.wsl</code>, with the index zero
+ * padded to eight digits so that the names sort in the order the segments were written. Each segment begins with
+ * {@link #MAGIC} and is followed by records, each of which begins with a kind byte:
+ * <ul>
+ *     <li>{@link #DESCRIPTION}: an int id followed by the length and bytes of the UTF-8 description. A description
+ *     is written once per segment, before the first split that refers to it, so each segment can be read alone.</li>
+ *     <li>{@link #SPLIT}: the start of the split in nanoseconds since the epoch, its elapsed time in nanoseconds, the
+ *     int id of its description and the id of the thread it is attributed to, {@link #SPLIT_LENGTH} bytes in all.</li>
+ *     <li>{@link #END}: the end of the segment. The unwritten remainder of a segment is zero, so a segment whose writer
+ *     did not close it is read up to its last complete record.</li>
+ * </ul>
+ * All values are big-endian.
+ */
+final class SplitLogFormat {
+
+    /**
+     * Identifies a segment, "WSL" followed by a version number.
+     */
+    static final int MAGIC = 0x57534C01;
+
+    static final int HEADER_LENGTH = Integer.BYTES;
+
+    static final byte END = 0;
+    static final byte DESCRIPTION = 1;
+    static final byte SPLIT = 2;
+
+    static final int DESCRIPTION_HEADER_LENGTH = 1 + Integer.BYTES + Short.BYTES;
+    static final int SPLIT_LENGTH = 1 + Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    static final int MAX_DESCRIPTION_BYTES = 0xFFFF;
+
+    private static final String SUFFIX = ".wsl";
+
+    private SplitLogFormat() {
+    }
+
+    static Path segmentPath(final Path directory, final String baseName, final int index) {
+        return directory.resolve(String.format("%s-%08d%s", baseName, index, SUFFIX));
+    }
+
+    /**
+     * Returns the indexes of the segments of the log, in ascending order.
+     */
+    static List<Integer> segmentIndexes(final Path directory, final String baseName) throws IOException {
+        final List<Integer> indexes = new ArrayList<>();
+        final String prefix = baseName + "-";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                final String digits = name.substring(prefix.length(), name.length() - SUFFIX.length());
+                if (digits.length() == 8 && digits.chars().allMatch(Character::isDigit)) {
+                    indexes.add(Integer.parseInt(digits));
+                }
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+}
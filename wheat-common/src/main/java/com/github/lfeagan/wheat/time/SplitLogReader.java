@@ -0,0 +1,221 @@
+package com.github.lfeagan.wheat.time;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.lfeagan.wheat.time.SplitLogFormat.DESCRIPTION;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.END;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.MAGIC;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.SPLIT;
+
+/**
+ * Streams the splits of a log written by {@link SplitLogWriter}, in the order they were appended. The reader is a
+ * cursor: {@link #next()} advances to the next split, whose fields are then available from the getters, so reading
+ * does not allocate per split. Each segment is memory-mapped in turn, so a log of many gigabytes is read without
+ * loading it into the heap.
+ * <p>
+ * The segments to read are listed when the reader is opened. The writer writes the kind of each record after its
+ * fields, so a segment whose writer did not close it, such as because the process crashed, is read up to its last
+ * complete record.
+ */
+public final class SplitLogReader implements AutoCloseable {
+
+    private final Path directory;
+    private final String baseName;
+    private final List<Integer> segmentIndexes;
+    private int nextSegment = 0;
+    private MappedByteBuffer segment;
+
+    /**
+     * The descriptions of the current segment, by id.
+     */
+    private String[] descriptions = new String[16];
+    private int descriptionCount = 0;
+
+    private long timestamp;
+    private long elapsed;
+    private int descriptionId;
+    private long threadId;
+
+    private SplitLogReader(final Path directory, final String baseName, final List<Integer> segmentIndexes) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.segmentIndexes = segmentIndexes;
+    }
+
+    /**
+     * Opens a reader of the segments of the log that exist when it is opened.
+     * @param directory the directory of the log
+     * @param baseName the prefix of the names of the segment files
+     * @return an open reader positioned before the first split
+     * @throws IOException if the directory cannot be listed
+     */
+    public static SplitLogReader open(final Path directory, final String baseName) throws IOException {
+        return new SplitLogReader(directory, baseName, SplitLogFormat.segmentIndexes(directory, baseName));
+    }
+
+    /**
+     * Returns the number of segments the reader reads.
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return segmentIndexes.size();
+    }
+
+    /**
+     * Advances to the next split.
+     * @return <code>true</code> if there is another split, or <code>false</code> if the end of the log was reached
+     * @throws IOException if a segment cannot be mapped or is not a split log segment
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment == null || !segment.hasRemaining()) {
+                if (!mapNextSegment()) {
+                    return false;
+                }
+                continue;
+            }
+            final byte kind = segment.get();
+            try {
+                if (kind == SPLIT) {
+                    timestamp = segment.getLong();
+                    elapsed = segment.getLong();
+                    descriptionId = segment.getInt();
+                    threadId = segment.getLong();
+                    if (descriptionId < 0 || descriptionId >= descriptionCount) {
+                        throw new IOException("Split refers to undefined description " + descriptionId + " in " + currentSegment());
+                    }
+                    return true;
+                } else if (kind == DESCRIPTION) {
+                    readDescription();
+                } else if (kind == END) {
+                    segment = null;
+                } else {
+                    throw new IOException("Unknown record kind " + kind + " in " + currentSegment());
+                }
+            } catch (BufferUnderflowException e) {
+                // the segment ends partway through its last record, such as if the file was truncated
+                segment = null;
+            }
+        }
+    }
+
+    private void readDescription() throws IOException {
+        final int id = segment.getInt();
+        final int length = segment.getShort() & 0xFFFF;
+        if (id != descriptionCount) {
+            throw new IOException("Description " + id + " is out of order in " + currentSegment());
+        }
+        final byte[] bytes = new byte[length];
+        segment.get(bytes);
+        if (descriptionCount == descriptions.length) {
+            descriptions = Arrays.copyOf(descriptions, descriptionCount * 2);
+        }
+        descriptions[descriptionCount++] = new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean mapNextSegment() throws IOException {
+        segment = null;
+        descriptionCount = 0;
+        if (nextSegment == segmentIndexes.size()) {
+            return false;
+        }
+        final Path path = SplitLogFormat.segmentPath(directory, baseName, segmentIndexes.get(nextSegment++));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        if (segment.remaining() < Integer.BYTES || segment.getInt() != MAGIC) {
+            throw new IOException(path + " is not a split log segment");
+        }
+        return true;
+    }
+
+    private Path currentSegment() {
+        return SplitLogFormat.segmentPath(directory, baseName, segmentIndexes.get(nextSegment - 1));
+    }
+
+    /**
+     * Returns the start of the current split.
+     * @return the start in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the elapsed time of the current split.
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the id of the description of the current split. Ids are only unique within a segment.
+     * @return the description id
+     */
+    public int getDescriptionId() {
+        return descriptionId;
+    }
+
+    /**
+     * Returns the description of the current split.
+     * @return the description
+     */
+    public String getDescription() {
+        return descriptions[descriptionId];
+    }
+
+    /**
+     * Returns the id of the thread the current split is attributed to, which is the thread that appended it unless
+     * the writer was given another thread id.
+     * @return the thread id
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * Records the elapsed time of every remaining split in the timer named by its description.
+     * @param registry the registry to record into
+     * @return the number of splits recorded
+     * @throws IOException if a segment cannot be read
+     */
+    public long aggregate(final TimerRegistry registry) throws IOException {
+        long count = 0L;
+        TimerRegistry.Timer[] timers = new TimerRegistry.Timer[16];
+        int segmentOfTimers = -1;
+        while (next()) {
+            if (segmentOfTimers != nextSegment) {
+                // description ids are only valid within a segment
+                Arrays.fill(timers, null);
+                segmentOfTimers = nextSegment;
+            }
+            if (descriptionId >= timers.length) {
+                timers = Arrays.copyOf(timers, Math.max(timers.length * 2, descriptionId + 1));
+            }
+            TimerRegistry.Timer timer = timers[descriptionId];
+            if (timer == null) {
+                timer = registry.timer(descriptions[descriptionId]);
+                timers[descriptionId] = timer;
+            }
+            timer.record(elapsed);
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        nextSegment = segmentIndexes.size();
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.github.lfeagan.wheat.time;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.lfeagan.wheat.time.SplitLogFormat.DESCRIPTION;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.DESCRIPTION_HEADER_LENGTH;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.HEADER_LENGTH;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.MAGIC;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.MAX_DESCRIPTION_BYTES;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.SPLIT;
+import static com.github.lfeagan.wheat.time.SplitLogFormat.SPLIT_LENGTH;
+
+/**
+ * Appends splits to a binary log of memory-mapped segment files, such as to persist every split of a long-running
+ * job for offline analysis with {@link SplitLogReader}. Each split is written as a fixed-length record of its start
+ * time since the epoch, its elapsed time, the id of its description and the id of the thread it is attributed to,
+ * and each description is written once per segment. Splits are attributed to the appending thread unless a thread
+ * id is supplied, such as that of the thread that recorded them when another thread persists them. When a segment is full, the writer rolls over to a new one.
+ * <p>
+ * Appending copies the record into the mapped segment and does not allocate once each description has been seen,
+ * so the cost of persisting a split is a few stores. The operating system writes the segment back to disk in the
+ * background; {@link #force()} waits for what has been appended to reach the disk. What has been appended survives
+ * the process crashing, but not the machine, until it is forced.
+ * <p>
+ * Splits are converted to times since the epoch with the time source of the writer, which should be the time source
+ * of the stop watches whose splits are appended. Appending is synchronized, so a writer may be shared by many
+ * threads. Opening a writer on an existing log appends new segments after the existing ones.
+ */
+public final class SplitLogWriter implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final Path directory;
+    private final String baseName;
+    private final int segmentSize;
+
+    /**
+     * The difference between the wall-clock time and the monotonic time of the time source, in nanoseconds.
+     */
+    private final long epochOffsetNanos;
+
+    /**
+     * The ids of the descriptions that have been written to the current segment.
+     */
+    private final Map<String, Integer> descriptionIds = new HashMap<>();
+
+    private final SplitRecorder.SplitVisitor appender = this::appendUnchecked;
+
+    /**
+     * The thread id that the splits of the stop watch being appended are attributed to.
+     */
+    private long appenderThreadId;
+
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private long appended = 0L;
+    private boolean closed = false;
+
+    private SplitLogWriter(final Path directory, final String baseName, final int segmentSize,
+                           final TimeSource timeSource, final int segmentIndex) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.segmentSize = segmentSize;
+        this.epochOffsetNanos = timeSource.currentTimeMillis() * 1_000_000L - timeSource.nanoTime();
+        this.segmentIndex = segmentIndex;
+    }
+
+    /**
+     * Opens a writer with the system time source and the default segment size.
+     * @param directory the directory of the log, which is created if it does not exist
+     * @param baseName the prefix of the names of the segment files
+     * @return an open writer
+     * @throws IOException if the first segment cannot be created
+     */
+    public static SplitLogWriter open(final Path directory, final String baseName) throws IOException {
+        return open(directory, baseName, DEFAULT_SEGMENT_SIZE, TimeSource.system());
+    }
+
+    /**
+     * Opens a writer.
+     * @param directory the directory of the log, which is created if it does not exist
+     * @param baseName the prefix of the names of the segment files
+     * @param segmentSize the size of each segment file in bytes, at least 4096
+     * @param timeSource the time source of the stop watches whose splits are appended
+     * @return an open writer
+     * @throws IOException if the first segment cannot be created
+     */
+    public static SplitLogWriter open(final Path directory, final String baseName, final int segmentSize,
+                                      final TimeSource timeSource) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        Files.createDirectories(directory);
+        final List<Integer> existing = SplitLogFormat.segmentIndexes(directory, baseName);
+        final int first = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+        final SplitLogWriter writer = new SplitLogWriter(directory, baseName, segmentSize, timeSource, first);
+        writer.map();
+        return writer;
+    }
+
+    /**
+     * Appends every split of the stop watch, attributed to the current thread.
+     * @param stopWatch the stop watch whose splits to append
+     * @throws IOException if a new segment cannot be created
+     */
+    public void append(final SplitNanoStopWatch stopWatch) throws IOException {
+        append(stopWatch, Thread.currentThread().getId());
+    }
+
+    /**
+     * Appends every split of the stop watch, attributed to the specified thread.
+     * @param stopWatch the stop watch whose splits to append
+     * @param threadId the id of the thread the splits are attributed to, such as the thread that recorded them
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized void append(final SplitNanoStopWatch stopWatch, final long threadId) throws IOException {
+        appenderThreadId = threadId;
+        try {
+            stopWatch.forEachSplit(appender);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Appends a split, attributed to the current thread.
+     * @param description the description of the split
+     * @param start the start of the split, from the time source of the writer
+     * @param stop the stop of the split, from the time source of the writer
+     * @throws IOException if a new segment cannot be created
+     */
+    public void append(final String description, final long start, final long stop) throws IOException {
+        append(description, start, stop, Thread.currentThread().getId());
+    }
+
+    /**
+     * Appends a split, attributed to the specified thread.
+     * @param description the description of the split
+     * @param start the start of the split, from the time source of the writer
+     * @param stop the stop of the split, from the time source of the writer
+     * @param threadId the id of the thread the split is attributed to
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized void append(final String description, final long start, final long stop,
+                                    final long threadId) throws IOException {
+        ensureOpen();
+        Integer id = descriptionIds.get(description);
+        if (id == null) {
+            final byte[] bytes = encode(description);
+            if (segment.remaining() < DESCRIPTION_HEADER_LENGTH + bytes.length + SPLIT_LENGTH) {
+                roll();
+            }
+            id = putDescription(description, bytes);
+        } else if (segment.remaining() < SPLIT_LENGTH) {
+            roll();
+            id = putDescription(description, encode(description));
+        }
+        putSplit(start, stop, id, threadId);
+    }
+
+    private void appendUnchecked(final long start, final long stop, final String description) {
+        try {
+            append(description, start, stop, appenderThreadId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] encode(final String description) {
+        final byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        // a description and a split that refers to it must fit in an empty segment
+        final int maxLength = Math.min(MAX_DESCRIPTION_BYTES, segmentSize - HEADER_LENGTH - DESCRIPTION_HEADER_LENGTH - SPLIT_LENGTH);
+        if (bytes.length > maxLength) {
+            throw new IllegalArgumentException("description must not be longer than " + maxLength + " bytes in UTF-8");
+        }
+        return bytes;
+    }
+
+    private int putDescription(final String description, final byte[] bytes) {
+        final int id = descriptionIds.size();
+        final int position = segment.position();
+        segment.position(position + 1);
+        segment.putInt(id).putShort((short) bytes.length).put(bytes);
+        segment.put(position, DESCRIPTION);
+        descriptionIds.put(description, id);
+        return id;
+    }
+
+    private void putSplit(final long start, final long stop, final int descriptionId, final long threadId) {
+        // the kind is written last, so a reader never sees the kind of a record whose fields are incomplete
+        final int position = segment.position();
+        segment.putLong(position + 1, start + epochOffsetNanos)
+                .putLong(position + 9, stop - start)
+                .putInt(position + 17, descriptionId)
+                .putLong(position + 21, threadId)
+                .put(position, SPLIT);
+        segment.position(position + SPLIT_LENGTH);
+        ++appended;
+    }
+
+    /**
+     * Returns the number of splits appended by this writer.
+     * @return the number of splits
+     */
+    public synchronized long getAppendedCount() {
+        return appended;
+    }
+
+    /**
+     * Returns the path of the segment being appended to.
+     * @return the path of the current segment
+     */
+    public synchronized Path getCurrentSegment() {
+        return SplitLogFormat.segmentPath(directory, baseName, segmentIndex);
+    }
+
+    /**
+     * Waits for every split appended so far to be written to the disk.
+     */
+    public synchronized void force() {
+        ensureOpen();
+        segment.force();
+    }
+
+    /**
+     * Forces the current segment to the disk and closes the writer. The unwritten remainder of the segment is left
+     * as zeros, which readers treat as its end.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            segment.force();
+            segment = null;
+            closed = true;
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Split log writer is closed");
+        }
+    }
+
+    private void roll() throws IOException {
+        segment.force();
+        ++segmentIndex;
+        map();
+    }
+
+    private void map() throws IOException {
+        final Path path = SplitLogFormat.segmentPath(directory, baseName, segmentIndex);
+        // the mapping remains valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, segmentSize);
+        }
+        segment.putInt(MAGIC);
+        descriptionIds.clear();
+    }
+
+}
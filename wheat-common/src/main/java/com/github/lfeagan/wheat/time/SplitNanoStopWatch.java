@@ -1,7 +1,6 @@
 package com.github.lfeagan.wheat.time;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.List;
 import java.util.regex.Matcher;
 
 import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_SECOND;
@@ -20,10 +19,25 @@ public class SplitNanoStopWatch {
     /**
      * The time splits.
      */
-    private final Deque<Split> splits = new ConcurrentLinkedDeque<>();
+    private final SplitRecorder splits;
+
+    /**
+     * The tree of nested spans, created when the first span is entered.
+     */
+    private SpanArena spans;
+
+    /**
+     * The scope returned by every call to {@link #enter(String)}, created with {@link #spans}.
+     */
+    private Scope scope;
 
     protected SplitNanoStopWatch(NanoStopWatch stopWatch) {
+        this(stopWatch, new UnboundedSplitRecorder());
+    }
+
+    SplitNanoStopWatch(NanoStopWatch stopWatch, SplitRecorder splits) {
         this.stopWatch = stopWatch;
+        this.splits = splits;
     }
 
     public static SplitNanoStopWatch createStarted() {
@@ -34,6 +48,109 @@ public class SplitNanoStopWatch {
         return new SplitNanoStopWatch(NanoStopWatch.createUnstarted());
     }
 
+    /**
+     * Creates a started stop watch that measures time with the specified time source.
+     * @param timeSource the source of the times that are measured
+     * @return a started stop watch
+     */
+    public static SplitNanoStopWatch createStarted(final TimeSource timeSource) {
+        return new SplitNanoStopWatch(NanoStopWatch.createStarted(timeSource));
+    }
+
+    /**
+     * Creates an unstarted stop watch that measures time with the specified time source.
+     * @param timeSource the source of the times that are measured
+     * @return an unstarted stop watch
+     */
+    public static SplitNanoStopWatch createUnstarted(final TimeSource timeSource) {
+        return new SplitNanoStopWatch(NanoStopWatch.createUnstarted(timeSource));
+    }
+
+    /**
+     * Creates a started stop watch that records splits into preallocated primitive ring buffers instead of
+     * allocating a {@link Split} per call. Once <code>capacity</code> splits have been recorded, each new split
+     * overwrites the oldest one.
+     * @param capacity the maximum number of splits retained
+     * @return a started stop watch
+     */
+    public static SplitNanoStopWatch createStarted(final int capacity) {
+        final SplitNanoStopWatch snsw = createUnstarted(capacity);
+        snsw.start();
+        return snsw;
+    }
+
+    /**
+     * Creates an unstarted stop watch that records splits into preallocated primitive ring buffers.
+     * @param capacity the maximum number of splits retained
+     * @return an unstarted stop watch
+     * @see #createStarted(int)
+     */
+    public static SplitNanoStopWatch createUnstarted(final int capacity) {
+        return new SplitNanoStopWatch(NanoStopWatch.createUnstarted(), new RingBufferSplitRecorder(capacity));
+    }
+
+    /**
+     * Creates a started stop watch if the policy samples it, otherwise returns a shared stop watch whose methods do
+     * nothing and which never records splits or spans.
+     * @param policy the sampling policy
+     * @return a started stop watch, or the unsampled stop watch
+     * @see #getSamplingWeight()
+     */
+    public static SplitNanoStopWatch createStarted(final SamplingPolicy policy) {
+        return createStarted(policy, TimeSource.system());
+    }
+
+    /**
+     * Creates a started stop watch that measures time with the specified time source if the policy samples it,
+     * otherwise returns the unsampled stop watch.
+     * @param policy the sampling policy
+     * @param timeSource the source of the times that are measured
+     * @return a started stop watch, or the unsampled stop watch
+     * @see #createStarted(SamplingPolicy)
+     */
+    public static SplitNanoStopWatch createStarted(final SamplingPolicy policy, final TimeSource timeSource) {
+        final SplitNanoStopWatch snsw = createUnstarted(policy, timeSource);
+        snsw.start();
+        return snsw;
+    }
+
+    /**
+     * Creates an unstarted stop watch if the policy samples it, otherwise returns a shared stop watch whose methods
+     * do nothing and which never records splits or spans.
+     * @param policy the sampling policy
+     * @return an unstarted stop watch, or the unsampled stop watch
+     * @see #getSamplingWeight()
+     */
+    public static SplitNanoStopWatch createUnstarted(final SamplingPolicy policy) {
+        return createUnstarted(policy, TimeSource.system());
+    }
+
+    /**
+     * Creates an unstarted stop watch that measures time with the specified time source if the policy samples it,
+     * otherwise returns the unsampled stop watch.
+     * @param policy the sampling policy
+     * @param timeSource the source of the times that are measured
+     * @return an unstarted stop watch, or the unsampled stop watch
+     * @see #createUnstarted(SamplingPolicy)
+     */
+    public static SplitNanoStopWatch createUnstarted(final SamplingPolicy policy, final TimeSource timeSource) {
+        final NanoStopWatch stopWatch = NanoStopWatch.createUnstarted(policy, timeSource);
+        if (stopWatch.getSamplingWeight() == 0L) {
+            return Unsampled.INSTANCE;
+        }
+        return new SplitNanoStopWatch(stopWatch);
+    }
+
+    /**
+     * Returns the number of stop watches this one represents, which is one unless it was created with a
+     * {@link SamplingPolicy}, and zero if it was not sampled. Aggregates of sampled splits and spans should count
+     * each elapsed time this many times.
+     * @return the sampling weight
+     */
+    public long getSamplingWeight() {
+        return stopWatch.getSamplingWeight();
+    }
+
     public void start() {
         stopWatch.start();
     }
@@ -52,6 +169,9 @@ public class SplitNanoStopWatch {
     public void reset() {
         stopWatch.reset();
         splits.clear();
+        if (spans != null) {
+            spans.clear();
+        }
     }
 
     /**
@@ -59,6 +179,16 @@ public class SplitNanoStopWatch {
      * @throws IllegalStateException if the stop watch has not been started
      */
     public void split() {
+        split("");
+    }
+
+    /**
+     * Creates a split with a description to provide context.
+     * @param description a meaningful description to provide context for the split, need not be unique
+     * @throws IllegalStateException if the stop watch has not been started
+     */
+    public void split(final String description) {
+        final long stop = stopWatch.timeSource.nanoTime();
         if (!stopWatch.isRunning()) {
             throw new IllegalStateException("Stop watch has not been started");
         }
@@ -66,64 +196,289 @@ public class SplitNanoStopWatch {
         if (splits.isEmpty()) {
             splitStart = stopWatch.start;
         } else {
-            splitStart = splits.peekLast().getStop();
+            splitStart = splits.lastStop();
         }
-        splits.add(new Split(splitStart));
+        splits.record(splitStart, stop, description);
     }
 
     /**
-     * Creates a split with a description to provide context.
+     * Creates a split with a description and records its elapsed time in the histogram.
      * @param description a meaningful description to provide context for the split, need not be unique
+     * @param histogram the histogram to record the elapsed time of the split in
      * @throws IllegalStateException if the stop watch has not been started
      */
-    public void split(final String description) {
+    public void split(final String description, final LatencyHistogram histogram) {
+        final long stop = stopWatch.timeSource.nanoTime();
         if (!stopWatch.isRunning()) {
             throw new IllegalStateException("Stop watch has not been started");
         }
-        final long splitStart;
-        if (splits.isEmpty()) {
-            splitStart = stopWatch.start;
-        } else {
-            splitStart = splits.peekLast().getStop();
-        }
-        splits.add(new Split(splitStart, description));
+        final long splitStart = splits.isEmpty() ? stopWatch.start : splits.lastStop();
+        splits.record(splitStart, stop, description);
+        histogram.record(stop - splitStart, stopWatch.getSamplingWeight());
     }
 
     public void splitFromNanoWatchStartTime(final String description) {
+        final long stop = stopWatch.timeSource.nanoTime();
         if (!stopWatch.isRunning()) {
             throw new IllegalStateException("Stop watch has not been started");
         }
-        splits.add(new Split(stopWatch.start, description));
+        splits.record(stopWatch.start, stop, description);
     }
 
     public Split[] getSplits() {
-        return splits.toArray(new Split[splits.size()]);
+        return splits.toArray();
     }
 
     public List<Split> getSplits(final String description) {
-        final List<Split> matches = new ArrayList<>();
-        for (Split split : splits) {
-            if (description.equals(split.getDescription())) {
-                matches.add(split);
-            }
-        }
-        return matches;
+        return splits.getSplits(description);
+    }
+
+    /**
+     * Returns the number of splits with the specified description.
+     * @param description the description to match exactly
+     * @return the number of matching splits
+     */
+    public int getSplitsCount(final String description) {
+        return splits.getSplitsCount(description);
+    }
+
+    /**
+     * Returns the sum of the elapsed time, in nanoseconds, of all splits with the specified description.
+     * @param description the description to match exactly
+     * @return the total elapsed time of the matching splits in nanoseconds
+     */
+    public long getSplitsTotalElapsed(final String description) {
+        return splits.getSplitsTotalElapsed(description);
     }
 
     public double getSplitsAverageElapsedTime(final String description) {
-        double avg=getSplits(description).stream().mapToDouble(Split::getElapsedSeconds)
-                .summaryStatistics().getAverage();
-        return avg;
+        return splits.getSplitsAverageElapsedTime(description);
     }
 
     public List<Split> getSplits(final Matcher descriptionMatcher) {
-        final List<Split> matches = new ArrayList<>();
-        for (Split split : splits) {
-            if (descriptionMatcher.reset(split.getDescription()).matches()) {
-                matches.add(split);
+        return splits.getSplits(descriptionMatcher);
+    }
+
+    /**
+     * Returns the count, total, minimum and maximum elapsed time of all splits with the specified description.
+     * @param description the description to match exactly
+     * @return the summary of the matching splits
+     */
+    public Summary getSplitsSummary(final String description) {
+        return splits.getSplitsSummary(description);
+    }
+
+    /**
+     * Enters a span nested within the innermost span that has been entered and not yet closed, if any. Closing the
+     * returned scope exits the span, so spans are typically entered in a try-with-resources statement:
+     * <pre>
+     * try (SplitNanoStopWatch.Scope s = watch.enter("fetch")) {
+     *     ...
+     * }
+     * </pre>
+     * The same scope object is returned by every call, and closing it exits the innermost open span, so entering a
+     * span does not allocate once the tree's storage has grown to fit. Spans must be entered and closed by a single
+     * thread, in nested order.
+     * @param name the name of the span, which need not be unique
+     * @return the scope that exits the span when closed
+     * @throws IllegalStateException if the stop watch has not been started
+     * @see CallTreeProfile
+     */
+    public Scope enter(final String name) {
+        if (!stopWatch.isRunning()) {
+            throw new IllegalStateException("Stop watch has not been started");
+        }
+        if (spans == null) {
+            spans = new SpanArena(SpanArena.DEFAULT_CAPACITY);
+            scope = new Scope(spans, stopWatch.timeSource);
+        }
+        spans.enter(name, stopWatch.timeSource.nanoTime());
+        return scope;
+    }
+
+    /**
+     * Returns the spans that have been entered, in the order they were entered.
+     * @return the spans, each of which identifies its parent by its index in the array
+     */
+    public Span[] getSpans() {
+        if (spans == null) {
+            return new Span[0];
+        }
+        final Span[] result = new Span[spans.size()];
+        final long[] self = spans.selfElapsed();
+        for (int index = 0; index < result.length; ++index) {
+            final int parent = spans.parent(index);
+            final int depth = (parent < 0) ? 0 : result[parent].depth + 1;
+            final boolean open = spans.isOpen(index);
+            result[index] = new Span(spans.name(index), parent, depth, open,
+                    open ? 0L : spans.elapsed(index), open ? 0L : self[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the span tree, or <code>null</code> if no span has been entered.
+     */
+    SpanArena spans() {
+        return spans;
+    }
+
+    /**
+     * Returns the underlying stop watch.
+     */
+    NanoStopWatch stopWatch() {
+        return stopWatch;
+    }
+
+    /**
+     * Passes each split to the visitor in the order the splits were recorded, without creating split objects.
+     */
+    void forEachSplit(final SplitRecorder.SplitVisitor visitor) {
+        splits.forEach(visitor);
+    }
+
+    /**
+     * Returns the recorder of the splits.
+     */
+    SplitRecorder splitRecorder() {
+        return splits;
+    }
+
+    /**
+     * Exits the innermost open span of a stop watch when closed.
+     * @see SplitNanoStopWatch#enter(String)
+     */
+    public static final class Scope implements AutoCloseable {
+        private static final Scope UNSAMPLED = new Scope(null, null);
+
+        private final SpanArena spans;
+        private final TimeSource timeSource;
+
+        private Scope(final SpanArena spans, final TimeSource timeSource) {
+            this.spans = spans;
+            this.timeSource = timeSource;
+        }
+
+        /**
+         * Exits the innermost open span.
+         * @throws IllegalStateException if no span is open
+         */
+        @Override
+        public void close() {
+            if (spans != null) {
+                spans.exit(timeSource.nanoTime());
             }
         }
-        return matches;
+    }
+
+    /**
+     * The stop watch returned when a sampling policy declines to sample. It never records splits or spans.
+     */
+    private static final class Unsampled extends SplitNanoStopWatch {
+        static final SplitNanoStopWatch INSTANCE = new Unsampled();
+
+        private Unsampled() {
+            super(NanoStopWatch.createUnstarted(SamplingPolicy.never()));
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void split() {
+        }
+
+        @Override
+        public void split(final String description) {
+        }
+
+        @Override
+        public void split(final String description, final LatencyHistogram histogram) {
+        }
+
+        @Override
+        public void splitFromNanoWatchStartTime(final String description) {
+        }
+
+        @Override
+        public Scope enter(final String name) {
+            return Scope.UNSAMPLED;
+        }
+    }
+
+    /**
+     * A span entered with {@link SplitNanoStopWatch#enter(String)}.
+     */
+    public static final class Span {
+        final String name;
+        final int parent;
+        final int depth;
+        final boolean open;
+        final long elapsed;
+        final long selfElapsed;
+
+        Span(final String name, final int parent, final int depth, final boolean open, final long elapsed, final long selfElapsed) {
+            this.name = name;
+            this.parent = parent;
+            this.depth = depth;
+            this.open = open;
+            this.elapsed = elapsed;
+            this.selfElapsed = selfElapsed;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the index of the parent span, or -1 if the span is not nested.
+         * @return the index of the parent span
+         */
+        public int getParent() {
+            return this.parent;
+        }
+
+        public int getDepth() {
+            return this.depth;
+        }
+
+        /**
+         * Returns <code>true</code> if the span has not been closed, in which case its elapsed times are zero.
+         * @return whether the span is open
+         */
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        /**
+         * Returns the elapsed time of the span in nanoseconds, including the time of its children.
+         * @return the total elapsed time
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * Returns the elapsed time of the span in nanoseconds, excluding the time of its closed children.
+         * @return the self elapsed time
+         */
+        public long getSelfElapsed() {
+            return this.selfElapsed;
+        }
+
+        @Override
+        public String toString() {
+            return NanoStopWatch.toString(elapsed);
+        }
     }
 
     public static final class Split {
@@ -137,17 +492,21 @@ public class SplitNanoStopWatch {
         }
 
         public Split(final long start, final String description) {
+            this(start, System.nanoTime(), description);
+        }
+
+        Split(final long start, final long stop, final String description) {
             this.start = start;
-            this.stop = System.nanoTime();
+            this.stop = stop;
             this.elapsed = stop - start;
             this.description = description;
         }
 
-        private long getStart() {
+        long getStart() {
             return this.start;
         }
 
-        private long getStop() {
+        long getStop() {
             return this.stop;
         }
 
@@ -169,4 +528,55 @@ public class SplitNanoStopWatch {
         }
     }
 
+    /**
+     * Statistics of the elapsed times of the splits with a common description.
+     */
+    public static final class Summary {
+        final String description;
+        final int count;
+        final long total;
+        final long min;
+        final long max;
+
+        Summary(final String description, final int count, final long total, final long min, final long max) {
+            this.description = description;
+            this.count = count;
+            this.total = total;
+            this.min = min;
+            this.max = max;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public int getCount() {
+            return this.count;
+        }
+
+        public long getTotalElapsed() {
+            return this.total;
+        }
+
+        public long getMinElapsed() {
+            return this.min;
+        }
+
+        public long getMaxElapsed() {
+            return this.max;
+        }
+
+        public double getAverageElapsedSeconds() {
+            return (count == 0) ? 0.0d : ((double) this.total) / NANOS_PER_SECOND / count;
+        }
+
+        @Override
+        public String toString() {
+            return description + ": count=" + count
+                    + " total=" + NanoStopWatch.toString(total)
+                    + " min=" + NanoStopWatch.toString(min)
+                    + " max=" + NanoStopWatch.toString(max);
+        }
+    }
+
 }
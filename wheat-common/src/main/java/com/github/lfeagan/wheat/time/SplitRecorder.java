@@ -0,0 +1,50 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Storage strategy for the splits recorded by a {@link SplitNanoStopWatch}.
+ */
+interface SplitRecorder {
+
+    boolean isEmpty();
+
+    /**
+     * Returns the stop time of the most recently recorded split. Only valid when not empty.
+     * @return the stop time, in nanoseconds, of the last split
+     */
+    long lastStop();
+
+    void record(long start, long stop, String description);
+
+    void clear();
+
+    SplitNanoStopWatch.Split[] toArray();
+
+    List<SplitNanoStopWatch.Split> getSplits(String description);
+
+    List<SplitNanoStopWatch.Split> getSplits(Matcher descriptionMatcher);
+
+    int getSplitsCount(String description);
+
+    long getSplitsTotalElapsed(String description);
+
+    double getSplitsAverageElapsedTime(String description);
+
+    SplitNanoStopWatch.Summary getSplitsSummary(String description);
+
+    /**
+     * Passes each split to the visitor in the order the splits were recorded, without creating split objects.
+     * @param visitor the visitor
+     */
+    void forEach(SplitVisitor visitor);
+
+    /**
+     * Receives the fields of a split.
+     */
+    interface SplitVisitor {
+        void visit(long start, long stop, String description);
+    }
+
+}
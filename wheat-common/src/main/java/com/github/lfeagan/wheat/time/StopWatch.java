@@ -2,17 +2,46 @@ package com.github.lfeagan.wheat.time;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * A stop watch that measures wall-clock time in milliseconds.
+ * <p>
+ * A stop watch may be shared by threads that start and stop it and threads that poll its times. Updates are
+ * serialized by a {@link StampedLock}, but reads never acquire it: a reader reads the start and stop times
+ * optimistically and, if an update happened while it read them, yields to the updating thread and retries. Polling
+ * a stop watch therefore never blocks a thread that starts or stops it.
+ */
 public final class StopWatch {
 
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * The start and stop times, which are only written while holding the write lock.
+	 */
 	private long start = 0L;
 	private long stop = 0L;
 
-	public StopWatch() {
+	/**
+	 * The source of the times that are measured.
+	 */
+	private final TimeSource timeSource;
 
+	public StopWatch() {
+		this(TimeSource.system());
 	}
 
 	public StopWatch(boolean start) {
+		this(TimeSource.system(), start);
+	}
+
+	public StopWatch(final TimeSource timeSource) {
+		this.timeSource = timeSource;
+	}
+
+	public StopWatch(final TimeSource timeSource, final boolean start) {
+		this.timeSource = timeSource;
 		if (start) {
 			this.start();
 		}
@@ -22,9 +51,14 @@ public final class StopWatch {
 	 * Starts the stop watch by setting start to the current time and stop to
 	 * zero.
 	 */
-	public synchronized void start() {
-		start = System.currentTimeMillis();
-		stop = 0L;
+	public void start() {
+		final long stamp = lock.writeLock();
+		try {
+			start = timeSource.currentTimeMillis();
+			stop = 0L;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
 	}
 
 	/**
@@ -36,28 +70,57 @@ public final class StopWatch {
 	 *            if <code>true</code> the start time is set to the current
 	 *            time, otherwise it is untouched
 	 */
-	public synchronized void start(final boolean restart) {
-		if (start == 0L || restart) {
-			start = System.currentTimeMillis();
+	public void start(final boolean restart) {
+		final long stamp = lock.writeLock();
+		try {
+			if (start == 0L || restart) {
+				start = timeSource.currentTimeMillis();
+			}
+			stop = 0L;
+		} finally {
+			lock.unlockWrite(stamp);
 		}
-		stop = 0L;
 	}
 
-	public synchronized void stop() {
-		stop = System.currentTimeMillis();
+	public void stop() {
+		final long stamp = lock.writeLock();
+		try {
+			stop = timeSource.currentTimeMillis();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
 	}
 
-	public synchronized void reset() {
-		start = 0L;
-		stop = 0L;
+	public void reset() {
+		final long stamp = lock.writeLock();
+		try {
+			start = 0L;
+			stop = 0L;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
 	}
 
-	public synchronized long getStart() {
-		return this.start;
+	public long getStart() {
+		while (true) {
+			final long stamp = lock.tryOptimisticRead();
+			final long value = start;
+			if (lock.validate(stamp)) {
+				return value;
+			}
+			Thread.yield();
+		}
 	}
 
-	public synchronized long getStop() {
-		return this.stop;
+	public long getStop() {
+		while (true) {
+			final long stamp = lock.tryOptimisticRead();
+			final long value = stop;
+			if (lock.validate(stamp)) {
+				return value;
+			}
+			Thread.yield();
+		}
 	}
 
 	/**
@@ -67,47 +130,54 @@ public final class StopWatch {
 	 * @return the elapsed time in milliseconds, or zero if the watch has not
 	 *         been stopped
 	 */
-	public synchronized long getElapsed() {
-		if (stop != 0) {
-			return stop - start;
-		} else {
-			return 0;
+	public long getElapsed() {
+		while (true) {
+			final long stamp = lock.tryOptimisticRead();
+			final long startValue = start;
+			final long stopValue = stop;
+			if (lock.validate(stamp)) {
+				return (stopValue != 0L) ? stopValue - startValue : 0L;
+			}
+			Thread.yield();
 		}
 	}
-	
-	public synchronized long getCurrentElapsed() {
-		if (start == 0) {
+
+	public long getCurrentElapsed() {
+		final long startValue = getStart();
+		if (startValue == 0L) {
 			return 0L;
 		} else {
-			return System.currentTimeMillis() - start;
+			return timeSource.currentTimeMillis() - startValue;
 		}
 	}
 
-	public synchronized void printElapsedTime() {
-		if (stop != 0) {
-			System.out.println("Elapsed Time: " + getElapsed());
-		} else {
-			if (start == 0) {
-				System.out.println("Timer has not been started");
-			} else {
-				System.out.println("Timer has not been stopped");
-			}
-		}
+	public void printElapsedTime() {
+		System.out.println(describeElapsedTime());
 	}
 
-	public synchronized void printElapsedTime(final Writer writer) {
+	public void printElapsedTime(final Writer writer) {
 		try {
-			if (stop != 0) {
-				writer.write("Elapsed Time: " + getElapsed() + "\n");
-			} else {
-				if (start == 0) {
-					writer.write("Timer has not been started\n");
+			writer.write(describeElapsedTime() + "\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private String describeElapsedTime() {
+		while (true) {
+			final long stamp = lock.tryOptimisticRead();
+			final long startValue = start;
+			final long stopValue = stop;
+			if (lock.validate(stamp)) {
+				if (stopValue != 0L) {
+					return "Elapsed Time: " + (stopValue - startValue);
+				} else if (startValue == 0L) {
+					return "Timer has not been started";
 				} else {
-					writer.write("Timer has not been stopped\n");
+					return "Timer has not been stopped";
 				}
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
+			Thread.yield();
 		}
 	}
 
@@ -116,37 +186,79 @@ public final class StopWatch {
 		return toString(false);
 	}
 
-	public synchronized String toString(final boolean wantMsec) {
-		long elapsed = getElapsed();
-		long residual = elapsed;
-
-		long h = residual / 3600000L; residual %= 3600000L;
-		long m = residual / 60000L; residual %= 60000L;
-		long s = residual / 1000L; residual %= 1000L;
-
-		String msecStr = null;
-		if (wantMsec) {
-			StringBuilder sb = new StringBuilder(".");
-			if (residual >= 100L) {
-				// residual: [100,999]
-				sb.append(residual);
-			} else if ( residual > 10L) {
-				// residual: [10,99]
-				sb.append("0");
-				sb.append(residual);
-			} else {
-				// residual: [0,9]
-				sb.append("00");
-				sb.append(residual);
-			}
-			msecStr = sb.toString();
-		} else {
-			msecStr = "";
-		}
+	public String toString(final boolean wantMsec) {
+		final char[] chars = DurationFormatter.scratch();
+		return new String(chars, 0, DurationFormatter.formatMillis(getElapsed(), wantMsec, chars, 0));
+	}
+
+	/**
+	 * Appends the elapsed time, formatted as by {@link #toString(boolean)}, to the builder without allocating.
+	 * 
+	 * @param sb
+	 *            the builder to append to
+	 * @param wantMsec
+	 *            if <code>true</code> milliseconds are included
+	 * @return the builder
+	 */
+	public StringBuilder formatTo(final StringBuilder sb, final boolean wantMsec) {
+		final long elapsed = getElapsed();
+		final char[] chars = DurationFormatter.scratch();
+		return sb.append(chars, 0, DurationFormatter.formatMillis(elapsed, wantMsec, chars, 0));
+	}
+
+	/**
+	 * Appends the elapsed time, formatted as by {@link #toString(boolean)}, to the appendable without allocating.
+	 * 
+	 * @param appendable
+	 *            the appendable to append to
+	 * @param wantMsec
+	 *            if <code>true</code> milliseconds are included
+	 * @return the appendable
+	 * @throws IOException
+	 *             if the appendable throws
+	 */
+	public Appendable formatTo(final Appendable appendable, final boolean wantMsec) throws IOException {
+		final long elapsed = getElapsed();
+		final char[] chars = DurationFormatter.scratch();
+		DurationFormatter.append(chars, DurationFormatter.formatMillis(elapsed, wantMsec, chars, 0), appendable);
+		return appendable;
+	}
 
-//		String msecStr = (!(wantMsec)) ? "" : new StringBuilder().append(".").append((resid < 100L) ? "0" : (resid < 10L) ? "00" : "").append(resid).toString();
+	/**
+	 * Writes the elapsed time, formatted as by {@link #toString(boolean)}, into the array.
+	 * 
+	 * @param dst
+	 *            the array to write to
+	 * @param offset
+	 *            the index in the array to write the first character at
+	 * @param wantMsec
+	 *            if <code>true</code> milliseconds are included
+	 * @return the number of characters written
+	 * @throws IndexOutOfBoundsException
+	 *             if the array is too small, in which case nothing is written
+	 */
+	public int formatTo(final char[] dst, final int offset, final boolean wantMsec) {
+		final long elapsed = getElapsed();
+		final char[] chars = DurationFormatter.scratch();
+		return DurationFormatter.copy(chars, DurationFormatter.formatMillis(elapsed, wantMsec, chars, 0), dst, offset);
+	}
 
-		return ((h < 10L) ? "0" : "") + h + ":" + ((m < 10L) ? "0" : "") + m + ":" + ((s < 10L) ? "0" : "") + s + msecStr;
+	/**
+	 * Writes the elapsed time, formatted as by {@link #toString(boolean)}, into the buffer as ASCII.
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param wantMsec
+	 *            if <code>true</code> milliseconds are included
+	 * @return the buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer is too small, in which case nothing is written
+	 */
+	public ByteBuffer formatTo(final ByteBuffer buffer, final boolean wantMsec) {
+		final long elapsed = getElapsed();
+		final char[] chars = DurationFormatter.scratch();
+		DurationFormatter.put(chars, DurationFormatter.formatMillis(elapsed, wantMsec, chars, 0), buffer);
+		return buffer;
 	}
 
 }
@@ -0,0 +1,294 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Recycles {@link NanoStopWatch} and {@link SplitNanoStopWatch} instances so that timing a unit of work does not
+ * allocate once the pool is warm. Each thread keeps its own idle instances, so acquiring and releasing do not
+ * synchronize. An instance released on a different thread than it was acquired on joins the releasing thread's
+ * idle instances.
+ * <p>
+ * Releasing an instance resets it. Resetting a split stop watch clears its splits and spans but retains the capacity
+ * of their storage, so an instance that is reused for similar work records without allocating.
+ * <p>
+ * An instance must not be used after it is released. In debug mode, released instances are poisoned rather than
+ * recycled, and any later use of one, including releasing it again, throws an {@link IllegalStateException}. Debug
+ * mode allocates an instance per acquire and is intended for tests.
+ */
+public final class StopWatchPool {
+
+    public static final int DEFAULT_MAX_IDLE_PER_THREAD = 16;
+
+    private final TimeSource timeSource;
+    private final int maxIdlePerThread;
+    private final boolean debug;
+    private final ThreadLocal<ArrayDeque<NanoStopWatch>> idleNanoStopWatches = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<ArrayDeque<SplitNanoStopWatch>> idleSplitNanoStopWatches = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private StopWatchPool(final TimeSource timeSource, final int maxIdlePerThread, final boolean debug) {
+        this.timeSource = timeSource;
+        this.maxIdlePerThread = maxIdlePerThread;
+        this.debug = debug;
+    }
+
+    public static StopWatchPool create() {
+        return new StopWatchPool(TimeSource.system(), DEFAULT_MAX_IDLE_PER_THREAD, false);
+    }
+
+    /**
+     * Creates a pool.
+     * @param timeSource the time source of the pooled stop watches
+     * @param maxIdlePerThread the maximum number of idle instances of each class kept by each thread
+     * @param debug if <code>true</code> released instances are poisoned to detect use after release
+     * @return a new pool
+     */
+    public static StopWatchPool create(final TimeSource timeSource, final int maxIdlePerThread, final boolean debug) {
+        if (maxIdlePerThread < 0) {
+            throw new IllegalArgumentException("maxIdlePerThread must not be negative");
+        }
+        return new StopWatchPool(timeSource, maxIdlePerThread, debug);
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Returns an unstarted stop watch, reusing an idle one if possible.
+     * @return an unstarted stop watch
+     */
+    public NanoStopWatch acquireNanoStopWatch() {
+        if (debug) {
+            final NanoStopWatch nsw = NanoStopWatch.createUnstarted(timeSource);
+            nsw.poisonOnRelease = true;
+            return nsw;
+        }
+        final NanoStopWatch idle = idleNanoStopWatches.get().pollLast();
+        return (idle != null) ? idle : NanoStopWatch.createUnstarted(timeSource);
+    }
+
+    /**
+     * Returns a started stop watch, reusing an idle one if possible.
+     * @return a started stop watch
+     */
+    public NanoStopWatch acquireStartedNanoStopWatch() {
+        final NanoStopWatch nsw = acquireNanoStopWatch();
+        nsw.start();
+        return nsw;
+    }
+
+    /**
+     * Returns an unstarted split stop watch with no splits, reusing an idle one if possible.
+     * @return an unstarted split stop watch
+     */
+    public SplitNanoStopWatch acquireSplitNanoStopWatch() {
+        if (debug) {
+            return new CheckedSplitNanoStopWatch(NanoStopWatch.createUnstarted(timeSource));
+        }
+        final SplitNanoStopWatch idle = idleSplitNanoStopWatches.get().pollLast();
+        return (idle != null) ? idle : SplitNanoStopWatch.createUnstarted(timeSource);
+    }
+
+    /**
+     * Returns a started split stop watch with no splits, reusing an idle one if possible.
+     * @return a started split stop watch
+     */
+    public SplitNanoStopWatch acquireStartedSplitNanoStopWatch() {
+        final SplitNanoStopWatch snsw = acquireSplitNanoStopWatch();
+        snsw.start();
+        return snsw;
+    }
+
+    /**
+     * Resets the stop watch and makes it available to be acquired again. Stop watches that were not created by a pool
+     * with the same time source, or that were created with a sampling policy, are not recycled.
+     * @param nsw the stop watch, which must not be used after it is released
+     * @throws IllegalStateException in debug mode, if the stop watch has already been released
+     */
+    public void release(final NanoStopWatch nsw) {
+        if (nsw.poisonOnRelease) {
+            nsw.poison();
+            return;
+        }
+        if (!isRecyclable(nsw)) {
+            return;
+        }
+        nsw.reset();
+        final ArrayDeque<NanoStopWatch> idle = idleNanoStopWatches.get();
+        if (idle.size() < maxIdlePerThread) {
+            idle.addLast(nsw);
+        }
+    }
+
+    /**
+     * Resets the stop watch, clearing its splits and spans but retaining their capacity, and makes it available to be
+     * acquired again. Stop watches that were not created by a pool with the same time source, or that were created
+     * with a sampling policy or a bounded capacity, are not recycled.
+     * @param snsw the stop watch, which must not be used after it is released
+     * @throws IllegalStateException in debug mode, if the stop watch has already been released
+     */
+    public void release(final SplitNanoStopWatch snsw) {
+        if (snsw instanceof CheckedSplitNanoStopWatch) {
+            ((CheckedSplitNanoStopWatch) snsw).release();
+            return;
+        }
+        if (snsw.getClass() != SplitNanoStopWatch.class || !(snsw.splitRecorder() instanceof UnboundedSplitRecorder)
+                || !isRecyclable(snsw.stopWatch())) {
+            return;
+        }
+        snsw.reset();
+        final ArrayDeque<SplitNanoStopWatch> idle = idleSplitNanoStopWatches.get();
+        if (idle.size() < maxIdlePerThread) {
+            idle.addLast(snsw);
+        }
+    }
+
+    private boolean isRecyclable(final NanoStopWatch nsw) {
+        return !nsw.poisonOnRelease && nsw.getSamplingWeight() == 1L && nsw.getTimeSource() == timeSource;
+    }
+
+    /**
+     * A split stop watch that throws if used after it is released.
+     */
+    private static final class CheckedSplitNanoStopWatch extends SplitNanoStopWatch {
+        private boolean released = false;
+
+        CheckedSplitNanoStopWatch(final NanoStopWatch stopWatch) {
+            super(stopWatch, new UnboundedSplitRecorder());
+        }
+
+        void release() {
+            check();
+            released = true;
+        }
+
+        private void check() {
+            if (released) {
+                throw new IllegalStateException("Stop watch used after it was released to the pool");
+            }
+        }
+
+        @Override
+        public long getSamplingWeight() {
+            check();
+            return super.getSamplingWeight();
+        }
+
+        @Override
+        public void start() {
+            check();
+            super.start();
+        }
+
+        @Override
+        public void stop() {
+            check();
+            super.stop();
+        }
+
+        @Override
+        public boolean isRunning() {
+            check();
+            return super.isRunning();
+        }
+
+        @Override
+        public void reset() {
+            check();
+            super.reset();
+        }
+
+        @Override
+        public void split() {
+            check();
+            super.split();
+        }
+
+        @Override
+        public void split(final String description) {
+            check();
+            super.split(description);
+        }
+
+        @Override
+        public void split(final String description, final LatencyHistogram histogram) {
+            check();
+            super.split(description, histogram);
+        }
+
+        @Override
+        public void splitFromNanoWatchStartTime(final String description) {
+            check();
+            super.splitFromNanoWatchStartTime(description);
+        }
+
+        @Override
+        public Split[] getSplits() {
+            check();
+            return super.getSplits();
+        }
+
+        @Override
+        public List<Split> getSplits(final String description) {
+            check();
+            return super.getSplits(description);
+        }
+
+        @Override
+        public int getSplitsCount(final String description) {
+            check();
+            return super.getSplitsCount(description);
+        }
+
+        @Override
+        public long getSplitsTotalElapsed(final String description) {
+            check();
+            return super.getSplitsTotalElapsed(description);
+        }
+
+        @Override
+        public double getSplitsAverageElapsedTime(final String description) {
+            check();
+            return super.getSplitsAverageElapsedTime(description);
+        }
+
+        @Override
+        public List<Split> getSplits(final Matcher descriptionMatcher) {
+            check();
+            return super.getSplits(descriptionMatcher);
+        }
+
+        @Override
+        public Summary getSplitsSummary(final String description) {
+            check();
+            return super.getSplitsSummary(description);
+        }
+
+        @Override
+        public Scope enter(final String name) {
+            check();
+            return super.enter(name);
+        }
+
+        @Override
+        public Span[] getSpans() {
+            check();
+            return super.getSpans();
+        }
+
+        @Override
+        SpanArena spans() {
+            check();
+            return super.spans();
+        }
+
+        @Override
+        void forEachSplit(final SplitRecorder.SplitVisitor visitor) {
+            check();
+            super.forEachSplit(visitor);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.github.lfeagan.wheat.time;
+
+/**
+ * Reads the system clocks directly.
+ */
+final class SystemTimeSource implements TimeSource {
+
+    static final SystemTimeSource INSTANCE = new SystemTimeSource();
+
+    private SystemTimeSource() {}
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "system";
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.github.lfeagan.wheat.time;
+
+/**
+ * A source of the monotonic and wall-clock times that stop watches measure with. Stop watches use
+ * {@link #system()} unless another source is supplied when they are created, which allows precision to be traded for
+ * cost with a {@link CachedTimeSource}, or time to be controlled by tests with a {@link ManualTimeSource}.
+ */
+public interface TimeSource {
+
+    /**
+     * Returns the current value of a monotonic time source, in nanoseconds, with the same meaning as
+     * {@link System#nanoTime()}. Only the difference between two values is meaningful.
+     * @return the monotonic time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Returns the current time in milliseconds since the epoch, with the same meaning as
+     * {@link System#currentTimeMillis()}.
+     * @return the wall-clock time in milliseconds
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns the time source that reads {@link System#nanoTime()} and {@link System#currentTimeMillis()} directly.
+     * @return the system time source
+     */
+    static TimeSource system() {
+        return SystemTimeSource.INSTANCE;
+    }
+
+}
@@ -3,22 +3,58 @@ package com.github.lfeagan.wheat.time;
 import org.threeten.extra.PeriodDuration;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.LongBuffer;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public final class TimeUtils {
 
     private static final long NANOS_PER_SECOND_LONG = 1000000000L;
 
+    /**
+     * The number of seconds beyond which a duration can no longer be expressed as a long number of nanoseconds.
+     */
+    private static final long MAX_SECONDS_AS_NANOS = Long.MAX_VALUE / NANOS_PER_SECOND_LONG - 1L;
+
+    private static final ThreadLocal<Rfc3339Parser> RFC3339_PARSER = ThreadLocal.withInitial(Rfc3339Parser::new);
+
+    private static final ThreadLocal<Rfc3339Formatter> RFC3339_FORMATTER = ThreadLocal.withInitial(Rfc3339Formatter::create);
+
+    /**
+     * Parses an RFC 3339 timestamp, accepting the same text as {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}.
+     * Timestamps are parsed by an {@link Rfc3339Parser} kept for each thread; only text that it rejects is parsed
+     * again by the formatter, to throw the formatter's exception.
+     * @param dateTime the timestamp to parse
+     * @return the instant of the timestamp
+     * @throws java.time.format.DateTimeParseException if the text is not a valid timestamp
+     */
     public static Instant instantFromRFC3339(String dateTime) {
+        final Rfc3339Parser parser = RFC3339_PARSER.get();
+        if (parser.parse(dateTime)) {
+            return parser.toInstant();
+        }
         return Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(dateTime));
     }
 
+    /**
+     * Formats the instant as an RFC 3339 timestamp in UTC, the same as {@link Instant#toString()}, with a formatter
+     * kept for each thread so that the date, hour and minute are only rendered when they change.
+     * @param instant the instant to format
+     * @return the timestamp, which {@link #instantFromRFC3339(String)} parses back to the instant
+     * @see Rfc3339Formatter
+     */
+    public static String instantToRFC3339(Instant instant) {
+        return RFC3339_FORMATTER.get().format(instant);
+    }
+
     /**
      * Floors the timestamp to the specified origin, as though timestamps are in a finite field modulo the interval.
      * Put another way, shifts the timestamp backwards in time to the nearest (to the timestamp) interval offset by an integral multiple from the origin.
-     * The minimum supported precision is milliseconds.
+     * Nanosecond precision is supported.
      * @param timestamp
      * @param origin
      * @param interval
@@ -64,22 +100,30 @@ public final class TimeUtils {
             return timestamp;
         }
 
-        final ZonedDateTime zonedTimestamp = ZonedDateTime.ofInstant(timestamp, timeZone);
-        ZonedDateTime alignedTime = ZonedDateTime.ofInstant(origin, timeZone);
+        // whole months or whole days can usually be estimated directly rather than stepped one period at a time
+        if (interval.getDuration().isZero()) {
+            final Instant alignedTime = CalendarAlignment.align(timestamp, origin, interval.getPeriod(), timeZone);
+            if (alignedTime != null) {
+                return alignedTime;
+            }
+        }
+
+        // step with the zone's precomputed transitions rather than ZonedDateTime, which resolves offsets identically
+        final Period period = interval.getPeriod();
+        final Duration duration = interval.getDuration();
+        final ZoneTransitionTable.Cursor alignedTime = ZoneTransitionTable.of(timeZone).cursor(origin);
         // determine if we need to move forwards or backwards in time from the origin
         if (timestamp.isBefore(origin)) {
-            while (alignedTime.isAfter(zonedTimestamp)) {
-                alignedTime = alignedTime.minus(interval);
+            while (alignedTime.compareTo(timestamp) > 0) {
+                alignedTime.minus(period, duration);
             }
         } else {
-            while (alignedTime.isBefore(zonedTimestamp)) {
-                alignedTime = alignedTime.plus(interval);
+            while (alignedTime.compareTo(timestamp) < 0) {
+                alignedTime.plus(period, duration);
             }
-            if (alignedTime.equals(zonedTimestamp)) {
-                // do nothing
-            } else {
+            if (alignedTime.compareTo(timestamp) != 0) {
                 // move back one interval
-                alignedTime = alignedTime.minus(interval);
+                alignedTime.minus(period, duration);
             }
         }
         return alignedTime.toInstant();
@@ -87,7 +131,7 @@ public final class TimeUtils {
 
     /**
      * Aligns the specified timestamp with the nearest period interval integrally offset from the origin time.
-     * Minimum supported precision is milliseconds.
+     * Nanosecond precision is supported.
      * @param timestamp
      * @param origin
      * @param interval
@@ -99,45 +143,233 @@ public final class TimeUtils {
 
     /**
      * Aligns the specified timestamp with the nearest, older duration interval integrally offset from the origin time.
-     * Minimum supported precision is milliseconds.
+     * Nanosecond precision is supported and the alignment is computed in constant time.
      * Think of this as performing the floor function in a finite field of timestamps modulo the interval.
      * @param timestamp
      * @param origin
-     * @param interval
+     * @param interval a positive duration
      * @return
      */
     public static Instant alignWithInterval(Instant timestamp, final Instant origin, final Duration interval) {
         Objects.requireNonNull(timestamp, "timestamp must be specified");
         Objects.requireNonNull(origin, "origin must be specified");
         Objects.requireNonNull(interval, "interval must be specified");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
 
-        // handle trivial case
-        if (origin.equals(timestamp)) {
+        // the difference between any two instants is well within the range of a long number of seconds
+        final long deltaSeconds = timestamp.getEpochSecond() - origin.getEpochSecond();
+        if (interval.getSeconds() >= MAX_SECONDS_AS_NANOS || Math.abs(deltaSeconds) >= MAX_SECONDS_AS_NANOS) {
+            // more than ~292 years, which cannot be expressed as a long number of nanoseconds
+            return alignWithIntervalExact(timestamp, deltaSeconds, origin, interval);
+        }
+
+        final long intervalNanos = interval.getSeconds() * NANOS_PER_SECOND_LONG + interval.getNano();
+        final long deltaNanos = deltaSeconds * NANOS_PER_SECOND_LONG + (timestamp.getNano() - origin.getNano());
+        final long remainder = Math.floorMod(deltaNanos, intervalNanos);
+        if (remainder == 0L) {
             return timestamp;
         }
+        return timestamp.minusNanos(remainder);
+    }
 
-        long delta_t = timestamp.toEpochMilli() - origin.toEpochMilli();
-        long estimated_beats = (long) (delta_t / toSeconds(interval).multiply(BigDecimal.valueOf(1000)).longValue());
+    /**
+     * Aligns the specified timestamp using arbitrary precision arithmetic. This is only required when either the
+     * interval or the distance between the timestamp and origin exceeds the range of a long number of nanoseconds.
+     */
+    private static Instant alignWithIntervalExact(final Instant timestamp, final long deltaSeconds, final Instant origin, final Duration interval) {
+        final BigInteger nanosPerSecond = BigInteger.valueOf(NANOS_PER_SECOND_LONG);
+        final BigInteger intervalNanos = BigInteger.valueOf(interval.getSeconds()).multiply(nanosPerSecond)
+                .add(BigInteger.valueOf(interval.getNano()));
+        final BigInteger deltaNanos = BigInteger.valueOf(deltaSeconds).multiply(nanosPerSecond)
+                .add(BigInteger.valueOf(timestamp.getNano() - origin.getNano()));
+        // BigInteger.mod always returns a non-negative value, matching Math.floorMod for a positive modulus
+        final BigInteger[] secondsAndNanos = deltaNanos.mod(intervalNanos).divideAndRemainder(nanosPerSecond);
+        return timestamp.minusSeconds(secondsAndNanos[0].longValueExact()).minusNanos(secondsAndNanos[1].longValue());
+    }
 
-        Instant alignedTime = origin;
-        // determine if we need to move forwards or backwards in time from the origin
-        if (timestamp.isBefore(origin)) {
-            while (alignedTime.isAfter(timestamp)) {
-                alignedTime = alignedTime.minus(interval);
-            }
+    /**
+     * Aligns the specified timestamp with the nearest, older interval integrally offset from the origin time.
+     * The timestamp, origin, and interval may be expressed in any unit, such as epoch nanoseconds or epoch
+     * milliseconds, provided all three use the same unit.
+     * @param epochNanos the timestamp to align
+     * @param originEpochNanos the origin the intervals are offset from
+     * @param intervalNanos the positive length of the interval
+     * @return the aligned timestamp, in the same unit as the arguments
+     * @throws ArithmeticException if the aligned timestamp cannot be represented as a long
+     */
+    public static long alignWithInterval(final long epochNanos, final long originEpochNanos, final long intervalNanos) {
+        if (intervalNanos <= 0L) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        final long delta = epochNanos - originEpochNanos;
+        final long remainder;
+        if (((epochNanos ^ originEpochNanos) & (epochNanos ^ delta)) < 0L) {
+            // the subtraction overflowed, so reduce each operand separately
+            final long difference = Math.floorMod(epochNanos, intervalNanos) - Math.floorMod(originEpochNanos, intervalNanos);
+            remainder = (difference < 0L) ? difference + intervalNanos : difference;
         } else {
-            alignedTime = alignedTime.plus(interval.multipliedBy(estimated_beats-1));
-            while (alignedTime.isBefore(timestamp)) {
-                alignedTime = alignedTime.plus(interval);
+            remainder = Math.floorMod(delta, intervalNanos);
+        }
+        return Math.subtractExact(epochNanos, remainder);
+    }
+
+    /**
+     * Aligns every timestamp in the array, in place, with the nearest, older interval integrally offset from the origin.
+     * The timestamps, origin, and interval may be expressed in any unit provided all use the same unit.
+     * @param timestamps the timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the positive length of the interval
+     * @throws ArithmeticException if an aligned timestamp cannot be represented as a long
+     * @see #alignWithInterval(long, long, long)
+     */
+    public static void alignWithInterval(final long[] timestamps, final long origin, final long interval) {
+        alignWithInterval(timestamps, 0, timestamps, 0, timestamps.length, origin, interval);
+    }
+
+    /**
+     * Aligns a range of timestamps with the nearest, older interval integrally offset from the origin, writing the
+     * results to the destination, which may be the same array as the source.
+     * @param src the timestamps to align
+     * @param srcOffset the index of the first timestamp to align
+     * @param dst the array the aligned timestamps are written to
+     * @param dstOffset the index the first aligned timestamp is written to
+     * @param length the number of timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the positive length of the interval
+     * @throws ArithmeticException if an aligned timestamp cannot be represented as a long
+     */
+    public static void alignWithInterval(final long[] src, final int srcOffset, final long[] dst, final int dstOffset, final int length,
+                                         final long origin, final long interval) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        Objects.checkFromIndexSize(srcOffset, length, src.length);
+        Objects.checkFromIndexSize(dstOffset, length, dst.length);
+        // reduce the origin once so the loop needs neither the overflow check of the scalar method nor floorMod's
+        // branch; long division does not vectorize, but the loop body is branch-free apart from the overflow check
+        final long originRemainder = Math.floorMod(origin, interval);
+        for (int i = 0; i < length; ++i) {
+            final long timestamp = src[srcOffset + i];
+            long remainder = timestamp % interval;
+            remainder += (remainder >> 63) & interval;
+            remainder -= originRemainder;
+            remainder += (remainder >> 63) & interval;
+            final long aligned = timestamp - remainder;
+            if (aligned > timestamp) {
+                throw new ArithmeticException("long overflow");
             }
-            if (alignedTime.equals(timestamp)) {
-                return alignedTime;
+            dst[dstOffset + i] = aligned;
+        }
+    }
+
+    /**
+     * Aligns the timestamps between the buffer's position and limit, in place. The position is not changed.
+     * @param timestamps the timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the positive length of the interval
+     * @see #alignWithInterval(long[], long, long)
+     */
+    public static void alignWithInterval(final LongBuffer timestamps, final long origin, final long interval) {
+        if (timestamps.hasArray()) {
+            final int offset = timestamps.arrayOffset() + timestamps.position();
+            alignWithInterval(timestamps.array(), offset, timestamps.array(), offset, timestamps.remaining(), origin, interval);
+            return;
+        }
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        for (int i = timestamps.position(); i < timestamps.limit(); ++i) {
+            timestamps.put(i, alignWithInterval(timestamps.get(i), origin, interval));
+        }
+    }
+
+    /**
+     * Aligns every timestamp in the array, in place, splitting large arrays across the common fork-join pool.
+     * @param timestamps the timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the positive length of the interval
+     * @see #alignWithInterval(long[], long, long)
+     */
+    public static void parallelAlignWithInterval(final long[] timestamps, final long origin, final long interval) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        ForkJoinPool.commonPool().invoke(new AlignTask(timestamps, 0, timestamps.length, null, origin, interval));
+    }
+
+    /**
+     * Aligns every epoch nanosecond timestamp in the array, in place, with a calendar-aware interval, as
+     * {@link IntervalAligner#alignEpochNanos(long)} does. Sorted timestamps are aligned fastest, since consecutive
+     * timestamps usually fall in the same bucket.
+     * @param epochNanos the timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the interval
+     * @param timeZone the time zone calendar arithmetic is performed in
+     * @see IntervalAligner#alignEpochNanos(long[], int, long[], int, int)
+     */
+    public static void alignWithInterval(final long[] epochNanos, final Instant origin, final PeriodDuration interval, final ZoneId timeZone) {
+        IntervalAligner.create(origin, interval, timeZone).alignEpochNanos(epochNanos, 0, epochNanos, 0, epochNanos.length);
+    }
+
+    /**
+     * Aligns every epoch nanosecond timestamp in the array, in place, with a calendar-aware interval, splitting large
+     * arrays across the common fork-join pool. Each task aligns with its own {@link IntervalAligner}, so the results
+     * are the same as those of {@link #alignWithInterval(long[], Instant, PeriodDuration, ZoneId)}.
+     * @param epochNanos the timestamps to align
+     * @param origin the origin the intervals are offset from
+     * @param interval the interval
+     * @param timeZone the time zone calendar arithmetic is performed in
+     */
+    public static void parallelAlignWithInterval(final long[] epochNanos, final Instant origin, final PeriodDuration interval, final ZoneId timeZone) {
+        final IntervalAligner aligner = IntervalAligner.create(origin, interval, timeZone);
+        ForkJoinPool.commonPool().invoke(new AlignTask(epochNanos, 0, epochNanos.length, aligner, 0L, 0L));
+    }
+
+    /**
+     * Aligns a range of an array, in place, splitting it in half until it is small enough to align directly.
+     */
+    private static final class AlignTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int THRESHOLD = 1 << 16;
+
+        private final long[] timestamps;
+        private final int from;
+        private final int to;
+        /**
+         * The configuration of a calendar-aware alignment, which is copied by each task that aligns directly, or
+         * <code>null</code> for an arithmetic alignment.
+         */
+        private final IntervalAligner aligner;
+        private final long origin;
+        private final long interval;
+
+        AlignTask(final long[] timestamps, final int from, final int to, final IntervalAligner aligner, final long origin, final long interval) {
+            this.timestamps = timestamps;
+            this.from = from;
+            this.to = to;
+            this.aligner = aligner;
+            this.origin = origin;
+            this.interval = interval;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                if (aligner == null) {
+                    alignWithInterval(timestamps, from, timestamps, from, to - from, origin, interval);
+                } else {
+                    aligner.copy().alignEpochNanos(timestamps, from, timestamps, from, to - from);
+                }
             } else {
-                // move back one interval
-                alignedTime = alignedTime.minus(interval);
+                final int mid = (from + to) >>> 1;
+                invokeAll(new AlignTask(timestamps, from, mid, aligner, origin, interval),
+                        new AlignTask(timestamps, mid, to, aligner, origin, interval));
             }
         }
-        return alignedTime;
     }
 
     /**
@@ -149,4 +381,23 @@ public final class TimeUtils {
     public static BigDecimal toSeconds(Duration interval) {
         return BigDecimal.valueOf(interval.toNanos()).divide(BigDecimal.valueOf(NANOS_PER_SECOND_LONG));
     }
+
+    /**
+     * Returns the number of nanoseconds from the epoch of 1970-01-01T00:00:00Z to the instant.
+     * @param instant the instant to convert
+     * @return the epoch nanoseconds
+     * @throws ArithmeticException if the instant is more than ~292 years from the epoch
+     */
+    public static long toEpochNanos(final Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND_LONG), instant.getNano());
+    }
+
+    /**
+     * Returns the instant that is the specified number of nanoseconds from the epoch of 1970-01-01T00:00:00Z.
+     * @param epochNanos the epoch nanoseconds
+     * @return the instant
+     */
+    public static Instant ofEpochNanos(final long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND_LONG), Math.floorMod(epochNanos, NANOS_PER_SECOND_LONG));
+    }
 }
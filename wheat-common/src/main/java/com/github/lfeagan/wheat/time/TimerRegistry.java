@@ -0,0 +1,380 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of named timers, each of which aggregates the count, sum, minimum and maximum of the times recorded in
+ * it and, optionally, a {@link LatencyHistogram} of them.
+ * <p>
+ * Looking up a timer by name is a lock-free read of a concurrent map, but code that records frequently should look
+ * its timer up once and keep the {@link Timer} handle. Recording into a timer does not lock or allocate; the count
+ * and sum are striped across cells so that many threads can record into the same timer without contending on a
+ * single memory location, and the minimum and maximum are only written when a new extreme is recorded.
+ * <p>
+ * The {@link #global()} registry is shared by the whole process. Separate registries may be created for isolation,
+ * or to time {@link Timer#begin()} and {@link Timer#end(long)} with a {@link TimeSource} other than the system's.
+ */
+public final class TimerRegistry {
+
+    private static final TimerRegistry GLOBAL = new TimerRegistry(0, TimeSource.system());
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * The precision of the histogram of each timer, or zero if timers do not have histograms.
+     */
+    private final int histogramPrecisionBits;
+
+    private final TimeSource timeSource;
+
+    private TimerRegistry(final int histogramPrecisionBits, final TimeSource timeSource) {
+        this.histogramPrecisionBits = histogramPrecisionBits;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Returns the process-wide registry, whose timers do not have histograms.
+     * @return the global registry
+     */
+    public static TimerRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Creates a registry whose timers do not have histograms.
+     * @return a new registry
+     */
+    public static TimerRegistry create() {
+        return create(TimeSource.system());
+    }
+
+    /**
+     * Creates a registry whose timers do not have histograms and begin and end timing with the specified time source.
+     * @param timeSource the source of the times that are measured
+     * @return a new registry
+     */
+    public static TimerRegistry create(final TimeSource timeSource) {
+        return new TimerRegistry(0, timeSource);
+    }
+
+    /**
+     * Creates a registry in which every timer also records into a histogram of the specified precision.
+     * @param histogramPrecisionBits the precision of the histograms
+     * @return a new registry
+     * @see LatencyHistogram#create(int)
+     */
+    public static TimerRegistry createWithHistograms(final int histogramPrecisionBits) {
+        return createWithHistograms(histogramPrecisionBits, TimeSource.system());
+    }
+
+    /**
+     * Creates a registry in which every timer also records into a histogram of the specified precision and begins
+     * and ends timing with the specified time source.
+     * @param histogramPrecisionBits the precision of the histograms
+     * @param timeSource the source of the times that are measured
+     * @return a new registry
+     * @see LatencyHistogram#create(int)
+     */
+    public static TimerRegistry createWithHistograms(final int histogramPrecisionBits, final TimeSource timeSource) {
+        // validate the precision once, rather than on the creation of every timer
+        LatencyHistogram.create(histogramPrecisionBits);
+        return new TimerRegistry(histogramPrecisionBits, timeSource);
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Returns the timer with the specified name, creating it if it does not exist.
+     * @param name the name of the timer, such as a split description
+     * @return the timer
+     */
+    public Timer timer(final String name) {
+        final Timer timer = timers.get(name);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(name, n -> new Timer(n,
+                (histogramPrecisionBits == 0) ? null : LatencyHistogram.create(histogramPrecisionBits), timeSource));
+    }
+
+    /**
+     * Removes the timer with the specified name. Handles to the timer remain usable, but what they record is no
+     * longer visible through the registry.
+     * @param name the name of the timer
+     * @return <code>true</code> if the timer existed
+     */
+    public boolean remove(final String name) {
+        return timers.remove(name) != null;
+    }
+
+    /**
+     * Returns the names of the timers in the registry, sorted.
+     * @return the names of the timers
+     */
+    public SortedSet<String> names() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(timers.keySet()));
+    }
+
+    /**
+     * Records the elapsed time of each split in the timer named by the split's description, as many times as the
+     * sampling weight of the stop watch.
+     * @param stopWatch the stop watch whose splits to record
+     */
+    public void recordSplits(final SplitNanoStopWatch stopWatch) {
+        final long weight = stopWatch.getSamplingWeight();
+        if (weight == 0L) {
+            return;
+        }
+        // visit the recorded fields directly rather than copying them into split objects
+        stopWatch.forEachSplit((start, stop, description) -> timer(description).record(stop - start, weight));
+    }
+
+    /**
+     * Takes a snapshot of every timer in the registry, sorted by name. Each timer is read independently, so times
+     * recorded while the snapshot is taken may appear in some timers and not others.
+     * @return the snapshots by timer name
+     */
+    public SortedMap<String, Snapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Takes a snapshot of every timer in the registry and resets each timer after it is read, such as to export the
+     * times recorded since the previous export. A time recorded concurrently with the reset of its timer may be
+     * excluded from both this snapshot and the next one.
+     * @return the snapshots by timer name
+     */
+    public SortedMap<String, Snapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private SortedMap<String, Snapshot> snapshot(final boolean reset) {
+        final SortedMap<String, Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot(reset));
+        }
+        return Collections.unmodifiableSortedMap(snapshots);
+    }
+
+    /**
+     * A named timer. Instances are obtained from {@link TimerRegistry#timer(String)}.
+     */
+    public static final class Timer {
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        private final LatencyHistogram histogram;
+        private final TimeSource timeSource;
+
+        private Timer(final String name, final LatencyHistogram histogram, final TimeSource timeSource) {
+            this.name = name;
+            this.histogram = histogram;
+            this.timeSource = timeSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records an elapsed time.
+         * @param nanos the elapsed time in nanoseconds
+         */
+        public void record(final long nanos) {
+            record(nanos, 1L);
+        }
+
+        /**
+         * Records an elapsed time as though it were recorded the specified number of times, such as to scale a
+         * sampled time back up by its sampling weight.
+         * @param nanos the elapsed time in nanoseconds
+         * @param times the number of times to record the elapsed time, which must be positive
+         * @throws IllegalArgumentException if times is not positive
+         */
+        public void record(final long nanos, final long times) {
+            if (times <= 0L) {
+                throw new IllegalArgumentException("times must be positive");
+            }
+            count.add(times);
+            total.add(nanos * times);
+            long current = min.get();
+            while (nanos < current && !min.compareAndSet(current, nanos)) {
+                current = min.get();
+            }
+            current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+            if (histogram != null) {
+                histogram.record(nanos, times);
+            }
+        }
+
+        /**
+         * Records the cumulative time of the stop watch as many times as its sampling weight.
+         * @param stopWatch the stop watch whose cumulative time to record
+         * @see NanoStopWatch#getCumulative()
+         */
+        public void recordCumulative(final NanoStopWatch stopWatch) {
+            final long weight = stopWatch.getSamplingWeight();
+            if (weight != 0L) {
+                record(stopWatch.getCumulative(), weight);
+            }
+        }
+
+        /**
+         * Begins timing and returns a token to pass to {@link #end(long)}.
+         * @return the token
+         */
+        public long begin() {
+            return timeSource.nanoTime();
+        }
+
+        /**
+         * Records the time elapsed since the token was returned by {@link #begin()}.
+         * @param token the token returned by {@link #begin()}
+         * @return the elapsed time in nanoseconds
+         */
+        public long end(final long token) {
+            final long elapsed = timeSource.nanoTime() - token;
+            record(elapsed);
+            return elapsed;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        /**
+         * Returns the histogram the timer records into, or <code>null</code> if the timer does not have one.
+         * @return the histogram, if any
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public Snapshot snapshot() {
+            return snapshot(false);
+        }
+
+        private Snapshot snapshot(final boolean reset) {
+            final long minValue = reset ? min.getAndSet(Long.MAX_VALUE) : min.get();
+            final long maxValue = reset ? max.getAndSet(Long.MIN_VALUE) : max.get();
+            final long countValue = reset ? count.sumThenReset() : count.sum();
+            final long totalValue = reset ? total.sumThenReset() : total.sum();
+            LatencyHistogram histogramValue = null;
+            if (histogram != null) {
+                histogramValue = LatencyHistogram.create(histogram.getPrecisionBits());
+                histogramValue.add(histogram);
+                if (reset) {
+                    histogram.reset();
+                }
+            }
+            return new Snapshot(name, countValue, totalValue,
+                    (minValue == Long.MAX_VALUE) ? 0L : minValue,
+                    (maxValue == Long.MIN_VALUE) ? 0L : maxValue,
+                    histogramValue);
+        }
+
+        @Override
+        public String toString() {
+            return snapshot().toString();
+        }
+    }
+
+    /**
+     * The state of a timer at the time the snapshot was taken.
+     */
+    public static final class Snapshot {
+
+        private final String name;
+        private final long count;
+        private final long total;
+        private final long min;
+        private final long max;
+        private final LatencyHistogram histogram;
+
+        private Snapshot(final String name, final long count, final long total, final long min, final long max, final LatencyHistogram histogram) {
+            this.name = name;
+            this.count = count;
+            this.total = total;
+            this.min = min;
+            this.max = max;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of the recorded times.
+         * @return the sum of the recorded times in nanoseconds
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the smallest recorded time, or zero if none were recorded.
+         * @return the smallest recorded time in nanoseconds
+         */
+        public long getMin() {
+            return min;
+        }
+
+        /**
+         * Returns the largest recorded time, or zero if none were recorded.
+         * @return the largest recorded time in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the mean of the recorded times, or zero if none were recorded.
+         * @return the mean recorded time in nanoseconds
+         */
+        public double getMean() {
+            return (count == 0L) ? 0.0d : ((double) total) / count;
+        }
+
+        /**
+         * Returns a copy of the timer's histogram, or <code>null</code> if the timer does not have one.
+         * @return the histogram, if any
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": count=" + count
+                    + " total=" + NanoStopWatch.toString(total)
+                    + " min=" + NanoStopWatch.toString(min)
+                    + " max=" + NanoStopWatch.toString(max);
+        }
+    }
+
+}
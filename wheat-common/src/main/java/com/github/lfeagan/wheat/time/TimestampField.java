@@ -0,0 +1,201 @@
+package com.github.lfeagan.wheat.time;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Locates the timestamp field within a line of text, for a {@link TimestampScanner}. Lines are searched as ASCII or
+ * UTF-8 bytes, without being decoded.
+ * <p>
+ * All of the fields provided are immutable and safe for use by many threads.
+ */
+public abstract class TimestampField {
+
+    private static final TimestampField LEADING = new TimestampField() {
+        @Override
+        long find(final ByteBuffer line, final int start, final int end) {
+            int i = start;
+            while (i < end && line.get(i) != ' ' && line.get(i) != '\t') {
+                ++i;
+            }
+            return range(start, i);
+        }
+
+        @Override
+        public String toString() {
+            return "leading";
+        }
+    };
+
+    TimestampField() {}
+
+    /**
+     * Finds the timestamp within the line.
+     * @param line the buffer holding the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line, excluding the line terminator
+     * @return the start index of the timestamp in the high 32 bits and its end index in the low 32 bits, or -1 if the
+     *         line has no such field
+     */
+    abstract long find(ByteBuffer line, int start, int end);
+
+    static long range(final int start, final int end) {
+        return ((long) start << 32) | end;
+    }
+
+    /**
+     * Returns the field that starts each line and ends at the first space or tab, as in most log formats.
+     * @return the field
+     */
+    public static TimestampField leading() {
+        return LEADING;
+    }
+
+    /**
+     * Returns the field that is the specified column of delimited text, such as CSV. A column enclosed in double
+     * quotes may contain the delimiter, and the quotes are not part of the timestamp. Quoted columns that span lines
+     * are not supported.
+     * @param index the zero-based index of the column
+     * @param delimiter the character that separates columns, which must be ASCII
+     * @return the field
+     */
+    public static TimestampField column(final int index, final char delimiter) {
+        if (index < 0) {
+            throw new IllegalArgumentException("index must not be negative");
+        }
+        if (delimiter >= 0x80 || delimiter == '"' || delimiter == '\n') {
+            throw new IllegalArgumentException("delimiter must be an ASCII character other than a quote or new line");
+        }
+        return new Column(index, (byte) delimiter);
+    }
+
+    /**
+     * Returns the field that is the string value of the specified key in a line of JSON, as in newline-delimited JSON
+     * logs. The line is not parsed as JSON: the value is that of the first occurrence of the quoted key followed by a
+     * colon, at any depth of nesting.
+     * @param key the key, which must not require escaping in JSON
+     * @return the field
+     */
+    public static TimestampField jsonKey(final String key) {
+        for (int i = 0; i < key.length(); ++i) {
+            if (key.charAt(i) == '"' || key.charAt(i) == '\\' || key.charAt(i) < 0x20) {
+                throw new IllegalArgumentException("key must not require escaping");
+            }
+        }
+        return new JsonKey(key);
+    }
+
+    private static final class Column extends TimestampField {
+
+        private final int index;
+        private final byte delimiter;
+
+        private Column(final int index, final byte delimiter) {
+            this.index = index;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        long find(final ByteBuffer line, final int start, final int end) {
+            int i = start;
+            for (int column = 0; ; ++column) {
+                final int columnStart = i;
+                final int columnEnd;
+                if (i < end && line.get(i) == '"') {
+                    // skip to the closing quote, where two quotes in a row are an escaped quote
+                    ++i;
+                    while (i < end && !(line.get(i) == '"' && (i + 1 >= end || line.get(i + 1) != '"'))) {
+                        i += line.get(i) == '"' ? 2 : 1;
+                    }
+                    if (column == index) {
+                        return range(columnStart + 1, i);
+                    }
+                    ++i;
+                    while (i < end && line.get(i) != delimiter) {
+                        ++i;
+                    }
+                    columnEnd = i;
+                } else {
+                    while (i < end && line.get(i) != delimiter) {
+                        ++i;
+                    }
+                    columnEnd = i;
+                    if (column == index) {
+                        return range(columnStart, columnEnd);
+                    }
+                }
+                if (columnEnd >= end) {
+                    return -1L;
+                }
+                i = columnEnd + 1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "column " + index + " delimited by '" + (char) delimiter + "'";
+        }
+    }
+
+    private static final class JsonKey extends TimestampField {
+
+        private final String key;
+        private final byte[] quotedKey;
+
+        private JsonKey(final String key) {
+            this.key = key;
+            this.quotedKey = ('"' + key + '"').getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static boolean isWhitespace(final byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        @Override
+        long find(final ByteBuffer line, final int start, final int end) {
+            final int last = end - quotedKey.length;
+            for (int i = start; i <= last; ++i) {
+                if (!matches(line, i)) {
+                    continue;
+                }
+                int j = i + quotedKey.length;
+                while (j < end && isWhitespace(line.get(j))) {
+                    ++j;
+                }
+                if (j >= end || line.get(j) != ':') {
+                    // the quoted text was a string value rather than a key
+                    continue;
+                }
+                ++j;
+                while (j < end && isWhitespace(line.get(j))) {
+                    ++j;
+                }
+                if (j >= end || line.get(j) != '"') {
+                    return -1L;
+                }
+                final int valueStart = j + 1;
+                int k = valueStart;
+                while (k < end && line.get(k) != '"') {
+                    ++k;
+                }
+                return k < end ? range(valueStart, k) : -1L;
+            }
+            return -1L;
+        }
+
+        private boolean matches(final ByteBuffer line, final int index) {
+            for (int i = 0; i < quotedKey.length; ++i) {
+                if (line.get(index + i) != quotedKey[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "JSON key \"" + key + "\"";
+        }
+    }
+
+}
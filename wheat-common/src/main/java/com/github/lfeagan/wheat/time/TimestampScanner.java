@@ -0,0 +1,365 @@
+package com.github.lfeagan.wheat.time;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Extracts the RFC 3339 timestamp from each line of a newline-delimited text file, such as a log or a CSV export, as
+ * epoch nanoseconds. The file is memory-mapped a window at a time, and timestamps are located by a
+ * {@link TimestampField} and parsed by an {@link Rfc3339Parser} directly from the mapped bytes, so no line is decoded
+ * into a string and files of many gigabytes can be scanned without loading them into the heap.
+ * <p>
+ * Timestamps are delivered to a {@link BatchHandler} in batches. The array of a batch is reused for the next batch,
+ * so the handler must copy any timestamps it keeps. Each batch can optionally be aligned with an interval as it is
+ * filled, in the same way as {@link TimeUtils#alignWithInterval(long[], long, long)}.
+ * <pre>
+ * TimestampScanner scanner = TimestampScanner.create(TimestampField.column(0, ','))
+ *         .withAlignment(0L, TimeUnit.MINUTES.toNanos(1L));
+ * ConcurrentMap&lt;Long, Long&gt; linesPerMinute = new ConcurrentHashMap&lt;&gt;();
+ * scanner.parallelScan(path, (epochNanos, length) -&gt; {
+ *     for (int i = 0; i &lt; length; ++i) {
+ *         linesPerMinute.merge(epochNanos[i], 1L, Long::sum);
+ *     }
+ * });
+ * </pre>
+ * A scanner is immutable, so one scanner may scan any number of files concurrently.
+ */
+public final class TimestampScanner {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /**
+     * The size of the regions of a file that are mapped at a time.
+     */
+    static final int DEFAULT_WINDOW_SIZE = 1 << 24;
+
+    /**
+     * The size of the chunks of a file that are scanned in parallel.
+     */
+    static final long DEFAULT_CHUNK_SIZE = 1L << 26;
+
+    /**
+     * The epoch seconds and nanoseconds of the earliest and latest instants that can be expressed as a long number of
+     * nanoseconds, which are compared separately so that the check cannot overflow.
+     */
+    private static final long MIN_EPOCH_SECOND = Math.floorDiv(Long.MIN_VALUE, 1_000_000_000L);
+    private static final int MIN_NANO = (int) Math.floorMod(Long.MIN_VALUE, 1_000_000_000L);
+    private static final long MAX_EPOCH_SECOND = Long.MAX_VALUE / 1_000_000_000L;
+    private static final int MAX_NANO = (int) (Long.MAX_VALUE % 1_000_000_000L);
+
+    private static final long NEW_LINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * Receives the timestamps extracted by a scan.
+     */
+    public interface BatchHandler {
+
+        /**
+         * Accepts a batch of timestamps, in the order they appear in the file. During a parallel scan, batches are
+         * accepted concurrently by many threads, and only the batches of the same chunk of the file are in order.
+         * @param epochNanos the array holding the batch, which is reused once this method returns
+         * @param length the number of timestamps in the batch, from the start of the array
+         */
+        void accept(long[] epochNanos, int length);
+
+        /**
+         * Called for each line that is not blank but has no valid timestamp, or has one that cannot be expressed in
+         * epoch nanoseconds. Such lines are skipped, and by default are ignored.
+         * @param offset the offset in the file of the start of the line
+         */
+        default void invalid(final long offset) {
+        }
+    }
+
+    private final TimestampField field;
+    private final int batchSize;
+    private final boolean aligned;
+    private final long originEpochNanos;
+    private final long intervalNanos;
+    private final int windowSize;
+    private final long chunkSize;
+
+    private TimestampScanner(final TimestampField field, final int batchSize, final boolean aligned,
+                             final long originEpochNanos, final long intervalNanos,
+                             final int windowSize, final long chunkSize) {
+        this.field = field;
+        this.batchSize = batchSize;
+        this.aligned = aligned;
+        this.originEpochNanos = originEpochNanos;
+        this.intervalNanos = intervalNanos;
+        this.windowSize = windowSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Creates a scanner of the specified field, with batches of {@link #DEFAULT_BATCH_SIZE} timestamps that are not
+     * aligned.
+     * @param field the field that holds the timestamp of each line
+     * @return the scanner
+     */
+    public static TimestampScanner create(final TimestampField field) {
+        if (field == null) {
+            throw new IllegalArgumentException("field must not be null");
+        }
+        return new TimestampScanner(field, DEFAULT_BATCH_SIZE, false, 0L, 0L, DEFAULT_WINDOW_SIZE, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a scanner like this one that delivers batches of up to the specified number of timestamps.
+     * @param batchSize the maximum number of timestamps in a batch, which must be positive
+     * @return the scanner
+     */
+    public TimestampScanner withBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        return new TimestampScanner(field, batchSize, aligned, originEpochNanos, intervalNanos, windowSize, chunkSize);
+    }
+
+    /**
+     * Returns a scanner like this one that aligns each timestamp with the nearest, older interval integrally offset
+     * from the origin before delivering it.
+     * @param originEpochNanos the origin the intervals are offset from
+     * @param intervalNanos the positive length of the interval
+     * @return the scanner
+     * @see TimeUtils#alignWithInterval(long[], int, long[], int, int, long, long)
+     */
+    public TimestampScanner withAlignment(final long originEpochNanos, final long intervalNanos) {
+        if (intervalNanos <= 0L) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        return new TimestampScanner(field, batchSize, true, originEpochNanos, intervalNanos, windowSize, chunkSize);
+    }
+
+    /**
+     * Returns a scanner like this one that maps and splits files into the specified sizes, so tests can cover lines
+     * that cross windows and chunks without writing large files.
+     */
+    TimestampScanner withSizes(final int windowSize, final long chunkSize) {
+        return new TimestampScanner(field, batchSize, aligned, originEpochNanos, intervalNanos, windowSize, chunkSize);
+    }
+
+    /**
+     * Scans the lines of the file in order on the calling thread.
+     * @param file the file to scan
+     * @param handler the handler of the timestamps
+     * @return the number of timestamps delivered to the handler
+     * @throws IOException if the file cannot be read
+     */
+    public long scan(final Path file, final BatchHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            return new Chunk(channel, size, 0L, size, handler).scan();
+        }
+    }
+
+    /**
+     * Scans the file in chunks on the common fork-join pool. Each line is scanned by the chunk it starts in, however
+     * far it extends into the next chunk. The handler must be safe for use by many threads.
+     * @param file the file to scan
+     * @param handler the handler of the timestamps
+     * @return the number of timestamps delivered to the handler
+     * @throws IOException if the file cannot be read
+     */
+    public long parallelScan(final Path file, final BatchHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            return ForkJoinPool.commonPool().invoke(new ScanTask(channel, size, 0L, size, handler));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the index of the first new line in the range, or -1 if there is none. Eight bytes are tested at a time,
+     * with the buffer in little-endian order so that the lowest set bit belongs to the first matching byte.
+     */
+    private static int indexOfNewLine(final MappedByteBuffer buffer, final int from, final int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long word = buffer.getLong(i) ^ NEW_LINES;
+            final long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits a range of a file in half until it is small enough to scan directly.
+     */
+    private final class ScanTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final long from;
+        private final long to;
+        private final BatchHandler handler;
+
+        ScanTask(final FileChannel channel, final long size, final long from, final long to, final BatchHandler handler) {
+            this.channel = channel;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+            this.handler = handler;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= chunkSize) {
+                try {
+                    return new Chunk(channel, size, from, to, handler).scan();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            final long mid = (from + to) >>> 1;
+            final ScanTask right = new ScanTask(channel, size, mid, to, handler);
+            right.fork();
+            final long left = new ScanTask(channel, size, from, mid, handler).compute();
+            return left + right.join();
+        }
+    }
+
+    /**
+     * Scans the lines that start within a range of a file, with its own parser and batch.
+     */
+    private final class Chunk {
+
+        private final FileChannel channel;
+        private final long size;
+        private final long from;
+        private final long to;
+        private final BatchHandler handler;
+        private final Rfc3339Parser parser = new Rfc3339Parser();
+        private final long[] batch = new long[batchSize];
+        private int batchLength = 0;
+        private long count = 0L;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        Chunk(final FileChannel channel, final long size, final long from, final long to, final BatchHandler handler) {
+            this.channel = channel;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+            this.handler = handler;
+        }
+
+        private void map(final long start, final long length) throws IOException {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowStart = start;
+        }
+
+        long scan() throws IOException {
+            if (from >= size) {
+                return 0L;
+            }
+            long lineStart;
+            if (from == 0L) {
+                map(0L, windowSize);
+                lineStart = 0L;
+            } else {
+                // the line that is in progress at the start of the chunk belongs to the previous chunk
+                map(from - 1L, windowSize);
+                lineStart = skipLine(from - 1L);
+            }
+            while (lineStart < to && lineStart < size) {
+                final int start = (int) (lineStart - windowStart);
+                final int newLine = indexOfNewLine(window, start, window.limit());
+                final long windowEnd = windowStart + window.limit();
+                if (newLine >= 0 || windowEnd >= size) {
+                    final int end = newLine < 0 ? window.limit() : newLine;
+                    line(lineStart, start, end);
+                    lineStart = windowStart + end + 1L;
+                } else if (start > 0 || window.limit() < Integer.MAX_VALUE) {
+                    // the line crosses the end of the window, so map a window starting at the line, which must be
+                    // larger if the line is longer than the window
+                    map(lineStart, start > 0 ? windowSize : Math.min(window.limit() * 2L, Integer.MAX_VALUE));
+                } else {
+                    // a line longer than the largest window is only searched for its timestamp within the window
+                    line(lineStart, start, window.limit());
+                    map(windowEnd - 1L, windowSize);
+                    lineStart = skipLine(windowEnd - 1L);
+                }
+            }
+            if (batchLength > 0) {
+                flush();
+            }
+            return count;
+        }
+
+        /**
+         * Returns the offset of the line after the one that contains the specified offset.
+         */
+        private long skipLine(final long offset) throws IOException {
+            long position = offset;
+            while (true) {
+                final int start = (int) (position - windowStart);
+                final int newLine = indexOfNewLine(window, start, window.limit());
+                if (newLine >= 0) {
+                    return windowStart + newLine + 1L;
+                }
+                position = windowStart + window.limit();
+                if (position >= size) {
+                    return size;
+                }
+                map(position, windowSize);
+            }
+        }
+
+        private void line(final long offset, final int start, int end) {
+            if (end > start && window.get(end - 1) == '\r') {
+                --end;
+            }
+            if (end == start) {
+                return;
+            }
+            final long range = field.find(window, start, end);
+            if (range < 0L || !parser.parse(window, (int) (range >>> 32), (int) range - (int) (range >>> 32))) {
+                handler.invalid(offset);
+                return;
+            }
+            final long epochSecond = parser.getEpochSecond();
+            final int nano = parser.getNano();
+            if (epochSecond < MIN_EPOCH_SECOND || (epochSecond == MIN_EPOCH_SECOND && nano < MIN_NANO)
+                    || epochSecond > MAX_EPOCH_SECOND || (epochSecond == MAX_EPOCH_SECOND && nano > MAX_NANO)) {
+                handler.invalid(offset);
+                return;
+            }
+            batch[batchLength++] = epochSecond * 1_000_000_000L + nano;
+            if (batchLength == batch.length) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (aligned) {
+                TimeUtils.alignWithInterval(batch, 0, batch, 0, batchLength, originEpochNanos, intervalNanos);
+            }
+            handler.accept(batch, batchLength);
+            count += batchLength;
+            batchLength = 0;
+        }
+    }
+
+}
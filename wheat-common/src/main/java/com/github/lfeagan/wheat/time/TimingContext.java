@@ -0,0 +1,399 @@
+package com.github.lfeagan.wheat.time;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Times a logical operation whose work may run on many threads, such as a request handled by a pipeline of
+ * <code>CompletableFuture</code> stages. The work is divided into named phases, like the descriptions of the splits of a
+ * {@link SplitNanoStopWatch}. For each phase the context accumulates the wall time, the time tasks spent queued
+ * before running, and, where the JVM supports it for the running thread, the thread CPU time, so that time spent
+ * working can be separated from time spent waiting.
+ * <p>
+ * A context is current on a thread while it is attached with {@link #attach()}. Tasks wrapped by the context, or
+ * submitted to an executor returned by {@link #executor(Executor, String)} or {@link #propagating(Executor, String)},
+ * attach the context on whichever thread runs them, so code deep in a call stack can time a phase with
+ * {@link #inPhase(String)} without the context being passed to it.
+ * <p>
+ * All methods are safe for use by many threads at once.
+ */
+public final class TimingContext {
+
+    private static final ThreadLocal<TimingContext> CURRENT = new ThreadLocal<>();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final PhaseScope NO_PHASE = new PhaseScope(null, null, 0L, -1L);
+
+    private final String name;
+    private final TimeSource timeSource;
+    private final boolean measureCpuTime;
+    private final long created;
+    private final ConcurrentHashMap<String, Phase> phases = new ConcurrentHashMap<>();
+
+    private TimingContext(final String name, final TimeSource timeSource, final boolean measureCpuTime) {
+        this.name = name;
+        this.timeSource = timeSource;
+        this.measureCpuTime = measureCpuTime && THREADS.isCurrentThreadCpuTimeSupported();
+        this.created = timeSource.nanoTime();
+    }
+
+    /**
+     * Creates a context that measures CPU time if the JVM supports it.
+     * @param name the name of the operation
+     * @return a new context
+     */
+    public static TimingContext create(final String name) {
+        return new TimingContext(name, TimeSource.system(), true);
+    }
+
+    /**
+     * Creates a context that measures wall time with the specified time source.
+     * @param name the name of the operation
+     * @param timeSource the source of wall and queue times
+     * @param measureCpuTime if <code>true</code> the CPU time of phases is measured where the JVM supports it
+     * @return a new context
+     */
+    public static TimingContext create(final String name, final TimeSource timeSource, final boolean measureCpuTime) {
+        return new TimingContext(name, timeSource, measureCpuTime);
+    }
+
+    /**
+     * Returns the context attached to the calling thread, or <code>null</code> if there is none.
+     * @return the current context, if any
+     */
+    public static TimingContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Enters a phase of the context attached to the calling thread. If no context is attached, the returned scope
+     * does nothing.
+     * @param phaseName the name of the phase
+     * @return the scope that ends the phase when closed
+     */
+    public static PhaseScope inPhase(final String phaseName) {
+        final TimingContext context = CURRENT.get();
+        return (context == null) ? NO_PHASE : context.phase(phaseName);
+    }
+
+    /**
+     * Returns an executor that runs each task with the context that was current on the submitting thread, if any,
+     * timing it as the specified phase. Tasks submitted when no context is current run unwrapped. As with
+     * {@link #executor(Executor, String)}, the phase of a task is only counted after the task returns.
+     * @param delegate the executor that runs the tasks
+     * @param phaseName the name of the phase the tasks are timed as
+     * @return the propagating executor
+     */
+    public static Executor propagating(final Executor delegate, final String phaseName) {
+        return task -> {
+            final TimingContext context = CURRENT.get();
+            delegate.execute((context == null) ? task : context.wrapRunnable(phaseName, task));
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the wall time since the context was created.
+     * @return the elapsed time in nanoseconds
+     */
+    public long elapsedNanos() {
+        return timeSource.nanoTime() - created;
+    }
+
+    /**
+     * Makes this the current context of the calling thread until the returned attachment is closed, which restores
+     * the previously current context.
+     * @return the attachment
+     */
+    public Attachment attach() {
+        final TimingContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return new Attachment(previous);
+    }
+
+    /**
+     * Enters a phase on the calling thread. The wall time, and CPU time if measured, until the returned scope is
+     * closed are added to the phase. Phases with the same name accumulate, and may overlap on different threads.
+     * @param phaseName the name of the phase
+     * @return the scope that ends the phase when closed
+     */
+    public PhaseScope phase(final String phaseName) {
+        return new PhaseScope(timeSource, phase0(phaseName), timeSource.nanoTime(), cpuTime());
+    }
+
+    private Phase phase0(final String phaseName) {
+        final Phase phase = phases.get(phaseName);
+        return (phase != null) ? phase : phases.computeIfAbsent(phaseName, Phase::new);
+    }
+
+    private long cpuTime() {
+        // unsupported threads, such as virtual threads on some JVMs, report -1
+        return measureCpuTime ? THREADS.getCurrentThreadCpuTime() : -1L;
+    }
+
+    /**
+     * Returns an executor that runs each task with this context attached, timing it as the specified phase. The queue
+     * wait of a task is the time from its submission until it starts to run.
+     * <p>
+     * The phase of a task is counted when the task returns. A task that completes a future, such as an asynchronous
+     * stage of a <code>CompletableFuture</code> run by this executor, does so before it returns, so a thread waiting
+     * on the future may observe its result before the phase has been counted.
+     * @param delegate the executor that runs the tasks
+     * @param phaseName the name of the phase the tasks are timed as
+     * @return the executor
+     */
+    public Executor executor(final Executor delegate, final String phaseName) {
+        return task -> delegate.execute(wrapRunnable(phaseName, task));
+    }
+
+    /**
+     * Wraps the task so that it runs with this context attached and is timed as the specified phase. The queue wait
+     * of the task is the time from this call until the task starts to run.
+     * @param phaseName the name of the phase the task is timed as
+     * @param task the task
+     * @return the wrapped task
+     */
+    public Runnable wrapRunnable(final String phaseName, final Runnable task) {
+        final long submitted = timeSource.nanoTime();
+        return () -> {
+            try (Attachment attachment = attach(); PhaseScope scope = start(phaseName, submitted)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Wraps the supplier so that it runs with this context attached and is timed as the specified phase.
+     * @param phaseName the name of the phase the supplier is timed as
+     * @param supplier the supplier
+     * @param <T> the type of the result
+     * @return the wrapped supplier
+     * @see #wrapRunnable(String, Runnable)
+     */
+    public <T> Supplier<T> wrapSupplier(final String phaseName, final Supplier<T> supplier) {
+        final long submitted = timeSource.nanoTime();
+        return () -> {
+            try (Attachment attachment = attach(); PhaseScope scope = start(phaseName, submitted)) {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * Wraps the callable so that it runs with this context attached and is timed as the specified phase.
+     * @param phaseName the name of the phase the callable is timed as
+     * @param callable the callable
+     * @param <T> the type of the result
+     * @return the wrapped callable
+     * @see #wrapRunnable(String, Runnable)
+     */
+    public <T> Callable<T> wrapCallable(final String phaseName, final Callable<T> callable) {
+        final long submitted = timeSource.nanoTime();
+        return () -> {
+            try (Attachment attachment = attach(); PhaseScope scope = start(phaseName, submitted)) {
+                return callable.call();
+            }
+        };
+    }
+
+    /**
+     * Wraps the function so that each application runs with this context attached and is timed as the specified
+     * phase, such as for a <code>CompletableFuture</code> stage. No queue wait is recorded, since the function may be
+     * applied any number of times.
+     * @param phaseName the name of the phase the function is timed as
+     * @param function the function
+     * @param <T> the type of the argument
+     * @param <R> the type of the result
+     * @return the wrapped function
+     */
+    public <T, R> Function<T, R> wrapFunction(final String phaseName, final Function<T, R> function) {
+        return argument -> {
+            try (Attachment attachment = attach(); PhaseScope scope = phase(phaseName)) {
+                return function.apply(argument);
+            }
+        };
+    }
+
+    private PhaseScope start(final String phaseName, final long submitted) {
+        final Phase phase = phase0(phaseName);
+        final long started = timeSource.nanoTime();
+        phase.queueWaitNanos.add(started - submitted);
+        return new PhaseScope(timeSource, phase, started, cpuTime());
+    }
+
+    /**
+     * Returns the phase with the specified name, or <code>null</code> if it has not been entered.
+     * @param phaseName the name of the phase
+     * @return the phase, if any
+     */
+    public Phase getPhase(final String phaseName) {
+        return phases.get(phaseName);
+    }
+
+    /**
+     * Returns the phases that have been entered, sorted by name.
+     * @return the phases
+     */
+    public List<Phase> getPhases() {
+        final List<Phase> result = new ArrayList<>(phases.values());
+        result.sort(Comparator.comparing(Phase::getName));
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(name).append(": elapsed=");
+        NanoStopWatch.formatTo(elapsedNanos(), sb);
+        for (Phase phase : getPhases()) {
+            sb.append('\n').append("  ").append(phase);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restores the previously current context when closed.
+     */
+    public static final class Attachment implements AutoCloseable {
+        private final TimingContext previous;
+
+        private Attachment(final TimingContext previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Ends a phase on the thread that entered it when closed.
+     */
+    public static final class PhaseScope implements AutoCloseable {
+        private final TimeSource timeSource;
+        private final Phase phase;
+        private final long start;
+        private final long cpuStart;
+
+        private PhaseScope(final TimeSource timeSource, final Phase phase, final long start, final long cpuStart) {
+            this.timeSource = timeSource;
+            this.phase = phase;
+            this.start = start;
+            this.cpuStart = cpuStart;
+        }
+
+        @Override
+        public void close() {
+            if (phase == null) {
+                return;
+            }
+            final long wall = timeSource.nanoTime() - start;
+            long cpu = -1L;
+            if (cpuStart >= 0L) {
+                final long cpuStop = THREADS.getCurrentThreadCpuTime();
+                if (cpuStop >= 0L) {
+                    cpu = cpuStop - cpuStart;
+                }
+            }
+            phase.record(wall, cpu);
+        }
+    }
+
+    /**
+     * The accumulated times of a named phase.
+     */
+    public static final class Phase {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder cpuCount = new LongAdder();
+        private final LongAdder queueWaitNanos = new LongAdder();
+
+        private Phase(final String name) {
+            this.name = name;
+        }
+
+        private void record(final long wall, final long cpu) {
+            count.increment();
+            wallNanos.add(wall);
+            if (cpu >= 0L) {
+                cpuNanos.add(cpu);
+                cpuCount.increment();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of times the phase has ended.
+         * @return the number of times the phase has ended
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the sum of the wall time of the phase, which may exceed the elapsed time of the context when the
+         * phase runs on several threads at once.
+         * @return the wall time in nanoseconds
+         */
+        public long getWallNanos() {
+            return wallNanos.sum();
+        }
+
+        /**
+         * Returns the sum of the thread CPU time of the phase, measured only on threads for which the JVM reports it.
+         * @return the CPU time in nanoseconds
+         * @see #getCpuMeasuredCount()
+         */
+        public long getCpuNanos() {
+            return cpuNanos.sum();
+        }
+
+        /**
+         * Returns the number of times the phase ended with its CPU time measured.
+         * @return the number of CPU time measurements
+         */
+        public long getCpuMeasuredCount() {
+            return cpuCount.sum();
+        }
+
+        /**
+         * Returns the sum of the time that tasks of the phase waited between submission and running.
+         * @return the queue wait in nanoseconds
+         */
+        public long getQueueWaitNanos() {
+            return queueWaitNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(name).append(": count=").append(getCount()).append(" wall=");
+            NanoStopWatch.formatTo(getWallNanos(), sb).append(" cpu=");
+            NanoStopWatch.formatTo(getCpuNanos(), sb).append(" queue=");
+            return NanoStopWatch.formatTo(getQueueWaitNanos(), sb).toString();
+        }
+    }
+
+}
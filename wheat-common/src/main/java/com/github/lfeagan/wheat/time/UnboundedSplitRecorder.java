@@ -0,0 +1,243 @@
+package com.github.lfeagan.wheat.time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_SECOND;
+
+/**
+ * Records every split into growable primitive arrays. This is the default recorder and places no bound on the
+ * number of splits retained. {@link SplitNanoStopWatch.Split} objects are only created when splits are queried.
+ * <p>
+ * Each distinct description is interned and indexed as splits are recorded, with running statistics and the
+ * positions of its splits, so queries by description do not scan every split and regular expressions are only
+ * evaluated once per distinct description. Clearing the recorder retains the capacity of the arrays and, up to
+ * {@link #MAX_RETAINED_DESCRIPTIONS}, the interned descriptions, so a recorder that is cleared and reused records
+ * without allocating once it has grown to fit its workload. A recorder that has seen more distinct descriptions than
+ * that, such as one recording dynamically generated descriptions, forgets them all when cleared, so that a recorder
+ * reused for the life of a thread does not grow without bound.
+ */
+final class UnboundedSplitRecorder implements SplitRecorder {
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum number of interned descriptions retained when the recorder is cleared.
+     */
+    static final int MAX_RETAINED_DESCRIPTIONS = 256;
+
+    private long[] starts;
+    private long[] stops;
+    private int[] descriptionIds;
+    private int size = 0;
+
+    /**
+     * Maps each distinct description to its index, whose id is its position in {@link #indexes}.
+     */
+    private final Map<String, DescriptionIndex> indexesByName = new HashMap<>();
+    private DescriptionIndex[] indexes = new DescriptionIndex[16];
+    private int descriptionCount = 0;
+
+    UnboundedSplitRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    UnboundedSplitRecorder(final int capacity) {
+        starts = new long[capacity];
+        stops = new long[capacity];
+        descriptionIds = new int[capacity];
+    }
+
+    int capacity() {
+        return starts.length;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized long lastStop() {
+        return stops[size - 1];
+    }
+
+    @Override
+    public synchronized void record(final long start, final long stop, final String description) {
+        if (size == starts.length) {
+            final int capacity = Math.max(size * 2, DEFAULT_CAPACITY);
+            starts = Arrays.copyOf(starts, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+            descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+        }
+        final DescriptionIndex entry = intern(description);
+        starts[size] = start;
+        stops[size] = stop;
+        descriptionIds[size] = entry.id;
+        entry.add(size, stop - start);
+        ++size;
+    }
+
+    int descriptionCount() {
+        return descriptionCount;
+    }
+
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        if (descriptionCount > MAX_RETAINED_DESCRIPTIONS) {
+            indexesByName.clear();
+            indexes = new DescriptionIndex[16];
+            descriptionCount = 0;
+            return;
+        }
+        for (int id = 0; id < descriptionCount; ++id) {
+            indexes[id].clear();
+        }
+    }
+
+    @Override
+    public synchronized SplitNanoStopWatch.Split[] toArray() {
+        final SplitNanoStopWatch.Split[] splits = new SplitNanoStopWatch.Split[size];
+        for (int position = 0; position < size; ++position) {
+            splits[position] = materialize(position);
+        }
+        return splits;
+    }
+
+    @Override
+    public synchronized List<SplitNanoStopWatch.Split> getSplits(final String description) {
+        final DescriptionIndex entry = indexesByName.get(description);
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        final List<SplitNanoStopWatch.Split> matches = new ArrayList<>(entry.count);
+        for (int i = 0; i < entry.count; ++i) {
+            matches.add(materialize(entry.positions[i]));
+        }
+        return matches;
+    }
+
+    @Override
+    public synchronized List<SplitNanoStopWatch.Split> getSplits(final Matcher descriptionMatcher) {
+        final List<DescriptionIndex> matched = new ArrayList<>();
+        int count = 0;
+        for (int id = 0; id < descriptionCount; ++id) {
+            final DescriptionIndex entry = indexes[id];
+            if (entry.count != 0 && descriptionMatcher.reset(entry.description).matches()) {
+                matched.add(entry);
+                count += entry.count;
+            }
+        }
+        // each description's positions are ascending, so merging them restores the order the splits were recorded in
+        final int[] positions = new int[count];
+        int length = 0;
+        for (DescriptionIndex entry : matched) {
+            System.arraycopy(entry.positions, 0, positions, length, entry.count);
+            length += entry.count;
+        }
+        if (matched.size() > 1) {
+            Arrays.sort(positions);
+        }
+        final List<SplitNanoStopWatch.Split> matches = new ArrayList<>(count);
+        for (int position : positions) {
+            matches.add(materialize(position));
+        }
+        return matches;
+    }
+
+    @Override
+    public synchronized int getSplitsCount(final String description) {
+        final DescriptionIndex entry = indexesByName.get(description);
+        return (entry == null) ? 0 : entry.count;
+    }
+
+    @Override
+    public synchronized long getSplitsTotalElapsed(final String description) {
+        final DescriptionIndex entry = indexesByName.get(description);
+        return (entry == null) ? 0L : entry.total;
+    }
+
+    @Override
+    public synchronized double getSplitsAverageElapsedTime(final String description) {
+        final DescriptionIndex entry = indexesByName.get(description);
+        if (entry == null || entry.count == 0) {
+            return 0.0d;
+        }
+        return ((double) entry.total) / NANOS_PER_SECOND / entry.count;
+    }
+
+    @Override
+    public synchronized SplitNanoStopWatch.Summary getSplitsSummary(final String description) {
+        final DescriptionIndex entry = indexesByName.get(description);
+        if (entry == null || entry.count == 0) {
+            return new SplitNanoStopWatch.Summary(description, 0, 0L, 0L, 0L);
+        }
+        return new SplitNanoStopWatch.Summary(description, entry.count, entry.total, entry.min, entry.max);
+    }
+
+    @Override
+    public synchronized void forEach(final SplitVisitor visitor) {
+        for (int position = 0; position < size; ++position) {
+            visitor.visit(starts[position], stops[position], indexes[descriptionIds[position]].description);
+        }
+    }
+
+    private SplitNanoStopWatch.Split materialize(final int position) {
+        return new SplitNanoStopWatch.Split(starts[position], stops[position], indexes[descriptionIds[position]].description);
+    }
+
+    private DescriptionIndex intern(final String description) {
+        final DescriptionIndex existing = indexesByName.get(description);
+        if (existing != null) {
+            return existing;
+        }
+        if (descriptionCount == indexes.length) {
+            indexes = Arrays.copyOf(indexes, descriptionCount * 2);
+        }
+        final DescriptionIndex entry = new DescriptionIndex(descriptionCount, description);
+        indexes[descriptionCount++] = entry;
+        indexesByName.put(description, entry);
+        return entry;
+    }
+
+    /**
+     * The running statistics and split positions of a single description.
+     */
+    private static final class DescriptionIndex {
+        final int id;
+        final String description;
+        int count = 0;
+        long total = 0L;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int[] positions = new int[4];
+
+        DescriptionIndex(final int id, final String description) {
+            this.id = id;
+            this.description = description;
+        }
+
+        void add(final int position, final long elapsed) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position;
+            total += elapsed;
+            min = Math.min(min, elapsed);
+            max = Math.max(max, elapsed);
+        }
+
+        void clear() {
+            count = 0;
+            total = 0L;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+        }
+    }
+
+}
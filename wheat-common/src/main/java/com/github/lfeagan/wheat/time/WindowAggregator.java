@@ -0,0 +1,479 @@
+package com.github.lfeagan.wheat.time;
+
+import org.threeten.extra.PeriodDuration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Aggregates a stream of timestamped values into tumbling or sliding windows, keeping the count, sum, minimum and
+ * maximum of each window, and emits each window to a {@link WindowHandler} once a watermark passes its end.
+ * <p>
+ * Windows start at the steps of the slide from the origin in the time zone, which are found with an
+ * {@link IntervalAligner}, so calendar slides such as a day or a month follow the time zone's daylight saving
+ * transitions. A tumbling window ends
+ * at the next boundary; a sliding window is a whole number of slides long and ends that many boundaries later, so
+ * each value is added to that many windows.
+ * <pre>
+ * WindowAggregator aggregator = WindowAggregator.sliding(origin, PeriodDuration.of(Duration.ofMinutes(5)),
+ *         PeriodDuration.of(Duration.ofMinutes(1)), ZoneOffset.UTC,
+ *         (start, end, count, sum, min, max) -&gt; publish(start, sum / count));
+ * for (Sample sample : samples) {
+ *     aggregator.add(sample.epochNanos, sample.value);
+ *     aggregator.advanceWatermark(sample.epochNanos - lateness);
+ * }
+ * aggregator.flush();
+ * </pre>
+ * The watermark asserts that no more values older than it will be added. Every open window that ends at or before
+ * the watermark is emitted and forgotten when it advances, so the memory held is bounded by the number of windows
+ * open at once. A value added behind the watermark is still added to those of its windows that remain open, but not
+ * to the windows that have been emitted, and is counted by {@link #getLateCount()}.
+ * <p>
+ * The open windows are kept in an open-addressing table keyed by the epoch nanoseconds of their start, with the
+ * aggregates held in parallel primitive arrays, so adding a value does not allocate unless it opens a window that
+ * grows the table. Instances are not thread-safe.
+ */
+public final class WindowAggregator {
+
+    /**
+     * Receives the windows emitted by an aggregator.
+     */
+    public interface WindowHandler {
+
+        /**
+         * Accepts a window that has closed. Windows are accepted in order of their start, and only windows that had
+         * at least one value added are accepted.
+         * @param startEpochNanos the start of the window, inclusive, in nanoseconds from the epoch
+         * @param endEpochNanos the end of the window, exclusive, in nanoseconds from the epoch
+         * @param count the number of values added to the window
+         * @param sum the sum of the values
+         * @param min the least of the values
+         * @param max the greatest of the values
+         */
+        void accept(long startEpochNanos, long endEpochNanos, long count, double sum, double min, double max);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Marks an empty slot of the table. A window starting at this instant, over 292 years before the epoch, cannot be
+     * represented.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final IntervalAligner aligner;
+    private final PeriodDuration slide;
+    private final ZoneId timeZone;
+    private final int slidesPerWindow;
+    private final WindowHandler handler;
+
+    /**
+     * The slide in nanoseconds when it has no period, or -1 when it has a period.
+     */
+    private final long slideNanos;
+
+    /**
+     * The starts of the windows of the most recently added value, from the latest to the earliest.
+     */
+    private final long[] starts;
+
+    private long[] keys;
+    private long[] counts;
+    private double[] sums;
+    private double[] mins;
+    private double[] maxs;
+    private int size;
+    private int shift;
+
+    /**
+     * The starts of the windows being emitted, which is reused by each advance of the watermark.
+     */
+    private long[] closing = new long[INITIAL_CAPACITY];
+
+    /**
+     * A lower bound on the start of every open window, so that an advance that closes none need not scan the table.
+     */
+    private long minOpenStart = Long.MAX_VALUE;
+
+    private long watermark = Long.MIN_VALUE;
+
+    /**
+     * The start of the latest window that has been emitted, or {@link Long#MIN_VALUE} if none has.
+     */
+    private long closedThrough = Long.MIN_VALUE;
+    private long lateCount = 0L;
+
+    private WindowAggregator(final Instant origin, final PeriodDuration slide, final ZoneId timeZone, final int slidesPerWindow,
+                             final WindowHandler handler) {
+        this.aligner = IntervalAligner.create(origin, slide, timeZone);
+        this.slide = slide;
+        this.timeZone = timeZone;
+        this.slidesPerWindow = slidesPerWindow;
+        this.handler = handler;
+        this.slideNanos = slide.getPeriod().equals(Period.ZERO) ? slide.getDuration().toNanos() : -1L;
+        this.starts = new long[slidesPerWindow];
+        this.starts[0] = EMPTY;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an aggregator of tumbling windows, which do not overlap.
+     * @param origin the origin the windows are offset from
+     * @param interval the length of each window, which must be positive
+     * @param timeZone the time zone calendar arithmetic is performed in
+     * @param handler the handler the windows are emitted to
+     * @return a new aggregator
+     * @throws ArithmeticException if the origin cannot be expressed as epoch nanoseconds
+     */
+    public static WindowAggregator tumbling(final Instant origin, final PeriodDuration interval, final ZoneId timeZone,
+                                            final WindowHandler handler) {
+        return sliding(origin, interval, interval, timeZone, handler);
+    }
+
+    /**
+     * Creates an aggregator of sliding windows, a new one of which starts every slide.
+     * @param origin the origin the windows are offset from
+     * @param size the length of each window, which must be a whole number of slides
+     * @param slide the interval between the starts of consecutive windows, which must be positive
+     * @param timeZone the time zone calendar arithmetic is performed in
+     * @param handler the handler the windows are emitted to
+     * @return a new aggregator
+     * @throws ArithmeticException if the origin cannot be expressed as epoch nanoseconds
+     */
+    public static WindowAggregator sliding(final Instant origin, final PeriodDuration size, final PeriodDuration slide,
+                                           final ZoneId timeZone, final WindowHandler handler) {
+        Objects.requireNonNull(origin, "origin must be specified");
+        Objects.requireNonNull(size, "size must be specified");
+        Objects.requireNonNull(slide, "slide must be specified");
+        Objects.requireNonNull(timeZone, "time zone must be specified");
+        Objects.requireNonNull(handler, "handler must be specified");
+        if (slide.isZero() || slide.getPeriod().isNegative() || slide.getDuration().isNegative()) {
+            throw new IllegalArgumentException("slide must be positive");
+        }
+        return new WindowAggregator(origin, slide, timeZone, slidesPerWindow(size, slide), handler);
+    }
+
+    /**
+     * Returns the number of slides the size is, or throws if it is not a whole number of them.
+     */
+    private static int slidesPerWindow(final PeriodDuration size, final PeriodDuration slide) {
+        final Period sizePeriod = size.getPeriod().normalized();
+        final Period slidePeriod = slide.getPeriod().normalized();
+        final long multiple;
+        if (slidePeriod.toTotalMonths() != 0L) {
+            multiple = sizePeriod.toTotalMonths() / slidePeriod.toTotalMonths();
+        } else if (slidePeriod.getDays() != 0) {
+            multiple = sizePeriod.getDays() / slidePeriod.getDays();
+        } else {
+            multiple = size.getDuration().toNanos() / slide.getDuration().toNanos();
+        }
+        if (multiple < 1L || multiple > Integer.MAX_VALUE
+                || !slidePeriod.multipliedBy((int) multiple).normalized().equals(sizePeriod)
+                || !slide.getDuration().multipliedBy(multiple).equals(size.getDuration())) {
+            throw new IllegalArgumentException("size must be a whole number of slides");
+        }
+        return (int) multiple;
+    }
+
+    public Instant getOrigin() {
+        return aligner.getOrigin();
+    }
+
+    public PeriodDuration getSlide() {
+        return slide;
+    }
+
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * Returns the number of slides each window is long, which is one for tumbling windows.
+     * @return the number of slides per window
+     */
+    public int getSlidesPerWindow() {
+        return slidesPerWindow;
+    }
+
+    /**
+     * Returns the watermark, in nanoseconds from the epoch, or {@link Long#MIN_VALUE} if it has not been advanced.
+     * @return the watermark
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Returns the number of windows that have had values added but have not been emitted.
+     * @return the number of open windows
+     */
+    public int getOpenWindowCount() {
+        return size;
+    }
+
+    /**
+     * Returns the number of values that were not added to at least one of their windows because it had already been
+     * emitted.
+     * @return the number of late values
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Adds the value to each window the timestamp falls within.
+     * @param timestamp the timestamp of the value
+     * @param value the value
+     * @throws ArithmeticException if the timestamp cannot be expressed as epoch nanoseconds
+     */
+    public void add(final Instant timestamp, final double value) {
+        Objects.requireNonNull(timestamp, "timestamp must be specified");
+        add(TimeUtils.toEpochNanos(timestamp), value);
+    }
+
+    /**
+     * Adds the value to each window the timestamp falls within.
+     * @param epochNanos the timestamp of the value, in nanoseconds from the epoch
+     * @param value the value
+     */
+    public void add(final long epochNanos, final double value) {
+        final long start = aligner.alignEpochNanos(epochNanos);
+        if (start != starts[0]) {
+            starts[0] = start;
+            for (int i = 1; i < slidesPerWindow; ++i) {
+                starts[i] = previous(starts[i - 1]);
+            }
+        }
+        for (int i = 0; i < slidesPerWindow; ++i) {
+            if (starts[i] <= closedThrough) {
+                // the starts are descending, so the rest of the windows have been emitted too
+                ++lateCount;
+                return;
+            }
+            accumulate(starts[i], value);
+        }
+    }
+
+    /**
+     * Advances the watermark, emitting every open window that ends at or before it. Watermarks that do not advance
+     * are ignored.
+     * @param epochNanos the watermark, in nanoseconds from the epoch
+     */
+    public void advanceWatermark(final long epochNanos) {
+        if (epochNanos <= watermark) {
+            return;
+        }
+        watermark = epochNanos;
+        // a window has ended once the boundary that is its end is at or before the watermark
+        long threshold = aligner.alignEpochNanos(epochNanos);
+        for (int i = 0; i < slidesPerWindow; ++i) {
+            threshold = previous(threshold);
+        }
+        if (threshold > closedThrough) {
+            closedThrough = threshold;
+            emit(threshold);
+        }
+    }
+
+    /**
+     * Advances the watermark, emitting every open window that ends at or before it.
+     * @param watermark the watermark
+     * @throws ArithmeticException if the watermark cannot be expressed as epoch nanoseconds
+     */
+    public void advanceWatermark(final Instant watermark) {
+        Objects.requireNonNull(watermark, "watermark must be specified");
+        advanceWatermark(TimeUtils.toEpochNanos(watermark));
+    }
+
+    /**
+     * Emits every open window, as if the watermark had advanced beyond them all. Values added afterwards are late.
+     */
+    public void flush() {
+        watermark = Long.MAX_VALUE;
+        closedThrough = Long.MAX_VALUE;
+        emit(Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the boundary before the specified boundary.
+     */
+    private long previous(final long boundary) {
+        if (slideNanos > 0L) {
+            return boundary - slideNanos;
+        }
+        return aligner.alignEpochNanos(boundary - 1L);
+    }
+
+    /**
+     * Returns the boundary after the specified boundary.
+     */
+    private long next(final long boundary) {
+        if (slideNanos > 0L) {
+            return boundary + slideNanos;
+        }
+        // before the origin, boundaries are found by subtracting the slide, which adding it does not always invert,
+        // so step forward past the boundary and then back to the earliest boundary after it
+        ZonedDateTime step = ZonedDateTime.ofInstant(TimeUtils.ofEpochNanos(boundary), timeZone).plus(slide);
+        long next = aligner.alignEpochNanos(TimeUtils.toEpochNanos(step.toInstant()));
+        while (next <= boundary) {
+            step = step.plus(slide);
+            next = aligner.alignEpochNanos(TimeUtils.toEpochNanos(step.toInstant()));
+        }
+        for (long before = previous(next); before > boundary; before = previous(before)) {
+            next = before;
+        }
+        return next;
+    }
+
+    /**
+     * Emits and removes every open window starting at or before the threshold, in order of their start.
+     */
+    private void emit(final long threshold) {
+        if (minOpenStart > threshold) {
+            return;
+        }
+        int count = 0;
+        long remaining = Long.MAX_VALUE;
+        for (final long key : keys) {
+            if (key == EMPTY) {
+                continue;
+            }
+            if (key <= threshold) {
+                if (count == closing.length) {
+                    closing = Arrays.copyOf(closing, count * 2);
+                }
+                closing[count++] = key;
+            } else {
+                remaining = Math.min(remaining, key);
+            }
+        }
+        minOpenStart = remaining;
+        Arrays.sort(closing, 0, count);
+        for (int i = 0; i < count; ++i) {
+            final long start = closing[i];
+            long end = start;
+            for (int j = 0; j < slidesPerWindow; ++j) {
+                end = next(end);
+            }
+            final int slot = find(start);
+            final long windowCount = counts[slot];
+            final double sum = sums[slot];
+            final double min = mins[slot];
+            final double max = maxs[slot];
+            remove(slot);
+            handler.accept(start, end, windowCount, sum, min, max);
+        }
+    }
+
+    private int slot(final long key) {
+        // the starts of windows are multiples of the slide, so mix the key to spread its low bits
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private int find(final long key) {
+        final int mask = keys.length - 1;
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void accumulate(final long key, final double value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("window must start after " + TimeUtils.ofEpochNanos(EMPTY));
+        }
+        final int mask = keys.length - 1;
+        int slot = slot(key);
+        while (true) {
+            final long existing = keys[slot];
+            if (existing == key) {
+                ++counts[slot];
+                sums[slot] += value;
+                mins[slot] = Math.min(mins[slot], value);
+                maxs[slot] = Math.max(maxs[slot], value);
+                return;
+            }
+            if (existing == EMPTY) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            accumulate(key, value);
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = 1L;
+        sums[slot] = value;
+        mins[slot] = value;
+        maxs[slot] = value;
+        ++size;
+        minOpenStart = Math.min(minOpenStart, key);
+    }
+
+    /**
+     * Removes the entry in the slot, shifting back any later entries of the same probe sequence so that no tombstone
+     * is needed.
+     */
+    private void remove(int slot) {
+        final int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            final int home = slot(keys[next]);
+            // move the entry back if its home is not cyclically within (slot, next]
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                counts[slot] = counts[next];
+                sums[slot] = sums[next];
+                mins[slot] = mins[next];
+                maxs[slot] = maxs[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[slot] = EMPTY;
+        --size;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        sums = new double[capacity];
+        mins = new double[capacity];
+        maxs = new double[capacity];
+        shift = Long.numberOfLeadingZeros(capacity - 1L);
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final long[] oldCounts = counts;
+        final double[] oldSums = sums;
+        final double[] oldMins = mins;
+        final double[] oldMaxs = maxs;
+        allocate(oldKeys.length * 2);
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = slot(oldKeys[i]);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            sums[slot] = oldSums[i];
+            mins[slot] = oldMins[i];
+            maxs[slot] = oldMaxs[i];
+        }
+    }
+
+}
@@ -0,0 +1,393 @@
+package com.github.lfeagan.wheat.time;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The UTC offset transitions of a time zone over a range of years, precomputed into sorted primitive arrays so that
+ * converting between epoch seconds and local date-times within the range is a binary search and an addition, rather
+ * than a query of the zone's {@link ZoneRules}.
+ * <p>
+ * Local date-times that fall in a gap or an overlap are resolved exactly as {@link ZonedDateTime#ofLocal} resolves
+ * them: a local date-time in a gap is moved later by the length of the gap, and one in an overlap takes the preferred
+ * offset if it is valid, or the earlier offset otherwise. Instants and local date-times outside the range are
+ * converted by the zone's rules, so the results never depend on the range, only the cost does.
+ * <p>
+ * Local date-times are expressed as the number of seconds from 1970-01-01T00:00, as by
+ * {@link LocalDateTime#toEpochSecond(ZoneOffset)} with an offset of zero. Tables are immutable and safe for use by
+ * many threads.
+ */
+public final class ZoneTransitionTable {
+
+    public static final int DEFAULT_FROM_YEAR = 1900;
+    public static final int DEFAULT_TO_YEAR = 2100;
+
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    /**
+     * How far beyond the range transitions are included, so that every local date-time within the range is covered
+     * by the gaps and overlaps around it. Offsets are within 18 hours of UTC, so no transition farther away than that
+     * affects it.
+     */
+    private static final long MARGIN_SECONDS = 2L * SECONDS_PER_DAY;
+
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+    private static final long MIN_EPOCH_DAY = LocalDate.MIN.toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.MAX.toEpochDay();
+
+    private static final ConcurrentMap<ZoneId, ZoneTransitionTable> TABLES = new ConcurrentHashMap<>();
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private final int fromYear;
+    private final int toYear;
+
+    /**
+     * The first and last epoch seconds, and likewise local seconds, that are converted with the arrays.
+     */
+    private final long startSecond;
+    private final long endSecond;
+
+    /**
+     * The epoch seconds of each transition, in ascending order.
+     */
+    private final long[] transitions;
+
+    /**
+     * The offset in seconds before the first transition, followed by the offset after each transition.
+     */
+    private final int[] offsets;
+
+    /**
+     * The local seconds each transition's gap or overlap begins at, inclusive, and ends at, exclusive, which are both
+     * in ascending order.
+     */
+    private final long[] localStarts;
+    private final long[] localEnds;
+
+    private ZoneTransitionTable(final ZoneId zone, final int fromYear, final int toYear) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        this.startSecond = LocalDate.of(fromYear, 1, 1).toEpochDay() * SECONDS_PER_DAY;
+        this.endSecond = LocalDate.of(toYear + 1, 1, 1).toEpochDay() * SECONDS_PER_DAY;
+
+        final Instant first = Instant.ofEpochSecond(startSecond - MARGIN_SECONDS);
+        final Instant last = Instant.ofEpochSecond(endSecond + MARGIN_SECONDS);
+        final List<ZoneOffsetTransition> found = new ArrayList<>();
+        for (ZoneOffsetTransition transition = rules.nextTransition(first);
+             transition != null && !transition.getInstant().isAfter(last);
+             transition = rules.nextTransition(transition.getInstant())) {
+            found.add(transition);
+        }
+        this.transitions = new long[found.size()];
+        this.offsets = new int[found.size() + 1];
+        this.localStarts = new long[found.size()];
+        this.localEnds = new long[found.size()];
+        offsets[0] = rules.getOffset(first).getTotalSeconds();
+        for (int i = 0; i < transitions.length; ++i) {
+            final ZoneOffsetTransition transition = found.get(i);
+            transitions[i] = transition.toEpochSecond();
+            offsets[i + 1] = transition.getOffsetAfter().getTotalSeconds();
+            final int before = transition.getOffsetBefore().getTotalSeconds();
+            localStarts[i] = transitions[i] + Math.min(before, offsets[i + 1]);
+            localEnds[i] = transitions[i] + Math.max(before, offsets[i + 1]);
+            if (i > 0 && localStarts[i] < localEnds[i - 1]) {
+                // every zone in the tz database has transitions far enough apart that this cannot happen
+                throw new IllegalStateException("transitions of " + zone + " at " + transition + " overlap");
+            }
+        }
+    }
+
+    /**
+     * Returns the table of the time zone over the default range of years, which is created once and shared.
+     * @param zone the time zone
+     * @return the table
+     */
+    public static ZoneTransitionTable of(final ZoneId zone) {
+        Objects.requireNonNull(zone, "zone must be specified");
+        final ZoneTransitionTable table = TABLES.get(zone);
+        return table != null ? table : TABLES.computeIfAbsent(zone, z -> new ZoneTransitionTable(z, DEFAULT_FROM_YEAR, DEFAULT_TO_YEAR));
+    }
+
+    /**
+     * Creates a table of the time zone's transitions over the specified years.
+     * @param zone the time zone
+     * @param fromYear the first year the table covers
+     * @param toYear the last year the table covers, inclusive
+     * @return a new table
+     */
+    public static ZoneTransitionTable create(final ZoneId zone, final int fromYear, final int toYear) {
+        Objects.requireNonNull(zone, "zone must be specified");
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("fromYear must not be after toYear");
+        }
+        if (fromYear < -1_000_000 || toYear > 1_000_000) {
+            throw new IllegalArgumentException("years must be within a million years of the epoch");
+        }
+        return new ZoneTransitionTable(zone, fromYear, toYear);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    public int getFromYear() {
+        return fromYear;
+    }
+
+    public int getToYear() {
+        return toYear;
+    }
+
+    /**
+     * Returns the number of transitions held, including those just beyond the range of years.
+     * @return the number of transitions
+     */
+    public int getTransitionCount() {
+        return transitions.length;
+    }
+
+    /**
+     * Returns the offset from UTC in effect at the instant.
+     * @param epochSecond the instant, in seconds from the epoch
+     * @return the offset in seconds
+     */
+    public int getOffsetSeconds(final long epochSecond) {
+        return getOffsetSeconds(epochSecond, -1);
+    }
+
+    /**
+     * Returns the offset in effect at the instant, checking the offset of the hinted index before searching.
+     */
+    private int getOffsetSeconds(final long epochSecond, final int hint) {
+        if (epochSecond < startSecond || epochSecond >= endSecond) {
+            return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        }
+        // the index of the first transition after the instant is the index of the offset in effect
+        return offsets[search(transitions, epochSecond, hint)];
+    }
+
+    /**
+     * Converts the local date-time to an instant, resolving gaps and overlaps in the same way as
+     * {@link ZonedDateTime#ofLocal(LocalDateTime, ZoneId, ZoneOffset)}. The offset in effect at the instant, which
+     * {@link #getOffsetSeconds(long)} returns, is the offset the local date-time resolved to, and adding it to the
+     * instant yields the local date-time after resolution.
+     * @param localSecond the local date-time, in seconds from 1970-01-01T00:00
+     * @param preferredOffsetSeconds the offset to use if the local date-time is in an overlap and it is valid, which
+     *                               may be any value, such as {@link Integer#MIN_VALUE} to prefer the earlier offset
+     * @return the instant, in seconds from the epoch
+     */
+    public long toEpochSecond(final long localSecond, final int preferredOffsetSeconds) {
+        return toEpochSecond(localSecond, preferredOffsetSeconds, -1);
+    }
+
+    private long toEpochSecond(final long localSecond, final int preferredOffsetSeconds, final int hint) {
+        if (localSecond < startSecond || localSecond >= endSecond) {
+            final LocalDateTime local = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+            final ZoneOffset preferred = preferredOffsetSeconds >= -MAX_OFFSET_SECONDS && preferredOffsetSeconds <= MAX_OFFSET_SECONDS
+                    ? ZoneOffset.ofTotalSeconds(preferredOffsetSeconds) : null;
+            return ZonedDateTime.ofLocal(local, zone, preferred).toEpochSecond();
+        }
+        // find the last transition whose gap or overlap begins at or before the local date-time
+        final int index = search(localStarts, localSecond, hint) - 1;
+        if (index < 0 || localSecond >= localEnds[index]) {
+            // the local date-time is unambiguous
+            return localSecond - offsets[index + 1];
+        }
+        final int before = offsets[index];
+        final int after = offsets[index + 1];
+        if (after > before) {
+            // in a gap, which moves the local date-time later by the length of the gap to the offset after it
+            return localSecond - before;
+        }
+        // in an overlap
+        return localSecond - (preferredOffsetSeconds == after ? after : before);
+    }
+
+    /**
+     * Determines if the transitions held include every transition between the instants.
+     */
+    boolean covers(final long fromEpochSecond, final long toEpochSecond) {
+        return fromEpochSecond >= startSecond && toEpochSecond < endSecond;
+    }
+
+    /**
+     * Returns the index of the first transition after the instant, or the number of transitions if there is none.
+     */
+    int indexAfter(final long epochSecond) {
+        return search(transitions, epochSecond, -1);
+    }
+
+    /**
+     * Returns the index of the first element of the sorted array that is greater than the key, or the length of the
+     * array if there is none. The hinted index and those either side of it are checked first, since consecutive
+     * conversions are usually close in time.
+     */
+    private static int search(final long[] array, final long key, final int hint) {
+        if (hint >= 0 && hint <= array.length) {
+            if (hint == 0 || array[hint - 1] <= key) {
+                if (hint == array.length || key < array[hint]) {
+                    return hint;
+                }
+                if (hint + 1 == array.length || key < array[hint + 1]) {
+                    return hint + 1;
+                }
+            } else if (hint == 1 || array[hint - 2] <= key) {
+                return hint - 1;
+            }
+        }
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (array[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    long getTransition(final int index) {
+        return transitions[index];
+    }
+
+    /**
+     * Returns the local second the gap or overlap of the transition begins at, inclusive.
+     */
+    long getLocalStart(final int index) {
+        return localStarts[index];
+    }
+
+    /**
+     * Returns the local second the gap or overlap of the transition ends at, exclusive.
+     */
+    long getLocalEnd(final int index) {
+        return localEnds[index];
+    }
+
+    /**
+     * Creates a cursor at the instant.
+     */
+    Cursor cursor(final Instant instant) {
+        return new Cursor(instant);
+    }
+
+    /**
+     * A mutable zoned date-time that is moved by adding or subtracting periods and durations in exactly the same way
+     * as {@link ZonedDateTime#plus(java.time.temporal.TemporalAmount)} and
+     * {@link ZonedDateTime#minus(java.time.temporal.TemporalAmount)} move a <code>ZonedDateTime</code>, but with the
+     * offsets found in the table.
+     */
+    final class Cursor {
+
+        private long epochSecond;
+        private int nano;
+        private int offset;
+
+        /**
+         * The index of the offset in effect, which hints where to search for the next.
+         */
+        private int index;
+
+        private Cursor(final Instant instant) {
+            this.epochSecond = instant.getEpochSecond();
+            this.nano = instant.getNano();
+            this.index = indexAfter(epochSecond);
+            this.offset = getOffsetSeconds(epochSecond, index);
+        }
+
+        private void setEpochSecond(final long epochSecond) {
+            this.epochSecond = epochSecond;
+            if (epochSecond >= startSecond && epochSecond < endSecond) {
+                index = search(transitions, epochSecond, index);
+                offset = offsets[index];
+            } else {
+                offset = getOffsetSeconds(epochSecond, -1);
+            }
+        }
+
+        /**
+         * Adds the months and then the days to the local date-time and resolves the result, keeping the offset if it
+         * is valid there, as ZonedDateTime.plus(Period) does. Years are added as months, as Period.addTo does.
+         */
+        private void plusLocal(final long months, final long days) {
+            final long localSecond = epochSecond + offset;
+            long day = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+            final long secondOfDay = localSecond - day * SECONDS_PER_DAY;
+            if (months != 0L) {
+                day = LocalDate.ofEpochDay(day).plusMonths(months).toEpochDay();
+            }
+            if (days != 0L) {
+                day = Math.addExact(day, days);
+                if (day < MIN_EPOCH_DAY || day > MAX_EPOCH_DAY) {
+                    // as LocalDate.plusDays throws
+                    LocalDate.ofEpochDay(day);
+                }
+            }
+            setEpochSecond(toEpochSecond(day * SECONDS_PER_DAY + secondOfDay, offset, index));
+        }
+
+        /**
+         * Adds the seconds and nanoseconds to the instant, as ZonedDateTime.plus(Duration) does.
+         */
+        private void plusInstant(final long seconds, final long nanos) {
+            final long totalNanos = nano + nanos;
+            nano = (int) Math.floorMod(totalNanos, 1_000_000_000L);
+            setEpochSecond(Math.addExact(Math.addExact(epochSecond, seconds), Math.floorDiv(totalNanos, 1_000_000_000L)));
+        }
+
+        /**
+         * Adds the period and then the duration, as PeriodDuration.addTo does.
+         */
+        void plus(final Period period, final Duration duration) {
+            if (!period.isZero()) {
+                plusLocal(period.toTotalMonths(), period.getDays());
+            }
+            if (!duration.isZero()) {
+                plusInstant(duration.getSeconds(), duration.getNano());
+            }
+        }
+
+        /**
+         * Subtracts the period and then the duration, as PeriodDuration.subtractFrom does.
+         */
+        void minus(final Period period, final Duration duration) {
+            if (!period.isZero()) {
+                plusLocal(-period.toTotalMonths(), -(long) period.getDays());
+            }
+            if (!duration.isZero()) {
+                plusInstant(Math.negateExact(duration.getSeconds()), -(long) duration.getNano());
+            }
+        }
+
+        /**
+         * Compares the cursor's instant with the specified instant.
+         */
+        int compareTo(final Instant instant) {
+            final int cmp = Long.compare(epochSecond, instant.getEpochSecond());
+            return cmp != 0 ? cmp : Integer.compare(nano, instant.getNano());
+        }
+
+        Instant toInstant() {
+            return Instant.ofEpochSecond(epochSecond, nano);
+        }
+    }
+
+}
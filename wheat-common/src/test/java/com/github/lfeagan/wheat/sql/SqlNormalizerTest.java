@@ -0,0 +1,36 @@
+package com.github.lfeagan.wheat.sql;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SqlNormalizerTest {
+
+    @Test
+    public void literals() {
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT * FROM users WHERE id = 42 AND name = 'O''Brien'"),
+                "SELECT * FROM users WHERE id = ? AND name = ?");
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT price * 1.5e-3 FROM t1 WHERE x > -.5"),
+                "SELECT price * ? FROM t1 WHERE x > -?");
+        // quoted identifiers and digits within identifiers are kept
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT \"col 1\", `c2`, t2.c3 FROM t2"),
+                "SELECT \"col 1\", `c2`, t2.c3 FROM t2");
+    }
+
+    @Test
+    public void whitespaceAndComments() {
+        Assert.assertEquals(SqlNormalizer.normalize("  SELECT a -- the a column\n\tFROM /* the table */ t  "),
+                "SELECT a FROM t");
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT a\r\n  FROM t\nWHERE b = ?"),
+                "SELECT a FROM t WHERE b = ?");
+    }
+
+    @Test
+    public void lists() {
+        final String expected = "SELECT a FROM t WHERE b IN (?)";
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE b IN (1, 2, 3)"), expected);
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE b IN ( ?,?,? )"), expected);
+        Assert.assertEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE b IN ('x')"), expected);
+        Assert.assertEquals(SqlNormalizer.normalize("UPDATE t SET a = 1, b = 2"), "UPDATE t SET a = ?, b = ?");
+    }
+
+}
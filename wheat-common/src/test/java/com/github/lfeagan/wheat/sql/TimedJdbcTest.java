@@ -0,0 +1,143 @@
+package com.github.lfeagan.wheat.sql;
+
+import com.github.lfeagan.wheat.time.TimeSource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+public class TimedJdbcTest {
+
+    /**
+     * A time source that advances by 1 microsecond every time it is read, so that every start-stop cycle of a stop
+     * watch measures 1 microsecond.
+     */
+    private static final class TickingTimeSource implements TimeSource {
+        private long nanoTime = 0L;
+
+        @Override
+        public long nanoTime() {
+            nanoTime += 1_000L;
+            return nanoTime;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return 0L;
+        }
+    }
+
+    private Connection raw;
+
+    @BeforeMethod
+    public void createDatabase() throws SQLException {
+        raw = DriverManager.getConnection("jdbc:h2:mem:timed");
+        try (Statement statement = raw.createStatement()) {
+            statement.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(64))");
+        }
+    }
+
+    @AfterMethod
+    public void dropDatabase() throws SQLException {
+        try (Statement statement = raw.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        raw.close();
+    }
+
+    @Test
+    public void phases() throws SQLException {
+        SqlMetrics metrics = SqlMetrics.create(new TickingTimeSource(), 5);
+        Connection connection = metrics.wrap(raw);
+
+        for (int i = 0; i < 3; ++i) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO users VALUES (?, ?)")) {
+                statement.setInt(1, i);
+                statement.setString(2, "user" + i);
+                Assert.assertEquals(statement.executeUpdate(), 1);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT name FROM users WHERE id < 10 ORDER BY id")) {
+            Assert.assertSame(statement.getConnection(), connection);
+            try (ResultSet rs = statement.executeQuery()) {
+                Assert.assertSame(rs.getStatement(), statement);
+                int count = 0;
+                while (rs.next()) {
+                    Assert.assertEquals(rs.getString(1), "user" + count++);
+                }
+                Assert.assertEquals(count, 3);
+            }
+        }
+        // literals are normalized, and an empty result set records no time to first row
+        try (PreparedStatement statement = connection.prepareStatement("SELECT name FROM users WHERE id < 0 ORDER BY id")) {
+            Assert.assertTrue(statement.execute());
+            try (ResultSet rs = statement.getResultSet()) {
+                Assert.assertSame(statement.getResultSet(), rs);
+                Assert.assertFalse(rs.next());
+            }
+        }
+
+        Map<String, StatementMetrics> statements = metrics.getStatements();
+        Assert.assertEquals(statements.keySet().toString(),
+                "[INSERT INTO users VALUES (?), SELECT name FROM users WHERE id < ? ORDER BY id]");
+
+        StatementMetrics insert = statements.get("INSERT INTO users VALUES (?)");
+        Assert.assertSame(metrics.statement("INSERT INTO users VALUES (?, ?)"), insert);
+        Assert.assertEquals(insert.getPrepare().getCount(), 3L);
+        Assert.assertEquals(insert.getExecute().getCount(), 3L);
+        Assert.assertEquals(insert.getExecute().getTotal(), 3_000L);
+        Assert.assertEquals(insert.getFetch().getCount(), 0L);
+        Assert.assertEquals(insert.getRowsFetched(), 0L);
+
+        StatementMetrics select = statements.get("SELECT name FROM users WHERE id < ? ORDER BY id");
+        Assert.assertEquals(select.getPrepare().getCount(), 2L);
+        Assert.assertEquals(select.getPrepare().getTotal(), 2_000L);
+        Assert.assertEquals(select.getExecute().getCount(), 2L);
+        Assert.assertEquals(select.getExecute().getTotal(), 2_000L);
+        // four calls to next() for the first result set and one for the second, recorded once each
+        Assert.assertEquals(select.getFetch().getCount(), 2L);
+        Assert.assertEquals(select.getFetch().getTotal(), 5_000L);
+        Assert.assertEquals(select.getRowsFetched(), 3L);
+        Assert.assertEquals(select.getTimeToFirstRow().getCount(), 1L);
+        Assert.assertEquals(select.getTimeToFirstRow().getTotal(), 2_000L);
+    }
+
+    @Test
+    public void failures() throws SQLException {
+        SqlMetrics metrics = SqlMetrics.create();
+        Connection connection = metrics.wrap(raw);
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO users VALUES (?, ?)")) {
+            statement.setInt(1, 1);
+            statement.setString(2, "a");
+            statement.executeUpdate();
+            try {
+                statement.executeUpdate();
+                Assert.fail("no exception thrown");
+            } catch (SQLException e) {
+                // do nothing
+            }
+            // the statement can be executed again after a failure
+            statement.setInt(1, 2);
+            Assert.assertEquals(statement.executeUpdate(), 1);
+        }
+        try {
+            connection.prepareStatement("SELECT missing FROM users");
+            Assert.fail("no exception thrown");
+        } catch (SQLException e) {
+            // do nothing
+        }
+        Assert.assertEquals(metrics.getStatements().size(), 1);
+        Assert.assertEquals(metrics.getStatements().get("INSERT INTO users VALUES (?)").getExecute().getCount(), 3L);
+        Assert.assertTrue(connection.isWrapperFor(org.h2.jdbc.JdbcConnection.class));
+        Assert.assertSame(connection.unwrap(Connection.class), raw);
+    }
+
+}
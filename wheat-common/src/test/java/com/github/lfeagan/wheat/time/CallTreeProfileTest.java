@@ -0,0 +1,53 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CallTreeProfileTest {
+
+    @Test
+    public void mergePaths() {
+        CallTreeProfile profile = CallTreeProfile.create();
+        long requestTotal = 0L;
+        for (int i = 0; i < 10; ++i) {
+            SplitNanoStopWatch sw = SplitNanoStopWatch.createStarted();
+            try (SplitNanoStopWatch.Scope request = sw.enter("request")) {
+                sw.enter("parse").close();
+                try (SplitNanoStopWatch.Scope execute = sw.enter("execute")) {
+                    sw.enter("fetch").close();
+                    if (i % 2 == 0) {
+                        sw.enter("fetch").close();
+                    }
+                }
+            }
+            profile.add(sw);
+            requestTotal += sw.getSpans()[0].getElapsed();
+        }
+        profile.add(SplitNanoStopWatch.createStarted());
+
+        Assert.assertEquals(profile.getRoot().getChildren().size(), 1);
+        CallTreeProfile.Node request = profile.getRoot().getChild("request");
+        Assert.assertEquals(request.getCount(), 10L);
+        Assert.assertEquals(request.getTotalElapsed(), requestTotal);
+        Assert.assertEquals(request.getHistogram().getCount(), 10L);
+        Assert.assertEquals(request.getChildren().size(), 2);
+
+        CallTreeProfile.Node fetch = request.getChild("execute").getChild("fetch");
+        Assert.assertEquals(fetch.getCount(), 15L);
+        Assert.assertEquals(fetch.getPath(), "request/execute/fetch");
+        Assert.assertEquals(fetch.getSelfElapsed(), fetch.getTotalElapsed());
+
+        // the self time of every node sums to the total time of the root spans
+        Assert.assertEquals(sumSelf(request), request.getTotalElapsed());
+        Assert.assertTrue(profile.toString().contains("    fetch: count=15"));
+    }
+
+    private static long sumSelf(CallTreeProfile.Node node) {
+        long sum = node.getSelfElapsed();
+        for (CallTreeProfile.Node child : node.getChildren()) {
+            sum += sumSelf(child);
+        }
+        return sum;
+    }
+
+}
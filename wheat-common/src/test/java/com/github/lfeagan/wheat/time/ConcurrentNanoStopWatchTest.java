@@ -0,0 +1,64 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentNanoStopWatchTest {
+
+    @Test
+    public void threadLocal() {
+        ConcurrentNanoStopWatch sw = ConcurrentNanoStopWatch.create();
+        Assert.assertFalse(sw.isRunning());
+        try {
+            sw.stop();
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        sw.start();
+        Assert.assertTrue(sw.isRunning());
+        try {
+            sw.start();
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        final long elapsed = sw.stop();
+        Assert.assertFalse(sw.isRunning());
+        Assert.assertEquals(sw.getCount(), 1L);
+        Assert.assertEquals(sw.getCumulative(), elapsed);
+        sw.reset();
+        Assert.assertEquals(sw.getCount(), 0L);
+        Assert.assertEquals(sw.getCumulative(), 0L);
+        Assert.assertEquals(sw.getAverage(), 0.0);
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        final ConcurrentNanoStopWatch sw = ConcurrentNanoStopWatch.create();
+        final int threads = 8;
+        final int iterations = 10000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; ++t) {
+            final boolean useToken = (t % 2) == 0;
+            executor.execute(() -> {
+                for (int i = 0; i < iterations; ++i) {
+                    if (useToken) {
+                        sw.end(sw.begin());
+                    } else {
+                        sw.start();
+                        sw.stop();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(sw.getCount(), (long) threads * iterations);
+        Assert.assertTrue(sw.getCumulative() >= 0L);
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_HOUR;
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_MINUTE;
+import static com.github.lfeagan.wheat.time.NanoStopWatch.NANOS_PER_SECOND;
+
+public class DurationFormatterTest {
+
+    private static final long[] EDGES = {
+            0L, 1L, -1L, 999L, 1000L, 10_000L, 999_999_999L, NANOS_PER_SECOND, NANOS_PER_MINUTE - 1L, NANOS_PER_MINUTE,
+            NANOS_PER_HOUR - 1L, NANOS_PER_HOUR, 10L * NANOS_PER_HOUR, -NANOS_PER_HOUR - 1L, -10_000L, -NANOS_PER_SECOND,
+            10L, 11L, 99L, 100L, -10L, -100L, -999L, 3_600_010L, 60_010L,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1L
+    };
+
+    @Test
+    public void nanos() throws IOException {
+        Random random = new Random(42L);
+        for (int i = 0; i < 200_000; ++i) {
+            final long elapsed = (i < EDGES.length) ? EDGES[i] : randomValue(random);
+            final String expected = legacyNanosToString(elapsed);
+            Assert.assertEquals(NanoStopWatch.toString(elapsed), expected);
+            Assert.assertEquals(NanoStopWatch.formatTo(elapsed, new StringBuilder("x")).toString(), "x" + expected);
+            Assert.assertEquals(NanoStopWatch.formatTo(elapsed, (Appendable) new StringWriter()).toString(), expected);
+
+            char[] chars = new char[64];
+            Assert.assertEquals(new String(chars, 3, NanoStopWatch.formatTo(elapsed, chars, 3)), expected);
+            chars = new char[expected.length() + 1];
+            Assert.assertEquals(new String(chars, 1, NanoStopWatch.formatTo(elapsed, chars, 1)), expected);
+
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            NanoStopWatch.formatTo(elapsed, buffer).flip();
+            Assert.assertEquals(StandardCharsets.US_ASCII.decode(buffer).toString(), expected);
+        }
+    }
+
+    @Test
+    public void millis() {
+        Random random = new Random(7L);
+        char[] chars = new char[DurationFormatter.MAX_LENGTH];
+        for (int i = 0; i < 200_000; ++i) {
+            final long elapsed = (i < EDGES.length) ? EDGES[i] : randomValue(random);
+            for (boolean wantMsec : new boolean[] { false, true }) {
+                final String actual = new String(chars, 0, DurationFormatter.formatMillis(elapsed, wantMsec, chars, 0));
+                Assert.assertEquals(actual, legacyMillisToString(elapsed, wantMsec));
+            }
+        }
+        StopWatch sw = new StopWatch();
+        Assert.assertEquals(sw.toString(true), "00:00:00.000");
+        Assert.assertEquals(sw.formatTo(new StringBuilder(), false).toString(), "00:00:00");
+    }
+
+    @Test
+    public void tooSmall() {
+        try {
+            NanoStopWatch.formatTo(12_345_678_901L, new char[4], 0);
+            Assert.fail("no exception thrown");
+        } catch (IndexOutOfBoundsException e) {
+            // do nothing
+        }
+        try {
+            NanoStopWatch.formatTo(12_345_678_901L, ByteBuffer.allocate(4));
+            Assert.fail("no exception thrown");
+        } catch (java.nio.BufferOverflowException e) {
+            // do nothing
+        }
+    }
+
+    private static long randomValue(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextLong();
+            case 1:
+                return random.nextInt(2_000_000) - 1_000_000L;
+            case 2:
+                return (long) (random.nextGaussian() * NANOS_PER_MINUTE);
+            default:
+                return (long) (random.nextGaussian() * 100L * NANOS_PER_HOUR);
+        }
+    }
+
+    /**
+     * The implementation of {@link NanoStopWatch#toString(long)} before it was made garbage-free.
+     */
+    private static String legacyNanosToString(final long elapsed) {
+        long resid = elapsed;
+        long hours = resid / NANOS_PER_HOUR; resid %= NANOS_PER_HOUR;
+        long minutes = resid / NANOS_PER_MINUTE; resid %= NANOS_PER_MINUTE;
+        long seconds = resid / NANOS_PER_SECOND; resid %= NANOS_PER_SECOND;
+        long micros = resid / 1000L;
+        if (hours == 0L && minutes == 0L) {
+            final StringBuilder sb = new StringBuilder();
+            if (seconds == 0L) {
+                sb.append("0.");
+            } else {
+                sb.append(seconds);
+                sb.append(".");
+            }
+            sb.append(String.format("%06d", micros));
+            return sb.toString();
+        } else {
+            return ((hours < 10L) ? "0" : "") + hours + ":" + ((minutes < 10L) ? "0" : "") + minutes + ":"
+                    + ((seconds < 10L) ? "0" : "") + seconds + "." + String.format("%06d", micros);
+        }
+    }
+
+    /**
+     * The implementation of {@link StopWatch#toString(boolean)} before it was made garbage-free.
+     */
+    private static String legacyMillisToString(final long elapsed, final boolean wantMsec) {
+        long residual = elapsed;
+        long h = residual / 3600000L; residual %= 3600000L;
+        long m = residual / 60000L; residual %= 60000L;
+        long s = residual / 1000L; residual %= 1000L;
+        String msecStr;
+        if (wantMsec) {
+            StringBuilder sb = new StringBuilder(".");
+            if (residual >= 100L) {
+                sb.append(residual);
+            } else if (residual > 10L) {
+                sb.append("0");
+                sb.append(residual);
+            } else {
+                sb.append("00");
+                sb.append(residual);
+            }
+            msecStr = sb.toString();
+        } else {
+            msecStr = "";
+        }
+        return ((h < 10L) ? "0" : "") + h + ":" + ((m < 10L) ? "0" : "") + m + ":" + ((s < 10L) ? "0" : "") + s + msecStr;
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.github.lfeagan.wheat.time.TimeUtils.instantFromRFC3339;
+
+public class IntervalAlignerTest {
+
+    private static final Instant ORIGIN = instantFromRFC3339("2000-01-01T00:00:00-05:00");
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    public void monthly() {
+        final IntervalAligner aligner = IntervalAligner.create(ORIGIN, PeriodDuration.of(Period.ofMonths(1)), NEW_YORK);
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-12-03T15:53:58Z")), instantFromRFC3339("2023-12-01T00:00:00-05:00"));
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-12-01T05:00:00Z")), instantFromRFC3339("2023-12-01T00:00:00-05:00"));
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-12-01T04:59:59Z")), instantFromRFC3339("2023-11-01T00:00:00-04:00"));
+        Assert.assertEquals(aligner.align(instantFromRFC3339("1999-12-03T15:53:58Z")), instantFromRFC3339("1999-12-01T00:00:00-05:00"));
+        Assert.assertEquals(aligner.align(ORIGIN), ORIGIN);
+    }
+
+    @Test
+    public void monthEndOrigin() {
+        // after the origin, timestamps align with the last step at or before them, whereas alignWithInterval subtracts
+        // the interval from the step after them, which does not undo the clamping of the day of month
+        final Instant origin = instantFromRFC3339("2023-01-31T00:00:00Z");
+        final IntervalAligner aligner = IntervalAligner.create(origin, PeriodDuration.of(Period.ofMonths(1)), ZoneOffset.UTC);
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-02-15T00:00:00Z")), origin);
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-02-15T00:00:00Z"), origin, Period.ofMonths(1), ZoneOffset.UTC),
+                instantFromRFC3339("2023-01-28T00:00:00Z"));
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-03-01T00:00:00Z")), instantFromRFC3339("2023-02-28T00:00:00Z"));
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-02-27T00:00:00Z")), origin);
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-03-30T00:00:00Z")), instantFromRFC3339("2023-03-28T00:00:00Z"));
+    }
+
+    @Test
+    public void durationOnly() {
+        final IntervalAligner aligner = IntervalAligner.create(ORIGIN, PeriodDuration.of(Duration.ofMinutes(15)), NEW_YORK);
+        Assert.assertEquals(aligner.align(instantFromRFC3339("2023-12-03T15:53:58Z")), instantFromRFC3339("2023-12-03T15:45:00Z"));
+        Assert.assertEquals(aligner.getCachedBoundaryCount(), 0);
+    }
+
+    @Test
+    public void boundedCache() {
+        final IntervalAligner aligner = IntervalAligner.create(ORIGIN, PeriodDuration.of(Period.ofDays(1)), NEW_YORK, 16);
+        Instant timestamp = ORIGIN;
+        for (int i = 0; i < 1000; ++i) {
+            timestamp = timestamp.plus(Duration.ofHours(7));
+            aligner.align(timestamp);
+            Assert.assertTrue(aligner.getCachedBoundaryCount() <= 16);
+        }
+    }
+
+    /**
+     * Returns the steps from the origin that cover the range, found by repeatedly adding (after the origin) or
+     * subtracting (before the origin) the interval.
+     */
+    private static long[] steps(final Instant origin, final PeriodDuration interval, final ZoneId timeZone, final long from, final long to) {
+        final List<Long> steps = new ArrayList<>();
+        ZonedDateTime step = ZonedDateTime.ofInstant(origin, timeZone);
+        while (TimeUtils.toEpochNanos(step.toInstant()) > from) {
+            step = step.minus(interval);
+            steps.add(TimeUtils.toEpochNanos(step.toInstant()));
+        }
+        step = ZonedDateTime.ofInstant(origin, timeZone);
+        while (TimeUtils.toEpochNanos(step.toInstant()) <= to) {
+            steps.add(TimeUtils.toEpochNanos(step.toInstant()));
+            step = step.plus(interval);
+        }
+        return steps.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    @Test
+    public void matchesSteps() {
+        final Random random = new Random(42L);
+        final String[] zones = {"UTC", "America/New_York", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo"};
+        final Period[] periods = {Period.ofDays(1), Period.ofWeeks(1), Period.ofMonths(1), Period.ofMonths(3), Period.parse("P1M1D")};
+        for (int i = 0; i < 200; ++i) {
+            final ZoneId zone = ZoneId.of(zones[random.nextInt(zones.length)]);
+            final PeriodDuration interval = PeriodDuration.of(periods[random.nextInt(periods.length)]);
+            final Instant origin = ZonedDateTime.of(LocalDate.ofEpochDay(random.nextInt(20000)), LocalTime.of(random.nextInt(24), 0), zone).toInstant();
+            final IntervalAligner aligner = IntervalAligner.create(origin, interval, zone, 2 + random.nextInt(64));
+
+            final long[] timestamps = new long[200];
+            final long originNanos = TimeUtils.toEpochNanos(origin);
+            final long range = Duration.ofDays(random.nextBoolean() ? 60 : 3000).toNanos();
+            for (int j = 0; j < timestamps.length; ++j) {
+                timestamps[j] = originNanos + (long) ((random.nextDouble() - 0.5d) * 2 * range);
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    Arrays.sort(timestamps);
+                    break;
+                case 1:
+                    Arrays.sort(timestamps);
+                    for (int j = 0; j < timestamps.length / 2; ++j) {
+                        final long t = timestamps[j];
+                        timestamps[j] = timestamps[timestamps.length - 1 - j];
+                        timestamps[timestamps.length - 1 - j] = t;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            final long[] steps = steps(origin, interval, zone, originNanos - range, originNanos + range);
+            for (long timestamp : timestamps) {
+                final Instant instant = TimeUtils.ofEpochNanos(timestamp);
+                int k = Arrays.binarySearch(steps, timestamp);
+                k = (k >= 0) ? k : -k - 2;
+                Assert.assertEquals(aligner.alignEpochNanos(timestamp), steps[k], instant + " " + origin + " " + interval + " " + zone);
+            }
+        }
+    }
+
+    @Test
+    public void batch() {
+        final Random random = new Random(11L);
+        final PeriodDuration interval = PeriodDuration.of(Period.ofDays(1));
+        final long originNanos = TimeUtils.toEpochNanos(ORIGIN);
+        final long[] timestamps = new long[300000];
+        for (int i = 0; i < timestamps.length; ++i) {
+            timestamps[i] = originNanos + (long) ((random.nextDouble() - 0.25d) * Duration.ofDays(4000).toNanos());
+        }
+        Arrays.sort(timestamps);
+        final long[] expected = new long[timestamps.length];
+        final IntervalAligner aligner = IntervalAligner.create(ORIGIN, interval, NEW_YORK);
+        for (int i = 0; i < timestamps.length; i += 1000) {
+            expected[i] = TimeUtils.toEpochNanos(TimeUtils.alignWithInterval(TimeUtils.ofEpochNanos(timestamps[i]), ORIGIN, interval, NEW_YORK));
+        }
+
+        final long[] aligned = new long[timestamps.length];
+        aligner.alignEpochNanos(timestamps, 0, aligned, 0, timestamps.length);
+        final long[] parallel = timestamps.clone();
+        TimeUtils.parallelAlignWithInterval(parallel, ORIGIN, interval, NEW_YORK);
+        final long[] inPlace = timestamps.clone();
+        TimeUtils.alignWithInterval(inPlace, ORIGIN, interval, NEW_YORK);
+        for (int i = 0; i < timestamps.length; i += 1000) {
+            Assert.assertEquals(aligned[i], expected[i]);
+        }
+        Assert.assertEquals(parallel, aligned);
+        Assert.assertEquals(inPlace, aligned);
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        int previous = -1;
+        for (long value = 0; value < 1_000_000L; ++value) {
+            final int index = histogram.indexOf(value);
+            Assert.assertTrue(index == previous || index == previous + 1, "bucket indexes must be contiguous");
+            Assert.assertTrue(histogram.lowestValueAt(index) <= value);
+            Assert.assertTrue(histogram.highestValueAt(index) >= value);
+            previous = index;
+        }
+        final int last = histogram.indexOf(Long.MAX_VALUE);
+        Assert.assertEquals(histogram.highestValueAt(last), Long.MAX_VALUE);
+        Assert.assertEquals(last, ((64 - LatencyHistogram.DEFAULT_PRECISION_BITS) << LatencyHistogram.DEFAULT_PRECISION_BITS) - 1);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        Assert.assertEquals(histogram.getValueAtPercentile(99.0), 0L);
+        for (long value = 1; value <= 100_000L; ++value) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(histogram.getCount(), 100_000L);
+        Assert.assertEquals(histogram.getMin(), 1L);
+        Assert.assertEquals(histogram.getMax(), 100_000L);
+        Assert.assertEquals(histogram.getMean(), 50_000.5, 0.001);
+        assertWithinPrecision(histogram.getValueAtPercentile(50.0), 50_000L);
+        assertWithinPrecision(histogram.getValueAtPercentile(99.0), 99_000L);
+        assertWithinPrecision(histogram.getValueAtPercentile(99.9), 99_900L);
+        Assert.assertEquals(histogram.getValueAtPercentile(100.0), 100_000L);
+        Assert.assertEquals(histogram.getValueAtPercentile(0.0), 1L);
+
+        histogram.record(-5L);
+        Assert.assertEquals(histogram.getMin(), 0L);
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0L);
+        Assert.assertEquals(histogram.getMax(), 0L);
+    }
+
+    private static void assertWithinPrecision(long actual, long expected) {
+        Assert.assertTrue(Math.abs(actual - expected) <= expected / 32, actual + " is not within precision of " + expected);
+    }
+
+    @Test
+    public void mergeAndSerialize() {
+        LatencyHistogram a = LatencyHistogram.create();
+        LatencyHistogram b = LatencyHistogram.create();
+        for (long value = 1; value <= 1000L; ++value) {
+            a.record(value * 1000L);
+            b.record(value * 1_000_000L, 2L);
+        }
+        a.add(b);
+        Assert.assertEquals(a.getCount(), 3000L);
+        Assert.assertEquals(a.getMin(), 1000L);
+        Assert.assertEquals(a.getMax(), 1_000_000_000L);
+
+        byte[] bytes = a.toByteArray();
+        Assert.assertTrue(bytes.length < a.getMaxEncodedSize());
+        LatencyHistogram copy = LatencyHistogram.fromByteArray(bytes);
+        Assert.assertEquals(copy.getCount(), a.getCount());
+        Assert.assertEquals(copy.getTotal(), a.getTotal());
+        Assert.assertEquals(copy.getMin(), a.getMin());
+        Assert.assertEquals(copy.getMax(), a.getMax());
+        for (double percentile : new double[] { 10.0, 50.0, 90.0, 99.0, 99.9 }) {
+            Assert.assertEquals(copy.getValueAtPercentile(percentile), a.getValueAtPercentile(percentile));
+        }
+
+        try {
+            a.add(LatencyHistogram.create(3));
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+        try {
+            LatencyHistogram.fromByteArray(new byte[] { 1, 2, 3 });
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void upperBounds() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        for (long value : new long[] { 1L, 5L, 10L, 11L, 100L, 1_000_000L }) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(histogram.getCountsByUpperBound(new long[] { 5L, 10L, 1000L }), new long[] { 2L, 1L, 2L, 1L });
+        Assert.assertEquals(histogram.getCountsByUpperBound(new long[0]), new long[] { 6L });
+        try {
+            histogram.getCountsByUpperBound(new long[] { 10L, 5L });
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+        for (long times : new long[] { 0L, -1L }) {
+            try {
+                histogram.record(1L, times);
+                Assert.fail("no exception thrown");
+            } catch (IllegalArgumentException e) {
+                // do nothing
+            }
+        }
+        Assert.assertEquals(histogram.getCount(), 6L);
+    }
+
+    @Test
+    public void stopWatch() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        NanoStopWatch sw = NanoStopWatch.createStarted();
+        sw.stop(histogram);
+        Assert.assertEquals(histogram.getCount(), 1L);
+        Assert.assertEquals(histogram.getTotal(), sw.elapsedNanos());
+
+        SplitNanoStopWatch ssw = SplitNanoStopWatch.createStarted();
+        ssw.split("a", histogram);
+        ssw.split("a", histogram);
+        Assert.assertEquals(histogram.getCount(), 3L);
+        Assert.assertEquals(ssw.getSplitsCount("a"), 2);
+    }
+
+}
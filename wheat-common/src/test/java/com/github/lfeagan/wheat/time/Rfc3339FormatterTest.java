@@ -0,0 +1,86 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+public class Rfc3339FormatterTest {
+
+    @Test
+    public void examples() {
+        final Instant instant = Instant.parse("2000-01-01T01:23:45.678901234Z");
+        Assert.assertEquals(Rfc3339Formatter.create().format(instant), "2000-01-01T01:23:45.678901234Z");
+        Assert.assertEquals(Rfc3339Formatter.create(0, ZoneOffset.UTC).format(instant), "2000-01-01T01:23:45Z");
+        Assert.assertEquals(Rfc3339Formatter.create(3, ZoneOffset.ofHours(-2)).format(instant), "1999-12-31T23:23:45.678-02:00");
+        Assert.assertEquals(Rfc3339Formatter.create(9, ZoneOffset.ofHoursMinutesSeconds(5, 30, 15)).format(instant),
+                "2000-01-01T06:54:00.678901234+05:30:15");
+        Assert.assertEquals(Rfc3339Formatter.create().format(Instant.parse("+12000-01-01T00:00:00Z")), "+12000-01-01T00:00:00Z");
+        Assert.assertEquals(Rfc3339Formatter.create().format(Instant.parse("-0001-01-01T00:00:00.5Z")), "-0001-01-01T00:00:00.500Z");
+        Assert.assertEquals(TimeUtils.instantToRFC3339(instant), instant.toString());
+
+        Rfc3339Formatter formatter = Rfc3339Formatter.create(6, ZoneOffset.UTC);
+        StringBuilder sb = new StringBuilder("at ");
+        formatter.formatEpochNanosTo(-1L, sb);
+        Assert.assertEquals(sb.toString(), "at 1969-12-31T23:59:59.999999Z");
+        byte[] bytes = new byte[Rfc3339Formatter.MAX_LENGTH];
+        final int length = formatter.formatTo(instant.getEpochSecond(), instant.getNano(), bytes, 1);
+        Assert.assertEquals(new String(bytes, 1, length, StandardCharsets.US_ASCII), "2000-01-01T01:23:45.678901Z");
+        try {
+            formatter.formatTo(instant.getEpochSecond(), instant.getNano(), new byte[10], 0);
+            Assert.fail("no exception thrown");
+        } catch (IndexOutOfBoundsException e) {
+            // do nothing
+        }
+        try {
+            Rfc3339Formatter.create(10, ZoneOffset.UTC);
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        final Random random = new Random(3339L);
+        final int[] precisions = {Rfc3339Formatter.VARIABLE_PRECISION, 0, 1, 3, 6, 9};
+        final ZoneOffset[] offsets = {ZoneOffset.UTC, ZoneOffset.ofHours(1), ZoneOffset.ofHoursMinutes(-9, -30),
+                ZoneOffset.ofHoursMinutesSeconds(5, 45, 30), ZoneOffset.MAX, ZoneOffset.MIN};
+        final Rfc3339Parser parser = new Rfc3339Parser();
+        for (int precision : precisions) {
+            for (ZoneOffset offset : offsets) {
+                final Rfc3339Formatter formatter = Rfc3339Formatter.create(precision, offset);
+                // fixed precision truncates the fraction
+                final int truncation = precision == Rfc3339Formatter.VARIABLE_PRECISION ? 1 : pow10(9 - precision);
+                long epochSecond = -100_000_000_000L;
+                for (int i = 0; i < 2_000; ++i) {
+                    // mostly small steps that stay within the rendered minute, and some large jumps either way
+                    epochSecond += random.nextInt(10) == 0 ? random.nextLong() % 1_000_000_000L : random.nextInt(30);
+                    final Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000));
+                    final String text = formatter.format(instant);
+                    final Instant expected = Instant.ofEpochSecond(epochSecond, instant.getNano() / truncation * truncation);
+                    Assert.assertEquals(TimeUtils.instantFromRFC3339(text), expected, text);
+                    Assert.assertTrue(parser.parse(text), text);
+                    Assert.assertEquals(parser.getOffsetSeconds(), offset.getTotalSeconds(), text);
+                    // a new formatter, with nothing cached, writes the same text
+                    Assert.assertEquals(Rfc3339Formatter.create(precision, offset).format(instant), text);
+                    if (precision == Rfc3339Formatter.VARIABLE_PRECISION && offset == ZoneOffset.UTC) {
+                        Assert.assertEquals(text, instant.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    private static int pow10(final int n) {
+        int result = 1;
+        for (int i = 0; i < n; ++i) {
+            result *= 10;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+public class Rfc3339ParserTest {
+
+    private static final String[] VALID = {
+            "2000-01-01T00:00:00Z",
+            "2000-01-01T01:23:45.123456789Z",
+            "2000-01-01T00:00:00.5+01:00",
+            "2000-01-01t00:00:00z",
+            "2000-01-01T00:00Z",
+            "2000-01-01T00:00:00.Z",
+            "2000-01-01T00:00:00+01",
+            "2000-01-01T00:00:00+01:00:30",
+            "2000-01-01T00:00-18:00",
+            "2000-01-01T00:00:00-00:00",
+            "2000-02-29T00:00:00Z",
+            "1969-12-31T23:59:59.999999999Z",
+            "0000-01-01T00:00:00Z",
+            "-0004-02-29T00:00Z",
+            "-12345-01-01T00:00Z",
+            "+12000-01-01T00:00:00Z",
+            "+0999999999-01-01T00:00Z",
+            "+999999999-12-31T23:59:59.999999999-18:00",
+            "-999999999-01-01T00:00+18:00",
+    };
+
+    private static final String[] INVALID = {
+            "",
+            "2000-01-01T00:00:00",
+            "2000-01-01T00:00:00.1234567891Z",
+            "2000-01-01T00:00:00+0100",
+            "2000-01-01T00:00:00+01:0030",
+            "2000-01-01T00:00:00+18:01",
+            "2000-01-01T00:00+01:",
+            "2000-01-01T00:00+01:00:",
+            "1900-02-29T00:00:00Z",
+            "2000-04-31T00:00Z",
+            "2000-13-01T00:00Z",
+            "2000-01-00T00:00Z",
+            "2000-01-01T23:59:60Z",
+            "2000-01-01T24:00:00Z",
+            "+2000-01-01T00:00:00Z",
+            "-0000-01-01T00:00Z",
+            "12000-01-01T00:00:00Z",
+            "+1000000000-01-01T00:00Z",
+            "2000-1-01T00:00:00Z",
+            "2000-01-01T00:00:00,5Z",
+            "2000-01-01 00:00:00Z",
+            "2000-01-01T00:00:00Z ",
+            "2000-01-01T00:00.5Z",
+            "2000-01-01T00:00:5Z",
+            "2000-01-01T00:00:00Z[UTC]",
+            "2000-01-01T00:00:00GMT",
+            "\u0662\u0660\u0660\u0660-01-01T00:00:00Z",
+    };
+
+    private static final ByteBuffer DIRECT = ByteBuffer.allocateDirect(256);
+
+    /**
+     * Returns the instant the formatter parses the text to, or null if it is rejected.
+     */
+    private static Instant expected(final String text) {
+        try {
+            return Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the text from every kind of input and checks that they agree with the formatter.
+     */
+    private static void assertParse(final Rfc3339Parser parser, final String text) {
+        final Instant expected = expected(text);
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        DIRECT.clear();
+        final ByteBuffer direct = DIRECT.put(padded).position(2).limit(2 + bytes.length);
+
+        final boolean[] results = {
+                parser.parse(text),
+                parser.parse("<" + text + ">", 1, text.length() + 1),
+                parser.parse(padded, 2, bytes.length),
+                parser.parse(ByteBuffer.wrap(padded, 2, bytes.length)),
+                parser.parse(direct),
+        };
+        for (boolean result : results) {
+            Assert.assertEquals(result, expected != null, text);
+        }
+        if (expected != null) {
+            Assert.assertEquals(parser.toInstant(), expected, text);
+            Assert.assertEquals(parser.getErrorIndex(), -1);
+        } else {
+            Assert.assertTrue(parser.getErrorIndex() >= 0, text);
+        }
+        Assert.assertEquals(direct.position(), 2);
+    }
+
+    @Test
+    public void examples() {
+        Rfc3339Parser parser = new Rfc3339Parser();
+        for (String text : VALID) {
+            Assert.assertNotNull(expected(text), text);
+            assertParse(parser, text);
+        }
+        for (String text : INVALID) {
+            Assert.assertNull(expected(text), text);
+            assertParse(parser, text);
+        }
+
+        Assert.assertTrue(parser.parse("2000-01-01T01:23:45.5-01:30"));
+        Assert.assertEquals(parser.getEpochSecond(), 946_689_825L + 5_400L);
+        Assert.assertEquals(parser.getNano(), 500_000_000);
+        Assert.assertEquals(parser.getOffsetSeconds(), -5_400);
+
+        Assert.assertFalse(parser.parse("2000-01-01T00:00:00X"));
+        Assert.assertEquals(parser.getErrorIndex(), 19);
+        Assert.assertEquals(parser.getEpochSecond(), 0L);
+        try {
+            parser.toInstant();
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void fuzz() {
+        final Random random = new Random(3339L);
+        final char[] alphabet = "0123456789-+:.TtZz \u00e9".toCharArray();
+        Rfc3339Parser parser = new Rfc3339Parser();
+        for (int i = 0; i < 20_000; ++i) {
+            final StringBuilder sb = new StringBuilder(VALID[random.nextInt(VALID.length)]);
+            // mutate a valid timestamp by replacing, inserting and deleting characters
+            final int mutations = random.nextInt(3);
+            for (int m = 0; m < mutations; ++m) {
+                final int index = random.nextInt(sb.length() + 1);
+                final char c = alphabet[random.nextInt(alphabet.length)];
+                switch (random.nextInt(3)) {
+                    case 0:
+                        if (index < sb.length()) {
+                            sb.setCharAt(index, c);
+                        }
+                        break;
+                    case 1:
+                        sb.insert(index, c);
+                        break;
+                    default:
+                        if (index < sb.length()) {
+                            sb.deleteCharAt(index);
+                        }
+                        break;
+                }
+            }
+            assertParse(parser, sb.toString());
+        }
+        // random field values, many of which are out of range
+        for (int i = 0; i < 20_000; ++i) {
+            final String text = String.format("%04d-%02d-%02dT%02d:%02d:%02d%s",
+                    random.nextInt(2500), random.nextInt(14), random.nextInt(33),
+                    random.nextInt(26), random.nextInt(62), random.nextInt(62),
+                    random.nextBoolean() ? "Z" : String.format("%c%02d:%02d", random.nextBoolean() ? '+' : '-',
+                            random.nextInt(20), random.nextInt(62)));
+            assertParse(parser, text);
+        }
+    }
+
+    @Test
+    public void instantFromRFC3339() {
+        Assert.assertEquals(TimeUtils.instantFromRFC3339("2000-01-01T00:00:00.5+01:00"),
+                Instant.parse("1999-12-31T23:00:00.500Z"));
+        try {
+            TimeUtils.instantFromRFC3339("2000-04-31T00:00Z");
+            Assert.fail("no exception thrown");
+        } catch (DateTimeParseException e) {
+            Assert.assertTrue(e.getMessage().contains("APRIL 31"), e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class SamplingPolicyTest {
+
+    @Test
+    public void policies() {
+        Assert.assertEquals(SamplingPolicy.always().sample(), 1L);
+        Assert.assertEquals(SamplingPolicy.never().sample(), 0L);
+
+        SamplingPolicy oneIn = SamplingPolicy.oneIn(10);
+        long sampled = 0L;
+        long weight = 0L;
+        for (int i = 0; i < 1000; ++i) {
+            final long w = oneIn.sample();
+            if (w != 0L) {
+                ++sampled;
+                weight += w;
+            }
+        }
+        Assert.assertEquals(sampled, 100L);
+        Assert.assertEquals(weight, 1000L);
+
+        // the weights of a probability policy sum to approximately the number of calls
+        SamplingPolicy probability = SamplingPolicy.probability(0.3);
+        weight = 0L;
+        for (int i = 0; i < 1_000_000; ++i) {
+            weight += probability.sample();
+        }
+        Assert.assertEquals(weight, 1_000_000L, 20_000L);
+
+        try {
+            SamplingPolicy.probability(0.0);
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void adaptive() throws InterruptedException {
+        SamplingPolicy adaptive = SamplingPolicy.adaptive(1000.0);
+        long calls = 0L;
+        long weight = 0L;
+        final long deadline = System.nanoTime() + 300_000_000L;
+        while (System.nanoTime() < deadline) {
+            weight += adaptive.sample();
+            ++calls;
+        }
+        // the first window is sampled fully, after which the rate adapts to the target
+        long sampled = 0L;
+        final long end = System.nanoTime() + 200_000_000L;
+        while (System.nanoTime() < end) {
+            if (adaptive.sample() != 0L) {
+                ++sampled;
+            }
+        }
+        Assert.assertTrue(sampled < 2000L, "sampled " + sampled + " in 200 ms");
+        Assert.assertTrue(weight > calls / 2, "weight " + weight + " of " + calls + " calls");
+    }
+
+    @Test
+    public void adaptiveWithTimeSource() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        SamplingPolicy adaptive = SamplingPolicy.adaptive(1000.0, timeSource);
+        for (int i = 0; i < 999; ++i) {
+            Assert.assertEquals(adaptive.sample(), 1L);
+        }
+        // 1000 calls in the first 100 ms window is 10 times the target rate
+        timeSource.advance(100L, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(adaptive.sample(), 1L);
+        long sampled = 0L;
+        for (int i = 0; i < 10_000; ++i) {
+            final long weight = adaptive.sample();
+            if (weight != 0L) {
+                Assert.assertEquals(weight, 10L);
+                ++sampled;
+            }
+        }
+        Assert.assertTrue(sampled > 500L && sampled < 2000L, "sampled " + sampled + " of 10000");
+    }
+
+    @Test
+    public void unsampled() {
+        NanoStopWatch nsw = NanoStopWatch.createStarted(SamplingPolicy.never());
+        Assert.assertSame(nsw, NanoStopWatch.createUnstarted(SamplingPolicy.never()));
+        Assert.assertEquals(nsw.getSamplingWeight(), 0L);
+        Assert.assertFalse(nsw.isRunning());
+        nsw.stop();
+        nsw.stop();
+        Assert.assertEquals(nsw.elapsedNanos(), 0L);
+
+        LatencyHistogram histogram = LatencyHistogram.create();
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(SamplingPolicy.never());
+        snsw.split("a");
+        snsw.split("a", histogram);
+        snsw.enter("span").close();
+        snsw.stop();
+        Assert.assertEquals(snsw.getSamplingWeight(), 0L);
+        Assert.assertEquals(snsw.getSplits().length, 0);
+        Assert.assertEquals(snsw.getSpans().length, 0);
+        Assert.assertEquals(histogram.getCount(), 0L);
+    }
+
+    @Test
+    public void weighted() {
+        LatencyHistogram histogram = LatencyHistogram.create();
+        NanoStopWatch nsw = NanoStopWatch.createStarted(SamplingPolicy.oneIn(1));
+        Assert.assertEquals(nsw.getSamplingWeight(), 1L);
+
+        SamplingPolicy policy = SamplingPolicy.oneIn(4);
+        SamplingPolicy splitPolicy = SamplingPolicy.oneIn(4);
+        TimerRegistry registry = TimerRegistry.create();
+        for (int i = 0; i < 8; ++i) {
+            NanoStopWatch sampled = NanoStopWatch.createStarted(policy);
+            sampled.stop(histogram);
+            SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(splitPolicy);
+            snsw.split("a");
+            registry.recordSplits(snsw);
+        }
+        Assert.assertEquals(histogram.getCount(), 8L);
+        Assert.assertEquals(registry.timer("a").getCount(), 8L);
+    }
+
+    @Test
+    public void timeSource() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        NanoStopWatch nsw = NanoStopWatch.createUnstarted(SamplingPolicy.oneIn(1), timeSource);
+        Assert.assertSame(nsw.getTimeSource(), timeSource);
+        Assert.assertEquals(nsw.getSamplingWeight(), 1L);
+        nsw.start();
+        timeSource.advance(7L, TimeUnit.MICROSECONDS);
+        nsw.stop();
+        Assert.assertEquals(nsw.getCumulative(), 7_000L);
+
+        NanoStopWatch started = NanoStopWatch.createStarted(SamplingPolicy.always(), timeSource);
+        timeSource.advance(3L, TimeUnit.NANOSECONDS);
+        Assert.assertEquals(started.elapsedNanos(), 3L);
+        Assert.assertSame(NanoStopWatch.createUnstarted(SamplingPolicy.never(), timeSource),
+                NanoStopWatch.createUnstarted(SamplingPolicy.never()));
+
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(SamplingPolicy.always(), timeSource);
+        timeSource.advance(5L, TimeUnit.NANOSECONDS);
+        snsw.split("a");
+        Assert.assertEquals(snsw.getSplitsTotalElapsed("a"), 5L);
+        Assert.assertSame(SplitNanoStopWatch.createUnstarted(SamplingPolicy.never(), timeSource),
+                SplitNanoStopWatch.createUnstarted(SamplingPolicy.never()));
+    }
+
+}
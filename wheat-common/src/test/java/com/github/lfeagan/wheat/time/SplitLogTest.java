@@ -0,0 +1,130 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class SplitLogTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("split-log");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ManualTimeSource timeSource = ManualTimeSource.create(500L, 1_000L);
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(timeSource);
+        timeSource.advance(2, TimeUnit.MILLISECONDS);
+        snsw.split("parse");
+        timeSource.advance(3, TimeUnit.MILLISECONDS);
+        snsw.split("execute");
+        timeSource.advance(1, TimeUnit.MILLISECONDS);
+        snsw.split("parse");
+
+        try (SplitLogWriter writer = SplitLogWriter.open(directory, "job", 4096, timeSource)) {
+            writer.append(snsw);
+            writer.append("flush", 6_000_500L, 6_500_500L, 42L);
+            Assert.assertEquals(writer.getAppendedCount(), 4L);
+        }
+
+        try (SplitLogReader reader = SplitLogReader.open(directory, "job")) {
+            Assert.assertEquals(reader.getSegmentCount(), 1);
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(reader.getDescription(), "parse");
+            Assert.assertEquals(reader.getTimestamp(), 1_000_000_000L);
+            Assert.assertEquals(reader.getElapsed(), 2_000_000L);
+            Assert.assertEquals(reader.getThreadId(), Thread.currentThread().getId());
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(reader.getDescription(), "execute");
+            Assert.assertEquals(reader.getTimestamp(), 1_002_000_000L);
+            Assert.assertEquals(reader.getElapsed(), 3_000_000L);
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(reader.getDescription(), "parse");
+            Assert.assertEquals(reader.getDescriptionId(), 0);
+            Assert.assertEquals(reader.getElapsed(), 1_000_000L);
+            Assert.assertEquals(reader.getThreadId(), Thread.currentThread().getId());
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(reader.getDescription(), "flush");
+            Assert.assertEquals(reader.getElapsed(), 500_000L);
+            Assert.assertEquals(reader.getThreadId(), 42L);
+            Assert.assertFalse(reader.next());
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void rolling() throws IOException {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        final String[] descriptions = {"parse", "plan", "execute"};
+        final int splits = 1000;
+        try (SplitLogWriter writer = SplitLogWriter.open(directory, "job", 4096, timeSource)) {
+            long time = 0L;
+            for (int i = 0; i < splits; ++i) {
+                writer.append(descriptions[i % descriptions.length], time, time + i);
+                time += i;
+            }
+        }
+        // opening the log again appends new segments after the existing ones
+        try (SplitLogWriter writer = SplitLogWriter.open(directory, "job", 4096, timeSource)) {
+            writer.append("parse", 0L, 7L);
+        }
+
+        TimerRegistry registry = TimerRegistry.create();
+        try (SplitLogReader reader = SplitLogReader.open(directory, "job")) {
+            Assert.assertTrue(reader.getSegmentCount() > 2, "segments " + reader.getSegmentCount());
+            Assert.assertEquals(reader.aggregate(registry), splits + 1L);
+        }
+        Assert.assertEquals(registry.timer("parse").getCount(), 335L);
+        Assert.assertEquals(registry.timer("plan").getCount(), 333L);
+        Assert.assertEquals(registry.timer("execute").getCount(), 333L);
+        final long total = registry.timer("parse").getTotal() + registry.timer("plan").getTotal()
+                + registry.timer("execute").getTotal();
+        Assert.assertEquals(total, (long) splits * (splits - 1) / 2 + 7L);
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        try (SplitLogWriter writer = SplitLogWriter.open(directory, "job", 4096, TimeSource.system())) {
+            try {
+                writer.append(new String(new char[5000]), 0L, 1L);
+                Assert.fail("no exception thrown");
+            } catch (IllegalArgumentException e) {
+                // do nothing
+            }
+            writer.close();
+            try {
+                writer.append("a", 0L, 1L);
+                Assert.fail("no exception thrown");
+            } catch (IllegalStateException e) {
+                // do nothing
+            }
+        }
+
+        Files.write(directory.resolve("bad-00000000.wsl"), new byte[] { 1, 2, 3, 4, 5 });
+        try (SplitLogReader reader = SplitLogReader.open(directory, "bad")) {
+            reader.next();
+            Assert.fail("no exception thrown");
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+}
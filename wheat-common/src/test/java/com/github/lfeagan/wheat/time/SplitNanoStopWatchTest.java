@@ -3,6 +3,9 @@ package com.github.lfeagan.wheat.time;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.List;
+import java.util.regex.Pattern;
+
 public class SplitNanoStopWatchTest {
 
     @Test
@@ -24,4 +27,166 @@ public class SplitNanoStopWatchTest {
         snsw.split();
         Assert.assertEquals(snsw.getSplits().length, 1);
     }
+
+    @Test
+    public void ringBuffer() {
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(4);
+        snsw.split("a");
+        snsw.split("b");
+        snsw.split("a");
+        Assert.assertEquals(snsw.getSplits().length, 3);
+        Assert.assertEquals(snsw.getSplitsCount("a"), 2);
+        Assert.assertEquals(snsw.getSplits("a").size(), 2);
+        Assert.assertEquals(snsw.getSplitsCount("c"), 0);
+        Assert.assertEquals(snsw.getSplitsAverageElapsedTime("c"), 0.0);
+
+        // wrap around, evicting the oldest "a" and "b"
+        snsw.split("c");
+        snsw.split("c");
+        snsw.split("a");
+        SplitNanoStopWatch.Split[] splits = snsw.getSplits();
+        Assert.assertEquals(splits.length, 4);
+        Assert.assertEquals(splits[0].getDescription(), "a");
+        Assert.assertEquals(splits[3].getDescription(), "a");
+        Assert.assertEquals(snsw.getSplitsCount("a"), 2);
+        Assert.assertEquals(snsw.getSplitsCount("b"), 0);
+        Assert.assertEquals(snsw.getSplitsCount("c"), 2);
+        Assert.assertEquals(snsw.getSplits(Pattern.compile("[ab]").matcher("")).size(), 2);
+
+        // splits are chained from the previous stop
+        for (int i = 1; i < splits.length; ++i) {
+            Assert.assertEquals(splits[i].getStart(), splits[i - 1].getStop());
+        }
+
+        long total = 0L;
+        for (SplitNanoStopWatch.Split split : snsw.getSplits("c")) {
+            total += split.getElapsed();
+        }
+        Assert.assertEquals(snsw.getSplitsTotalElapsed("c"), total);
+
+        Assert.assertEquals(snsw.getSplitsSummary("c").getTotalElapsed(), total);
+
+        snsw.reset();
+        Assert.assertEquals(snsw.getSplits().length, 0);
+        Assert.assertEquals(snsw.getSplitsCount("a"), 0);
+    }
+
+    @Test
+    public void indexed() {
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted();
+        String[] descriptions = { "parse", "plan", "execute", "plan", "parse", "fetch" };
+        for (String description : descriptions) {
+            snsw.split(description);
+        }
+        Assert.assertEquals(snsw.getSplitsCount("plan"), 2);
+        Assert.assertEquals(snsw.getSplitsCount("none"), 0);
+        Assert.assertEquals(snsw.getSplits("none").size(), 0);
+
+        // matches are returned in the order they were recorded
+        List<SplitNanoStopWatch.Split> matches = snsw.getSplits(Pattern.compile("p.*").matcher(""));
+        Assert.assertEquals(matches.size(), 4);
+        Assert.assertEquals(matches.get(0).getDescription(), "parse");
+        Assert.assertEquals(matches.get(1).getDescription(), "plan");
+        Assert.assertEquals(matches.get(2).getDescription(), "plan");
+        Assert.assertEquals(matches.get(3).getDescription(), "parse");
+        for (int i = 1; i < matches.size(); ++i) {
+            Assert.assertTrue(matches.get(i).getStart() >= matches.get(i - 1).getStop());
+        }
+
+        SplitNanoStopWatch.Summary summary = snsw.getSplitsSummary("parse");
+        long total = 0L;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (SplitNanoStopWatch.Split split : snsw.getSplits("parse")) {
+            total += split.getElapsed();
+            min = Math.min(min, split.getElapsed());
+            max = Math.max(max, split.getElapsed());
+        }
+        Assert.assertEquals(summary.getCount(), 2);
+        Assert.assertEquals(summary.getTotalElapsed(), total);
+        Assert.assertEquals(summary.getMinElapsed(), min);
+        Assert.assertEquals(summary.getMaxElapsed(), max);
+        Assert.assertEquals(snsw.getSplitsTotalElapsed("parse"), total);
+
+        snsw.reset();
+        Assert.assertEquals(snsw.getSplitsCount("parse"), 0);
+        Assert.assertEquals(snsw.getSplitsSummary("parse").getCount(), 0);
+    }
+
+    @Test
+    public void boundedDescriptions() {
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(8);
+        RingBufferSplitRecorder recorder = (RingBufferSplitRecorder) snsw.splitRecorder();
+        for (int i = 0; i < 1000; ++i) {
+            snsw.split((i % 3 == 0) ? "request-" + i : "fixed");
+            Assert.assertTrue(recorder.descriptionCount() <= 8);
+        }
+        Assert.assertEquals(snsw.getSplits().length, 8);
+        Assert.assertEquals(snsw.getSplitsCount("request-0"), 0);
+        Assert.assertEquals(snsw.getSplitsCount("request-999"), 1);
+        Assert.assertEquals(snsw.getSplitsCount("fixed") + snsw.getSplits(Pattern.compile("request-.*").matcher("")).size(), 8);
+        long total = 0L;
+        for (SplitNanoStopWatch.Split split : snsw.getSplits("fixed")) {
+            total += split.getElapsed();
+        }
+        Assert.assertEquals(snsw.getSplitsTotalElapsed("fixed"), total);
+
+        // a description overwritten by itself keeps its id
+        for (int i = 0; i < 20; ++i) {
+            snsw.split("fixed");
+        }
+        Assert.assertEquals(recorder.descriptionCount(), 1);
+        Assert.assertEquals(snsw.getSplitsCount("fixed"), 8);
+
+        snsw.reset();
+        Assert.assertEquals(recorder.descriptionCount(), 0);
+        snsw.start();
+        snsw.split("after");
+        Assert.assertEquals(snsw.getSplitsCount("after"), 1);
+    }
+
+    @Test
+    public void spans() {
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createUnstarted();
+        try {
+            snsw.enter("request");
+            Assert.fail("no exception");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        snsw.start();
+        try (SplitNanoStopWatch.Scope request = snsw.enter("request")) {
+            try (SplitNanoStopWatch.Scope parse = snsw.enter("parse")) {
+                snsw.split("parsed");
+            }
+            try (SplitNanoStopWatch.Scope execute = snsw.enter("execute")) {
+                snsw.enter("fetch").close();
+                snsw.enter("decode").close();
+            }
+        }
+        snsw.enter("open");
+
+        SplitNanoStopWatch.Span[] spans = snsw.getSpans();
+        Assert.assertEquals(spans.length, 6);
+        Assert.assertEquals(spans[0].getName(), "request");
+        Assert.assertEquals(spans[0].getParent(), -1);
+        Assert.assertEquals(spans[3].getName(), "fetch");
+        Assert.assertEquals(spans[3].getParent(), 2);
+        Assert.assertEquals(spans[3].getDepth(), 2);
+        Assert.assertTrue(spans[5].isOpen());
+        Assert.assertEquals(spans[5].getElapsed(), 0L);
+
+        long childTotal = 0L;
+        for (SplitNanoStopWatch.Span span : spans) {
+            Assert.assertTrue(span.getSelfElapsed() >= 0L);
+            Assert.assertTrue(span.getSelfElapsed() <= span.getElapsed());
+            if (span.getParent() == 0) {
+                childTotal += span.getElapsed();
+            }
+        }
+        Assert.assertEquals(spans[0].getSelfElapsed(), spans[0].getElapsed() - childTotal);
+
+        snsw.reset();
+        Assert.assertEquals(snsw.getSpans().length, 0);
+    }
 }
@@ -0,0 +1,180 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class StopWatchPoolTest {
+
+    @Test
+    public void recycled() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        StopWatchPool pool = StopWatchPool.create(timeSource, 2, false);
+
+        NanoStopWatch nsw = pool.acquireStartedNanoStopWatch();
+        timeSource.advance(5, TimeUnit.MILLISECONDS);
+        nsw.stop();
+        Assert.assertEquals(nsw.elapsedNanos(), 5_000_000L);
+        pool.release(nsw);
+        NanoStopWatch reused = pool.acquireNanoStopWatch();
+        Assert.assertSame(reused, nsw);
+        Assert.assertFalse(reused.isRunning());
+        Assert.assertEquals(reused.elapsedNanos(), 0L);
+        Assert.assertEquals(reused.getCumulative(), 0L);
+
+        // stop watches that were not created by the pool's time source or that were sampled are not recycled
+        pool.release(reused);
+        pool.release(NanoStopWatch.createStarted());
+        pool.release(NanoStopWatch.createStarted(SamplingPolicy.never()));
+        Assert.assertSame(pool.acquireNanoStopWatch(), nsw);
+        Assert.assertNotSame(pool.acquireNanoStopWatch(), nsw);
+    }
+
+    @Test
+    public void capacityRetained() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        StopWatchPool pool = StopWatchPool.create(timeSource, StopWatchPool.DEFAULT_MAX_IDLE_PER_THREAD, false);
+
+        SplitNanoStopWatch snsw = pool.acquireStartedSplitNanoStopWatch();
+        for (int i = 0; i < 100; ++i) {
+            timeSource.advance(1, TimeUnit.MICROSECONDS);
+            snsw.split((i % 2 == 0) ? "even" : "odd");
+        }
+        try (SplitNanoStopWatch.Scope scope = snsw.enter("outer")) {
+            timeSource.advance(1, TimeUnit.MICROSECONDS);
+        }
+        final UnboundedSplitRecorder recorder = (UnboundedSplitRecorder) snsw.splitRecorder();
+        final int capacity = recorder.capacity();
+        Assert.assertTrue(capacity >= 100);
+        pool.release(snsw);
+
+        SplitNanoStopWatch reused = pool.acquireStartedSplitNanoStopWatch();
+        Assert.assertSame(reused, snsw);
+        Assert.assertEquals(reused.getSplits().length, 0);
+        Assert.assertEquals(reused.getSpans().length, 0);
+        Assert.assertEquals(reused.getSplitsCount("even"), 0);
+        Assert.assertEquals(reused.getSplitsSummary("even").getCount(), 0);
+        Assert.assertEquals(recorder.capacity(), capacity);
+
+        timeSource.advance(3, TimeUnit.MICROSECONDS);
+        reused.split("even");
+        Assert.assertEquals(reused.getSplitsCount("even"), 1);
+        Assert.assertEquals(reused.getSplitsTotalElapsed("even"), 3_000L);
+        Assert.assertEquals(reused.getSplits()[0].getDescription(), "even");
+
+        // bounded stop watches are not recycled
+        pool.release(reused);
+        pool.release(SplitNanoStopWatch.createStarted(8));
+        Assert.assertSame(pool.acquireSplitNanoStopWatch(), reused);
+        Assert.assertNotSame(pool.acquireSplitNanoStopWatch(), reused);
+    }
+
+    @Test
+    public void uniqueDescriptionsNotRetained() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        StopWatchPool pool = StopWatchPool.create(timeSource, StopWatchPool.DEFAULT_MAX_IDLE_PER_THREAD, false);
+
+        final SplitNanoStopWatch snsw = pool.acquireStartedSplitNanoStopWatch();
+        final UnboundedSplitRecorder recorder = (UnboundedSplitRecorder) snsw.splitRecorder();
+        for (int round = 0; round < 20; ++round) {
+            final SplitNanoStopWatch reused = (round == 0) ? snsw : pool.acquireStartedSplitNanoStopWatch();
+            Assert.assertSame(reused, snsw);
+            for (int i = 0; i < 100; ++i) {
+                timeSource.advance(1, TimeUnit.MICROSECONDS);
+                reused.split("request-" + round + "-" + i);
+            }
+            Assert.assertEquals(reused.getSplitsCount("request-" + round + "-0"), 1);
+            pool.release(reused);
+            Assert.assertTrue(recorder.descriptionCount() <= UnboundedSplitRecorder.MAX_RETAINED_DESCRIPTIONS,
+                    "round " + round + " retained " + recorder.descriptionCount());
+        }
+
+        // a fixed set of descriptions stays interned across reuse
+        SplitNanoStopWatch reused = pool.acquireStartedSplitNanoStopWatch();
+        reused.split("fixed");
+        pool.release(reused);
+        final int retained = recorder.descriptionCount();
+        reused = pool.acquireStartedSplitNanoStopWatch();
+        Assert.assertEquals(reused.getSplitsCount("fixed"), 0);
+        reused.split("fixed");
+        pool.release(reused);
+        Assert.assertEquals(recorder.descriptionCount(), retained);
+    }
+
+    @Test
+    public void uniqueSpanNamesNotRetained() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        StopWatchPool pool = StopWatchPool.create(timeSource, StopWatchPool.DEFAULT_MAX_IDLE_PER_THREAD, false);
+
+        final SplitNanoStopWatch snsw = pool.acquireStartedSplitNanoStopWatch();
+        snsw.enter("first").close();
+        final SpanArena spans = snsw.spans();
+        for (int round = 0; round < 20; ++round) {
+            final SplitNanoStopWatch reused = (round == 0) ? snsw : pool.acquireStartedSplitNanoStopWatch();
+            Assert.assertSame(reused, snsw);
+            for (int i = 0; i < 100; ++i) {
+                try (SplitNanoStopWatch.Scope scope = reused.enter("request-" + round + "-" + i)) {
+                    timeSource.advance(1, TimeUnit.MICROSECONDS);
+                }
+            }
+            Assert.assertEquals(reused.getSpans().length, (round == 0) ? 101 : 100);
+            pool.release(reused);
+            Assert.assertTrue(spans.nameCount() <= SpanArena.MAX_RETAINED_NAMES,
+                    "round " + round + " retained " + spans.nameCount());
+        }
+
+        // a fixed set of names stays interned across reuse
+        SplitNanoStopWatch reused = pool.acquireStartedSplitNanoStopWatch();
+        reused.enter("fixed").close();
+        pool.release(reused);
+        final int retained = spans.nameCount();
+        reused = pool.acquireStartedSplitNanoStopWatch();
+        Assert.assertEquals(reused.getSpans().length, 0);
+        reused.enter("fixed").close();
+        Assert.assertEquals(reused.getSpans()[0].getName(), "fixed");
+        pool.release(reused);
+        Assert.assertEquals(spans.nameCount(), retained);
+    }
+
+    @Test
+    public void useAfterRelease() {
+        StopWatchPool pool = StopWatchPool.create(TimeSource.system(), 4, true);
+        Assert.assertTrue(pool.isDebug());
+
+        NanoStopWatch nsw = pool.acquireStartedNanoStopWatch();
+        nsw.stop();
+        pool.release(nsw);
+        try {
+            nsw.elapsedNanos();
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        try {
+            pool.release(nsw);
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        Assert.assertNotSame(pool.acquireNanoStopWatch(), nsw);
+
+        SplitNanoStopWatch snsw = pool.acquireStartedSplitNanoStopWatch();
+        snsw.split("a");
+        Assert.assertEquals(snsw.getSplitsCount("a"), 1);
+        pool.release(snsw);
+        try {
+            snsw.split("a");
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+        try {
+            snsw.enter("span");
+            Assert.fail("no exception thrown");
+        } catch (IllegalStateException e) {
+            // do nothing
+        }
+    }
+
+}
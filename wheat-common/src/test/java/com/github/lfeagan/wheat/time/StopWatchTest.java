@@ -0,0 +1,82 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StopWatchTest {
+
+    @Test
+    public void semantics() {
+        ManualTimeSource timeSource = ManualTimeSource.create(0L, 1_000L);
+        StopWatch sw = new StopWatch(timeSource);
+        StringWriter writer = new StringWriter();
+        sw.printElapsedTime(writer);
+        Assert.assertEquals(sw.getElapsed(), 0L);
+        Assert.assertEquals(sw.getCurrentElapsed(), 0L);
+
+        sw.start();
+        timeSource.advance(250, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(sw.getStart(), 1_000L);
+        Assert.assertEquals(sw.getStop(), 0L);
+        Assert.assertEquals(sw.getElapsed(), 0L);
+        Assert.assertEquals(sw.getCurrentElapsed(), 250L);
+        sw.printElapsedTime(writer);
+
+        sw.stop();
+        timeSource.advance(100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(sw.getElapsed(), 250L);
+        Assert.assertEquals(sw.getCurrentElapsed(), 350L);
+        Assert.assertEquals(sw.toString(true), "00:00:00.250");
+        sw.printElapsedTime(writer);
+        Assert.assertEquals(writer.toString(), "Timer has not been started\nTimer has not been stopped\nElapsed Time: 250\n");
+
+        // start(false) keeps the start time, start(true) replaces it
+        sw.start(false);
+        Assert.assertEquals(sw.getStart(), 1_000L);
+        Assert.assertEquals(sw.getStop(), 0L);
+        sw.start(true);
+        Assert.assertEquals(sw.getStart(), 1_350L);
+
+        sw.reset();
+        Assert.assertEquals(sw.getStart(), 0L);
+        Assert.assertEquals(sw.getStop(), 0L);
+    }
+
+    @Test
+    public void pollWhileUpdating() throws InterruptedException {
+        ManualTimeSource timeSource = ManualTimeSource.create(0L, 1L);
+        final StopWatch sw = new StopWatch(timeSource, true);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200_000; ++i) {
+                // each cycle stops the watch 3 ms after it was started
+                sw.start();
+                timeSource.advance(3, TimeUnit.MILLISECONDS);
+                sw.stop();
+                timeSource.advance(1, TimeUnit.MILLISECONDS);
+            }
+            done.set(true);
+        });
+        final Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                final long elapsed = sw.getElapsed();
+                if (elapsed != 0L && elapsed != 3L) {
+                    failure.set("torn elapsed time " + elapsed);
+                }
+            }
+        });
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.join();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(sw.getElapsed(), 3L);
+    }
+
+}
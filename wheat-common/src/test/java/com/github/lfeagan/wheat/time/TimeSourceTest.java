@@ -0,0 +1,94 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TimeSourceTest {
+
+    @Test
+    public void manual() {
+        ManualTimeSource clock = ManualTimeSource.create(1000L, 1_700_000_000_000L);
+        NanoStopWatch nsw = NanoStopWatch.createStarted(clock);
+        clock.advance(1500L, TimeUnit.NANOSECONDS);
+        Assert.assertEquals(nsw.elapsedNanos(), 1500L);
+        nsw.stop();
+        Assert.assertEquals(nsw.getCumulative(), 1500L);
+
+        SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(clock);
+        try (SplitNanoStopWatch.Scope request = snsw.enter("request")) {
+            clock.advance(3L, TimeUnit.MICROSECONDS);
+            try (SplitNanoStopWatch.Scope fetch = snsw.enter("fetch")) {
+                clock.advance(7L, TimeUnit.MICROSECONDS);
+                snsw.split("fetched");
+            }
+        }
+        Assert.assertEquals(snsw.getSplitsTotalElapsed("fetched"), 10_000L);
+        SplitNanoStopWatch.Span[] spans = snsw.getSpans();
+        Assert.assertEquals(spans[0].getElapsed(), 10_000L);
+        Assert.assertEquals(spans[0].getSelfElapsed(), 3_000L);
+        Assert.assertEquals(spans[1].getElapsed(), 7_000L);
+
+        // the wall clock accumulates sub-millisecond advances
+        StopWatch sw = new StopWatch(clock, true);
+        clock.advance(600L, TimeUnit.MICROSECONDS);
+        Assert.assertEquals(sw.getCurrentElapsed(), 0L);
+        clock.advance(600L, TimeUnit.MICROSECONDS);
+        sw.stop();
+        Assert.assertEquals(sw.getElapsed(), 1L);
+        Assert.assertEquals(sw.toString(true), "00:00:00.001");
+
+        ConcurrentNanoStopWatch csw = ConcurrentNanoStopWatch.create(clock);
+        final long token = csw.begin();
+        clock.advance(42L, TimeUnit.NANOSECONDS);
+        Assert.assertEquals(csw.end(token), 42L);
+
+        clock.setNanoTime(0L);
+        clock.setCurrentTimeMillis(5L);
+        Assert.assertEquals(clock.nanoTime(), 0L);
+        Assert.assertEquals(clock.currentTimeMillis(), 5L);
+    }
+
+    @Test
+    public void manualDefault() {
+        ManualTimeSource clock = ManualTimeSource.create();
+        StopWatch sw = new StopWatch(clock, true);
+        Assert.assertEquals(sw.getStart(), ManualTimeSource.DEFAULT_CURRENT_TIME_MILLIS);
+        clock.advance(5L, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(sw.getCurrentElapsed(), 5L);
+        sw.stop();
+        Assert.assertEquals(sw.getElapsed(), 5L);
+
+        // resuming keeps the start time rather than treating the watch as never started
+        sw.start(false);
+        Assert.assertEquals(sw.getStart(), ManualTimeSource.DEFAULT_CURRENT_TIME_MILLIS);
+        clock.advance(6L, TimeUnit.MILLISECONDS);
+        sw.stop();
+        Assert.assertEquals(sw.getElapsed(), 11L);
+        Assert.assertEquals(sw.toString(true), "00:00:00.011");
+
+        NanoStopWatch nsw = NanoStopWatch.createStarted(clock);
+        clock.advance(3L, TimeUnit.NANOSECONDS);
+        nsw.stop();
+        Assert.assertEquals(nsw.getCumulative(), 3L);
+    }
+
+    @Test
+    public void cached() throws InterruptedException {
+        try (CachedTimeSource clock = CachedTimeSource.start(500L)) {
+            Assert.assertEquals(clock.getTickMicros(), 500L);
+            final long nanoTime = clock.nanoTime();
+            final long currentTimeMillis = clock.currentTimeMillis();
+            Assert.assertTrue(Math.abs(currentTimeMillis - System.currentTimeMillis()) < 1000L);
+            Thread.sleep(20L);
+            Assert.assertTrue(clock.nanoTime() > nanoTime);
+            Assert.assertTrue(clock.currentTimeMillis() >= currentTimeMillis);
+            clock.close();
+            Assert.assertTrue(clock.isClosed());
+        }
+        Assert.assertSame(TimeSource.system(), TimeSource.system());
+        Assert.assertTrue(NanoStopWatch.createUnstarted().getTimeSource() == TimeSource.system());
+    }
+
+}
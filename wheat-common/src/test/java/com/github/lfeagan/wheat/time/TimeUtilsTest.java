@@ -2,8 +2,12 @@ package com.github.lfeagan.wheat.time;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import org.threeten.extra.PeriodDuration;
 
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.time.*;
+import java.util.Random;
 
 import static com.github.lfeagan.wheat.time.TimeUtils.instantFromRFC3339;
 
@@ -114,6 +118,94 @@ public class TimeUtilsTest {
         }
     }
 
+    @Test
+    public void fineGrainedNanosecondIntervals() {
+        final Instant origin = instantFromRFC3339("2000-01-01T00:00:00.000000001Z");
+        final Instant reference = instantFromRFC3339("2000-01-01T01:23:45.123456789Z");
+        Assert.assertEquals(TimeUtils.alignWithInterval(reference, origin, Duration.ofNanos(10)),
+                instantFromRFC3339("2000-01-01T01:23:45.123456781Z"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(reference, origin, Duration.ofNanos(1)), reference);
+        Assert.assertEquals(TimeUtils.alignWithInterval(reference, origin, Duration.parse("PT0.001S")),
+                instantFromRFC3339("2000-01-01T01:23:45.123000001Z"));
+    }
+
+    @Test
+    public void durationBeforeOrigin() {
+        final Instant origin = instantFromRFC3339("2000-01-01T00:00:00Z");
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("1999-01-01T01:23:45.5Z"), origin, Duration.ofSeconds(1)),
+                instantFromRFC3339("1999-01-01T01:23:45Z"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("1999-12-31T23:59:59Z"), origin, Duration.ofHours(1)),
+                instantFromRFC3339("1999-12-31T23:00:00Z"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("1999-12-31T23:00:00Z"), origin, Duration.ofHours(1)),
+                instantFromRFC3339("1999-12-31T23:00:00Z"));
+    }
+
+    @Test
+    public void durationBeyondLongNanos() {
+        // the distance between the timestamp and origin exceeds the range of a long number of nanoseconds
+        Assert.assertEquals(TimeUtils.alignWithInterval(YEAR_3000.plusNanos(1), YEAR_2000, Duration.ofDays(1)), YEAR_3000);
+        Assert.assertEquals(TimeUtils.alignWithInterval(YEAR_2000.plusNanos(1), YEAR_3000, Duration.ofDays(1)), YEAR_2000);
+        // the interval itself exceeds the range of a long number of nanoseconds
+        final Duration thousandYears = Duration.between(YEAR_2000, YEAR_3000);
+        Assert.assertEquals(TimeUtils.alignWithInterval(YEAR_3000.minusNanos(1), YEAR_2000, thousandYears), YEAR_2000);
+        Assert.assertEquals(TimeUtils.alignWithInterval(YEAR_2000.minusNanos(1), YEAR_3000, thousandYears), YEAR_2000.minus(thousandYears));
+    }
+
+    @Test
+    public void epochNanosIntervals() {
+        Assert.assertEquals(TimeUtils.alignWithInterval(1234L, 0L, 100L), 1200L);
+        Assert.assertEquals(TimeUtils.alignWithInterval(-1234L, 0L, 100L), -1300L);
+        Assert.assertEquals(TimeUtils.alignWithInterval(1234L, 5L, 100L), 1205L);
+        Assert.assertEquals(TimeUtils.alignWithInterval(-1200L, 0L, 100L), -1200L);
+        // the difference between the timestamp and origin overflows a long
+        Assert.assertEquals(TimeUtils.alignWithInterval(Long.MAX_VALUE, Long.MIN_VALUE + 1L, 10L), Long.MAX_VALUE - 4L);
+        Assert.assertEquals(TimeUtils.alignWithInterval(Long.MIN_VALUE + 20L, Long.MAX_VALUE, 10L), Long.MIN_VALUE + 15L);
+        try {
+            TimeUtils.alignWithInterval(1L, 0L, 0L);
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void batchIntervals() {
+        final Random random = new Random(7L);
+        final long[] timestamps = new long[200000];
+        for (int i = 0; i < timestamps.length; ++i) {
+            timestamps[i] = random.nextLong() / 2;
+        }
+        final long origin = random.nextLong() / 2;
+        final long interval = 1 + random.nextInt(Integer.MAX_VALUE);
+        final long[] expected = new long[timestamps.length];
+        for (int i = 0; i < timestamps.length; ++i) {
+            expected[i] = TimeUtils.alignWithInterval(timestamps[i], origin, interval);
+        }
+
+        final long[] aligned = new long[timestamps.length];
+        TimeUtils.alignWithInterval(timestamps, 0, aligned, 0, timestamps.length, origin, interval);
+        Assert.assertEquals(aligned, expected);
+
+        final long[] parallel = timestamps.clone();
+        TimeUtils.parallelAlignWithInterval(parallel, origin, interval);
+        Assert.assertEquals(parallel, expected);
+
+        final LongBuffer direct = ByteBuffer.allocateDirect(timestamps.length * Long.BYTES).asLongBuffer().put(timestamps);
+        direct.flip();
+        TimeUtils.alignWithInterval(direct, origin, interval);
+        Assert.assertEquals(direct.position(), 0);
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals(direct.get(i), expected[i]);
+        }
+
+        try {
+            TimeUtils.alignWithInterval(new long[] {Long.MIN_VALUE}, 1L, 10L);
+            Assert.fail("no exception thrown");
+        } catch (ArithmeticException e) {
+            // do nothing
+        }
+    }
+
     @Test
     public void oldTime() {
         Instant timestamp = instantFromRFC3339("1973-12-03T15:53:58Z");
@@ -144,6 +236,100 @@ public class TimeUtilsTest {
         Assert.assertEquals(bucketStart, instantFromRFC3339("4100-01-01T00:00:00Z"), "start");
     }
 
+    @Test
+    public void monthlyFromOldOrigin() {
+        final Instant origin = instantFromRFC3339("1970-01-01T00:00:00-05:00");
+        final ZoneId newYork = ZoneId.of("America/New_York");
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-12-03T15:53:58Z"), origin, Period.ofMonths(1), newYork),
+                instantFromRFC3339("2023-12-01T00:00:00-05:00"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-12-03T15:53:58Z"), origin, Period.ofDays(1), newYork),
+                instantFromRFC3339("2023-12-03T00:00:00-05:00"));
+    }
+
+    @Test
+    public void monthEndOrigin() {
+        // the day of month is clamped to 28 in February and remains there for every later step; the step after the
+        // timestamp is moved back by subtracting the interval, which does not undo the clamping
+        final Instant origin = instantFromRFC3339("2023-01-31T00:00:00Z");
+        final ZoneId utc = ZoneId.of("UTC");
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-02-15T00:00:00Z"), origin, Period.ofMonths(1), utc),
+                instantFromRFC3339("2023-01-28T00:00:00Z"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-03-30T00:00:00Z"), origin, Period.ofMonths(1), utc),
+                instantFromRFC3339("2023-03-28T00:00:00Z"));
+        Assert.assertEquals(TimeUtils.alignWithInterval(instantFromRFC3339("2023-12-22T00:00:00Z"), origin, Period.parse("P1M1D"), utc),
+                instantFromRFC3339("2023-12-10T00:00:00Z"));
+    }
+
+    @Test
+    public void periodAlignmentMatchesStepping() {
+        final Random random = new Random(20231203L);
+        final String[] zones = {"UTC", "America/New_York", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+                "America/Havana", "Asia/Kolkata", "Pacific/Apia", "Asia/Beirut"};
+        final Period[] periods = {Period.ofDays(1), Period.ofDays(3), Period.ofWeeks(1), Period.ofMonths(1),
+                Period.ofMonths(2), Period.ofMonths(3), Period.ofYears(1), Period.parse("P1Y6M"), Period.parse("P1M1D")};
+        final long fiftyYears = Duration.ofDays(365L * 50L).getSeconds();
+        for (int i = 0; i < 4000; ++i) {
+            final ZoneId zone = ZoneId.of(zones[random.nextInt(zones.length)]);
+            final Period period = periods[random.nextInt(periods.length)];
+            final Instant origin;
+            if (random.nextBoolean()) {
+                // local times that commonly coincide with DST transitions
+                final LocalTime time = LocalTime.of(random.nextInt(4), random.nextBoolean() ? 0 : 30);
+                final LocalDate date = LocalDate.ofEpochDay(random.nextInt(20000));
+                origin = ZonedDateTime.of(date, time, zone).toInstant();
+            } else {
+                origin = Instant.ofEpochSecond((long) (random.nextDouble() * 2 * fiftyYears), random.nextInt(1000000000));
+            }
+            final long range = (period.toTotalMonths() == 0L) ? fiftyYears / 10L : fiftyYears;
+            final Instant timestamp = origin.plusSeconds((long) ((random.nextDouble() - 0.5d) * 2 * range));
+            final PeriodDuration interval = PeriodDuration.of(period);
+            Assert.assertEquals(TimeUtils.alignWithInterval(timestamp, origin, interval, zone),
+                    alignWithIntervalByStepping(timestamp, origin, interval, zone),
+                    timestamp + " " + origin + " " + period + " " + zone);
+        }
+    }
+
+    @Test
+    public void periodDurationAlignmentMatchesStepping() {
+        // intervals with both a period and a duration are always stepped, so keep the ranges short
+        final Random random = new Random(20251018L);
+        final String[] zones = {"America/New_York", "Europe/London", "Australia/Lord_Howe", "Pacific/Apia", "Asia/Beirut"};
+        final PeriodDuration[] intervals = {PeriodDuration.of(Period.ofDays(1), Duration.ofHours(1)),
+                PeriodDuration.of(Period.ofMonths(1), Duration.ofMinutes(30)), PeriodDuration.of(Period.ofWeeks(1), Duration.ofSeconds(1, 1))};
+        final long fiveYears = Duration.ofDays(365L * 5L).getSeconds();
+        for (int i = 0; i < 500; ++i) {
+            final ZoneId zone = ZoneId.of(zones[random.nextInt(zones.length)]);
+            final PeriodDuration interval = intervals[random.nextInt(intervals.length)];
+            final LocalDate date = LocalDate.ofEpochDay(random.nextInt(40000) - 10000);
+            final Instant origin = ZonedDateTime.of(date, LocalTime.of(random.nextInt(4), 30), zone).toInstant();
+            final Instant timestamp = origin.plusSeconds((long) ((random.nextDouble() - 0.5d) * 2 * fiveYears));
+            Assert.assertEquals(TimeUtils.alignWithInterval(timestamp, origin, interval, zone),
+                    alignWithIntervalByStepping(timestamp, origin, interval, zone),
+                    timestamp + " " + origin + " " + interval + " " + zone);
+        }
+    }
+
+    /**
+     * The reference definition of period alignment, which steps one interval at a time from the origin.
+     */
+    private static Instant alignWithIntervalByStepping(Instant timestamp, Instant origin, PeriodDuration interval, ZoneId timeZone) {
+        final ZonedDateTime zonedTimestamp = ZonedDateTime.ofInstant(timestamp, timeZone);
+        ZonedDateTime alignedTime = ZonedDateTime.ofInstant(origin, timeZone);
+        if (timestamp.isBefore(origin)) {
+            while (alignedTime.isAfter(zonedTimestamp)) {
+                alignedTime = alignedTime.minus(interval);
+            }
+        } else {
+            while (alignedTime.isBefore(zonedTimestamp)) {
+                alignedTime = alignedTime.plus(interval);
+            }
+            if (!alignedTime.equals(zonedTimestamp)) {
+                alignedTime = alignedTime.minus(interval);
+            }
+        }
+        return alignedTime.toInstant();
+    }
+
 //    @Test
 ////    public void leapSecond() {
 ////        final Instant origin = instantFromRFC3339("2000-01-01T00:00:00Z");
@@ -0,0 +1,138 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TimerRegistryTest {
+
+    @Test
+    public void timers() {
+        TimerRegistry registry = TimerRegistry.create();
+        TimerRegistry.Timer a = registry.timer("a");
+        Assert.assertSame(registry.timer("a"), a);
+        Assert.assertNull(a.getHistogram());
+        a.record(10L);
+        a.record(30L);
+        a.record(20L);
+        registry.timer("b").end(registry.timer("b").begin());
+
+        SortedMap<String, TimerRegistry.Snapshot> snapshots = registry.snapshot();
+        Assert.assertEquals(snapshots.firstKey(), "a");
+        Assert.assertEquals(snapshots.lastKey(), "b");
+        TimerRegistry.Snapshot snapshot = snapshots.get("a");
+        Assert.assertEquals(snapshot.getCount(), 3L);
+        Assert.assertEquals(snapshot.getTotal(), 60L);
+        Assert.assertEquals(snapshot.getMin(), 10L);
+        Assert.assertEquals(snapshot.getMax(), 30L);
+        Assert.assertEquals(snapshot.getMean(), 20.0);
+
+        registry.snapshotAndReset();
+        snapshot = registry.snapshot().get("a");
+        Assert.assertEquals(snapshot.getCount(), 0L);
+        Assert.assertEquals(snapshot.getMin(), 0L);
+        Assert.assertEquals(snapshot.getMax(), 0L);
+
+        Assert.assertTrue(registry.remove("a"));
+        Assert.assertFalse(registry.snapshot().containsKey("a"));
+    }
+
+    @Test
+    public void histograms() {
+        TimerRegistry registry = TimerRegistry.createWithHistograms(LatencyHistogram.DEFAULT_PRECISION_BITS);
+        TimerRegistry.Timer timer = registry.timer("query");
+        for (long value = 1; value <= 1000L; ++value) {
+            timer.record(value);
+        }
+        LatencyHistogram histogram = registry.snapshot().get("query").getHistogram();
+        Assert.assertNotSame(histogram, timer.getHistogram());
+        Assert.assertEquals(histogram.getCount(), 1000L);
+        Assert.assertEquals(histogram.getMax(), 1000L);
+
+        try {
+            timer.record(5L, 0L);
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+        Assert.assertEquals(timer.getCount(), 1000L);
+        Assert.assertEquals(timer.getHistogram().getCount(), 1000L);
+    }
+
+    @Test
+    public void recordSplits() {
+        TimerRegistry registry = TimerRegistry.create();
+        SplitNanoStopWatch sw = SplitNanoStopWatch.createStarted();
+        sw.split("parse");
+        sw.split("execute");
+        sw.split("parse");
+        registry.recordSplits(sw);
+        Assert.assertEquals(registry.timer("parse").getCount(), 2L);
+        Assert.assertEquals(registry.timer("parse").getTotal(), sw.getSplitsTotalElapsed("parse"));
+        Assert.assertEquals(registry.timer("execute").getCount(), 1L);
+
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        NanoStopWatch nsw = NanoStopWatch.createStarted(timeSource);
+        timeSource.advance(2, TimeUnit.MILLISECONDS);
+        nsw.stop();
+        nsw.start();
+        timeSource.advance(3, TimeUnit.MILLISECONDS);
+        nsw.stop();
+        registry.timer("cumulative").recordCumulative(nsw);
+        Assert.assertEquals(registry.timer("cumulative").getCount(), 1L);
+        Assert.assertEquals(registry.timer("cumulative").getTotal(), 5_000_000L);
+    }
+
+    @Test
+    public void timeSource() {
+        ManualTimeSource timeSource = ManualTimeSource.create();
+        TimerRegistry registry = TimerRegistry.createWithHistograms(LatencyHistogram.DEFAULT_PRECISION_BITS, timeSource);
+        Assert.assertSame(registry.getTimeSource(), timeSource);
+        TimerRegistry.Timer timer = registry.timer("request");
+        final long token = timer.begin();
+        timeSource.advance(250, TimeUnit.MICROSECONDS);
+        Assert.assertEquals(timer.end(token), 250_000L);
+        Assert.assertEquals(timer.snapshot().getMax(), 250_000L);
+        Assert.assertEquals(timer.getHistogram().getCount(), 1L);
+
+        SplitNanoStopWatch sw = SplitNanoStopWatch.createStarted(timeSource);
+        timeSource.advance(1, TimeUnit.MILLISECONDS);
+        sw.split("parse");
+        timeSource.advance(3, TimeUnit.MILLISECONDS);
+        sw.split("execute");
+        timeSource.advance(2, TimeUnit.MILLISECONDS);
+        sw.split("parse");
+        registry.recordSplits(sw);
+        Assert.assertEquals(registry.timer("parse").getCount(), 2L);
+        Assert.assertEquals(registry.timer("parse").getTotal(), 3_000_000L);
+        Assert.assertEquals(registry.timer("execute").getTotal(), 3_000_000L);
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        final TimerRegistry registry = TimerRegistry.create();
+        final int threads = 8;
+        final int iterations = 10000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; ++t) {
+            executor.execute(() -> {
+                final TimerRegistry.Timer timer = registry.timer("shared");
+                for (int i = 1; i <= iterations; ++i) {
+                    timer.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        TimerRegistry.Snapshot snapshot = registry.timer("shared").snapshot();
+        Assert.assertEquals(snapshot.getCount(), (long) threads * iterations);
+        Assert.assertEquals(snapshot.getTotal(), (long) threads * iterations * (iterations + 1) / 2);
+        Assert.assertEquals(snapshot.getMin(), 1L);
+        Assert.assertEquals(snapshot.getMax(), iterations);
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class TimestampScannerTest {
+
+    private Path file;
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        file = Files.createTempFile("timestamps", ".log");
+    }
+
+    @AfterMethod
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    /**
+     * Collects the timestamps and the offsets of invalid lines, in the order they are delivered.
+     */
+    private static final class Collector implements TimestampScanner.BatchHandler {
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> invalid = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void accept(final long[] epochNanos, final int length) {
+            for (int i = 0; i < length; ++i) {
+                timestamps.add(epochNanos[i]);
+            }
+        }
+
+        @Override
+        public void invalid(final long offset) {
+            invalid.add(offset);
+        }
+    }
+
+    private static long epochNanos(final String timestamp) {
+        return TimeUtils.toEpochNanos(TimeUtils.instantFromRFC3339(timestamp));
+    }
+
+    @Test
+    public void fields() throws IOException {
+        Files.write(file, ("2000-01-01T00:00:00Z INFO started\n"
+                + "2000-01-01T00:00:01.5+01:00\tWARN tab separated\r\n"
+                + "\n"
+                + "not a timestamp\n"
+                + "2000-01-01T00:00:02Z").getBytes(StandardCharsets.UTF_8));
+        Collector collector = new Collector();
+        Assert.assertEquals(TimestampScanner.create(TimestampField.leading()).scan(file, collector), 3L);
+        Assert.assertEquals(collector.timestamps, List.of(epochNanos("2000-01-01T00:00:00Z"),
+                epochNanos("2000-01-01T00:00:01.5+01:00"), epochNanos("2000-01-01T00:00:02Z")));
+        Assert.assertEquals(collector.invalid, List.of(83L));
+
+        Files.write(file, ("id,\"time, quoted\",name\n"
+                + "1,\"2000-01-01T00:00:00Z\",\"a, \"\"b\"\"\"\n"
+                + "\"x,y\",2000-01-01T00:00:03Z,c\n"
+                + "3\n").getBytes(StandardCharsets.UTF_8));
+        collector = new Collector();
+        Assert.assertEquals(TimestampScanner.create(TimestampField.column(1, ',')).scan(file, collector), 2L);
+        Assert.assertEquals(collector.timestamps, List.of(epochNanos("2000-01-01T00:00:00Z"),
+                epochNanos("2000-01-01T00:00:03Z")));
+        Assert.assertEquals(collector.invalid.size(), 2);
+
+        Files.write(file, ("{\"msg\":\"ts\",\"ts\" : \"2000-01-01T00:00:00Z\"}\n"
+                + "{\"nested\":{\"ts\":\"2000-01-01T00:00:04Z\"},\"ts\":\"ignored\"}\n"
+                + "{\"ts\":1}\n").getBytes(StandardCharsets.UTF_8));
+        collector = new Collector();
+        Assert.assertEquals(TimestampScanner.create(TimestampField.jsonKey("ts")).scan(file, collector), 2L);
+        Assert.assertEquals(collector.timestamps, List.of(epochNanos("2000-01-01T00:00:00Z"),
+                epochNanos("2000-01-01T00:00:04Z")));
+        Assert.assertEquals(collector.invalid.size(), 1);
+    }
+
+    @Test
+    public void range() throws IOException {
+        // the earliest and latest instants that are a long number of nanoseconds, and those just beyond them
+        final Instant max = Instant.ofEpochSecond(0L, Long.MAX_VALUE);
+        final Instant min = Instant.ofEpochSecond(0L, Long.MIN_VALUE);
+        final String first = max + "\n";
+        final String second = max.plusNanos(1L) + "\n";
+        final String third = min + "\n";
+        Files.write(file, (first + second + third + min.minusNanos(1L) + "\n").getBytes(StandardCharsets.UTF_8));
+        Collector collector = new Collector();
+        Assert.assertEquals(TimestampScanner.create(TimestampField.leading()).scan(file, collector), 2L);
+        Assert.assertEquals(collector.timestamps, List.of(Long.MAX_VALUE, Long.MIN_VALUE));
+        Assert.assertEquals(collector.invalid, List.of((long) first.length(),
+                (long) (first.length() + second.length() + third.length())));
+    }
+
+    @Test
+    public void windowsAndChunks() throws IOException {
+        final Random random = new Random(22L);
+        final StringBuilder sb = new StringBuilder();
+        final List<Long> expected = new ArrayList<>();
+        long epochSecond = 946_684_800L;
+        for (int i = 0; i < 5_000; ++i) {
+            epochSecond += random.nextInt(100);
+            final Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000));
+            sb.append(instant).append(' ');
+            // lines of varying length, some longer than the smallest window
+            for (int j = random.nextInt(random.nextInt(10) == 0 ? 300 : 40); j > 0; --j) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append('\n');
+            expected.add(TimeUtils.toEpochNanos(instant));
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        // parallel scans deliver chunks in any order, so are compared sorted
+        final List<Long> sorted = new ArrayList<>(expected);
+        Collections.sort(sorted);
+
+        final TimestampScanner scanner = TimestampScanner.create(TimestampField.leading()).withBatchSize(100);
+        for (int windowSize : new int[] {64, 200, 4096, TimestampScanner.DEFAULT_WINDOW_SIZE}) {
+            for (long chunkSize : new long[] {1000L, 12_345L, TimestampScanner.DEFAULT_CHUNK_SIZE}) {
+                Collector collector = new Collector();
+                Assert.assertEquals(scanner.withSizes(windowSize, chunkSize).scan(file, collector), expected.size());
+                Assert.assertEquals(collector.timestamps, expected);
+                Assert.assertTrue(collector.invalid.isEmpty());
+
+                collector = new Collector();
+                Assert.assertEquals(scanner.withSizes(windowSize, chunkSize).parallelScan(file, collector), expected.size());
+                Collections.sort(collector.timestamps);
+                Assert.assertEquals(collector.timestamps, sorted, "window " + windowSize + " chunk " + chunkSize);
+                Assert.assertTrue(collector.invalid.isEmpty());
+            }
+        }
+
+        final long minute = TimeUnit.MINUTES.toNanos(1L);
+        Collector collector = new Collector();
+        scanner.withAlignment(0L, minute).parallelScan(file, collector);
+        Collections.sort(collector.timestamps);
+        for (int i = 0; i < sorted.size(); ++i) {
+            Assert.assertEquals((long) collector.timestamps.get(i), TimeUtils.alignWithInterval(sorted.get(i), 0L, minute));
+        }
+    }
+
+    @Test
+    public void empty() throws IOException {
+        Collector collector = new Collector();
+        Assert.assertEquals(TimestampScanner.create(TimestampField.leading()).scan(file, collector), 0L);
+        Assert.assertEquals(TimestampScanner.create(TimestampField.leading()).parallelScan(file, collector), 0L);
+        Assert.assertTrue(collector.timestamps.isEmpty());
+    }
+
+}
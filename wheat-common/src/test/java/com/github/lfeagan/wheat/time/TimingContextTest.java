@@ -0,0 +1,99 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TimingContextTest {
+
+    @Test
+    public void phases() {
+        ManualTimeSource clock = ManualTimeSource.create();
+        TimingContext context = TimingContext.create("request", clock, false);
+        Assert.assertNull(TimingContext.current());
+        try (TimingContext.PhaseScope none = TimingContext.inPhase("ignored")) {
+            clock.advance(1L, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertNull(context.getPhase("ignored"));
+
+        Queue<Runnable> queue = new ArrayDeque<>();
+        Executor executor = context.executor(queue::add, "fetch");
+        try (TimingContext.Attachment attachment = context.attach()) {
+            Assert.assertSame(TimingContext.current(), context);
+            try (TimingContext.PhaseScope parse = TimingContext.inPhase("parse")) {
+                clock.advance(2L, TimeUnit.MILLISECONDS);
+            }
+            executor.execute(() -> {
+                Assert.assertSame(TimingContext.current(), context);
+                clock.advance(5L, TimeUnit.MILLISECONDS);
+            });
+            TimingContext.propagating(queue::add, "decode").execute(() -> clock.advance(1L, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertNull(TimingContext.current());
+        // tasks submitted without a current context are not wrapped
+        TimingContext.propagating(queue::add, "decode").execute(() -> Assert.assertNull(TimingContext.current()));
+
+        clock.advance(3L, TimeUnit.MILLISECONDS);
+        while (!queue.isEmpty()) {
+            queue.poll().run();
+        }
+        Assert.assertNull(TimingContext.current());
+
+        Assert.assertEquals(context.getPhases().size(), 3);
+        Assert.assertEquals(context.getPhase("parse").getWallNanos(), 2_000_000L);
+        Assert.assertEquals(context.getPhase("parse").getQueueWaitNanos(), 0L);
+        Assert.assertEquals(context.getPhase("fetch").getCount(), 1L);
+        Assert.assertEquals(context.getPhase("fetch").getWallNanos(), 5_000_000L);
+        Assert.assertEquals(context.getPhase("fetch").getQueueWaitNanos(), 3_000_000L);
+        Assert.assertEquals(context.getPhase("fetch").getCpuMeasuredCount(), 0L);
+        Assert.assertEquals(context.getPhase("decode").getCount(), 1L);
+        Assert.assertEquals(context.getPhase("decode").getQueueWaitNanos(), 8_000_000L);
+        Assert.assertEquals(context.elapsedNanos(), 12_000_000L);
+    }
+
+    @Test
+    public void completableFuture() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            TimingContext context = TimingContext.create("request");
+            final int result = CompletableFuture
+                    .supplyAsync(context.wrapSupplier("fetch", () -> {
+                        Assert.assertSame(TimingContext.current(), context);
+                        long sum = 0L;
+                        for (int i = 0; i < 1_000_000; ++i) {
+                            sum += i;
+                        }
+                        return (int) (sum % 1000);
+                    }), pool)
+                    .thenApplyAsync(context.wrapFunction("decode", value -> {
+                        try (TimingContext.PhaseScope nested = TimingContext.inPhase("validate")) {
+                            return value + 1;
+                        }
+                    }), context.executor(pool, "schedule"))
+                    .get(1, TimeUnit.MINUTES);
+            Assert.assertEquals(result, 1);
+            // the schedule phase ends after its task has completed the future, so wait for the pool to finish
+            pool.shutdown();
+            Assert.assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+            Assert.assertEquals(context.getPhase("fetch").getCount(), 1L);
+            Assert.assertEquals(context.getPhase("decode").getCount(), 1L);
+            Assert.assertEquals(context.getPhase("validate").getCount(), 1L);
+            Assert.assertEquals(context.getPhase("schedule").getCount(), 1L);
+            Assert.assertTrue(context.getPhase("fetch").getWallNanos() > 0L);
+            TimingContext.Phase fetch = context.getPhase("fetch");
+            if (fetch.getCpuMeasuredCount() > 0L) {
+                Assert.assertTrue(fetch.getCpuNanos() >= 0L);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
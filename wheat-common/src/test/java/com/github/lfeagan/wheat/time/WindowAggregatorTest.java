@@ -0,0 +1,181 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.github.lfeagan.wheat.time.TimeUtils.instantFromRFC3339;
+
+public class WindowAggregatorTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    /**
+     * Collects the emitted windows as lists of start, end, count, sum, min and max.
+     */
+    private static final class Collector implements WindowAggregator.WindowHandler {
+        final List<List<Object>> windows = new ArrayList<>();
+
+        @Override
+        public void accept(final long startEpochNanos, final long endEpochNanos, final long count, final double sum,
+                           final double min, final double max) {
+            windows.add(Arrays.asList(startEpochNanos, endEpochNanos, count, sum, min, max));
+        }
+    }
+
+    /**
+     * Returns the boundaries between the timestamps, generated by stepping from the origin as IntervalAligner does.
+     */
+    private static long[] boundaries(final Instant origin, final PeriodDuration slide, final ZoneId timeZone, final Instant from,
+                                     final Instant to) {
+        final List<Long> boundaries = new ArrayList<>();
+        ZonedDateTime step = ZonedDateTime.ofInstant(origin, timeZone);
+        while (step.toInstant().isAfter(from)) {
+            step = step.minus(slide);
+            boundaries.add(0, TimeUtils.toEpochNanos(step.toInstant()));
+        }
+        step = ZonedDateTime.ofInstant(origin, timeZone);
+        while (!step.toInstant().isAfter(to)) {
+            boundaries.add(TimeUtils.toEpochNanos(step.toInstant()));
+            step = step.plus(slide);
+        }
+        boundaries.add(TimeUtils.toEpochNanos(step.toInstant()));
+        return boundaries.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * Aggregates the values into windows of the specified number of slides, in the simplest possible way.
+     */
+    private static List<List<Object>> expected(final long[] boundaries, final int slidesPerWindow, final long[] timestamps,
+                                               final double[] values) {
+        final Map<Integer, double[]> windows = new TreeMap<>();
+        for (int i = 0; i < timestamps.length; ++i) {
+            int k = Arrays.binarySearch(boundaries, timestamps[i]);
+            k = k >= 0 ? k : -k - 2;
+            for (int j = k - slidesPerWindow + 1; j <= k; ++j) {
+                final double[] window = windows.computeIfAbsent(j, x -> new double[] {0, 0, Double.MAX_VALUE, -Double.MAX_VALUE});
+                ++window[0];
+                window[1] += values[i];
+                window[2] = Math.min(window[2], values[i]);
+                window[3] = Math.max(window[3], values[i]);
+            }
+        }
+        final List<List<Object>> expected = new ArrayList<>();
+        windows.forEach((j, window) -> expected.add(Arrays.asList(boundaries[j], boundaries[j + slidesPerWindow],
+                (long) window[0], window[1], window[2], window[3])));
+        return expected;
+    }
+
+    private static void check(final Instant origin, final PeriodDuration size, final PeriodDuration slide, final ZoneId timeZone,
+                              final Instant from, final Duration span, final int slidesPerWindow) {
+        final Random random = new Random(24L);
+        final int n = 5_000;
+        final long[] timestamps = new long[n];
+        final double[] values = new double[n];
+        final long start = TimeUtils.toEpochNanos(from);
+        final long step = span.toNanos() / n;
+        for (int i = 0; i < n; ++i) {
+            // out of order by up to ten steps
+            timestamps[i] = start + i * step + (long) (random.nextDouble() * 10 * step);
+            values[i] = random.nextInt(1000) - 500;
+        }
+        final long[] boundaries = boundaries(origin, slide, timeZone, from.minus(span), from.plus(span).plus(span));
+
+        final Collector collector = new Collector();
+        final WindowAggregator aggregator = WindowAggregator.sliding(origin, size, slide, timeZone, collector);
+        Assert.assertEquals(aggregator.getSlidesPerWindow(), slidesPerWindow);
+        int maxOpen = 0;
+        for (int i = 0; i < n; ++i) {
+            aggregator.add(timestamps[i], values[i]);
+            aggregator.advanceWatermark(start + (i - 10) * step);
+            maxOpen = Math.max(maxOpen, aggregator.getOpenWindowCount());
+        }
+        aggregator.flush();
+        Assert.assertEquals(aggregator.getLateCount(), 0L);
+        Assert.assertEquals(aggregator.getOpenWindowCount(), 0);
+        Assert.assertEquals(collector.windows, expected(boundaries, slidesPerWindow, timestamps, values));
+        Assert.assertTrue(maxOpen < collector.windows.size());
+    }
+
+    @Test
+    public void tumblingDuration() {
+        check(instantFromRFC3339("2000-01-01T00:00:07Z"), PeriodDuration.of(Duration.ofMinutes(1)),
+                PeriodDuration.of(Duration.ofMinutes(1)), ZoneOffset.UTC, instantFromRFC3339("2023-12-03T15:53:58Z"),
+                Duration.ofHours(6), 1);
+    }
+
+    @Test
+    public void slidingDuration() {
+        check(instantFromRFC3339("2000-01-01T00:00:00Z"), PeriodDuration.of(Duration.ofMinutes(5)),
+                PeriodDuration.of(Duration.ofMinutes(1)), ZoneOffset.UTC, instantFromRFC3339("1999-12-31T22:00:00Z"),
+                Duration.ofHours(4), 5);
+    }
+
+    @Test
+    public void slidingDays() {
+        // across both daylight saving transitions of the year, so some days are 23 or 25 hours long
+        check(instantFromRFC3339("2000-01-01T00:00:00-05:00"), PeriodDuration.of(Period.ofDays(3)),
+                PeriodDuration.of(Period.ofDays(1)), NEW_YORK, instantFromRFC3339("2023-01-01T00:00:00Z"),
+                Duration.ofDays(365), 3);
+    }
+
+    @Test
+    public void monthsBeforeOrigin() {
+        // before the origin, subtracting a month clamps the day of month, which adding it back does not undo
+        check(instantFromRFC3339("2000-03-31T00:00:00-05:00"), PeriodDuration.of(Period.ofMonths(2)),
+                PeriodDuration.of(Period.ofMonths(1)), NEW_YORK, instantFromRFC3339("1998-01-01T00:00:00Z"),
+                Duration.ofDays(800), 2);
+    }
+
+    @Test
+    public void watermark() {
+        final Collector collector = new Collector();
+        final WindowAggregator aggregator = WindowAggregator.tumbling(Instant.EPOCH, PeriodDuration.of(Duration.ofNanos(10L)),
+                ZoneOffset.UTC, collector);
+        aggregator.add(12L, 1.0);
+        aggregator.add(25L, 2.0);
+        aggregator.add(21L, 4.0);
+        Assert.assertEquals(aggregator.getOpenWindowCount(), 2);
+
+        aggregator.advanceWatermark(19L);
+        Assert.assertTrue(collector.windows.isEmpty());
+        aggregator.advanceWatermark(20L);
+        Assert.assertEquals(collector.windows, List.of(Arrays.asList(10L, 20L, 1L, 1.0, 1.0, 1.0)));
+        Assert.assertEquals(aggregator.getWatermark(), 20L);
+
+        // behind the watermark but in an open window, and then in a window that has been emitted
+        aggregator.add(20L, 8.0);
+        aggregator.add(19L, 16.0);
+        aggregator.advanceWatermark(15L);
+        Assert.assertEquals(aggregator.getWatermark(), 20L);
+        Assert.assertEquals(aggregator.getLateCount(), 1L);
+
+        aggregator.flush();
+        Assert.assertEquals(collector.windows.get(1), Arrays.asList(20L, 30L, 3L, 14.0, 2.0, 8.0));
+        aggregator.add(100L, 1.0);
+        Assert.assertEquals(aggregator.getLateCount(), 2L);
+        Assert.assertEquals(aggregator.getOpenWindowCount(), 0);
+    }
+
+    @Test
+    public void sizeMustBeWholeSlides() {
+        final WindowAggregator.WindowHandler handler = new Collector();
+        Assert.assertEquals(WindowAggregator.sliding(Instant.EPOCH, PeriodDuration.of(Period.ofYears(1)),
+                PeriodDuration.of(Period.ofMonths(3)), ZoneOffset.UTC, handler).getSlidesPerWindow(), 4);
+        Assert.assertThrows(IllegalArgumentException.class, () -> WindowAggregator.sliding(Instant.EPOCH,
+                PeriodDuration.of(Duration.ofMinutes(5)), PeriodDuration.of(Duration.ofMinutes(2)), ZoneOffset.UTC, handler));
+        Assert.assertThrows(IllegalArgumentException.class, () -> WindowAggregator.sliding(Instant.EPOCH,
+                PeriodDuration.of(Period.ofDays(1)), PeriodDuration.of(Duration.ofHours(1)), ZoneOffset.UTC, handler));
+        Assert.assertThrows(IllegalArgumentException.class, () -> WindowAggregator.tumbling(Instant.EPOCH,
+                PeriodDuration.ZERO, ZoneOffset.UTC, handler));
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.github.lfeagan.wheat.time;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.threeten.extra.PeriodDuration;
+
+import java.time.*;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class ZoneTransitionTableTest {
+
+    private static final long START = LocalDate.of(ZoneTransitionTable.DEFAULT_FROM_YEAR, 1, 1).toEpochDay() * 86400L;
+    private static final long END = LocalDate.of(ZoneTransitionTable.DEFAULT_TO_YEAR + 1, 1, 1).toEpochDay() * 86400L;
+
+    private static long expectedEpochSecond(final ZoneId zone, final long localSecond, final int preferredOffsetSeconds) {
+        final LocalDateTime local = LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC);
+        return ZonedDateTime.ofLocal(local, zone, ZoneOffset.ofTotalSeconds(preferredOffsetSeconds)).toEpochSecond();
+    }
+
+    private static void checkLocal(final ZoneTransitionTable table, final ZoneId zone, final long localSecond, final int... preferred) {
+        for (int offset : preferred) {
+            final long epochSecond = table.toEpochSecond(localSecond, offset);
+            Assert.assertEquals(epochSecond, expectedEpochSecond(zone, localSecond, offset), zone + " " + localSecond + " " + offset);
+            Assert.assertEquals(table.getOffsetSeconds(epochSecond),
+                    zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds());
+        }
+    }
+
+    /**
+     * Checks every transition of every zone in the tz database over the default range of years, at and around the
+     * instants of the transitions and the edges and middle of their gaps and overlaps, with each preferred offset.
+     */
+    @Test
+    public void everyTransitionOfEveryZone() {
+        for (String id : new TreeSet<>(ZoneId.getAvailableZoneIds())) {
+            final ZoneId zone = ZoneId.of(id);
+            final ZoneRules rules = zone.getRules();
+            final ZoneTransitionTable table = ZoneTransitionTable.of(zone);
+            for (ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(START));
+                 transition != null && transition.toEpochSecond() < END;
+                 transition = rules.nextTransition(transition.getInstant())) {
+                final long epochSecond = transition.toEpochSecond();
+                for (long delta = -1L; delta <= 1L; ++delta) {
+                    Assert.assertEquals(table.getOffsetSeconds(epochSecond + delta),
+                            rules.getOffset(Instant.ofEpochSecond(epochSecond + delta)).getTotalSeconds(), id + " " + transition);
+                }
+                final int before = transition.getOffsetBefore().getTotalSeconds();
+                final int after = transition.getOffsetAfter().getTotalSeconds();
+                final long low = epochSecond + Math.min(before, after);
+                final long high = epochSecond + Math.max(before, after);
+                for (long localSecond : new long[] {low - 1L, low, (low + high) / 2L, high - 1L, high}) {
+                    checkLocal(table, zone, localSecond, before, after, 0, 3600);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks random instants and local date-times of every zone, including some beyond the range of years.
+     */
+    @Test
+    public void randomInstantsOfEveryZone() {
+        final Random random = new Random(25L);
+        final long span = END - START;
+        for (String id : new TreeSet<>(ZoneId.getAvailableZoneIds())) {
+            final ZoneId zone = ZoneId.of(id);
+            final ZoneTransitionTable table = ZoneTransitionTable.of(zone);
+            for (int i = 0; i < 200; ++i) {
+                final long second = START - span / 4L + (long) (random.nextDouble() * span * 1.5d);
+                Assert.assertEquals(table.getOffsetSeconds(second),
+                        zone.getRules().getOffset(Instant.ofEpochSecond(second)).getTotalSeconds(), id + " " + second);
+                checkLocal(table, zone, second, random.nextInt(36 * 3600) - 18 * 3600);
+            }
+        }
+    }
+
+    @Test
+    public void range() {
+        final ZoneId newYork = ZoneId.of("America/New_York");
+        final ZoneTransitionTable table = ZoneTransitionTable.create(newYork, 2000, 2001);
+        Assert.assertEquals(table.getTransitionCount(), 4);
+        // beyond the range, the zone's rules are used
+        final long localSecond = LocalDateTime.of(1950, 4, 30, 2, 30).toEpochSecond(ZoneOffset.UTC);
+        checkLocal(table, newYork, localSecond, -5 * 3600, -4 * 3600);
+        Assert.assertEquals(ZoneTransitionTable.of(ZoneOffset.ofHours(3)).getTransitionCount(), 0);
+        Assert.assertSame(ZoneTransitionTable.of(newYork), ZoneTransitionTable.of(newYork));
+        Assert.assertThrows(IllegalArgumentException.class, () -> ZoneTransitionTable.create(newYork, 2001, 2000));
+    }
+
+    /**
+     * Checks that moving a cursor by periods and durations matches moving a ZonedDateTime, starting from local times
+     * that commonly coincide with transitions.
+     */
+    @Test
+    public void cursorMatchesZonedDateTime() {
+        final Random random = new Random(2025L);
+        final String[] zones = {"America/New_York", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+                "America/Havana", "Pacific/Apia", "Asia/Beirut", "Europe/Dublin", "America/St_Johns"};
+        final PeriodDuration[] intervals = {PeriodDuration.of(Period.ofDays(1)), PeriodDuration.of(Period.ofMonths(1)),
+                PeriodDuration.of(Period.ofDays(1), Duration.ofMinutes(30)), PeriodDuration.of(Period.parse("P1M1D")),
+                PeriodDuration.of(Period.ofYears(1), Duration.ofHours(1)), PeriodDuration.of(Period.ofWeeks(1), Duration.ofSeconds(1, 5))};
+        for (int i = 0; i < 2000; ++i) {
+            final ZoneId zone = ZoneId.of(zones[random.nextInt(zones.length)]);
+            final PeriodDuration interval = intervals[random.nextInt(intervals.length)];
+            final LocalDate date = LocalDate.ofEpochDay(random.nextInt(60000) - 20000);
+            final LocalTime time = LocalTime.of(random.nextInt(4), random.nextBoolean() ? 0 : 30);
+            ZonedDateTime expected = ZonedDateTime.of(date, time, zone);
+            final ZoneTransitionTable.Cursor cursor = ZoneTransitionTable.of(zone).cursor(expected.toInstant());
+            final boolean forward = random.nextBoolean();
+            for (int j = 0; j < 20; ++j) {
+                if (forward) {
+                    expected = expected.plus(interval);
+                    cursor.plus(interval.getPeriod(), interval.getDuration());
+                } else {
+                    expected = expected.minus(interval);
+                    cursor.minus(interval.getPeriod(), interval.getDuration());
+                }
+                Assert.assertEquals(cursor.toInstant(), expected.toInstant(), zone + " " + interval + " " + date + "T" + time);
+            }
+        }
+    }
+
+}
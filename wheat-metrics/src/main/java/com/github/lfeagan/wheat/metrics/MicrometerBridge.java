@@ -0,0 +1,76 @@
+package com.github.lfeagan.wheat.metrics;
+
+import com.github.lfeagan.wheat.time.TimerRegistry;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the timers of a {@link TimerRegistry} as Micrometer meters. Each wheat timer is registered as a
+ * {@link FunctionTimer} that reads the count and total time the timer has already aggregated, so nothing is
+ * translated when a time is recorded; Micrometer reads the aggregates when it publishes. If the wheat timer has a
+ * histogram, a {@link TimeGauge} named <code>&lt;name&gt;.percentile</code> with a <code>phi</code> tag is also
+ * registered for each configured percentile.
+ * <p>
+ * Binding only registers the timers that exist in the registry at the time. Binding the same registries again
+ * registers the timers created since and leaves the meters already registered unchanged.
+ */
+public final class MicrometerBridge implements MeterBinder {
+
+    private final TimerRegistry timers;
+    private final String prefix;
+    private final double[] percentiles;
+
+    private MicrometerBridge(final TimerRegistry timers, final String prefix, final double[] percentiles) {
+        this.timers = timers;
+        this.prefix = prefix;
+        this.percentiles = percentiles;
+    }
+
+    /**
+     * Creates a bridge that registers the timers under their own names, without percentile gauges.
+     * @param timers the registry of timers to expose
+     * @return a new bridge
+     */
+    public static MicrometerBridge create(final TimerRegistry timers) {
+        return new MicrometerBridge(timers, "", new double[0]);
+    }
+
+    /**
+     * Creates a bridge.
+     * @param timers the registry of timers to expose
+     * @param prefix the prefix of the name of each meter, such as <code>"wheat."</code>
+     * @param percentiles the percentiles, from 0 to 100, to expose as gauges for timers that have histograms
+     * @return a new bridge
+     */
+    public static MicrometerBridge create(final TimerRegistry timers, final String prefix, final double... percentiles) {
+        for (double percentile : percentiles) {
+            if (percentile < 0.0d || percentile > 100.0d) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+        }
+        return new MicrometerBridge(timers, prefix, percentiles.clone());
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        for (String name : timers.names()) {
+            final TimerRegistry.Timer timer = timers.timer(name);
+            FunctionTimer.builder(prefix + name, timer, TimerRegistry.Timer::getCount, TimerRegistry.Timer::getTotal,
+                    TimeUnit.NANOSECONDS).register(registry);
+            if (timer.getHistogram() == null) {
+                continue;
+            }
+            for (double percentile : percentiles) {
+                TimeGauge.builder(prefix + name + ".percentile", timer, TimeUnit.NANOSECONDS,
+                                t -> t.getHistogram().getValueAtPercentile(percentile))
+                        .tag("phi", Double.toString(percentile / 100.0d))
+                        .register(registry);
+            }
+        }
+    }
+
+}
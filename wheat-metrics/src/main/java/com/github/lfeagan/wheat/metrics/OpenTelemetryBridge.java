@@ -0,0 +1,312 @@
+package com.github.lfeagan.wheat.metrics;
+
+import com.github.lfeagan.wheat.time.LatencyHistogram;
+import com.github.lfeagan.wheat.time.TimeSource;
+import com.github.lfeagan.wheat.time.TimerRegistry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.Data;
+import io.opentelemetry.sdk.metrics.data.DoubleExemplarData;
+import io.opentelemetry.sdk.metrics.data.HistogramData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.MetricDataType;
+import io.opentelemetry.sdk.metrics.export.MetricProducer;
+import io.opentelemetry.sdk.resources.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the timers of a {@link TimerRegistry} as OpenTelemetry histogram metrics. Register the bridge with
+ * <code>SdkMeterProviderBuilder.registerMetricProducer</code> and each collection produces one histogram data point
+ * per wheat timer from the aggregates the timer already holds, so nothing is translated when a time is recorded.
+ * <p>
+ * Times are exported in seconds. The bucket counts of a timer with a {@link LatencyHistogram} are derived from the
+ * histogram at the precision of the histogram; a timer without a histogram is exported with a single bucket.
+ * <p>
+ * With {@link AggregationTemporality#DELTA} temporality, each collection resets the timers, so the bridge should
+ * be registered with a single meter provider that has a single reader.
+ */
+public final class OpenTelemetryBridge implements MetricProducer {
+
+    /**
+     * The bucket boundaries, in seconds, that OpenTelemetry semantic conventions advise for request durations.
+     */
+    private static final double[] DEFAULT_BOUNDARIES_SECONDS = {
+            0.005d, 0.01d, 0.025d, 0.05d, 0.075d, 0.1d, 0.25d, 0.5d, 0.75d, 1.0d, 2.5d, 5.0d, 7.5d, 10.0d
+    };
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0d;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final TimerRegistry timers;
+    private final String prefix;
+    private final AggregationTemporality temporality;
+    private final InstrumentationScopeInfo scope;
+    private final TimeSource timeSource;
+    private final List<Double> boundaries;
+    private final long[] upperBoundsNanos;
+    private long startEpochNanos;
+
+    private OpenTelemetryBridge(final TimerRegistry timers, final String prefix, final AggregationTemporality temporality,
+                                final TimeSource timeSource, final double[] boundariesSeconds) {
+        this.timers = timers;
+        this.prefix = prefix;
+        this.temporality = temporality;
+        this.scope = InstrumentationScopeInfo.create("com.github.lfeagan.wheat");
+        this.timeSource = timeSource;
+        final List<Double> bounds = new ArrayList<>(boundariesSeconds.length);
+        this.upperBoundsNanos = new long[boundariesSeconds.length];
+        for (int i = 0; i < boundariesSeconds.length; ++i) {
+            bounds.add(boundariesSeconds[i]);
+            upperBoundsNanos[i] = Math.round(boundariesSeconds[i] * NANOS_PER_SECOND);
+        }
+        this.boundaries = Collections.unmodifiableList(bounds);
+        this.startEpochNanos = epochNanos();
+    }
+
+    /**
+     * Creates a bridge that exports cumulative histograms under the names of the timers, with the default bucket
+     * boundaries.
+     * @param timers the registry of timers to expose
+     * @return a new bridge
+     */
+    public static OpenTelemetryBridge create(final TimerRegistry timers) {
+        return new OpenTelemetryBridge(timers, "", AggregationTemporality.CUMULATIVE, TimeSource.system(),
+                DEFAULT_BOUNDARIES_SECONDS);
+    }
+
+    /**
+     * Creates a bridge.
+     * @param timers the registry of timers to expose
+     * @param prefix the prefix of the name of each metric, such as <code>"wheat."</code>
+     * @param temporality whether each collection exports the times recorded since the bridge was created or since
+     *                    the previous collection
+     * @param timeSource the source of the timestamps of the data points
+     * @param boundariesSeconds the upper bounds of the histogram buckets in seconds, in ascending order
+     * @return a new bridge
+     */
+    public static OpenTelemetryBridge create(final TimerRegistry timers, final String prefix,
+                                             final AggregationTemporality temporality, final TimeSource timeSource,
+                                             final double... boundariesSeconds) {
+        for (int i = 1; i < boundariesSeconds.length; ++i) {
+            if (boundariesSeconds[i] <= boundariesSeconds[i - 1]) {
+                throw new IllegalArgumentException("boundariesSeconds must be in ascending order");
+            }
+        }
+        return new OpenTelemetryBridge(timers, prefix, temporality, timeSource, boundariesSeconds.clone());
+    }
+
+    @Override
+    public synchronized Collection<MetricData> produce(final Resource resource) {
+        final Map<String, TimerRegistry.Snapshot> snapshots = (temporality == AggregationTemporality.DELTA)
+                ? timers.snapshotAndReset() : timers.snapshot();
+        final long epochNanos = epochNanos();
+        final List<MetricData> metrics = new ArrayList<>(snapshots.size());
+        for (TimerRegistry.Snapshot snapshot : snapshots.values()) {
+            metrics.add(new TimerMetricData(resource, prefix + snapshot.getName(),
+                    new TimerHistogramData(toPoint(snapshot, epochNanos))));
+        }
+        if (temporality == AggregationTemporality.DELTA) {
+            startEpochNanos = epochNanos;
+        }
+        return metrics;
+    }
+
+    private TimerPointData toPoint(final TimerRegistry.Snapshot snapshot, final long epochNanos) {
+        final LatencyHistogram histogram = snapshot.getHistogram();
+        final List<Double> pointBoundaries;
+        final long[] counts;
+        if (histogram == null) {
+            pointBoundaries = Collections.emptyList();
+            counts = new long[] { snapshot.getCount() };
+        } else {
+            pointBoundaries = boundaries;
+            counts = histogram.getCountsByUpperBound(upperBoundsNanos);
+        }
+        final List<Long> countList = new ArrayList<>(counts.length);
+        for (long count : counts) {
+            countList.add(count);
+        }
+        return new TimerPointData(startEpochNanos, epochNanos, snapshot.getCount(),
+                snapshot.getTotal() / NANOS_PER_SECOND, snapshot.getMin() / NANOS_PER_SECOND,
+                snapshot.getMax() / NANOS_PER_SECOND, pointBoundaries, Collections.unmodifiableList(countList));
+    }
+
+    private long epochNanos() {
+        return timeSource.currentTimeMillis() * NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return "OpenTelemetryBridge{prefix=" + prefix + ", temporality=" + temporality
+                + ", boundaries=" + Arrays.toString(upperBoundsNanos) + "ns}";
+    }
+
+    private final class TimerMetricData implements MetricData {
+        private final Resource resource;
+        private final String name;
+        private final HistogramData data;
+
+        TimerMetricData(final Resource resource, final String name, final HistogramData data) {
+            this.resource = resource;
+            this.name = name;
+            this.data = data;
+        }
+
+        @Override
+        public Resource getResource() {
+            return resource;
+        }
+
+        @Override
+        public InstrumentationScopeInfo getInstrumentationScopeInfo() {
+            return scope;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return "";
+        }
+
+        @Override
+        public String getUnit() {
+            return "s";
+        }
+
+        @Override
+        public MetricDataType getType() {
+            return MetricDataType.HISTOGRAM;
+        }
+
+        @Override
+        public Data<?> getData() {
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return name + data.getPoints();
+        }
+    }
+
+    private final class TimerHistogramData implements HistogramData {
+        private final Collection<HistogramPointData> points;
+
+        TimerHistogramData(final HistogramPointData point) {
+            this.points = Collections.singletonList(point);
+        }
+
+        @Override
+        public AggregationTemporality getAggregationTemporality() {
+            return temporality;
+        }
+
+        @Override
+        public Collection<HistogramPointData> getPoints() {
+            return points;
+        }
+    }
+
+    private static final class TimerPointData implements HistogramPointData {
+        private final long startEpochNanos;
+        private final long epochNanos;
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+        private final List<Double> boundaries;
+        private final List<Long> counts;
+
+        TimerPointData(final long startEpochNanos, final long epochNanos, final long count, final double sum,
+                       final double min, final double max, final List<Double> boundaries, final List<Long> counts) {
+            this.startEpochNanos = startEpochNanos;
+            this.epochNanos = epochNanos;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.boundaries = boundaries;
+            this.counts = counts;
+        }
+
+        @Override
+        public long getStartEpochNanos() {
+            return startEpochNanos;
+        }
+
+        @Override
+        public long getEpochNanos() {
+            return epochNanos;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.empty();
+        }
+
+        @Override
+        public double getSum() {
+            return sum;
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public boolean hasMin() {
+            return count != 0L;
+        }
+
+        @Override
+        public double getMin() {
+            return min;
+        }
+
+        @Override
+        public boolean hasMax() {
+            return count != 0L;
+        }
+
+        @Override
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public List<Double> getBoundaries() {
+            return boundaries;
+        }
+
+        @Override
+        public List<Long> getCounts() {
+            return counts;
+        }
+
+        @Override
+        public List<DoubleExemplarData> getExemplars() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max
+                    + ", boundaries=" + boundaries + ", counts=" + counts + "}";
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.github.lfeagan.wheat.metrics;
+
+import com.github.lfeagan.wheat.time.LatencyHistogram;
+import com.github.lfeagan.wheat.time.ManualTimeSource;
+import com.github.lfeagan.wheat.time.NanoStopWatch;
+import com.github.lfeagan.wheat.time.SplitNanoStopWatch;
+import com.github.lfeagan.wheat.time.TimerRegistry;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsBridgeTest {
+
+    private static TimerRegistry record(final ManualTimeSource timeSource) {
+        TimerRegistry registry = TimerRegistry.createWithHistograms(LatencyHistogram.DEFAULT_PRECISION_BITS);
+        for (int i = 1; i <= 100; ++i) {
+            SplitNanoStopWatch snsw = SplitNanoStopWatch.createStarted(timeSource);
+            timeSource.advance(i, TimeUnit.MILLISECONDS);
+            snsw.split("parse");
+            timeSource.advance(1, TimeUnit.SECONDS);
+            snsw.split("execute");
+            registry.recordSplits(snsw);
+        }
+        NanoStopWatch nsw = NanoStopWatch.createStarted(timeSource);
+        timeSource.advance(3, TimeUnit.SECONDS);
+        nsw.stop();
+        registry.timer("batch").recordCumulative(nsw);
+        return registry;
+    }
+
+    @Test
+    public void micrometer() {
+        TimerRegistry timers = record(ManualTimeSource.create());
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        MicrometerBridge.create(timers, "wheat.", 50.0d, 99.0d).bindTo(meters);
+
+        FunctionTimer parse = meters.get("wheat.parse").functionTimer();
+        Assert.assertEquals(parse.count(), 100.0d);
+        Assert.assertEquals(parse.totalTime(TimeUnit.MILLISECONDS), 5050.0d, 1e-6);
+        FunctionTimer batch = meters.get("wheat.batch").functionTimer();
+        Assert.assertEquals(batch.count(), 1.0d);
+        Assert.assertEquals(batch.totalTime(TimeUnit.SECONDS), 3.0d, 1e-9);
+
+        TimeGauge p99 = meters.get("wheat.parse.percentile").tag("phi", "0.99").timeGauge();
+        Assert.assertEquals(p99.value(TimeUnit.MILLISECONDS), 99.0d, 99.0d * 0.04d);
+
+        // the meters read the timers when they are published, so later times are included without rebinding
+        timers.timer("parse").record(TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(parse.count(), 101.0d);
+
+        // binding again registers new timers and keeps the existing meters
+        timers.timer("fetch").record(1L);
+        MicrometerBridge.create(timers, "wheat.", 50.0d, 99.0d).bindTo(meters);
+        Assert.assertSame(meters.get("wheat.parse").functionTimer(), parse);
+        Assert.assertEquals(meters.get("wheat.fetch").functionTimer().count(), 1.0d);
+
+        try {
+            MicrometerBridge.create(timers, "", 101.0d);
+            Assert.fail("no exception thrown");
+        } catch (IllegalArgumentException e) {
+            // do nothing
+        }
+    }
+
+    @Test
+    public void openTelemetry() {
+        ManualTimeSource timeSource = ManualTimeSource.create(0L, 1_000L);
+        TimerRegistry timers = record(timeSource);
+        OpenTelemetryBridge bridge = OpenTelemetryBridge.create(timers, "wheat.", AggregationTemporality.DELTA,
+                timeSource, 0.01d, 0.05d, 0.1d);
+        InMemoryMetricReader reader = InMemoryMetricReader.create();
+        try (SdkMeterProvider provider = SdkMeterProvider.builder()
+                .registerMetricReader(reader)
+                .registerMetricProducer(bridge)
+                .build()) {
+            timeSource.advance(1, TimeUnit.SECONDS);
+            Collection<MetricData> metrics = reader.collectAllMetrics();
+            Assert.assertEquals(metrics.size(), 3);
+            MetricData parse = find(metrics, "wheat.parse");
+            Assert.assertEquals(parse.getUnit(), "s");
+            HistogramPointData point = parse.getHistogramData().getPoints().iterator().next();
+            Assert.assertEquals(parse.getHistogramData().getAggregationTemporality(), AggregationTemporality.DELTA);
+            Assert.assertEquals(point.getCount(), 100L);
+            Assert.assertEquals(point.getSum(), 5.05d, 1e-9);
+            Assert.assertEquals(point.getMin(), 0.001d, 1e-9);
+            Assert.assertEquals(point.getMax(), 0.1d, 1e-9);
+            Assert.assertEquals(point.getBoundaries(), Arrays.asList(0.01d, 0.05d, 0.1d));
+            Assert.assertEquals(point.getCounts(), Arrays.asList(10L, 40L, 50L, 0L));
+            final long start = point.getStartEpochNanos();
+            Assert.assertEquals(point.getEpochNanos() - start, TimeUnit.SECONDS.toNanos(1));
+
+            // each delta covers the times recorded since the previous collection
+            timers.timer("parse").record(TimeUnit.SECONDS.toNanos(2));
+            timeSource.advance(1, TimeUnit.SECONDS);
+            point = find(reader.collectAllMetrics(), "wheat.parse").getHistogramData().getPoints().iterator().next();
+            Assert.assertEquals(point.getCount(), 1L);
+            Assert.assertEquals(point.getCounts(), Arrays.asList(0L, 0L, 0L, 1L));
+            Assert.assertEquals(point.getStartEpochNanos(), start + TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    public void openTelemetryWithoutHistograms() {
+        TimerRegistry timers = TimerRegistry.create();
+        timers.timer("a").record(TimeUnit.MILLISECONDS.toNanos(4));
+        timers.timer("a").record(TimeUnit.MILLISECONDS.toNanos(6));
+        InMemoryMetricReader reader = InMemoryMetricReader.create();
+        try (SdkMeterProvider provider = SdkMeterProvider.builder()
+                .registerMetricReader(reader)
+                .registerMetricProducer(OpenTelemetryBridge.create(timers))
+                .build()) {
+            for (int i = 0; i < 2; ++i) {
+                MetricData metric = find(reader.collectAllMetrics(), "a");
+                HistogramPointData point = metric.getHistogramData().getPoints().iterator().next();
+                Assert.assertEquals(metric.getHistogramData().getAggregationTemporality(), AggregationTemporality.CUMULATIVE);
+                Assert.assertEquals(point.getCount(), 2L);
+                Assert.assertEquals(point.getSum(), 0.01d, 1e-9);
+                Assert.assertTrue(point.getBoundaries().isEmpty());
+                Assert.assertEquals(point.getCounts(), Arrays.asList(2L));
+            }
+        }
+    }
+
+    private static MetricData find(final Collection<MetricData> metrics, final String name) {
+        for (MetricData metric : metrics) {
+            if (metric.getName().equals(name)) {
+                return metric;
+            }
+        }
+        throw new AssertionError("no metric named " + name + " in " + metrics);
+    }
+
+}